@@ -0,0 +1,92 @@
+package edu.pnu.stem.indoor.feature;
+
+import java.util.Arrays;
+
+/**
+ * CellBufferOverlapMatrix is the normalized overlap matrix of the cell buffers (See IndoorFeatures.getCellBufferOverlapMatrix).
+ * Only the cell pairs whose overlapped area is not zero are stored in CSR (compressed sparse row) form,
+ * so the memory is proportional to the number of cell pairs within the buffer length instead of N x N.
+ * The matrix can't be modified, so it is shared by all users of the indoor features.
+ */
+public class CellBufferOverlapMatrix {
+    private final int size;
+    private final int[] rowPointer;     // Entries of row i are stored in [rowPointer[i], rowPointer[i + 1])
+    private final int[] columnIndex;    // Column index of each entry (sorted in each row)
+    private final double[] values;      // Value of each entry
+
+    CellBufferOverlapMatrix(int size, int[] rowPointer, int[] columnIndex, double[] values) {
+        this.size = size;
+        this.rowPointer = rowPointer;
+        this.columnIndex = columnIndex;
+        this.values = values;
+    }
+
+    /**
+     * @return The number of rows (and columns) of the matrix
+     * */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of stored (non-zero) entries
+     * */
+    public int getNumEntry() {
+        return values.length;
+    }
+
+    /**
+     * @param row row index
+     * @param column column index
+     * @return The value of the entry (zero if it isn't stored)
+     * */
+    public double get(int row, int column) {
+        int index = Arrays.binarySearch(columnIndex, rowPointer[row], rowPointer[row + 1], column);
+        return index >= 0 ? values[index] : 0.0;
+    }
+
+    /**
+     * @param row row index
+     * @return index of the first entry of the row (See getColumn and getValue)
+     * */
+    public int getRowStart(int row) {
+        return rowPointer[row];
+    }
+
+    /**
+     * @param row row index
+     * @return index after the last entry of the row
+     * */
+    public int getRowEnd(int row) {
+        return rowPointer[row + 1];
+    }
+
+    /**
+     * @param entry index of an entry
+     * @return The column index of the entry
+     * */
+    public int getColumn(int entry) {
+        return columnIndex[entry];
+    }
+
+    /**
+     * @param entry index of an entry
+     * @return The value of the entry
+     * */
+    public double getValue(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * Writes a row to a dense array (the entries that aren't stored are set to zero).
+     *
+     * @param row row index
+     * @param target array to write the row (the length must be at least size())
+     * */
+    public void copyRowTo(int row, double[] target) {
+        Arrays.fill(target, 0, size, 0.0);
+        for(int k = rowPointer[row]; k < rowPointer[row + 1]; k++) {
+            target[columnIndex[k]] = values[k];
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package edu.pnu.stem.indoor.feature;
 
+import edu.pnu.stem.indoor.util.VisibilityUtils;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Location;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 /**
  * CellSpace is a base class for representing the indoor space.
@@ -17,15 +25,20 @@ import java.util.ArrayList;
 public class CellSpace {
     private String label;   // Name to represent space
     private Polygon geom;   // Geometry expressing space
+    private volatile PreparedPolygon preparedGeom;   // Prepared geometry of geom for the repeated predicate tests (made when it is needed)
     private ArrayList<LineString> doors;    // An array that stores the geometry expressing door. The door is assumed to be represented by a LineString
     private ArrayList<LineString> visibilityEdges;  // A collection of edges of the graph that represent visibility from point to point in geometry that represents space
     private ArrayList<LineString> door2doorEdges;   // An array that stores the path between doors
+    private HashSet<LineString> visibilityEdgeSet;  // The same edges as visibilityEdges for the duplicate check
+    private VisibilityGraph visibilityGraph;        // Graph of visibilityEdges. It is updated with the new edges when doors are added
     private GeometryFactory gf;
+    private boolean isFrozen = false;   // A frozen cell space belongs to a frozen snapshot of IndoorFeatures and can't be modified
 
     private CellSpace() {
         doors = new ArrayList<>();
         visibilityEdges = new ArrayList<>();
         door2doorEdges = new ArrayList<>();
+        visibilityEdgeSet = new HashSet<>();
     }
 
     public CellSpace(Polygon geom) {
@@ -33,6 +46,48 @@ public class CellSpace {
         setGeom(geom);
     }
 
+    /**
+     * Make a frozen copy of the cell space for a frozen snapshot of IndoorFeatures.
+     * The visibility graph and door2door edges are copied (not made again),
+     * and the prepared geometry with its point locator and intersection finder is built eagerly,
+     * so the copy is read only and can be used by several threads.
+     *
+     * @return frozen copy of the cell space
+     * */
+    CellSpace createFrozenCopy() {
+        return createFrozen(label, (Polygon) geom.copy(), doors, visibilityEdges, door2doorEdges);
+    }
+
+    /**
+     * Make a frozen cell space from the edges that are already made (e.g. read from a binary file of IndoorFeatures).
+     *
+     * @return frozen cell space
+     * */
+    static CellSpace createFrozen(String label, Polygon geom, List<LineString> doors, List<LineString> visibilityEdges, List<LineString> door2doorEdges) {
+        CellSpace frozenCell = new CellSpace();
+        frozenCell.label = label;
+        frozenCell.geom = geom;
+        frozenCell.doors.addAll(doors);
+        frozenCell.visibilityEdges.addAll(visibilityEdges);
+        frozenCell.door2doorEdges.addAll(door2doorEdges);
+        frozenCell.visibilityEdgeSet.addAll(visibilityEdges);
+
+        PreparedPolygon prepared = new PreparedPolygon(frozenCell.geom);
+        prepared.getPointLocator();
+        prepared.getIntersectionFinder();
+        frozenCell.preparedGeom = prepared;
+        frozenCell.isFrozen = true;
+
+        return frozenCell;
+    }
+
+    public boolean isFrozen() {
+        return isFrozen;
+    }
+
+    /**
+     * The returned lists of the cell space must not be modified if the cell space is frozen.
+     * */
     public ArrayList<LineString> getDoor2doorEdges() {
         return door2doorEdges;
     }
@@ -54,73 +109,190 @@ public class CellSpace {
     }
 
     public void setLabel(String label) {
+        checkNotFrozen();
         this.label = label;
     }
 
     public void setGeom(Polygon geom) {
+        checkNotFrozen();
         this.geom = geom;
+        this.preparedGeom = null;
         setVisibilityGraphEdges();
         // TODO : Make d2d distance when add holes
     }
 
+    /**
+     * @return The prepared geometry of the cell space. It is made at the first call after setting the geometry
+     * */
+    public PreparedPolygon getPreparedGeom() {
+        PreparedPolygon prepared = preparedGeom;
+        if(prepared == null) {
+            prepared = new PreparedPolygon(geom);
+            preparedGeom = prepared;
+        }
+        return prepared;
+    }
+
+    /**
+     * Same as getGeom().covers(geometry), but the prepared geometry is used.
+     *
+     * @param geometry geometry to test
+     * @return true if the geometry of the cell space covers the given geometry
+     * */
+    public boolean covers(Geometry geometry) {
+        return getPreparedGeom().covers(geometry);
+    }
+
+    /**
+     * Same as getGeom().covers(point of coordinate) without creating a point geometry.
+     *
+     * @param coordinate coordinate to test
+     * @return true if the coordinate is in the interior or on the boundary of the cell space
+     * */
+    public boolean covers(Coordinate coordinate) {
+        return getPreparedGeom().getPointLocator().locate(coordinate) != Location.EXTERIOR;
+    }
+
+    /**
+     * Same as getGeom().contains(geometry), but the prepared geometry is used.
+     *
+     * @param geometry geometry to test
+     * @return true if the geometry of the cell space contains the given geometry
+     * */
+    public boolean contains(Geometry geometry) {
+        return getPreparedGeom().contains(geometry);
+    }
+
+    /**
+     * Same as getGeom().intersects(geometry), but the prepared geometry is used.
+     *
+     * @param geometry geometry to test
+     * @return true if the geometry of the cell space intersects the given geometry
+     * */
+    public boolean intersects(Geometry geometry) {
+        return getPreparedGeom().intersects(geometry);
+    }
+
     /**
      * Add a new door.
      * If there are more than two doors, create and store the path between doors.
+     * Only the visibility edges of the new door coordinates are added to the visibility graph of the cell space,
+     * and the paths from each coordinate of the new door to the coordinates of the other doors are found by a single search.
      *
      * @param newDoor new door to add
-     *
-     * TODO : How to reuse visibility graph? need optimization
      * */
     public void addDoors(LineString newDoor) {
-        GeometryFactory gf = new GeometryFactory();
-        doors.add(newDoor);
+        addDoors(Collections.singletonList(newDoor));
+    }
+
+    /**
+     * Add new doors at once.
+     * The result is the same as adding each door in order, but the visibility edges of all new door coordinates
+     * are added to the visibility graph by a single update before the paths between doors are made.
+     *
+     * @param newDoors new doors to add
+     * */
+    public void addDoors(List<LineString> newDoors) {
+        checkNotFrozen();
+        if(newDoors.isEmpty()) return;
 
         if(visibilityEdges.isEmpty()) {
             setVisibilityGraphEdges();
         }
-        for(Coordinate coord : newDoor.getCoordinates()) {
-            addNodetoVGraph(coord, visibilityEdges);
+        int edgeCount = visibilityEdges.size();
+        for(LineString newDoor : newDoors) {
+            for(Coordinate coord : newDoor.getCoordinates()) {
+                addNodetoVGraph(coord, visibilityEdges, null, visibilityEdgeSet);
+            }
+        }
+        if(edgeCount < visibilityEdges.size()) {
+            visibilityGraph.addEdges(new ArrayList<>(visibilityEdges.subList(edgeCount, visibilityEdges.size())));
+        }
+
+        for(LineString newDoor : newDoors) {
+            doors.add(newDoor);
+            if(doors.size() > 1) {
+                addDoor2DoorEdges(newDoor);
+            }
+        }
+    }
+
+    /**
+     * Make the paths from the coordinates of the other doors to the coordinates of the new door.
+     *
+     * @param newDoor new door (the last door of doors)
+     * */
+    private void addDoor2DoorEdges(LineString newDoor) {
+        GeometryFactory gf = new GeometryFactory();
+        ArrayList<Coordinate> existDoorCoords = new ArrayList<>();
+        for (LineString existdDoor : doors) {
+            if(existdDoor.equals(newDoor)) continue;
+            existDoorCoords.addAll(Arrays.asList(existdDoor.getCoordinates()));
         }
-        if(doors.size() > 1) {
-            VisibilityGraph graph = new VisibilityGraph();
-            graph.addEdges(visibilityEdges);
-
-            for (LineString existdDoor : doors) {
-                if(existdDoor.equals(newDoor)) continue;
-                for(Coordinate fromCoord : existdDoor.getCoordinates()) {
-                    for(Coordinate toCoord : newDoor.getCoordinates()) {
-                        Coordinate[] coords = new Coordinate[]{fromCoord, toCoord};
-                        LineString directPath = gf.createLineString(coords);
-
-                        if(geom.covers(directPath)) {
-                            door2doorEdges.add(directPath);
-                            door2doorEdges.add((LineString) directPath.reverse());
+        Coordinate[] targets = existDoorCoords.toArray(new Coordinate[0]);
+
+        // Routes from each coordinate of the new door to all coordinates of the other doors (made only if they are needed)
+        Coordinate[] newDoorCoords = newDoor.getCoordinates();
+        LineString[][] routes = new LineString[newDoorCoords.length][];
+
+        int targetIndex = 0;
+        for (LineString existdDoor : doors) {
+            if(existdDoor.equals(newDoor)) continue;
+            for(Coordinate fromCoord : existdDoor.getCoordinates()) {
+                for(int k = 0; k < newDoorCoords.length; k++) {
+                    Coordinate toCoord = newDoorCoords[k];
+                    Coordinate[] coords = new Coordinate[]{fromCoord, toCoord};
+                    LineString directPath = gf.createLineString(coords);
+
+                    if(covers(directPath)) {
+                        door2doorEdges.add(directPath);
+                        door2doorEdges.add((LineString) directPath.reverse());
+                    }
+                    else {
+                        if(routes[k] == null) {
+                            routes[k] = visibilityGraph.getShortestRoutes(toCoord, targets);
                         }
-                        else {
-                            LineString d2dPath = graph.getShortestRoute(coords);
-                            if(geom.covers(d2dPath)) {
-                                door2doorEdges.add(d2dPath);
-                                door2doorEdges.add((LineString) d2dPath.reverse());
-                            }
-                            else
-                                System.out.println("d2d path isn't covered by geom");
+                        LineString d2dPath = routes[k][targetIndex] == null ? null : (LineString) routes[k][targetIndex].reverse();
+                        if(d2dPath != null && covers(d2dPath)) {
+                            door2doorEdges.add(d2dPath);
+                            door2doorEdges.add((LineString) d2dPath.reverse());
                         }
+                        else
+                            System.out.println("d2d path isn't covered by geom");
                     }
                 }
+                targetIndex++;
             }
         }
     }
 
+    private void checkNotFrozen() {
+        if(isFrozen)
+            throw new IllegalStateException("Can't modify the frozen cell space: " + label);
+    }
+
     /**
      * Make visibilityEdges.
      * visibilityEdges is a collection of edges of the graph that represent visibility from point to point in geometry that represents space.
+     * The visible vertex pairs are found by the rotational sweep (VisibilityUtils) instead of the covers test of each pair.
      * */
     private void setVisibilityGraphEdges() {
         visibilityEdges.clear();
+        visibilityEdgeSet.clear();
+        GeometryFactory gf = new GeometryFactory();
         Coordinate[] coords = geom.getCoordinates();
-        for (Coordinate from : coords) {
-            visibilityEdges = addNodetoVGraph(from, visibilityEdges);
+        boolean[][] isVisible = VisibilityUtils.getVertexVisibility(geom, getPreparedGeom(), coords);
+        for (int i = 0; i < coords.length; i++) {
+            for (int j = 0; j < coords.length; j++) {
+                if (!isVisible[i][j]) continue;
+
+                LineString edge = gf.createLineString(new Coordinate[] {coords[i], coords[j]});
+                if (visibilityEdgeSet.add(edge))
+                    visibilityEdges.add(edge);
+            }
         }
+        visibilityGraph = new VisibilityGraph();
+        visibilityGraph.addEdges(visibilityEdges);
     }
 
     /**
@@ -130,9 +302,11 @@ public class CellSpace {
      *
      * @param from start coordinate of straight line
      * @param visibilityEdgeList List of edges of visible graph
+     * @param baseEdgeSet Set of the edges in visibilityEdgeList that aren't in edgeSet (nullable)
+     * @param edgeSet Set of the edges in visibilityEdgeList for the duplicate check
      * @return added visibilityEdgeList
      * */
-    private ArrayList<LineString> addNodetoVGraph(Coordinate from, ArrayList<LineString> visibilityEdgeList){
+    private ArrayList<LineString> addNodetoVGraph(Coordinate from, ArrayList<LineString> visibilityEdgeList, HashSet<LineString> baseEdgeSet, HashSet<LineString> edgeSet){
         GeometryFactory gf = new GeometryFactory();
         Coordinate[] coords = geom.getCoordinates();
         for (Coordinate to : coords) {
@@ -142,8 +316,8 @@ public class CellSpace {
             LineString edge = gf.createLineString(edgeCoords);
 
             // Determine that cell geometry covers it(visibility line)
-            if (geom.covers(edge)) {
-                if(!visibilityEdgeList.contains(edge))
+            if (covers(edge)) {
+                if((baseEdgeSet == null || !baseEdgeSet.contains(edge)) && edgeSet.add(edge))
                     visibilityEdgeList.add(edge);
             }
         }
@@ -162,8 +336,9 @@ public class CellSpace {
      * */
     public ArrayList<LineString> addNodetoVGraph(Coordinate startP, Coordinate endP){
         ArrayList<LineString> temporalResult = (ArrayList<LineString>) visibilityEdges.clone();
-        temporalResult = addNodetoVGraph(startP, temporalResult);
-        temporalResult = addNodetoVGraph(endP, temporalResult);
+        HashSet<LineString> temporalEdgeSet = new HashSet<>();
+        temporalResult = addNodetoVGraph(startP, temporalResult, visibilityEdgeSet, temporalEdgeSet);
+        temporalResult = addNodetoVGraph(endP, temporalResult, visibilityEdgeSet, temporalEdgeSet);
 
         return temporalResult;
     }
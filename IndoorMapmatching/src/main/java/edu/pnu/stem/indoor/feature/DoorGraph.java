@@ -0,0 +1,407 @@
+package edu.pnu.stem.indoor.feature;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * DoorGraph is the door2door graph of a building (See IndoorUtils.makeDoor2DoorGraphEdges).
+ * It is built once by IndoorFeatures and isn't changed after that, so it can be shared by several threads.
+ * The graph is undirected and the weight of an edge is the length of the edge, the same as VisibilityGraph.
+ *
+ * The door nodes are the nodes on the doors (the points where the paths from a position to the doors of its cell end, See IndoorUtils.makePoint2DoorEdge),
+ * and the other nodes are the vertices of the paths between the doors (e.g. the corners of the cells).
+ * The shortest distances between all pairs of door nodes are calculated when the graph is built,
+ * with the shortest path tree (parent of each node) of each door node to make the route geometries.
+ * So the tables are (doors x doors) and (doors x nodes) instead of (nodes x nodes).
+ * The start and end points of a route are overlaid on the graph as temporary nodes for each query,
+ * so a route is the shortest one among the paths of temporary edges and table lookups between the door nodes they touch.
+ */
+public class DoorGraph {
+    private final Coordinate[] nodes;
+    private final HashMap<Coordinate, Integer> nodeIndexMap;
+    private final int[][] neighbors;     // Indexes of the adjacent nodes of each node
+    private final double[][] weights;    // Weights of the edges to the adjacent nodes
+    private final int[] doorNodes;       // Node index of each door node
+    private final int[] doorIndexes;     // Door index of each node (-1 if it isn't a door node)
+    private final double[][] distanceTable;  // Shortest distance between two door nodes (infinity if they aren't connected)
+    private final int[][] parentTable;       // The node before j on the shortest path from door i to node j (-1 if they aren't connected)
+    private final GeometryFactory gf;
+
+    /**
+     * @param edges edges of the door2door graph. Each line segment of the edges is added as an edge
+     * @param doors doors of the cell spaces. The nodes of the graph on the points of the doors are the door nodes
+     * */
+    public DoorGraph(ArrayList<LineString> edges, List<LineString> doors) {
+        this.gf = new GeometryFactory();
+        this.nodeIndexMap = new HashMap<>();
+        ArrayList<Coordinate> nodeList = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> adjacencyList = new ArrayList<>();
+
+        for(LineString edge : edges) {
+            Coordinate[] coords = edge.getCoordinates();
+            for(int i = 0; i < coords.length - 1; i++) {
+                if(coords[i].equals2D(coords[i + 1])) continue;
+                int from = getOrAddNode(coords[i], nodeList, adjacencyList);
+                int to = getOrAddNode(coords[i + 1], nodeList, adjacencyList);
+                adjacencyList.get(from).add(to);
+                adjacencyList.get(to).add(from);
+            }
+        }
+
+        ArrayList<Integer> doorNodeList = new ArrayList<>();
+        HashSet<Integer> doorNodeSet = new HashSet<>();
+        for(LineString door : doors) {
+            for(Coordinate coord : door.getCoordinates()) {
+                Integer node = nodeIndexMap.get(coord);
+                if(node != null && doorNodeSet.add(node)) doorNodeList.add(node);
+            }
+        }
+
+        this.nodes = nodeList.toArray(new Coordinate[0]);
+        this.neighbors = new int[nodes.length][];
+        this.weights = new double[nodes.length][];
+        for(int i = 0; i < nodes.length; i++) {
+            ArrayList<Integer> adjacentNodes = adjacencyList.get(i);
+            neighbors[i] = new int[adjacentNodes.size()];
+            weights[i] = new double[adjacentNodes.size()];
+            for(int j = 0; j < adjacentNodes.size(); j++) {
+                neighbors[i][j] = adjacentNodes.get(j);
+                weights[i][j] = nodes[i].distance(nodes[neighbors[i][j]]);
+            }
+        }
+
+        this.doorNodes = new int[doorNodeList.size()];
+        for(int i = 0; i < doorNodes.length; i++) {
+            doorNodes[i] = doorNodeList.get(i);
+        }
+        this.doorIndexes = getDoorIndexes(nodes.length, doorNodes);
+        this.distanceTable = new double[doorNodes.length][];
+        this.parentTable = new int[doorNodes.length][];
+        for(int i = 0; i < doorNodes.length; i++) {
+            calculateShortestPathTree(i);
+        }
+    }
+
+    /**
+     * Make the graph from the nodes, edges and tables that are already calculated (e.g. read from a binary file of IndoorFeatures).
+     *
+     * @param nodes nodes of the graph
+     * @param neighbors indexes of the adjacent nodes of each node
+     * @param doorNodes node index of each door node
+     * @param distanceTable shortest distance between two door nodes
+     * @param parentTable the node before j on the shortest path from door i to node j
+     * */
+    DoorGraph(Coordinate[] nodes, int[][] neighbors, int[] doorNodes, double[][] distanceTable, int[][] parentTable) {
+        this.gf = new GeometryFactory();
+        this.nodes = nodes;
+        this.nodeIndexMap = new HashMap<>();
+        for(int i = 0; i < nodes.length; i++) {
+            nodeIndexMap.put(nodes[i], i);
+        }
+        this.neighbors = neighbors;
+        this.weights = new double[nodes.length][];
+        for(int i = 0; i < nodes.length; i++) {
+            weights[i] = new double[neighbors[i].length];
+            for(int j = 0; j < neighbors[i].length; j++) {
+                weights[i][j] = nodes[i].distance(nodes[neighbors[i][j]]);
+            }
+        }
+        this.doorNodes = doorNodes;
+        this.doorIndexes = getDoorIndexes(nodes.length, doorNodes);
+        this.distanceTable = distanceTable;
+        this.parentTable = parentTable;
+    }
+
+    private static int[] getDoorIndexes(int nodeNumber, int[] doorNodes) {
+        int[] doorIndexes = new int[nodeNumber];
+        Arrays.fill(doorIndexes, -1);
+        for(int i = 0; i < doorNodes.length; i++) {
+            doorIndexes[doorNodes[i]] = i;
+        }
+        return doorIndexes;
+    }
+
+    private int getOrAddNode(Coordinate coord, ArrayList<Coordinate> nodeList, ArrayList<ArrayList<Integer>> adjacencyList) {
+        Integer index = nodeIndexMap.get(coord);
+        if(index == null) {
+            index = nodeList.size();
+            Coordinate node = new Coordinate(coord);
+            nodeList.add(node);
+            adjacencyList.add(new ArrayList<>());
+            nodeIndexMap.put(node, index);
+        }
+        return index;
+    }
+
+    /**
+     * Dijkstra search from a door node to all nodes.
+     * The distances to the door nodes and the parents of all nodes are stored in the row of the door in distanceTable and parentTable.
+     * */
+    private void calculateShortestPathTree(int door) {
+        int source = doorNodes[door];
+        double[] distance = new double[nodes.length];
+        int[] parent = new int[nodes.length];
+        boolean[] isClosed = new boolean[nodes.length];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+
+        NodeHeap heap = new NodeHeap(nodes.length);
+        distance[source] = 0.0;
+        parent[source] = source;
+        heap.add(source, 0.0);
+        while(!heap.isEmpty()) {
+            int node = heap.poll();
+            if(isClosed[node]) continue;
+            isClosed[node] = true;
+
+            for(int i = 0; i < neighbors[node].length; i++) {
+                int adjacentNode = neighbors[node][i];
+                double newDistance = distance[node] + weights[node][i];
+                if(!isClosed[adjacentNode] && newDistance < distance[adjacentNode]) {
+                    distance[adjacentNode] = newDistance;
+                    parent[adjacentNode] = node;
+                    heap.add(adjacentNode, newDistance);
+                }
+            }
+        }
+
+        double[] doorDistance = new double[doorNodes.length];
+        for(int i = 0; i < doorNodes.length; i++) {
+            doorDistance[i] = distance[doorNodes[i]];
+        }
+        distanceTable[door] = doorDistance;
+        parentTable[door] = parent;
+    }
+
+    public int getNumNodes() {
+        return nodes.length;
+    }
+
+    Coordinate getNode(int index) {
+        return nodes[index];
+    }
+
+    int[] getNeighbors(int index) {
+        return neighbors[index];
+    }
+
+    public int getNumDoorNodes() {
+        return doorNodes.length;
+    }
+
+    int getDoorNode(int door) {
+        return doorNodes[door];
+    }
+
+    double[] getDistanceRow(int door) {
+        return distanceTable[door];
+    }
+
+    int[] getParentRow(int door) {
+        return parentTable[door];
+    }
+
+    /**
+     * @return door index of a coordinate (-1 if it isn't a door node)
+     * */
+    private int getDoorIndex(Coordinate coord) {
+        Integer node = nodeIndexMap.get(coord);
+        return node == null ? -1 : doorIndexes[node];
+    }
+
+    /**
+     * This function returns the shortest distance between two door nodes of the graph (door points) by a table lookup.
+     *
+     * @param from coordinate of a door node
+     * @param to coordinate of a door node
+     * @return shortest distance (infinity if one of them isn't a door node of the graph or they aren't connected)
+     * */
+    public double getShortestDistance(Coordinate from, Coordinate to) {
+        int fromDoor = getDoorIndex(from);
+        int toDoor = getDoorIndex(to);
+        if(fromDoor == -1 || toDoor == -1)
+            return Double.POSITIVE_INFINITY;
+        return distanceTable[fromDoor][toDoor];
+    }
+
+    /**
+     * This function returns the shortest distance between two points with temporary edges overlaid on the graph.
+     * It is the length of getShortestRoute, but the route isn't made.
+     *
+     * @param start start point of the route
+     * @param end end point of the route
+     * @param temporaryEdges edges connecting the start and end points to the graph
+     * @return shortest distance (infinity if there is no connection between start and end)
+     * */
+    public double getShortestDistance(Coordinate start, Coordinate end, ArrayList<LineString> temporaryEdges) {
+        if(start.equals2D(end)) {
+            return 0.0;
+        }
+
+        Overlay overlay = new Overlay(temporaryEdges, start, end);
+        return overlay.search() ? overlay.distance[overlay.target] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * This function returns the shortest route between two points with temporary edges overlaid on the graph.
+     * The temporary edges (e.g. paths from the start and end points to the doors of their cells) are used only for this query.
+     *
+     * @param start start point of the route
+     * @param end end point of the route
+     * @param temporaryEdges edges connecting the start and end points to the graph
+     * @return shortest route from start to end (null if there is no connection between start and end)
+     * */
+    public LineString getShortestRoute(Coordinate start, Coordinate end, ArrayList<LineString> temporaryEdges) {
+        if(start.equals2D(end)) {
+            return gf.createLineString(new Coordinate[]{start, end});
+        }
+
+        Overlay overlay = new Overlay(temporaryEdges, start, end);
+        if(!overlay.search()) {
+            System.out.println("Can't find indoor route! Maybe There is no connection between source and target");
+            return null;
+        }
+
+        return gf.createLineString(overlay.getPath());
+    }
+
+    /**
+     * The graph of a query made of the temporary nodes and the door nodes of the graph touched by the temporary edges (portals).
+     * The portals are connected to each other by the distance table, so the search is done on this small graph only.
+     * The other nodes of the graph touched by the temporary edges are connected only by the temporary edges:
+     * the temporary edges of a point are the shortest paths to the doors of its cell, so a path leaving them at a corner isn't shorter.
+     * */
+    private class Overlay {
+        private final HashMap<Coordinate, Integer> localIndexMap = new HashMap<>();
+        private final ArrayList<Coordinate> localNodes = new ArrayList<>();
+        private final ArrayList<Integer> localDoors = new ArrayList<>();     // Door index of the node (-1 for the other nodes)
+        private final ArrayList<ArrayList<Integer>> temporaryNeighbors = new ArrayList<>();
+        private final int source;
+        private final int target;
+        private double[] distance;
+        private int[] previous;
+        private boolean[] isTableHop;    // true if the previous node is connected by the distance table
+
+        Overlay(ArrayList<LineString> temporaryEdges, Coordinate start, Coordinate end) {
+            for(LineString edge : temporaryEdges) {
+                Coordinate[] coords = edge.getCoordinates();
+                for(int i = 0; i < coords.length - 1; i++) {
+                    if(coords[i].equals2D(coords[i + 1])) continue;
+                    int from = getOrAddNode(coords[i]);
+                    int to = getOrAddNode(coords[i + 1]);
+                    temporaryNeighbors.get(from).add(to);
+                    temporaryNeighbors.get(to).add(from);
+                }
+            }
+
+            // The start and end points can be door nodes of the graph without temporary edges
+            Integer startIndex = localIndexMap.get(start);
+            if(startIndex == null && getDoorIndex(start) != -1) startIndex = getOrAddNode(start);
+            Integer endIndex = localIndexMap.get(end);
+            if(endIndex == null && getDoorIndex(end) != -1) endIndex = getOrAddNode(end);
+            source = startIndex == null ? -1 : startIndex;
+            target = endIndex == null ? -1 : endIndex;
+        }
+
+        private int getOrAddNode(Coordinate coord) {
+            Integer index = localIndexMap.get(coord);
+            if(index == null) {
+                index = localNodes.size();
+                Integer graphNode = nodeIndexMap.get(coord);
+                localNodes.add(graphNode == null ? new Coordinate(coord) : nodes[graphNode]);
+                localDoors.add(graphNode == null ? -1 : doorIndexes[graphNode]);
+                temporaryNeighbors.add(new ArrayList<>());
+                localIndexMap.put(localNodes.get(index), index);
+            }
+            return index;
+        }
+
+        /**
+         * Dijkstra search from source to target on the query graph.
+         * The query graph is small and dense (all portals are connected), so the node with the minimum distance is found by scanning.
+         *
+         * @return true if target is reachable
+         * */
+        boolean search() {
+            if(source == -1 || target == -1)
+                return false;
+
+            int nodeNumber = localNodes.size();
+            distance = new double[nodeNumber];
+            previous = new int[nodeNumber];
+            isTableHop = new boolean[nodeNumber];
+            boolean[] isClosed = new boolean[nodeNumber];
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            Arrays.fill(previous, -1);
+
+            distance[source] = 0.0;
+            while(true) {
+                int node = -1;
+                for(int i = 0; i < nodeNumber; i++) {
+                    if(!isClosed[i] && (node == -1 || distance[i] < distance[node])) node = i;
+                }
+                if(node == -1 || distance[node] == Double.POSITIVE_INFINITY)
+                    return false;
+                isClosed[node] = true;
+                if(node == target)
+                    return true;
+
+                Coordinate coord = localNodes.get(node);
+                for(int adjacentNode : temporaryNeighbors.get(node)) {
+                    relax(node, adjacentNode, distance[node] + coord.distance(localNodes.get(adjacentNode)), false, isClosed);
+                }
+                int door = localDoors.get(node);
+                if(door != -1) {
+                    for(int i = 0; i < nodeNumber; i++) {
+                        int otherDoor = localDoors.get(i);
+                        if(otherDoor == -1 || i == node) continue;
+                        relax(node, i, distance[node] + distanceTable[door][otherDoor], true, isClosed);
+                    }
+                }
+            }
+        }
+
+        private void relax(int node, int adjacentNode, double newDistance, boolean isTable, boolean[] isClosed) {
+            if(!isClosed[adjacentNode] && newDistance < distance[adjacentNode]) {
+                distance[adjacentNode] = newDistance;
+                previous[adjacentNode] = node;
+                isTableHop[adjacentNode] = isTable;
+            }
+        }
+
+        /**
+         * @return coordinates of the path from source to target. The hops by the distance table are expanded with the parent table
+         * */
+        Coordinate[] getPath() {
+            ArrayList<Coordinate> reversedPath = new ArrayList<>();
+            int node = target;
+            reversedPath.add(localNodes.get(node));
+            while(previous[node] != -1) {
+                int previousNode = previous[node];
+                if(isTableHop[node]) {
+                    // Nodes between the previous node and the current node on the shortest path tree of the previous node (in reversed order)
+                    int[] parent = parentTable[localDoors.get(previousNode)];
+                    int from = doorNodes[localDoors.get(previousNode)];
+                    for(int hop = parent[doorNodes[localDoors.get(node)]]; hop != from; hop = parent[hop]) {
+                        reversedPath.add(nodes[hop]);
+                    }
+                }
+                reversedPath.add(localNodes.get(previousNode));
+                node = previousNode;
+            }
+
+            Coordinate[] path = new Coordinate[reversedPath.size()];
+            for(int i = 0; i < path.length; i++) {
+                path[i] = reversedPath.get(path.length - 1 - i);
+            }
+            return path;
+        }
+    }
+}
@@ -1,21 +1,45 @@
 package edu.pnu.stem.indoor.feature;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import edu.pnu.stem.indoor.util.Circle;
+import edu.pnu.stem.indoor.util.CircleAreaUtils;
 import edu.pnu.stem.indoor.util.IndoorUtils;
+import edu.pnu.stem.indoor.util.parser.ChangeCoord;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.strtree.STRtree;
 
 /**
  * IndoorFeatures is a class that represent the indoor space.
+ * The derived data (topology graph, door2door graph, spatial index, cell buffer overlap matrices) are made when they are needed.
+ * To share the indoor features with several threads (e.g. concurrent map matching sessions), use a frozen snapshot (See createFrozenSnapshot).
  *
  * Created by STEM_KTH on 2017-05-29.
  * @author Taehoon Kim, Pusan National University, STEM Lab.
  */
 public class IndoorFeatures {
-    private ArrayList<CellSpace> cellSpaces = null;
-    private HashMap<String, Integer> cellSpaceIndexMap = null;
-    private boolean[][] topologyGraph = null;
+    private final ArrayList<CellSpace> cellSpaces;
+    private final HashMap<String, Integer> cellSpaceIndexMap;
+    private final boolean isFrozen;
+    private volatile boolean[][] topologyGraph = null;
+    private volatile DoorGraph doorGraph = null;
+    private volatile STRtree cellSpaceIndexTree = null;  // Items are the indexes of cellSpaces
+    private static final int MAX_CACHED_OVERLAP_MATRICES = 8;
+    // Key is the buffer length, in the order of the last access (guarded by itself)
+    private final LinkedHashMap<Double, FutureTask<CellBufferOverlapMatrix>> cellBufferOverlapCache;
+    private final GeometryFactory gf;
+    // WGS84 range of the building, the origin of the canvas coordinates (See ChangeCoord)
+    private volatile Coordinate minPosition = ChangeCoord.getDefaultMinPosition();
+    private volatile Coordinate maxPosition = ChangeCoord.getDefaultMaxPosition();
 
     public IndoorFeatures () {
         this(new GeometryFactory());
@@ -24,11 +48,128 @@ public class IndoorFeatures {
     public IndoorFeatures (GeometryFactory gf) {
         cellSpaces = new ArrayList<>();
         cellSpaceIndexMap = new HashMap<>();
-        //this.gf = gf;
+        cellBufferOverlapCache = new LinkedHashMap<>(16, 0.75f, true);
+        isFrozen = false;
+        this.gf = gf;
+    }
+
+    /**
+     * Makes a frozen snapshot of the original indoor features.
+     * All derived data except the cell buffer overlap matrices are built here,
+     * and all of them are reachable from final fields, so the snapshot is safely published to other threads.
+     * */
+    private IndoorFeatures (IndoorFeatures original) {
+        cellSpaces = new ArrayList<>();
+        for(CellSpace cellSpace : original.cellSpaces) {
+            cellSpaces.add(cellSpace.createFrozenCopy());
+        }
+        cellSpaceIndexMap = new HashMap<>(original.cellSpaceIndexMap);
+        cellBufferOverlapCache = new LinkedHashMap<>(16, 0.75f, true);
+        isFrozen = true;
+        this.gf = original.gf;
+        minPosition = original.getMinPosition();
+        maxPosition = original.getMaxPosition();
+
+        cellSpaceIndexTree = buildSpatialIndex();
+        topologyGraph = generateTopologyGraph();
+        doorGraph = new DoorGraph(IndoorUtils.makeDoor2DoorGraphEdges(cellSpaces), getDoors());
+    }
+
+    /**
+     * Makes frozen indoor features from the derived data that are already made (e.g. read from a binary file, See IndoorFeaturesBinary).
+     * Only the spatial index is built here.
+     *
+     * @param frozenCellSpaces frozen cell spaces
+     * @param topologyGraph topology graph of the cell spaces
+     * @param doorGraph door2door graph of the cell spaces
+     * @param minPosition minimum WGS84 position of the building
+     * @param maxPosition maximum WGS84 position of the building
+     * */
+    IndoorFeatures (ArrayList<CellSpace> frozenCellSpaces, boolean[][] topologyGraph, DoorGraph doorGraph,
+                    Coordinate minPosition, Coordinate maxPosition, GeometryFactory gf) {
+        cellSpaces = frozenCellSpaces;
+        cellSpaceIndexMap = new HashMap<>();
+        for(int i = 0; i < cellSpaces.size(); i++) {
+            if(cellSpaces.get(i).getLabel() != null) {
+                cellSpaceIndexMap.put(cellSpaces.get(i).getLabel(), i);
+            }
+        }
+        cellBufferOverlapCache = new LinkedHashMap<>(16, 0.75f, true);
+        isFrozen = true;
+        this.gf = gf;
+
+        cellSpaceIndexTree = buildSpatialIndex();
+        this.topologyGraph = topologyGraph;
+        this.doorGraph = doorGraph;
+        this.minPosition = new Coordinate(minPosition);
+        this.maxPosition = new Coordinate(maxPosition);
+    }
+
+    /**
+     * This function returns a frozen snapshot of the indoor features.
+     * The snapshot has its own copy of the cell spaces, and the topology graph, the door2door graph, the spatial index
+     * and the prepared geometries of the cell spaces are built eagerly.
+     * The snapshot can't be modified (IllegalStateException), so it can be shared by several threads without locking.
+     * Only the cell buffer overlap matrices are still calculated at the first call for each buffer length.
+     * Changes of this indoor features after this call are not reflected to the snapshot.
+     *
+     * @return frozen snapshot (this if it is already frozen)
+     * */
+    public IndoorFeatures createFrozenSnapshot() {
+        if(isFrozen)
+            return this;
+        return new IndoorFeatures(this);
+    }
+
+    /**
+     * @return true if this is a frozen snapshot
+     * */
+    public boolean isFrozen() {
+        return isFrozen;
+    }
+
+    /**
+     * This function sets the WGS84 range of the building (e.g. the range of the nodes of an OSM file).
+     * The minimum position is the origin of the canvas coordinates of the cell spaces,
+     * so the trajectories of this building must be converted with it (See DataUtils.getBuildNGoData(File, IndoorFeatures)).
+     *
+     * @param minPosition minimum WGS84 position
+     * @param maxPosition maximum WGS84 position
+     * */
+    public void setCoordinateRange(Coordinate minPosition, Coordinate maxPosition) {
+        if(isFrozen)
+            throw new IllegalStateException("Can't change the coordinate range of the frozen indoor features");
+
+        this.minPosition = new Coordinate(minPosition);
+        this.maxPosition = new Coordinate(maxPosition);
+    }
+
+    /**
+     * @return minimum WGS84 position of the building (a new coordinate). It is the default range of ChangeCoord if it isn't set
+     * */
+    public Coordinate getMinPosition() {
+        return new Coordinate(minPosition);
+    }
+
+    /**
+     * @return maximum WGS84 position of the building (a new coordinate)
+     * */
+    public Coordinate getMaxPosition() {
+        return new Coordinate(maxPosition);
     }
 
     public void addCellSpace(CellSpace cellSpace) {
+        if(isFrozen)
+            throw new IllegalStateException("Can't add a cell space to the frozen indoor features");
+
         cellSpaces.add(cellSpace);
+        // The derived data are rebuilt at the next lookup
+        cellSpaceIndexTree = null;
+        topologyGraph = null;
+        doorGraph = null;
+        synchronized (cellBufferOverlapCache) {
+            cellBufferOverlapCache.clear();
+        }
         if(cellSpace.getLabel() == null) {
             System.out.println("This cell doesn't have a label");
         }
@@ -43,6 +184,9 @@ public class IndoorFeatures {
         return cellSpaceIndexMap.get(label);
     }
 
+    /**
+     * @return cell spaces. The returned list must not be modified if the indoor features is frozen
+     * */
     public ArrayList<CellSpace> getCellSpaces() {
         return cellSpaces;
     }
@@ -95,43 +239,186 @@ public class IndoorFeatures {
      * @return candidate cell space index array
      * */
     public int[] getCellSpaceIndex(Coordinate coordinate) {
+        return getCellSpaceIndex(coordinate, true);
+    }
+
+    /**
+     * Same as getCellSpaceIndex(Coordinate), but the way to calculate the area of the Epsilon-sized buffer is selected
+     * (See getCellSpaceIndexWithEpsilon(Coordinate, boolean)).
+     *
+     * @param coordinate given coordinate
+     * @param isAnalyticCircleArea Whether the area of the Epsilon-sized buffer is calculated analytically
+     * @return candidate cell space index array
+     * */
+    public int[] getCellSpaceIndex(Coordinate coordinate, boolean isAnalyticCircleArea) {
         //TODO : Need to modify to operate on three-dimensional coordinate(or additional floor information)
-        GeometryFactory gf = new GeometryFactory();
-        ArrayList<Integer> resultList = new ArrayList<>();
-        int closestCellIndex = -1;
-        Point point = gf.createPoint(coordinate);
-        for (CellSpace cellSpace : cellSpaces) {
-            Polygon cellGeometry = cellSpace.getGeom();
-            closestCellIndex++;
-            if(cellGeometry.covers(point)){
-                resultList.add(closestCellIndex);
+        int[] candidateIndexes = queryCellSpaceIndex(new Envelope(coordinate));
+        int resultCount = 0;
+        for (int cellIndex : candidateIndexes) {
+            if(cellSpaces.get(cellIndex).covers(coordinate)){
+                candidateIndexes[resultCount++] = cellIndex;
             }
         }
 
         int[] resultArray;
-        if(resultList.isEmpty()) {
+        if(resultCount == 0) {
             // If the map matching result is not generated, map matching is performed again using an Epsilon-sized buffer
-            int selectedIndex = IndoorUtils.getCellSpaceIndexWithEpsilon(point.getCoordinate(), cellSpaces);
+            int selectedIndex = getCellSpaceIndexWithEpsilon(coordinate, isAnalyticCircleArea);
             resultArray = new int[]{selectedIndex};
         }
         else {
-            resultArray = new int[resultList.size()];
-            for(int i = 0; i < resultList.size(); i++) {
-                resultArray[i] = resultList.get(i);
+            resultArray = Arrays.copyOf(candidateIndexes, resultCount);
+        }
+
+        return resultArray;
+    }
+
+    /**
+     * This function returns the index of the cell space that has the largest intersection area with an Epsilon-sized buffer of a given coordinate.
+     * The buffer size is doubled until a cell space is found.
+     * It is the same as IndoorUtils.getCellSpaceIndexWithEpsilon, but only the cell spaces near the coordinate are tested.
+     * The area of the exact circle is calculated by CircleAreaUtils, so the result can differ from the one of the polygon buffer
+     * (a circle of 8 segments) used before when two cell spaces have almost the same area in the buffer.
+     * To use the polygon buffer, call getCellSpaceIndexWithEpsilon(Coordinate, false).
+     *
+     * @param coordinate given coordinate
+     * @return cell space index (-1 if there is no cell space)
+     * */
+    public int getCellSpaceIndexWithEpsilon(Coordinate coordinate) {
+        return getCellSpaceIndexWithEpsilon(coordinate, true);
+    }
+
+    /**
+     * Same as getCellSpaceIndexWithEpsilon(Coordinate), but the way to calculate the area of the Epsilon-sized buffer is selected.
+     * If it isn't analytic, the buffer is a polygon (point.buffer(epsilon, 2)) and the area is calculated by the overlay operation of JTS.
+     *
+     * @param coordinate given coordinate
+     * @param isAnalyticCircleArea Whether the area of the Epsilon-sized buffer is calculated analytically
+     * @return cell space index (-1 if there is no cell space)
+     * */
+    public int getCellSpaceIndexWithEpsilon(Coordinate coordinate, boolean isAnalyticCircleArea) {
+        if(cellSpaces.isEmpty())
+            return -1;
+
+        double epsilon = IndoorUtils.EPSILON;
+        int selectedIndex = -1;
+        while (selectedIndex == -1) {
+            List<Circle> circle = Collections.singletonList(new Circle(coordinate, epsilon));
+            Polygon bufferedPolygon = isAnalyticCircleArea ? null : (Polygon) gf.createPoint(coordinate).buffer(epsilon, 2);
+            double maxArea = 0.0;
+            for(int cellIndex : queryCellSpaceIndex(circle.get(0).getEnvelope())) {
+                CellSpace cellSpace = cellSpaces.get(cellIndex);
+                double area;
+                if(isAnalyticCircleArea) {
+                    area = CircleAreaUtils.getIntersectionArea(cellSpace.getGeom(), cellSpace.getPreparedGeom().getPointLocator(), circle);
+                }
+                else {
+                    area = cellSpace.intersects(bufferedPolygon) ? cellSpace.getGeom().intersection(bufferedPolygon).getArea() : 0.0;
+                }
+                if(maxArea < area) {
+                    maxArea = area;
+                    selectedIndex = cellIndex;
+                }
             }
+            epsilon *= 2;
         }
 
+        return selectedIndex;
+    }
+
+    /**
+     * This function returns the indexes of the cell spaces that intersect a given geometry.
+     * Only the cell spaces whose envelope intersects the envelope of the geometry are tested with the prepared geometry of cell spaces.
+     *
+     * @param geometry given geometry (e.g. circle buffer of a positioning point)
+     * @return cell space index array in ascending order
+     * */
+    public int[] getIntersectingCellSpaceIndex(Geometry geometry) {
+        int[] candidateIndexes = queryCellSpaceIndex(geometry.getEnvelopeInternal());
+        int resultCount = 0;
+        for (int cellIndex : candidateIndexes) {
+            if(cellSpaces.get(cellIndex).intersects(geometry)) {
+                candidateIndexes[resultCount++] = cellIndex;
+            }
+        }
+
+        return Arrays.copyOf(candidateIndexes, resultCount);
+    }
+
+    /**
+     * This function returns the indexes of the cell spaces whose envelope intersects a given envelope.
+     * The spatial index (STRtree) of the cell spaces is built at the first call after adding cell spaces.
+     * If the geometry of a cell space is changed after it is added, the index is not updated.
+     *
+     * @param envelope given envelope
+     * @return cell space index array in ascending order
+     * */
+    public int[] queryCellSpaceIndex(Envelope envelope) {
+        List<?> items = getSpatialIndex().query(envelope);
+        int[] resultArray = new int[items.size()];
+        for(int i = 0; i < resultArray.length; i++) {
+            resultArray[i] = (Integer) items.get(i);
+        }
+        // Keep the order of cellSpaces as the linear search does
+        Arrays.sort(resultArray);
+
         return resultArray;
     }
 
+    /**
+     * This function visits the indexes (Integer) of the cell spaces whose envelope intersects a given envelope.
+     * Unlike queryCellSpaceIndex(Envelope), no result array is made and the indexes are visited in the order of the spatial index (not sorted).
+     *
+     * @param envelope given envelope
+     * @param visitor visitor of the cell space indexes
+     * */
+    public void queryCellSpaceIndex(Envelope envelope, ItemVisitor visitor) {
+        getSpatialIndex().query(envelope, visitor);
+    }
+
+    private STRtree getSpatialIndex() {
+        STRtree tree = cellSpaceIndexTree;
+        if(tree == null) {
+            tree = buildSpatialIndex();
+        }
+        return tree;
+    }
+
+    /**
+     * This function builds the spatial index of cell spaces.
+     * The built index is published after all cell spaces are inserted, so the lookup functions can be called by several threads.
+     * */
+    private synchronized STRtree buildSpatialIndex() {
+        if(cellSpaceIndexTree != null)
+            return cellSpaceIndexTree;
+
+        STRtree tree = new STRtree();
+        for (int i = 0; i < cellSpaces.size(); i++) {
+            tree.insert(cellSpaces.get(i).getGeom().getEnvelopeInternal(), i);
+        }
+        tree.build();
+
+        cellSpaceIndexTree = tree;
+        return tree;
+    }
+
     /**
      * This function return a topology graph of cell spaces.
      *
-     * @return topology graph
+     * @return topology graph. The returned graph is shared, so it must not be modified
      * */
     public boolean[][] getTopologyGraph() {
+        boolean[][] graph = topologyGraph;
+        if(graph == null) {
+            graph = buildTopologyGraph();
+        }
+
+        return graph;
+    }
+
+    private synchronized boolean[][] buildTopologyGraph() {
         if(topologyGraph == null) {
-            generateTopologyGraph();
+            topologyGraph = generateTopologyGraph();
         }
 
         return topologyGraph;
@@ -140,10 +427,10 @@ public class IndoorFeatures {
     /**
      * This function generate a topology graph of cell spaces.
      * */
-    private void generateTopologyGraph() {
+    private boolean[][] generateTopologyGraph() {
         // TODO : How to deal the connection between different floors
         int cellNumber = cellSpaces.size();
-        topologyGraph = new boolean[cellNumber][cellNumber];
+        boolean[][] topologyGraph = new boolean[cellNumber][cellNumber];
 
         // initialize step
         for (int i = 0; i < cellSpaces.size(); i++) {
@@ -177,6 +464,146 @@ public class IndoorFeatures {
                 }
             }
         }
+
+        return topologyGraph;
+    }
+
+    /**
+     * This function returns the door2door graph of the building (See IndoorUtils.makeDoor2DoorGraphEdges).
+     * The graph with its distance table of the door nodes is made at the first call after adding cell spaces.
+     * If doors are added to a cell space after the first call, the graph is not updated.
+     *
+     * @return door2door graph
+     * */
+    public DoorGraph getDoorGraph() {
+        DoorGraph graph = doorGraph;
+        if(graph == null) {
+            graph = buildDoorGraph();
+        }
+
+        return graph;
+    }
+
+    private synchronized DoorGraph buildDoorGraph() {
+        if(doorGraph == null) {
+            doorGraph = new DoorGraph(IndoorUtils.makeDoor2DoorGraphEdges(cellSpaces), getDoors());
+        }
+
+        return doorGraph;
+    }
+
+    /**
+     * @return doors of all cell spaces (the door nodes of the door2door graph are on them)
+     * */
+    private ArrayList<LineString> getDoors() {
+        ArrayList<LineString> doors = new ArrayList<>();
+        for(CellSpace cellSpace : cellSpaces) {
+            doors.addAll(cellSpace.getDoors());
+        }
+        return doors;
+    }
+
+    /**
+     * This function returns the overlap matrix of the cell buffers for a given buffer length.
+     * The row i is the area where the buffer geometry of cell i overlaps with each cell (the area of cell i itself for the same cell),
+     * normalized so that the sum of the row is one.
+     * It is the B matrix of HMMIndoorMapMatching.makeBMatrixCellBuffer and depends only on the cell spaces and the buffer length,
+     * so the matrix is calculated once for each buffer length and kept until a cell space is added.
+     * Only the matrices of the last MAX_CACHED_OVERLAP_MATRICES (8) buffer lengths are kept.
+     *
+     * @param bufferLength The length of the buffer to apply
+     * @return cell buffer overlap matrix (sparse and immutable, so it is shared)
+     * */
+    public CellBufferOverlapMatrix getCellBufferOverlapMatrix(double bufferLength) {
+        FutureTask<CellBufferOverlapMatrix> task;
+        synchronized (cellBufferOverlapCache) {
+            task = cellBufferOverlapCache.get(bufferLength);
+            if(task == null) {
+                task = new FutureTask<>(() -> generateCellBufferOverlapMatrix(bufferLength));
+                cellBufferOverlapCache.put(bufferLength, task);
+                if(cellBufferOverlapCache.size() > MAX_CACHED_OVERLAP_MATRICES) {
+                    // Remove the least recently used matrix
+                    Iterator<Double> iterator = cellBufferOverlapCache.keySet().iterator();
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+
+        // The matrix is calculated outside of the lock by the first thread requesting the buffer length,
+        // so only the threads requesting the same buffer length wait for the calculation
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the cell buffer overlap matrix", e);
+        } catch (ExecutionException e) {
+            synchronized (cellBufferOverlapCache) {
+                cellBufferOverlapCache.remove(bufferLength, task);
+            }
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Fail to calculate the cell buffer overlap matrix", e.getCause());
+        }
+    }
+
+    /**
+     * This function generate a overlap matrix of the cell buffers.
+     * Only the cell pairs found by the spatial index with the buffer geometry are calculated and stored.
+     * */
+    private CellBufferOverlapMatrix generateCellBufferOverlapMatrix(double bufferLength) {
+        int cellNumber = cellSpaces.size();
+        int[] rowPointer = new int[cellNumber + 1];
+        int[] columnIndex = new int[cellNumber];
+        double[] values = new double[cellNumber];
+        int entryCount = 0;
+
+        for(int i = 0; i < cellNumber; i++) {
+            Polygon cellGeometry = cellSpaces.get(i).getGeom();
+            Geometry bufferGeometry = cellGeometry.buffer(bufferLength);
+            int[] intersectingIndexes = getIntersectingCellSpaceIndex(bufferGeometry);
+            if(entryCount + intersectingIndexes.length + 1 > values.length) {
+                int capacity = Math.max(values.length * 2, entryCount + intersectingIndexes.length + 1);
+                columnIndex = Arrays.copyOf(columnIndex, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+
+            // The indexes are in ascending order, and the cell itself is added at its position
+            int rowStart = entryCount;
+            boolean isSelfAdded = false;
+            for(int j : intersectingIndexes) {
+                if(!isSelfAdded && j >= i) {
+                    columnIndex[entryCount] = i;
+                    values[entryCount++] = cellGeometry.getArea();
+                    isSelfAdded = true;
+                    if(j == i) continue;
+                }
+                columnIndex[entryCount] = j;
+                values[entryCount++] = bufferGeometry.intersection(cellSpaces.get(j).getGeom()).getArea();
+            }
+            if(!isSelfAdded) {
+                columnIndex[entryCount] = i;
+                values[entryCount++] = cellGeometry.getArea();
+            }
+
+            // normalization (the zero entries are removed)
+            double rowSum = 0.0;
+            for(int k = rowStart; k < entryCount; k++) {
+                rowSum += values[k];
+            }
+            int rowEnd = rowStart;
+            for(int k = rowStart; k < entryCount; k++) {
+                if(values[k] == 0) continue;
+                columnIndex[rowEnd] = columnIndex[k];
+                values[rowEnd++] = rowSum != 0 ? values[k] / rowSum : values[k];
+            }
+            entryCount = rowEnd;
+            rowPointer[i + 1] = entryCount;
+        }
+
+        return new CellBufferOverlapMatrix(cellNumber,
+                rowPointer, Arrays.copyOf(columnIndex, entryCount), Arrays.copyOf(values, entryCount));
     }
 
     /**
@@ -186,6 +613,6 @@ public class IndoorFeatures {
      * @return Indoor route
      * */
     public LineString getIndoorRoute(LineString trajectory) {
-        return IndoorUtils.getIndoorRoute(trajectory, cellSpaces);
+        return IndoorUtils.getIndoorRoute(trajectory, this);
     }
 }
@@ -0,0 +1,313 @@
+package edu.pnu.stem.indoor.feature;
+
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import org.locationtech.jts.geom.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * IndoorFeaturesBinary writes a fully built IndoorFeatures to a binary file and reads it by a memory-mapped file,
+ * so the OSM file doesn't need to be parsed and the visibility edges, door2door edges, topology graph and
+ * the distance table of the door nodes of the door2door graph don't need to be made again.
+ * The read indoor features is a frozen snapshot (See IndoorFeatures.createFrozenSnapshot).
+ *
+ * File format (big endian):
+ * 1. header: magic number, version, the WGS84 range of the building (min x, min y, max x, max y)
+ * 2. coordinate table: number of coordinates, (x, y) of each coordinate. The geometries refer to the coordinates by their indexes
+ * 3. cell spaces: number of cells, and label, polygon (shell and holes), doors, visibility edges and door2door edges of each cell
+ * 4. topology graph: number of cells, bit set of each row
+ * 5. door2door graph: nodes, adjacent nodes, door nodes, the shortest distance table of the door nodes and
+ *    the shortest path tree (parent of each node) of each door node
+ * Only the spatial index of the cell spaces is built again when the file is read (from the envelopes of the cell spaces).
+ */
+public class IndoorFeaturesBinary {
+    public static final String FILE_EXTENSION = ".imf";
+    private static final int MAGIC_NUMBER = 0x494D4D46;    // "IMMF"
+    private static final int VERSION = 2;
+
+    /**
+     * This function writes the indoor features with its derived data to a binary file.
+     * The WGS84 range of the building (IndoorFeatures.getMinPosition) is also written, so the trajectories can be converted with it after reading the file.
+     *
+     * @param indoorFeatures indoor features to write
+     * @param outputFile binary file
+     * */
+    public static void write(IndoorFeatures indoorFeatures, File outputFile) throws IOException {
+        ArrayList<CellSpace> cellSpaces = indoorFeatures.getCellSpaces();
+        boolean[][] topologyGraph = indoorFeatures.getTopologyGraph();
+        DoorGraph doorGraph = indoorFeatures.getDoorGraph();
+
+        // The body is written first to collect the coordinate table
+        CoordinateTable coordinateTable = new CoordinateTable();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        body.writeInt(cellSpaces.size());
+        for(CellSpace cellSpace : cellSpaces) {
+            writeString(body, cellSpace.getLabel());
+            Polygon geom = cellSpace.getGeom();
+            writeLine(body, coordinateTable, geom.getExteriorRing());
+            body.writeInt(geom.getNumInteriorRing());
+            for(int i = 0; i < geom.getNumInteriorRing(); i++) {
+                writeLine(body, coordinateTable, geom.getInteriorRingN(i));
+            }
+            writeLines(body, coordinateTable, cellSpace.getDoors());
+            writeLines(body, coordinateTable, cellSpace.getVisibilityEdges());
+            writeLines(body, coordinateTable, cellSpace.getDoor2doorEdges());
+        }
+
+        int cellNumber = topologyGraph.length;
+        body.writeInt(cellNumber);
+        for(boolean[] row : topologyGraph) {
+            long[] bits = new long[(cellNumber + 63) / 64];
+            for(int j = 0; j < cellNumber; j++) {
+                if(row[j]) bits[j >>> 6] |= 1L << (j & 63);
+            }
+            for(long word : bits) {
+                body.writeLong(word);
+            }
+        }
+
+        int nodeNumber = doorGraph.getNumNodes();
+        body.writeInt(nodeNumber);
+        for(int i = 0; i < nodeNumber; i++) {
+            body.writeInt(coordinateTable.getIndex(doorGraph.getNode(i)));
+        }
+        for(int i = 0; i < nodeNumber; i++) {
+            int[] neighbors = doorGraph.getNeighbors(i);
+            body.writeInt(neighbors.length);
+            for(int neighbor : neighbors) {
+                body.writeInt(neighbor);
+            }
+        }
+        int doorNumber = doorGraph.getNumDoorNodes();
+        body.writeInt(doorNumber);
+        for(int i = 0; i < doorNumber; i++) {
+            body.writeInt(doorGraph.getDoorNode(i));
+        }
+        for(int i = 0; i < doorNumber; i++) {
+            for(double distance : doorGraph.getDistanceRow(i)) {
+                body.writeDouble(distance);
+            }
+        }
+        for(int i = 0; i < doorNumber; i++) {
+            for(int parent : doorGraph.getParentRow(i)) {
+                body.writeInt(parent);
+            }
+        }
+        body.flush();
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(VERSION);
+            Coordinate minPosition = indoorFeatures.getMinPosition();
+            Coordinate maxPosition = indoorFeatures.getMaxPosition();
+            output.writeDouble(minPosition.x);
+            output.writeDouble(minPosition.y);
+            output.writeDouble(maxPosition.x);
+            output.writeDouble(maxPosition.y);
+
+            output.writeInt(coordinateTable.coordinates.size());
+            for(Coordinate coordinate : coordinateTable.coordinates) {
+                output.writeDouble(coordinate.x);
+                output.writeDouble(coordinate.y);
+            }
+            bodyBytes.writeTo(output);
+        }
+    }
+
+    /**
+     * This function reads the indoor features from a binary file written by write().
+     * The range in the file is kept in the indoor features (See IndoorFeatures.getMinPosition) and ChangeCoord isn't changed.
+     *
+     * @param inputFile binary file
+     * @return frozen indoor features
+     * */
+    public static IndoorFeatures read(File inputFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The file is too large to map: " + inputFile);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * This function reads the indoor features from a buffer that has the contents of a binary file.
+     *
+     * @param buffer buffer from the current position
+     * @return frozen indoor features
+     * */
+    public static IndoorFeatures read(ByteBuffer buffer) throws IOException {
+        try {
+            if(buffer.getInt() != MAGIC_NUMBER)
+                throw new IOException("It isn't a binary file of indoor features");
+            int version = buffer.getInt();
+            if(version != VERSION)
+                throw new IOException("Unsupported version of the binary file: " + version);
+            Coordinate minPosition = new Coordinate(buffer.getDouble(), buffer.getDouble());
+            Coordinate maxPosition = new Coordinate(buffer.getDouble(), buffer.getDouble());
+
+            int coordinateNumber = buffer.getInt();
+            double[] coordinateXY = new double[2 * coordinateNumber];
+            buffer.asDoubleBuffer().get(coordinateXY);
+            buffer.position(buffer.position() + 16 * coordinateNumber);
+
+            GeometryFactory gf = new GeometryFactory();
+            int cellNumber = buffer.getInt();
+            ArrayList<CellSpace> cellSpaces = new ArrayList<>(cellNumber);
+            for(int i = 0; i < cellNumber; i++) {
+                String label = readString(buffer);
+                LinearRing shell = gf.createLinearRing(readCoordinates(buffer, coordinateXY));
+                LinearRing[] holes = new LinearRing[buffer.getInt()];
+                for(int j = 0; j < holes.length; j++) {
+                    holes[j] = gf.createLinearRing(readCoordinates(buffer, coordinateXY));
+                }
+                Polygon geom = gf.createPolygon(shell, holes);
+                ArrayList<LineString> doors = readLines(buffer, coordinateXY, gf);
+                ArrayList<LineString> visibilityEdges = readLines(buffer, coordinateXY, gf);
+                ArrayList<LineString> door2doorEdges = readLines(buffer, coordinateXY, gf);
+                cellSpaces.add(CellSpace.createFrozen(label, geom, doors, visibilityEdges, door2doorEdges));
+            }
+
+            int topologySize = buffer.getInt();
+            if(topologySize != cellNumber)
+                throw new IOException("The size of the topology graph is different from the number of cells");
+            boolean[][] topologyGraph = new boolean[cellNumber][cellNumber];
+            long[] bits = new long[(cellNumber + 63) / 64];
+            for(int i = 0; i < cellNumber; i++) {
+                buffer.asLongBuffer().get(bits);
+                buffer.position(buffer.position() + 8 * bits.length);
+                for(int j = 0; j < cellNumber; j++) {
+                    topologyGraph[i][j] = (bits[j >>> 6] & (1L << (j & 63))) != 0;
+                }
+            }
+
+            int nodeNumber = buffer.getInt();
+            Coordinate[] nodes = new Coordinate[nodeNumber];
+            for(int i = 0; i < nodeNumber; i++) {
+                nodes[i] = getCoordinate(coordinateXY, buffer.getInt());
+            }
+            int[][] neighbors = new int[nodeNumber][];
+            for(int i = 0; i < nodeNumber; i++) {
+                neighbors[i] = new int[buffer.getInt()];
+                buffer.asIntBuffer().get(neighbors[i]);
+                buffer.position(buffer.position() + 4 * neighbors[i].length);
+            }
+            int doorNumber = buffer.getInt();
+            int[] doorNodes = new int[doorNumber];
+            buffer.asIntBuffer().get(doorNodes);
+            buffer.position(buffer.position() + 4 * doorNumber);
+            double[][] distanceTable = new double[doorNumber][doorNumber];
+            for(int i = 0; i < doorNumber; i++) {
+                buffer.asDoubleBuffer().get(distanceTable[i]);
+                buffer.position(buffer.position() + 8 * doorNumber);
+            }
+            int[][] parentTable = new int[doorNumber][nodeNumber];
+            for(int i = 0; i < doorNumber; i++) {
+                buffer.asIntBuffer().get(parentTable[i]);
+                buffer.position(buffer.position() + 4 * nodeNumber);
+            }
+            DoorGraph doorGraph = new DoorGraph(nodes, neighbors, doorNodes, distanceTable, parentTable);
+
+            return new IndoorFeatures(cellSpaces, topologyGraph, doorGraph, minPosition, maxPosition, gf);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException e) {
+            // IllegalArgumentException is thrown by the geometry factory for a broken ring (e.g. too few points or not closed)
+            throw new IOException("The binary file of indoor features is broken", e);
+        }
+    }
+
+    /**
+     * Convert an OSM file to a binary file of indoor features.
+     * */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2) {
+            System.out.println("Usage: IndoorFeaturesBinary [OSM file] [binary file(" + FILE_EXTENSION + ")]");
+            return;
+        }
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File(args[0]));
+        write(indoorFeatures, new File(args[1]));
+    }
+
+    /**
+     * Indexes of the distinct coordinates (2D) of the geometries.
+     * */
+    private static class CoordinateTable {
+        private final HashMap<Coordinate, Integer> indexMap = new HashMap<>();
+        private final ArrayList<Coordinate> coordinates = new ArrayList<>();
+
+        int getIndex(Coordinate coordinate) {
+            Integer index = indexMap.get(coordinate);
+            if(index == null) {
+                index = coordinates.size();
+                coordinates.add(coordinate);
+                indexMap.put(coordinate, index);
+            }
+            return index;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if(value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length == -1)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLine(DataOutputStream output, CoordinateTable coordinateTable, LineString line) throws IOException {
+        Coordinate[] coords = line.getCoordinates();
+        output.writeInt(coords.length);
+        for(Coordinate coord : coords) {
+            output.writeInt(coordinateTable.getIndex(coord));
+        }
+    }
+
+    private static void writeLines(DataOutputStream output, CoordinateTable coordinateTable, ArrayList<LineString> lines) throws IOException {
+        output.writeInt(lines.size());
+        for(LineString line : lines) {
+            writeLine(output, coordinateTable, line);
+        }
+    }
+
+    private static Coordinate getCoordinate(double[] coordinateXY, int index) {
+        return new Coordinate(coordinateXY[2 * index], coordinateXY[2 * index + 1]);
+    }
+
+    private static Coordinate[] readCoordinates(ByteBuffer buffer, double[] coordinateXY) {
+        Coordinate[] coords = new Coordinate[buffer.getInt()];
+        for(int i = 0; i < coords.length; i++) {
+            coords[i] = getCoordinate(coordinateXY, buffer.getInt());
+        }
+        return coords;
+    }
+
+    private static ArrayList<LineString> readLines(ByteBuffer buffer, double[] coordinateXY, GeometryFactory gf) {
+        int lineNumber = buffer.getInt();
+        ArrayList<LineString> lines = new ArrayList<>(lineNumber);
+        for(int i = 0; i < lineNumber; i++) {
+            lines.add(gf.createLineString(readCoordinates(buffer, coordinateXY)));
+        }
+        return lines;
+    }
+}
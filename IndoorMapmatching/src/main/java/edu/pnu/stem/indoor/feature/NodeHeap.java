@@ -0,0 +1,66 @@
+package edu.pnu.stem.indoor.feature;
+
+import java.util.Arrays;
+
+/**
+ * NodeHeap is a binary min-heap of node ids (int) keyed by a cost (double) for the shortest path search of the graphs.
+ * A node can be added several times with decreasing costs. The stale entries are skipped by the search (lazy deletion).
+ */
+class NodeHeap {
+    private int[] nodes;
+    private double[] keys;
+    private int size = 0;
+
+    NodeHeap(int initialCapacity) {
+        nodes = new int[Math.max(initialCapacity, 4)];
+        keys = new double[nodes.length];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(int node, double key) {
+        if(size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        // sift up
+        int i = size++;
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(keys[parent] <= key) break;
+            nodes[i] = nodes[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+
+    /**
+     * @return The node with the minimum key (removed from the heap)
+     * */
+    int poll() {
+        int result = nodes[0];
+        size--;
+        if(size > 0) {
+            // sift down the last entry from the root
+            int node = nodes[size];
+            double key = keys[size];
+            int i = 0;
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) break;
+                if(child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if(key <= keys[child]) break;
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+        return result;
+    }
+}
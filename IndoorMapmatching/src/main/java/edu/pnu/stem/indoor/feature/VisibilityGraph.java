@@ -1,80 +1,133 @@
 package edu.pnu.stem.indoor.feature;
 
-import org.geotools.graph.build.line.BasicLineGraphGenerator;
-import org.geotools.graph.path.DijkstraShortestPathFinder;
-import org.geotools.graph.path.Path;
-import org.geotools.graph.structure.Edge;
-import org.geotools.graph.structure.Graph;
-import org.geotools.graph.structure.Node;
-import org.geotools.graph.traverse.standard.DijkstraIterator;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineSegment;
 import org.locationtech.jts.geom.LineString;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 /**
+ * VisibilityGraph is an undirected graph made of line segments and finds the shortest route between two nodes.
+ * The nodes are int ids with the coordinates in double arrays, and the edges are kept in compressed sparse row (CSR) arrays,
+ * which are rebuilt when edges are added after the last search.
+ * The shortest route is found by A* with the Euclidean distance heuristic (the weight of an edge is the length of the edge).
+ *
  * Created by STEM_KTH on 2017-05-23.
  * @author Taehoon Kim, Pusan National University, STEM Lab.
  */
 public class VisibilityGraph {
-    private static VisibilityGraph baseGraph = null;
-    private Graph graph = null;
-    private BasicLineGraphGenerator graphGenerator = null;
+    private final HashMap<Coordinate, Integer> nodeIndexMap;
+    private Coordinate[] nodes;
+    private double[] nodeX;
+    private double[] nodeY;
+    private int nodeCount = 0;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int edgeCount = 0;
+
+    // CSR arrays: the adjacent nodes of node i are adjacentNodes[adjacencyOffset[i] .. adjacencyOffset[i + 1])
+    private int[] adjacencyOffset = null;
+    private int[] adjacentNodes = null;
+    private double[] adjacentWeights = null;
     private GeometryFactory gf = null;
 
     public VisibilityGraph () {
-        this.graphGenerator = new BasicLineGraphGenerator();
+        this.nodeIndexMap = new HashMap<>();
+        this.nodes = new Coordinate[16];
+        this.nodeX = new double[16];
+        this.nodeY = new double[16];
+        this.edgeFrom = new int[16];
+        this.edgeTo = new int[16];
         this.gf = new GeometryFactory();
     }
 
     /**
+     * Add each line segment of the edges to the graph.
      *
-     * @return
+     * @param edges edges to add
      * */
-    public static VisibilityGraph getBaseGraph() {
-        VisibilityGraph cloneGraph = null;
-        if(baseGraph != null) {
-            cloneGraph = new VisibilityGraph();
-            cloneGraph.addEdges(baseGraph.getEdges());
+    public void addEdges(ArrayList<LineString> edges) {
+        for (LineString ls : edges) {
+            Coordinate[] coords = ls.getCoordinates();
+            for(int i = 0; i < coords.length - 1; i++) {
+                if(coords[i].equals2D(coords[i + 1])) continue;
+                addEdge(getOrAddNode(coords[i]), getOrAddNode(coords[i + 1]));
+            }
         }
+        adjacencyOffset = null;
+    }
 
-        return cloneGraph;
+    private int getOrAddNode(Coordinate coord) {
+        Integer index = nodeIndexMap.get(coord);
+        if(index == null) {
+            if(nodeCount == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodeCount * 2);
+                nodeX = Arrays.copyOf(nodeX, nodeCount * 2);
+                nodeY = Arrays.copyOf(nodeY, nodeCount * 2);
+            }
+            index = nodeCount++;
+            nodes[index] = coord;
+            nodeX[index] = coord.x;
+            nodeY[index] = coord.y;
+            nodeIndexMap.put(coord, index);
+        }
+        return index;
     }
 
-    /**
-     *
-     * @param edges
-     * */
-    public static void setBaseGraph(ArrayList<LineString> edges) {
-        baseGraph = new VisibilityGraph();
-        baseGraph.addEdges(edges);
+    private void addEdge(int from, int to) {
+        if(edgeCount == edgeFrom.length) {
+            edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+            edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeCount++;
     }
 
     /**
-     *
-     * @param edges
+     * Build the CSR arrays from the edge list (both directions of each edge).
      * */
-    public void addEdges(ArrayList<LineString> edges) {
-        for (LineString ls : edges) {
-            Coordinate[] coords = ls.getCoordinates();
-            for(int i = 0; i < coords.length - 1; i++) {
-                LineSegment lineSegment = new LineSegment();
-                lineSegment.setCoordinates(coords[i], coords[i + 1]);
-                graphGenerator.add(lineSegment);
-            }
+    private void buildAdjacency() {
+        int[] offset = new int[nodeCount + 1];
+        for(int i = 0; i < edgeCount; i++) {
+            offset[edgeFrom[i] + 1]++;
+            offset[edgeTo[i] + 1]++;
         }
-        this.graph = graphGenerator.getGraph();
+        for(int i = 0; i < nodeCount; i++) {
+            offset[i + 1] += offset[i];
+        }
+
+        int[] position = Arrays.copyOf(offset, nodeCount);
+        int[] adjacent = new int[2 * edgeCount];
+        double[] weights = new double[2 * edgeCount];
+        for(int i = 0; i < edgeCount; i++) {
+            int from = edgeFrom[i];
+            int to = edgeTo[i];
+            double weight = getDistance(from, to);
+            adjacent[position[from]] = to;
+            weights[position[from]++] = weight;
+            adjacent[position[to]] = from;
+            weights[position[to]++] = weight;
+        }
+
+        adjacentNodes = adjacent;
+        adjacentWeights = weights;
+        adjacencyOffset = offset;
+    }
+
+    private double getDistance(int from, int to) {
+        double dx = nodeX[from] - nodeX[to];
+        double dy = nodeY[from] - nodeY[to];
 
-        //System.out.println("Node Count : " + graph.getNodes().size());
-        //System.out.println("Edge Count : " + graph.getEdges().size());
+        return Math.sqrt( dx * dx + dy * dy );
     }
 
     /**
      *
-     * @param coords
-     * @return
+     * @param coords start and end coordinates of the route
+     * @return shortest route from coords[0] to coords[1] (null if there is no connection between them)
      * */
     public LineString getShortestRoute(Coordinate[] coords) {
         LineString resultPath = null;
@@ -83,29 +136,20 @@ public class VisibilityGraph {
             if(coords[0].equals(coords[1])) {
                 return gf.createLineString(coords);
             }
-            Node source = getNode(coords[0]);
-            Node target = getNode(coords[1]);
-
-            DijkstraShortestPathFinder pf = new DijkstraShortestPathFinder(
-                    graph, source, costFunction());
-            pf.calculate();
-            Path path = pf.getPath(target);
-
-            if(path != null) {
-                ArrayList<Coordinate> pathElement = new ArrayList<>();
-                for (Object object : path) {
-                    if (object instanceof Node) {
-                        Node node = (Node) object;
-                        Coordinate coord = (Coordinate) node.getObject();
-                        pathElement.add(coord);
-                    }
-                }
+            Integer source = nodeIndexMap.get(coords[0]);
+            Integer target = nodeIndexMap.get(coords[1]);
 
-                Coordinate[] resultPathCoords = new Coordinate[pathElement.size()];
-                for(int i = 0; i < pathElement.size(); i++) {
-                    resultPathCoords[i] = pathElement.get(i);
+            int[] previous = (source == null || target == null) ? null : searchAStar(source, target);
+            if(previous != null) {
+                int pathLength = 0;
+                for(int node = target; node != -1; node = previous[node]) {
+                    pathLength++;
+                }
+                Coordinate[] resultPathCoords = new Coordinate[pathLength];
+                for(int node = target; node != -1; node = previous[node]) {
+                    resultPathCoords[--pathLength] = nodes[node];
                 }
-                resultPath = (LineString) gf.createLineString(resultPathCoords).reverse();
+                resultPath = gf.createLineString(resultPathCoords);
             }
             else {
                 System.out.println("Can't find indoor route! Maybe There is no connection between source and target");
@@ -116,55 +160,132 @@ public class VisibilityGraph {
     }
 
     /**
+     * This function returns the shortest routes from a source to several targets by a single search (Dijkstra).
      *
-     * @return
+     * @param source start coordinate of the routes
+     * @param targets end coordinates of the routes
+     * @return shortest route to each target (null if there is no connection between the source and the target)
      * */
-    private DijkstraIterator.EdgeWeighter costFunction() {
-        return (e -> {
-            Coordinate a = (Coordinate) e.getNodeA().getObject();
-            Coordinate b = (Coordinate) e.getNodeB().getObject();
-            double dx = a.x - b.x;
-            double dy = a.y - b.y;
-
-            return Math.sqrt( dx * dx + dy * dy );
-        });
+    public LineString[] getShortestRoutes(Coordinate source, Coordinate[] targets) {
+        LineString[] resultPaths = new LineString[targets.length];
+        Integer sourceIndex = nodeIndexMap.get(source);
+        if(sourceIndex == null)
+            return resultPaths;
+        if(adjacencyOffset == null) {
+            buildAdjacency();
+        }
+
+        int[] targetIndexes = new int[targets.length];
+        boolean[] isTarget = new boolean[nodeCount];
+        int remainTargetCount = 0;
+        for(int i = 0; i < targets.length; i++) {
+            Integer targetIndex = nodeIndexMap.get(targets[i]);
+            targetIndexes[i] = targetIndex == null ? -1 : targetIndex;
+            if(targetIndex != null && !isTarget[targetIndex]) {
+                isTarget[targetIndex] = true;
+                remainTargetCount++;
+            }
+        }
+
+        double[] distance = new double[nodeCount];
+        int[] previous = new int[nodeCount];
+        boolean[] isClosed = new boolean[nodeCount];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+
+        NodeHeap heap = new NodeHeap(nodeCount);
+        distance[sourceIndex] = 0.0;
+        heap.add(sourceIndex, 0.0);
+        while(!heap.isEmpty() && remainTargetCount > 0) {
+            int node = heap.poll();
+            if(isClosed[node]) continue;
+            isClosed[node] = true;
+            if(isTarget[node]) remainTargetCount--;
+
+            for(int i = adjacencyOffset[node]; i < adjacencyOffset[node + 1]; i++) {
+                int adjacentNode = adjacentNodes[i];
+                double newDistance = distance[node] + adjacentWeights[i];
+                if(!isClosed[adjacentNode] && newDistance < distance[adjacentNode]) {
+                    distance[adjacentNode] = newDistance;
+                    previous[adjacentNode] = node;
+                    heap.add(adjacentNode, newDistance);
+                }
+            }
+        }
+
+        for(int i = 0; i < targets.length; i++) {
+            int target = targetIndexes[i];
+            if(target == -1 || !isClosed[target]) continue;
+            if(target == sourceIndex) {
+                resultPaths[i] = gf.createLineString(new Coordinate[]{source, targets[i]});
+                continue;
+            }
+            int pathLength = 0;
+            for(int node = target; node != -1; node = previous[node]) {
+                pathLength++;
+            }
+            Coordinate[] resultPathCoords = new Coordinate[pathLength];
+            for(int node = target; node != -1; node = previous[node]) {
+                resultPathCoords[--pathLength] = nodes[node];
+            }
+            resultPaths[i] = gf.createLineString(resultPathCoords);
+        }
+
+        return resultPaths;
     }
 
     /**
+     * A* search from source to target with the Euclidean distance to target as the heuristic.
      *
-     * @param coord
-     * @return
+     * @return previous node of each node on the search tree (null if target isn't reachable)
      * */
-    private Node getNode(Coordinate coord) {
-        Node targetNode = this.graphGenerator.getNode(coord);
+    private int[] searchAStar(int source, int target) {
+        if(adjacencyOffset == null) {
+            buildAdjacency();
+        }
+
+        double[] distance = new double[nodeCount];
+        int[] previous = new int[nodeCount];
+        boolean[] isClosed = new boolean[nodeCount];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
 
-        /*
-        // TODO : In case : Can't find matched node
-        if(targetNode == null) {
-            Map nodeMap = this.graphGenerator.getNodeMap();
-            Iterator keys = nodeMap.keySet().iterator();
-            while(keys.hasNext()) {
-                keys.next();
+        NodeHeap heap = new NodeHeap(nodeCount);
+        distance[source] = 0.0;
+        heap.add(source, getDistance(source, target));
+        while(!heap.isEmpty()) {
+            int node = heap.poll();
+            if(isClosed[node]) continue;
+            isClosed[node] = true;
+            if(node == target) {
+                return previous;
+            }
 
+            for(int i = adjacencyOffset[node]; i < adjacencyOffset[node + 1]; i++) {
+                int adjacentNode = adjacentNodes[i];
+                if(isClosed[adjacentNode]) continue;
+                double newDistance = distance[node] + adjacentWeights[i];
+                if(newDistance < distance[adjacentNode]) {
+                    distance[adjacentNode] = newDistance;
+                    previous[adjacentNode] = node;
+                    heap.add(adjacentNode, newDistance + getDistance(adjacentNode, target));
+                }
             }
         }
-        */
-        return targetNode;
+
+        return null;
     }
 
     /**
      *
-     * @return
+     * @return edges of the graph (line segments)
      * */
     public ArrayList<LineString> getEdges() {
         ArrayList<LineString> graphEdges = new ArrayList<>();
 
-        for(Object e : this.graph.getEdges()) {
-            if(e instanceof  Edge) {
-                Edge edge = (Edge) e;
-                Coordinate[] coords = new Coordinate[] {(Coordinate) edge.getNodeA().getObject(), (Coordinate) edge.getNodeB().getObject()};
-                graphEdges.add(gf.createLineString(coords));
-            }
+        for(int i = 0; i < edgeCount; i++) {
+            Coordinate[] coords = new Coordinate[] {nodes[edgeFrom[i]], nodes[edgeTo[i]]};
+            graphEdges.add(gf.createLineString(coords));
         }
 
         return graphEdges;
@@ -0,0 +1,236 @@
+package edu.pnu.stem.indoor.gui;
+
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.feature.IndoorFeaturesBinary;
+import edu.pnu.stem.indoor.util.parser.BuildNGoReader;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchEvaluator evaluates many BuildNGo trajectory files in parallel without GUI.
+ * Each trajectory file is evaluated by its own TrajectoryEvaluator (and map matching instances) in a worker thread,
+ * and all workers share a frozen snapshot of the indoor features.
+ * The results are aggregated in the order of the trajectory files, so the summary is the same as the sequential evaluation.
+ *
+ * Usage: BatchEvaluator [OSM file] [trajectory directory] [ground truth directory] (number of threads) (number of samples)
+ */
+public class BatchEvaluator {
+    private final IndoorFeatures indoorFeatures;
+    private final int threadNumber;
+    private ExperimentResult[] experimentResults = null;
+    private ArrayList<String> keyList = null;
+
+    BatchEvaluator(IndoorFeatures indoorFeatures, int threadNumber) {
+        if(threadNumber < 1)
+            throw new IllegalArgumentException("The number of threads must be positive: " + threadNumber);
+
+        this.indoorFeatures = indoorFeatures.createFrozenSnapshot();
+        this.threadNumber = threadNumber;
+    }
+
+    ExperimentResult[] getExperimentResults() {
+        return experimentResults;
+    }
+
+    ArrayList<String> getKeyList() {
+        return keyList;
+    }
+
+    /**
+     * Evaluates the trajectory files.
+     * For each file, the results of evaluateSIMM_Excel and evaluateSIMM_forSIG are written in the result directory
+     * and the experiment result of evaluateSIMM_forSIG is kept (the same as the sequential evaluation).
+     *
+     * @param trajectoryFiles BuildNGo trajectory files to evaluate
+     * @param groundTruthDirectory The directory of the ground truth files (gt_Trajectory_[ID].txt)
+     * @param listener progress listener (nullable)
+     * @return The experiment result of each trajectory file (null if the file is skipped)
+     * @exception InterruptedException If the current thread is interrupted while waiting for the workers
+     * */
+    ExperimentResult[] evaluate(File[] trajectoryFiles, File groundTruthDirectory, EvaluationProgressListener listener) throws InterruptedException {
+        final int totalCount = trajectoryFiles.length;
+        final AtomicInteger finishedCount = new AtomicInteger();
+        List<ArrayList<String>> keyLists = new ArrayList<>();
+        List<Future<ExperimentResult>> futures = new ArrayList<>();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadNumber);
+        try {
+            for(File trajectoryFile : trajectoryFiles) {
+                ArrayList<String> fileKeyList = new ArrayList<>();
+                keyLists.add(fileKeyList);
+                Callable<ExperimentResult> task = () -> {
+                    String fileID = BuildNGoReader.getFileID(trajectoryFile);
+                    TrajectoryEvaluator evaluator = null;
+                    ExperimentResult experimentResult = null;
+                    try {
+                        evaluator = createEvaluator(trajectoryFile);
+                        if(evaluator != null) {
+                            String[] stringGT = DataUtils.getBuildNGoGroundTruth(new File(groundTruthDirectory, BuildNGoReader.GROUND_TRUTH_FILE_PREFIX + fileID + ".txt"));
+                            evaluator.evaluateSIMM_Excel(fileID, fileKeyList, stringGT);
+                            experimentResult = evaluator.evaluateSIMM_forSIG(fileID, fileKeyList, stringGT);
+                        }
+                    } catch (Exception e) {
+                        System.out.println("Fail to evaluate " + trajectoryFile.getName());
+                        e.printStackTrace();
+                        experimentResult = null;
+                    }
+
+                    if(listener != null) {
+                        listener.trajectoryEvaluated(finishedCount.incrementAndGet(), totalCount, fileID,
+                                evaluator != null ? evaluator.getTrajectory() : null,
+                                evaluator != null ? evaluator.getTrajectory_IF() : null);
+                    }
+                    return experimentResult;
+                };
+                futures.add(executorService.submit(task));
+            }
+
+            experimentResults = new ExperimentResult[totalCount];
+            keyList = new ArrayList<>();
+            for(int i = 0; i < totalCount; i++) {
+                try {
+                    experimentResults[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    experimentResults[i] = null;
+                }
+                // The keys of the first evaluated trajectory are used for the summary
+                if(keyList.isEmpty()) {
+                    keyList.addAll(keyLists.get(i));
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        return experimentResults;
+    }
+
+    /**
+     * Reads a trajectory file.
+     *
+     * @return evaluator of the trajectory (null if the file is not a file or the trajectory is empty)
+     * */
+    private TrajectoryEvaluator createEvaluator(File trajectoryFile) throws Exception {
+        if(!trajectoryFile.isFile())
+            return null;
+
+        System.out.println("\tFile Name = " + trajectoryFile.getName());
+        LineString trajectory = DataUtils.getBuildNGoData(trajectoryFile, indoorFeatures);
+        if(trajectory.isEmpty()) {
+            System.out.println("Pass");
+            return null;
+        }
+
+        return new TrajectoryEvaluator(indoorFeatures, trajectory);
+    }
+
+    /**
+     * Writes the summary of the evaluated experiment results in an excel file.
+     *
+     * @param summaryFile output file
+     * */
+    void writeSummary(File summaryFile) {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet summarySheet = workbook.createSheet("Summary");
+        Row row = summarySheet.createRow(0);
+        if(experimentResults.length > 0 && experimentResults[0] != null) {
+            row.createCell(row.getLastCellNum()  + 1).setCellValue("ID");
+            for(String key : keyList) {
+                row.createCell(row.getLastCellNum()).setCellValue("Accuracy: \n" + key);
+            }
+            for(String key : keyList) {
+                row.createCell(row.getLastCellNum()).setCellValue("TRUE count: \n" + key);
+            }
+            row.createCell(row.getLastCellNum()).setCellValue("Point count");
+            row.createCell(row.getLastCellNum()).setCellValue("Trajectory Length\n Original");
+            row.createCell(row.getLastCellNum()).setCellValue("Trajectory Length\n Indoor Filtered");
+        }
+        for(ExperimentResult er : experimentResults) {
+            if(er != null) {
+                row = summarySheet.createRow(summarySheet.getLastRowNum() + 1);
+                row.createCell(row.getLastCellNum()  + 1).setCellValue(er.id);
+                for(String key : keyList) {
+                    if(er.accuracy.containsKey(key)) {
+                        row.createCell(row.getLastCellNum()).setCellValue(er.accuracy.get(key));
+                    }
+                    else {
+                        row.createCell(row.getLastCellNum()).setCellValue("");
+                    }
+                }
+                for(String key : keyList) {
+                    if(er.trueCount.containsKey(key)) {
+                        row.createCell(row.getLastCellNum()).setCellValue(er.trueCount.get(key));
+                    }
+                    else {
+                        row.createCell(row.getLastCellNum()).setCellValue("");
+                    }
+                }
+                row.createCell(row.getLastCellNum()).setCellValue(er.numTrajectoryPoint);
+                row.createCell(row.getLastCellNum()).setCellValue(er.trajectoryLength[0]);
+                row.createCell(row.getLastCellNum()).setCellValue(er.trajectoryLength[1]);
+                row.createCell(row.getLastCellNum()).setCellValue(er.trajectoryLength[2]);
+            }
+        }
+
+        // Write all result in a excel file
+        FileOutputStream outFile;
+        try {
+            outFile = new FileOutputStream(summaryFile);
+            workbook.write(outFile);
+            outFile.close();
+            System.out.println("Experiments is End!!");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 3) {
+            System.out.println("Usage: BatchEvaluator [OSM file or binary file(" + IndoorFeaturesBinary.FILE_EXTENSION + ")] [trajectory directory] [ground truth directory] (number of threads) (number of samples)");
+            return;
+        }
+        int threadNumber = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int sampleNumber = args.length > 4 ? Integer.parseInt(args[4]) : Integer.MAX_VALUE;
+
+        long startTime = System.currentTimeMillis();
+        IndoorFeatures indoorFeatures;
+        if(args[0].endsWith(IndoorFeaturesBinary.FILE_EXTENSION)) {
+            // Binary file written by IndoorFeaturesBinary (the derived data aren't made again)
+            indoorFeatures = IndoorFeaturesBinary.read(new File(args[0]));
+        }
+        else {
+            indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File(args[0]));
+        }
+        File[] fileList = new File(args[1]).listFiles();
+        if(fileList == null) {
+            System.out.println("Can't read the trajectory directory: " + args[1]);
+            return;
+        }
+        if(sampleNumber < fileList.length) fileList = Arrays.copyOf(fileList, sampleNumber);
+
+        BatchEvaluator batchEvaluator = new BatchEvaluator(indoorFeatures, threadNumber);
+        batchEvaluator.evaluate(fileList, new File(args[2]), (finishedCount, totalCount, fileID, trajectory, trajectory_IF) ->
+                System.out.println("[" + finishedCount + "/" + totalCount + "] " + fileID + " end"));
+        batchEvaluator.writeSummary(new File("Result_Summary.xlsx"));
+
+        long endTime = System.currentTimeMillis();
+        System.out.println("Running Time :" + (endTime - startTime)/1000.0 + "sec");
+    }
+}
@@ -0,0 +1,19 @@
+package edu.pnu.stem.indoor.gui;
+
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * EvaluationProgressListener receives the progress of BatchEvaluator.
+ * The function is called from the worker threads, so the GUI must be updated on the event dispatch thread.
+ */
+interface EvaluationProgressListener {
+
+    /**
+     * @param finishedCount The number of trajectory files finished so far (including skipped files)
+     * @param totalCount The number of trajectory files to evaluate
+     * @param fileID ID of the finished trajectory file
+     * @param trajectory The evaluated trajectory (null if the file is skipped)
+     * @param trajectory_IF The indoor distance filtered trajectory (null if the file is skipped)
+     * */
+    void trajectoryEvaluated(int finishedCount, int totalCount, String fileID, LineString trajectory, LineString trajectory_IF);
+}
@@ -4,10 +4,6 @@ import edu.pnu.stem.indoor.feature.IndoorFeatures;
 import edu.pnu.stem.indoor.util.parser.ChangeCoord;
 import edu.pnu.stem.indoor.util.IndoorUtils;
 import edu.pnu.stem.indoor.util.parser.DataUtils;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.xml.sax.SAXException;
@@ -18,9 +14,9 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * Created by STEM_KTH on 2017-05-17.
@@ -100,11 +96,11 @@ public class IndoorMapmatchingSim {
                     String[] fileName = file.getName().split("_");
                     fileID = fileName[fileName.length - 1];
 
-                    LineString trajectory = DataUtils.getBuildNGoData(file);
+                    LineString trajectory = DataUtils.getBuildNGoData(file, ((CanvasPanel)panelCanvas).getIndoorFeatures());
                     if(trajectory.isEmpty()) return;
                     ((CanvasPanel)panelCanvas).setTrajectory(trajectory);
 
-                    LineString lineWithMaxIndoorDistance = IndoorUtils.applyIndoorDistanceFilter(trajectory, ChangeCoord.CANVAS_MULTIPLE * 3, ((CanvasPanel)panelCanvas).getIndoorFeatures().getCellSpaces());
+                    LineString lineWithMaxIndoorDistance = IndoorUtils.applyIndoorDistanceFilter(trajectory, ChangeCoord.CANVAS_MULTIPLE * 3, ((CanvasPanel)panelCanvas).getIndoorFeatures());
                     ((CanvasPanel)panelCanvas).setTrajectory_IF(lineWithMaxIndoorDistance);
                 } catch (IOException | ParseException e1) {
                     e1.printStackTrace();
@@ -133,8 +129,8 @@ public class IndoorMapmatchingSim {
                 if(trajectory.getNumPoints() > trIndexView && trIndexView > 0) {
                     trIndexView++;
 
-                    ((CanvasPanel)panelCanvas).setTrajectory((LineString) CanvasPanel.getSubLineString(trajectory, trIndexView));
-                    ((CanvasPanel)panelCanvas).setTrajectory_IF((LineString) CanvasPanel.getSubLineString(trajectoryIF, trIndexView));
+                    ((CanvasPanel)panelCanvas).setTrajectory((LineString) TrajectoryEvaluator.getSubLineString(trajectory, trIndexView));
+                    ((CanvasPanel)panelCanvas).setTrajectory_IF((LineString) TrajectoryEvaluator.getSubLineString(trajectoryIF, trIndexView));
                 }
                 else {
                     trajectory = trajectoryIF = trajectoryGT = null;
@@ -151,8 +147,8 @@ public class IndoorMapmatchingSim {
                 if(trajectory.getNumPoints() > trIndexView && trIndexView > 2) {
                     trIndexView--;
 
-                    ((CanvasPanel)panelCanvas).setTrajectory((LineString) CanvasPanel.getSubLineString(trajectory, trIndexView));
-                    ((CanvasPanel)panelCanvas).setTrajectory_IF((LineString) CanvasPanel.getSubLineString(trajectoryIF, trIndexView));
+                    ((CanvasPanel)panelCanvas).setTrajectory((LineString) TrajectoryEvaluator.getSubLineString(trajectory, trIndexView));
+                    ((CanvasPanel)panelCanvas).setTrajectory_IF((LineString) TrajectoryEvaluator.getSubLineString(trajectoryIF, trIndexView));
                 }
                 else {
                     trIndexView = 3;
@@ -164,111 +160,46 @@ public class IndoorMapmatchingSim {
             }
         });
         buttonEvaluate.addActionListener(e -> {
-            long startTime = System.currentTimeMillis();
             File dir = new File(TR_PATH);
             File[] fileList = dir.listFiles();
             assert fileList != null;
 
             int SAMPLE_NUMBER = 1000;
             if(SAMPLE_NUMBER > fileList.length) SAMPLE_NUMBER = fileList.length;
-            ExperimentResult[] experimentResults = new ExperimentResult[SAMPLE_NUMBER];
-            ArrayList<String> keyList = new ArrayList<>();
-            for(int i = 0 ; i < SAMPLE_NUMBER ; i++){
-                String fileID = "";
-                File file = fileList[i];
-                if(file.isFile()){
-                    System.out.println("\tFile Name = " + file.getName());
-                    String[] fileName = file.getName().split("_");
-                    fileID = fileName[fileName.length - 1].split(Pattern.quote("."))[0];
-
-                    try {
-                        LineString trajectory = DataUtils.getBuildNGoData(file);
-
-                        if(trajectory.isEmpty()) {
-                            System.out.println("Pass");
-                            experimentResults[i] = null;
-                            continue;
+            File[] sampleFileList = Arrays.copyOf(fileList, SAMPLE_NUMBER);
+
+            // The evaluation is performed in worker threads, so the GUI is not blocked
+            buttonEvaluate.setEnabled(false);
+            CanvasPanel canvasPanel = (CanvasPanel) panelCanvas;
+            BatchEvaluator batchEvaluator = new BatchEvaluator(canvasPanel.getIndoorFeatures(), Runtime.getRuntime().availableProcessors());
+            Thread evaluationThread = new Thread(() -> {
+                long startTime = System.currentTimeMillis();
+                try {
+                    batchEvaluator.evaluate(sampleFileList, new File(GT_PATH), (finishedCount, totalCount, fileID, trajectory, trajectory_IF) -> {
+                        System.out.println("[" + finishedCount + "/" + totalCount + "] " + fileID + " end");
+                        if(trajectory == null) return;
+                        try {
+                            SwingUtilities.invokeAndWait(() -> {
+                                canvasPanel.setTrajectory(trajectory);
+                                canvasPanel.setTrajectory_IF(trajectory_IF);
+                                canvasPanel.saveImage(fileID);
+                            });
+                        } catch (InterruptedException | InvocationTargetException e1) {
+                            e1.printStackTrace();
                         }
-                        ((CanvasPanel)panelCanvas).setTrajectory(trajectory);
-                    } catch (IOException | ParseException e1) {
-                        e1.printStackTrace();
-                        long endTime = System.currentTimeMillis();
-                        System.out.println("Running Time :" + (endTime - startTime)/1000.0 + "sec");
-                    }
-                }
+                    });
 
-                String groundTruthFileName = "gt_Trajectory_";
-                String[] stringGT = null;
-                File groundTruth = new File(GT_PATH +"\\"+ groundTruthFileName + fileID + ".txt");
-                try {
-                    stringGT = DataUtils.getBuildNGoGroundTruth(groundTruth);
-                } catch (IOException | ParseException e1) {
+                    // 최종 결과 출력
+                    batchEvaluator.writeSummary(new File("Result_Summary.xlsx"));
+                } catch (InterruptedException e1) {
                     e1.printStackTrace();
+                } finally {
                     long endTime = System.currentTimeMillis();
                     System.out.println("Running Time :" + (endTime - startTime)/1000.0 + "sec");
+                    SwingUtilities.invokeLater(() -> buttonEvaluate.setEnabled(true));
                 }
-                experimentResults[i] = ((CanvasPanel)panelCanvas).evaluateSIMM_Excel(fileID, keyList, stringGT);
-                experimentResults[i] = ((CanvasPanel)panelCanvas).evaluateSIMM_forSIG(fileID, keyList, stringGT);
-                ((CanvasPanel)panelCanvas).saveImage(fileID);
-            }
-
-            // 최종 결과 출력
-            Workbook workbook = new XSSFWorkbook();
-            Sheet summarySheet = workbook.createSheet("Summary");
-            Row row = summarySheet.createRow(0);
-            if(experimentResults[0] != null) {
-                row.createCell(row.getLastCellNum()  + 1).setCellValue("ID");
-                for(String key : keyList) {
-                    row.createCell(row.getLastCellNum()).setCellValue("Accuracy: \n" + key);
-                }
-                for(String key : keyList) {
-                    row.createCell(row.getLastCellNum()).setCellValue("TRUE count: \n" + key);
-                }
-                row.createCell(row.getLastCellNum()).setCellValue("Point count");
-                row.createCell(row.getLastCellNum()).setCellValue("Trajectory Length\n Original");
-                row.createCell(row.getLastCellNum()).setCellValue("Trajectory Length\n Indoor Filtered");
-            }
-            for(ExperimentResult er : experimentResults) {
-                if(er != null) {
-                    row = summarySheet.createRow(summarySheet.getLastRowNum() + 1);
-                    row.createCell(row.getLastCellNum()  + 1).setCellValue(er.id);
-                    for(String key : keyList) {
-                        if(er.accuracy.containsKey(key)) {
-                            row.createCell(row.getLastCellNum()).setCellValue(er.accuracy.get(key));
-                        }
-                        else {
-                            row.createCell(row.getLastCellNum()).setCellValue("");
-                        }
-                    }
-                    for(String key : keyList) {
-                        if(er.trueCount.containsKey(key)) {
-                            row.createCell(row.getLastCellNum()).setCellValue(er.trueCount.get(key));
-                        }
-                        else {
-                            row.createCell(row.getLastCellNum()).setCellValue("");
-                        }
-                    }
-                    row.createCell(row.getLastCellNum()).setCellValue(er.numTrajectoryPoint);
-                    row.createCell(row.getLastCellNum()).setCellValue(er.trajectoryLength[0]);
-                    row.createCell(row.getLastCellNum()).setCellValue(er.trajectoryLength[1]);
-                    row.createCell(row.getLastCellNum()).setCellValue(er.trajectoryLength[2]);
-                }
-            }
-
-            // Write all result in a excel file
-            FileOutputStream outFile;
-            try {
-                outFile = new FileOutputStream("Result_Summary.xlsx");
-                workbook.write(outFile);
-                outFile.close();
-                System.out.println("Experiments is End!!");
-            } catch (Exception e1) {
-                e1.printStackTrace();
-                long endTime = System.currentTimeMillis();
-                System.out.println("Running Time :" + (endTime - startTime)/1000.0 + "sec");
-            }
-            long endTime = System.currentTimeMillis();
-            System.out.println("Running Time :" + (endTime - startTime)/1000.0 + "sec");
+            });
+            evaluationThread.start();
         });
     }
 
@@ -0,0 +1,630 @@
+package edu.pnu.stem.indoor.gui;
+
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.IndoorUtils;
+import edu.pnu.stem.indoor.util.mapmatching.DirectIndoorMapMatching;
+import edu.pnu.stem.indoor.util.mapmatching.HMMIndoorMapMatching;
+import edu.pnu.stem.indoor.util.parser.ChangeCoord;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+
+/**
+ * TrajectoryEvaluator performs the map matching experiments of a trajectory and writes the results in an excel file.
+ * It doesn't depend on the canvas, so it can be used without GUI (See BatchEvaluator).
+ * Each instance has its own map matching instances, and the indoor features can be shared with other evaluators.
+ */
+class TrajectoryEvaluator {
+    static final String RESULT_PATH = "result\\";
+    private static final double MAX_DISTANCE = ChangeCoord.CANVAS_MULTIPLE * 3;  // The distance that humans can move per unit time
+    private static final double MIN_DISTANCE = ChangeCoord.CANVAS_MULTIPLE * 0.5;
+
+    private IndoorFeatures indoorFeatures;
+    private LineString trajectory;
+    private LineString trajectory_IF = null;
+
+    TrajectoryEvaluator(IndoorFeatures indoorFeatures, LineString trajectory) {
+        this.indoorFeatures = indoorFeatures;
+        this.trajectory = trajectory;
+    }
+
+    LineString getTrajectory() {
+        return trajectory;
+    }
+
+    LineString getTrajectory_IF() {
+        return trajectory_IF;
+    }
+
+    static Geometry getSubLineString(LineString lineString, int size) {
+        return getSubLineString(lineString, 0, size);
+    }
+
+    static Geometry getSubLineString(LineString lineString, int startIndex, int size) {
+        GeometryFactory gf = new GeometryFactory();
+        if(size > lineString.getNumPoints()) return lineString;
+        else if(startIndex > lineString.getNumPoints()) return null;
+        else if(size == 1) return gf.createPoint(lineString.getCoordinateN(0));
+        else {
+            if(startIndex + size > lineString.getNumPoints())
+                size = lineString.getNumPoints() - startIndex;
+            Coordinate[] originalCoords = lineString.getCoordinates();
+            Coordinate[] newCoords = new Coordinate[size];
+
+            for(int i = 0; i < size; i++) {
+                newCoords[i] = originalCoords[startIndex + i];
+            }
+
+            return gf.createLineString(newCoords);
+        }
+    }
+
+    ExperimentResult evaluateSIMM_Excel(String fileID, ArrayList<String> keyList, String[] stringGT) {
+        final int BUFFER_REPETITION = 5;
+        ExperimentResult experimentResult = new ExperimentResult(fileID);
+        Workbook workbook = new XSSFWorkbook();
+        if(indoorFeatures != null && trajectory != null) {
+            DirectIndoorMapMatching dimm = new DirectIndoorMapMatching(indoorFeatures);
+            HMMIndoorMapMatching himm = new HMMIndoorMapMatching(indoorFeatures);
+            Sheet resultSheet = workbook.createSheet("Result");
+
+            // Make SIMM result from original trajectory
+            Row resultSheetRow = resultSheet.createRow(0);
+            resultSheetRow.createCell(0).setCellValue("original trajectory");
+            getEvaluateResults(BUFFER_REPETITION, dimm, himm, trajectory, resultSheet);
+            System.out.println("original trajectory end");
+
+            // Make SIMM result from indoor distance filtered trajectory
+            LineString lineWithMaxIndoorDistance;
+            try {
+                lineWithMaxIndoorDistance = IndoorUtils.applyIndoorDistanceFilter(trajectory, MAX_DISTANCE, indoorFeatures);
+                trajectory_IF = lineWithMaxIndoorDistance;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            resultSheetRow = resultSheet.createRow(resultSheet.getLastRowNum() + 1);
+            resultSheetRow.createCell(0).setCellValue("Indoor distance filtered trajectory");
+            getEvaluateResults(BUFFER_REPETITION, dimm, himm, trajectory_IF, resultSheet);
+            System.out.println("Indoor distance filtered trajectory end");
+
+            // Make ground truth result using DIMM and evaluate all result
+            if(keyList.isEmpty())
+                experimentResult = getGroundTruthResult_Excel(workbook, experimentResult, keyList, stringGT);
+            else
+                experimentResult = getGroundTruthResult_Excel(workbook, experimentResult, null, stringGT);
+
+            // Check a directory is exist or not
+            File dir = new File(RESULT_PATH);
+            if(!dir.exists()){
+                dir.mkdirs();
+            }
+
+            // Write all result in a excel file
+            FileOutputStream outFile;
+            try {
+                outFile = new FileOutputStream(RESULT_PATH + "Result_" + fileID + ".xlsx");
+                workbook.write(outFile);
+                outFile.close();
+                System.out.println("Result_" + fileID + " write complete");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        return experimentResult;
+    }
+
+    private void getEvaluateResults(int BUFFER_REPETITION, DirectIndoorMapMatching dimm, HMMIndoorMapMatching himm, LineString trajectory, Sheet sheet) {
+        Row row;
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("DIMM");
+        for(int i = 0; i < trajectory.getNumPoints(); i++){
+            row.createCell(i+1).setCellValue(dimm.getMapMatchingResult(trajectory)[i]);
+        }
+
+        double radius;
+        int windowSize;
+        // A matrix : based on topology graph
+        // B matrix : based on Cell buffer
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM, A matrix : Topology graph / B matrix : Cell buffer");
+        himm.makeAMatrixByTopology();
+        radius = 0.5;
+        for(int i = 0; i < BUFFER_REPETITION; i++) {
+            windowSize = 10;
+            for(int j = 0; j < BUFFER_REPETITION; j++) {
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: " + windowSize);
+
+                //String[] mapMatchingResults = himm.getMapMatchingResult(trajectory);
+                himm.makeBMatrixCellBuffer(ChangeCoord.CANVAS_MULTIPLE * radius);
+                String[] mapMatchingResults = getResultHIMMCell(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+                setMatMatchingResultToRow(row, mapMatchingResults);
+                windowSize += 10;
+            }
+            row = sheet.createRow(sheet.getLastRowNum() + 1);
+            row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: MAX");
+            himm.makeBMatrixCellBuffer(ChangeCoord.CANVAS_MULTIPLE * radius);
+            String[] mapMatchingResults = getResultHIMMCell(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+            setMatMatchingResultToRow(row, mapMatchingResults);
+
+            radius += 0.5;
+        }
+        System.out.println("HIMM, A matrix : Topology graph / B matrix : Cell buffer end");
+
+        // A matrix : based on graph distance
+        // B matrix : based on Cell buffer
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM, A matrix : Graph distance / B matrix : Cell buffer");
+        himm.makeAMatrixByDistance();
+        radius = 0.5;
+        for(int i = 0; i < BUFFER_REPETITION; i++) {
+            windowSize = 10;
+            for(int j = 0; j < BUFFER_REPETITION; j++) {
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: " + windowSize);
+
+                himm.makeBMatrixCellBuffer(ChangeCoord.CANVAS_MULTIPLE * radius);
+                String[] mapMatchingResults = getResultHIMMCell(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+                setMatMatchingResultToRow(row, mapMatchingResults);
+                windowSize += 10;
+            }
+            row = sheet.createRow(sheet.getLastRowNum() + 1);
+            row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: MAX");
+            himm.makeBMatrixCellBuffer(ChangeCoord.CANVAS_MULTIPLE * radius);
+            String[] mapMatchingResults = getResultHIMMCell(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+            setMatMatchingResultToRow(row, mapMatchingResults);
+
+            radius += 0.5;
+        }
+        System.out.println("HIMM, A matrix : Graph distance / B matrix : Cell buffer end");
+
+        // A matrix : based on static P
+        // B matrix : based on Cell buffer
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM, A matrix : Static P / B matrix : Cell buffer");
+        for(double i = 0.1; i < 1; i += 0.2) {
+            himm.makeAMatrixByStaticP(i);
+            radius = 0.5;
+            for(int j = 0; j < BUFFER_REPETITION; j++) {
+                windowSize = 10;
+                for(int k = 0; k < BUFFER_REPETITION; k++) {
+                    row = sheet.createRow(sheet.getLastRowNum() + 1);
+                    row.createCell(0).setCellValue("P: " + i + " / Radius(m): " + radius + " / Window: " + windowSize);
+                    himm.makeBMatrixCellBuffer(ChangeCoord.CANVAS_MULTIPLE * radius);
+                    String[] mapMatchingResults = getResultHIMMCell(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+                    setMatMatchingResultToRow(row, mapMatchingResults);
+                    windowSize += 10;
+                }
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("P: " + i + " / Radius(m): " + radius + " / Window: MAX");
+                himm.makeBMatrixCellBuffer(ChangeCoord.CANVAS_MULTIPLE * radius);
+                String[] mapMatchingResults = getResultHIMMCell(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+                setMatMatchingResultToRow(row, mapMatchingResults);
+
+                radius += 0.5;
+            }
+        }
+        System.out.println("HIMM, A matrix : Static P / B matrix : Cell buffer end");
+
+        // A matrix : based on topology graph
+        // B matrix : based on circle buffer
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM, A matrix : Topology graph / B matrix : Circle buffer");
+        himm.makeAMatrixByTopology();
+        radius = 0.5;
+        for(int i = 0; i < BUFFER_REPETITION; i++) {
+            windowSize = 10;
+            for(int j = 0; j < BUFFER_REPETITION; j++) {
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: " + windowSize);
+                String[] mapMatchingResults = getResultHIMMCircleBuffer(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+                setMatMatchingResultToRow(row, mapMatchingResults);
+                windowSize += 10;
+            }
+            row = sheet.createRow(sheet.getLastRowNum() + 1);
+            row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: MAX");
+            String[] mapMatchingResults = getResultHIMMCircleBuffer(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+            setMatMatchingResultToRow(row, mapMatchingResults);
+
+            radius += 0.5;
+        }
+        System.out.println("HIMM, A matrix : Topology graph / B matrix : Circle buffer end");
+
+        // A matrix : based on graph distance
+        // B matrix : based on circle buffer
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM, A matrix : Graph distance / B matrix : Circle buffer");
+        himm.makeAMatrixByDistance();
+        radius = 0.5;
+        for(int i = 0; i < BUFFER_REPETITION; i++) {
+            windowSize = 10;
+            for(int j = 0; j < BUFFER_REPETITION; j++) {
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: " + windowSize);
+                String[] mapMatchingResults = getResultHIMMCircleBuffer(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+                setMatMatchingResultToRow(row, mapMatchingResults);
+                windowSize += 10;
+            }
+            row = sheet.createRow(sheet.getLastRowNum() + 1);
+            row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: MAX");
+            String[] mapMatchingResults = getResultHIMMCircleBuffer(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+            setMatMatchingResultToRow(row, mapMatchingResults);
+
+            radius += 0.5;
+        }
+        System.out.println("HIMM, A matrix : Graph distance / B matrix : Circle buffer end");
+
+        // A matrix : based on static P
+        // B matrix : based on circle buffer
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM, A matrix : Static P / B matrix : Circle buffer");
+        for(double i = 0.1; i < 1; i += 0.2) {
+            radius = 0.5;
+            himm.makeAMatrixByStaticP(i);
+            for(int j = 0; j < BUFFER_REPETITION; j++) {
+                windowSize = 10;
+                for(int k = 0; k < BUFFER_REPETITION; k++) {
+                    row = sheet.createRow(sheet.getLastRowNum() + 1);
+                    row.createCell(0).setCellValue("P: " + i + " / Radius(m): " + radius + " / Window: " + windowSize);
+                    String[] mapMatchingResults = getResultHIMMCircleBuffer(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+                    setMatMatchingResultToRow(row, mapMatchingResults);
+                    windowSize += 10;
+                }
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("P: " + i + " / Radius(m): " + radius + " / Window: MAX");
+                String[] mapMatchingResults = getResultHIMMCircleBuffer(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+                setMatMatchingResultToRow(row, mapMatchingResults);
+
+                radius += 0.5;
+            }
+        }
+        System.out.println("HIMM, A matrix : Static P / B matrix : Circle buffer end");
+    }
+
+    private void setMatMatchingResultToRow(Row row, String[] mapMatchingResults) {
+        if(mapMatchingResults != null) {
+            for(int index = 0; index < mapMatchingResults.length; index++){
+                row.createCell(index+1).setCellValue(mapMatchingResults[index]);
+            }
+        }
+        else {
+            row.createCell(1).setCellValue("Impossible");
+            System.out.println("impossible");
+        }
+    }
+
+    static String[] getResultHIMMCell(HMMIndoorMapMatching himm, LineString trajectory, double radius, int windowSize) {
+        String[] mapMatchingResults;
+        ArrayList<String> observationArrayList =  new ArrayList<>();
+
+        for(int i = 0; i < trajectory.getNumPoints(); i++) {
+            double candidateBufferRadius = radius;
+            if(i != 0) {
+                candidateBufferRadius = trajectory.getPointN(i - 1).distance(trajectory.getPointN(i));
+            }
+            if(candidateBufferRadius < radius) {
+                candidateBufferRadius = radius;
+            }
+
+            String mapMatchingResult;
+            if(i > windowSize) {
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory,i-windowSize, windowSize), candidateBufferRadius);
+            }
+            else {
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory,0, i), candidateBufferRadius);
+            }
+            observationArrayList.add(mapMatchingResult);
+        }
+
+        mapMatchingResults = new String[observationArrayList.size()];
+        for(int i = 0; i < observationArrayList.size(); i++) {
+            mapMatchingResults[i] = observationArrayList.get(i);
+        }
+        return mapMatchingResults;
+    }
+
+    private String[] getResultHIMMCircleBuffer(HMMIndoorMapMatching himm, LineString trajectory, double radius, int windowSize) {
+        String[] mapMatchingResults;
+        ArrayList<String> observationArrayList =  new ArrayList<>();
+        himm.clearOnlyBMatrix();
+        himm.setCircleSize(radius);
+
+        for(int i = 0; i < trajectory.getNumPoints(); i++) {
+            double candidateBufferRadius = radius;
+            if(i != 0) {
+                candidateBufferRadius = trajectory.getPointN(i - 1).distance(trajectory.getPointN(i));
+            }
+            if(candidateBufferRadius < radius) {
+                candidateBufferRadius = radius;
+            }
+            himm.makeBMatrixCircleBuffer(trajectory.getCoordinateN(i), candidateBufferRadius, windowSize);
+
+            String mapMatchingResult;
+            if(i > windowSize) {
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory,i-windowSize, windowSize), candidateBufferRadius);
+            }
+            else {
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory,0,i), candidateBufferRadius);
+            }
+            observationArrayList.add(mapMatchingResult);
+        }
+        mapMatchingResults = new String[observationArrayList.size()];
+        for(int i = 0; i < observationArrayList.size(); i++) {
+            mapMatchingResults[i] = observationArrayList.get(i);
+        }
+        return mapMatchingResults;
+    }
+
+    private ExperimentResult getGroundTruthResult_Excel(Workbook workbook, ExperimentResult er, ArrayList<String> keyList, String[] stringGT) {
+        Sheet resultSheet = workbook.getSheet("Result");
+        Sheet summarySheet = workbook.createSheet("Summary");
+
+        int numTrPoint = trajectory.getNumPoints();
+        er.numTrajectoryPoint = numTrPoint;
+        er.trajectoryLength[0] = trajectory.getLength() / ChangeCoord.CANVAS_MULTIPLE;
+        er.trajectoryLength[1] = trajectory_IF.getLength() / ChangeCoord.CANVAS_MULTIPLE;
+
+
+        Row resultSheetRow = resultSheet.createRow(resultSheet.getLastRowNum() + 1);
+        resultSheetRow.createCell(0).setCellValue("Ground Truth");
+
+        String[] groundTruthResult = stringGT;
+        for(int i = 0; i < numTrPoint; i++){
+            resultSheetRow.createCell(i+1).setCellValue(groundTruthResult[i]);
+        }
+
+        String bigClass = null, middleClass = null;
+        for(int i = 0; i < resultSheet.getLastRowNum(); i++) {
+            resultSheetRow = resultSheet.getRow(i);
+            if(resultSheetRow.getLastCellNum() != 1) {
+                Row summaryRow = summarySheet.createRow(i);
+                double countTrue = 0;
+                for(int j = 1; j < resultSheetRow.getLastCellNum(); j++) {
+                    if(resultSheetRow.getCell(j).getStringCellValue().equals(groundTruthResult[j-1])) {
+                        summaryRow.createCell(j).setCellValue(true);
+                        countTrue++;
+                    }
+                    else {
+                        summaryRow.createCell(j).setCellValue(false);
+                    }
+                }
+                summaryRow.createCell(0).setCellValue(countTrue);
+                double accuracy = countTrue / (resultSheetRow.getLastCellNum() - 1) * 100;
+                summaryRow.createCell(summaryRow.getLastCellNum()).setCellValue(accuracy);
+
+                String key = bigClass + "_" + middleClass + "_" + resultSheetRow.getCell(0).getStringCellValue();
+                er.accuracy.put(key, accuracy);
+                er.trueCount.put(key, countTrue);
+                if(keyList != null)
+                    keyList.add(key);
+            }
+            else {
+                String className = resultSheetRow.getCell(0).getStringCellValue();
+                if(className.equals("original trajectory") || className.equals("Indoor distance filtered trajectory")){
+                    bigClass = className;
+                }
+                else {
+                    middleClass = className;
+                }
+            }
+        }
+
+        Row summaryRow = summarySheet.createRow(summarySheet.getLastRowNum() + 1);
+        summaryRow.createCell(0).setCellValue("Metric");
+        summaryRow = summarySheet.createRow(summarySheet.getLastRowNum() + 1);
+        summaryRow.createCell(0).setCellValue("Number of points:");
+        summaryRow.createCell(1).setCellValue(er.numTrajectoryPoint);
+        summaryRow = summarySheet.createRow(summarySheet.getLastRowNum() + 1);
+        summaryRow.createCell(0).setCellValue("Length of original trajectory:");
+        summaryRow.createCell(1).setCellValue(er.trajectoryLength[0]);
+        summaryRow = summarySheet.createRow(summarySheet.getLastRowNum() + 1);
+        summaryRow.createCell(0).setCellValue("Length of indoor filtered trajectory:");
+        summaryRow.createCell(1).setCellValue(er.trajectoryLength[1]);
+
+        return er;
+    }
+
+// SIG 용 함수 시작
+    private String[] getResultHIMMBasic(HMMIndoorMapMatching himm, LineString trajectory, double radius, int windowSize) {
+        ArrayList<Integer> observationArrayList =  new ArrayList<>();
+        himm.clearOnlyBMatrix();
+        himm.setCircleSize(radius);
+
+        for(int i = 0; i < trajectory.getNumPoints(); i++) {
+            // B matrix 설정
+            himm.makeBMatrixCircleBuffer(trajectory.getCoordinateN(i), radius, windowSize);
+
+            // 초기확률 matrix 설정 및 맵 매칭 수행
+            int mapMatchingResult;
+            if (i > windowSize) {   // 궤적의 길이가 window 크기 이상인 경우
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory, i - windowSize, windowSize), radius, observationArrayList.subList(i - windowSize, i));
+            } else {    // 궤적의 길이가 window 크기 미만인 경우
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory, 0, i), radius, observationArrayList.subList(0,i));
+            }
+            observationArrayList.add(mapMatchingResult);
+        }
+
+        // 전체 궤적에 대한 결과 생성
+        String[] mapMatchingResults = new String[observationArrayList.size()];
+        for(int i = 0; i < observationArrayList.size(); i++) {
+            mapMatchingResults[i] = himm.getLable(observationArrayList.get(i));
+        }
+        return mapMatchingResults;
+    }
+
+    private String[] getResultHIMMusingMOStatus(HMMIndoorMapMatching himm, LineString trajectory, double radius, int windowSize, double MIN_DISTANCE, double incrementalValue) {
+        ArrayList<Integer> observationArrayList =  new ArrayList<>();
+        himm.clearOnlyBMatrix();
+        himm.setCircleSize(radius);
+
+        double sigma = 0.5;
+        for(int i = 0; i < trajectory.getNumPoints(); i++) {
+            // A matrix 설정
+            double movingDistance = 0;
+            if(i != 0) {
+                movingDistance = trajectory.getPointN(i - 1).distance(trajectory.getPointN(i));
+                if(movingDistance < MIN_DISTANCE) { // Moving object status = staying
+                    sigma = Math.max(sigma+incrementalValue, 1);
+                }
+                else {  // Moving object status = moving
+                    sigma = Math.min(sigma - incrementalValue, 0);
+                }
+            }
+            else {
+                sigma = 0.5;
+            }
+            himm.makeAMatrixByStaticP(sigma);
+
+            // B matrix 설정
+            himm.makeBMatrixCircleBuffer(trajectory.getCoordinateN(i), radius, windowSize);
+
+            // 초기확률 matrix 설정 및 맵 매칭 수행
+            int mapMatchingResult;
+            if (i > windowSize) {   // 궤적의 길이가 window 크기 이상인 경우
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory, i - windowSize, windowSize), radius, observationArrayList.subList(i - windowSize, i));
+            } else {    // 궤적의 길이가 window 크기 미만인 경우
+                mapMatchingResult = himm.getMapMatchingResult(trajectory.getPointN(i), getSubLineString(trajectory, 0, i), radius, observationArrayList.subList(0,i));
+            }
+            observationArrayList.add(mapMatchingResult);
+        }
+
+        // 전체 궤적에 대한 결과 생성
+        String[] mapMatchingResults = new String[observationArrayList.size()];
+        for(int i = 0; i < observationArrayList.size(); i++) {
+            mapMatchingResults[i] = himm.getLable(observationArrayList.get(i));
+        }
+        return mapMatchingResults;
+    }
+
+    private void getEvaluateResults_forSIG(int BUFFER_REPETITION, DirectIndoorMapMatching dimm, HMMIndoorMapMatching himm, LineString trajectory, Sheet sheet) {
+        Row row;
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("DIMM");
+        for(int i = 0; i < trajectory.getNumPoints(); i++){
+            row.createCell(i+1).setCellValue(dimm.getMapMatchingResult(trajectory)[i]);
+        }
+        double radius;
+        int windowSize;
+
+        // Basic methods
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM Basic method");
+        radius = 0.5;
+        // A matrix 설정
+        himm.makeAMatrixByTopology();
+        for(int i = 0; i < BUFFER_REPETITION; i++) {
+            windowSize = 10;
+            for (int j = 0; j < 5; j++) {
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: " + windowSize);
+
+                String[] mapMatchingResults = getResultHIMMBasic(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize);
+
+                setMatMatchingResultToRow(row, mapMatchingResults);
+                windowSize += 10;
+            }
+            row = sheet.createRow(sheet.getLastRowNum() + 1);
+            row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: MAX");
+
+            String[] mapMatchingResults = getResultHIMMBasic(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints());
+
+            setMatMatchingResultToRow(row, mapMatchingResults);
+            radius += 0.5;
+        }
+        System.out.println("HIMM Basic method end");
+
+        // Using moving object status methods
+        final double incrementalValue = 0.1;
+        row = sheet.createRow(sheet.getLastRowNum() + 1);
+        row.createCell(0).setCellValue("HIMM using MO status");
+        radius = 0.5;
+        for(int i = 0; i < BUFFER_REPETITION; i++) {
+            windowSize = 10;
+            for (int j = 0; j < 5; j++) {
+                row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: " + windowSize);
+
+                String[] mapMatchingResults = getResultHIMMusingMOStatus(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, windowSize, MIN_DISTANCE, incrementalValue);
+
+                setMatMatchingResultToRow(row, mapMatchingResults);
+                windowSize += 10;
+            }
+            row = sheet.createRow(sheet.getLastRowNum() + 1);
+            row.createCell(0).setCellValue("Radius(m): " + radius + " / Window: MAX");
+
+            String[] mapMatchingResults = getResultHIMMusingMOStatus(himm, trajectory, ChangeCoord.CANVAS_MULTIPLE * radius, trajectory.getNumPoints(), MIN_DISTANCE, incrementalValue);
+
+            setMatMatchingResultToRow(row, mapMatchingResults);
+            radius += 0.5;
+        }
+        System.out.println("HIMM using MO status end");
+    }
+
+    ExperimentResult evaluateSIMM_forSIG(String fileID, ArrayList<String> keyList, String[] stringGT) {
+        final int BUFFER_REPETITION = 10;
+        ExperimentResult experimentResult = new ExperimentResult(fileID);
+        Workbook workbook = new XSSFWorkbook();
+        if(indoorFeatures != null && trajectory != null) {
+            DirectIndoorMapMatching dimm = new DirectIndoorMapMatching(indoorFeatures);
+            HMMIndoorMapMatching himm = new HMMIndoorMapMatching(indoorFeatures);
+            Sheet resultSheet = workbook.createSheet("Result");
+
+            // Make SIMM result from original trajectory
+            Row resultSheetRow = resultSheet.createRow(0);
+            resultSheetRow.createCell(0).setCellValue("original trajectory");
+
+            getEvaluateResults_forSIG(BUFFER_REPETITION, dimm, himm, trajectory, resultSheet);
+            System.out.println("original trajectory end");
+
+            // Make SIMM result from indoor distance filtered trajectory
+            LineString lineWithMaxIndoorDistance;
+            try {
+                lineWithMaxIndoorDistance = IndoorUtils.applyIndoorDistanceFilter(trajectory, MAX_DISTANCE, indoorFeatures);
+                trajectory_IF = lineWithMaxIndoorDistance;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            resultSheetRow = resultSheet.createRow(resultSheet.getLastRowNum() + 1);
+            resultSheetRow.createCell(0).setCellValue("Indoor distance filtered trajectory");
+
+            getEvaluateResults_forSIG(BUFFER_REPETITION, dimm, himm, trajectory_IF, resultSheet);
+            System.out.println("Indoor distance filtered trajectory end");
+
+            // Make ground truth result using DIMM and evaluate all result
+            if(keyList.isEmpty())
+                experimentResult = getGroundTruthResult_Excel(workbook, experimentResult, keyList, stringGT);
+            else
+                experimentResult = getGroundTruthResult_Excel(workbook, experimentResult, null, stringGT);
+
+            // Check a directory is exist or not
+            File dir = new File(RESULT_PATH);
+            if(!dir.exists()){
+                dir.mkdirs();
+            }
+
+            // Write all result in a excel file
+            FileOutputStream outFile;
+            try {
+                outFile = new FileOutputStream(RESULT_PATH + "Result_" + fileID + ".xlsx");
+                workbook.write(outFile);
+                outFile.close();
+                System.out.println("Result_" + fileID + " write complete");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        return experimentResult;
+    }
+// SIG용 함수 끝
+}
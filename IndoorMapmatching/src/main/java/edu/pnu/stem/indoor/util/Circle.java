@@ -0,0 +1,54 @@
+package edu.pnu.stem.indoor.util;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Circle is an exact circle given by a center and a radius.
+ * It is used instead of a circle buffer polygon when only the overlapped area with cell spaces is needed (See CircleAreaUtils).
+ */
+public class Circle {
+    private final Coordinate center;
+    private final double radius;
+
+    public Circle(Coordinate center, double radius) {
+        this.center = new Coordinate(center);
+        this.radius = radius;
+    }
+
+    public Coordinate getCenter() {
+        return center;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public Envelope getEnvelope() {
+        return new Envelope(center.x - radius, center.x + radius, center.y - radius, center.y + radius);
+    }
+
+    /**
+     * @param x x of the point
+     * @param y y of the point
+     * @return true if the point is in the interior of the circle
+     * */
+    public boolean containsInterior(double x, double y) {
+        double dx = x - center.x;
+        double dy = y - center.y;
+        return dx * dx + dy * dy < radius * radius;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof Circle)) return false;
+        Circle circle = (Circle) o;
+        return radius == circle.radius && center.equals2D(circle.center);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * center.hashCode() + Double.hashCode(radius);
+    }
+}
@@ -0,0 +1,262 @@
+package edu.pnu.stem.indoor.util;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CircleAreaUtils calculates the area of the intersection of a polygon and (a union of) circles analytically.
+ * The circle buffer polygon and the overlay operation of JTS are not used.
+ *
+ * The area is the line integral of x dy along the boundary of the intersection (Green's theorem).
+ * The boundary consists of
+ * 1. the parts of the polygon rings inside one of the circles, and
+ * 2. the arcs of the circles inside the polygon and outside the other circles.
+ * Shell and holes of the polygon are handled by their orientation.
+ */
+public class CircleAreaUtils {
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double[] ARC_TEST_FRACTIONS = {0.5, 0.25, 0.75, 0.125, 0.875};   // Points of an arc tested by isArcInside
+
+    /**
+     * @param polygon polygon (e.g. geometry of a cell space)
+     * @param circle circle (e.g. circle buffer of a positioning point)
+     * @return The area of the intersection of the polygon and the circle
+     * */
+    public static double getIntersectionArea(Polygon polygon, Circle circle) {
+        return getIntersectionArea(polygon, Collections.singletonList(circle));
+    }
+
+    /**
+     * @param polygon polygon (e.g. geometry of a cell space)
+     * @param circles circles (e.g. circle buffers of positioning points)
+     * @return The area of the intersection of the polygon and the union of the circles
+     * */
+    public static double getIntersectionArea(Polygon polygon, List<Circle> circles) {
+        return getIntersectionArea(polygon, new IndexedPointInAreaLocator(polygon), circles);
+    }
+
+    /**
+     * @param polygon polygon (e.g. geometry of a cell space)
+     * @param locator point locator of the polygon (e.g. point locator of the prepared geometry of a cell space)
+     * @param circles circles (e.g. circle buffers of positioning points)
+     * @return The area of the intersection of the polygon and the union of the circles
+     * */
+    public static double getIntersectionArea(Polygon polygon, PointOnGeometryLocator locator, List<Circle> circles) {
+        // Only the distinct circles near the polygon are used
+        Envelope polygonEnvelope = polygon.getEnvelopeInternal();
+        ArrayList<Circle> targetCircles = new ArrayList<>();
+        for(Circle circle : circles) {
+            if(circle.getRadius() <= 0) continue;
+            if(!polygonEnvelope.intersects(circle.getEnvelope())) continue;
+            if(targetCircles.contains(circle)) continue;
+            targetCircles.add(circle);
+        }
+        if(targetCircles.isEmpty())
+            return 0.0;
+
+        Coordinate[][] rings = new Coordinate[polygon.getNumInteriorRing() + 1][];
+        rings[0] = polygon.getExteriorRing().getCoordinates();
+        for(int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            rings[i + 1] = polygon.getInteriorRingN(i).getCoordinates();
+        }
+
+        double area = 0.0;
+        for(int i = 0; i < rings.length; i++) {
+            // The shell must be counterclockwise and the holes must be clockwise
+            boolean isCCW = Orientation.isCCW(rings[i]);
+            double sign = (i == 0) == isCCW ? 1.0 : -1.0;
+            area += sign * getRingIntegral(rings[i], targetCircles);
+        }
+        for(Circle circle : targetCircles) {
+            area += getArcIntegral(circle, rings, locator, targetCircles);
+        }
+
+        return Math.max(area, 0.0);
+    }
+
+    /**
+     * Integrates x dy along the parts of a ring inside one of the circles.
+     * */
+    private static double getRingIntegral(Coordinate[] ring, List<Circle> circles) {
+        double[] intervalStart = new double[circles.size()];
+        double[] intervalEnd = new double[circles.size()];
+        double integral = 0.0;
+
+        for(int i = 0; i < ring.length - 1; i++) {
+            Coordinate p = ring[i];
+            Coordinate q = ring[i + 1];
+            double dx = q.x - p.x;
+            double dy = q.y - p.y;
+            if(dx == 0 && dy == 0) continue;
+
+            // Parameter intervals of the segment inside each circle (sorted by start)
+            int intervalCount = 0;
+            for(Circle circle : circles) {
+                double[] roots = getSegmentRoots(p, dx, dy, circle);
+                if(roots == null) continue;
+                double start = Math.max(roots[0], 0.0);
+                double end = Math.min(roots[1], 1.0);
+                if(start >= end) continue;
+
+                int k = intervalCount++;
+                while(k > 0 && intervalStart[k - 1] > start) {
+                    intervalStart[k] = intervalStart[k - 1];
+                    intervalEnd[k] = intervalEnd[k - 1];
+                    k--;
+                }
+                intervalStart[k] = start;
+                intervalEnd[k] = end;
+            }
+
+            // Merge the intervals and integrate over the union of them
+            int k = 0;
+            while(k < intervalCount) {
+                double start = intervalStart[k];
+                double end = intervalEnd[k];
+                k++;
+                while(k < intervalCount && intervalStart[k] <= end) {
+                    end = Math.max(end, intervalEnd[k]);
+                    k++;
+                }
+                double startX = p.x + start * dx;
+                double endX = p.x + end * dx;
+                integral += (startX + endX) / 2 * (end - start) * dy;
+            }
+        }
+
+        return integral;
+    }
+
+    /**
+     * Integrates x dy along the arcs of a circle inside the polygon and outside the other circles (counterclockwise).
+     * */
+    private static double getArcIntegral(Circle circle, Coordinate[][] rings, PointOnGeometryLocator locator, List<Circle> circles) {
+        Coordinate center = circle.getCenter();
+        double radius = circle.getRadius();
+        Envelope circleEnvelope = circle.getEnvelope();
+
+        // Angles where the circle meets the polygon rings or the other circles
+        double[] angles = new double[16];
+        int angleCount = 0;
+        for(Coordinate[] ring : rings) {
+            for(int i = 0; i < ring.length - 1; i++) {
+                Coordinate p = ring[i];
+                Coordinate q = ring[i + 1];
+                if(!circleEnvelope.intersects(p, q)) continue;
+                double dx = q.x - p.x;
+                double dy = q.y - p.y;
+                if(dx == 0 && dy == 0) continue;
+
+                double[] roots = getSegmentRoots(p, dx, dy, circle);
+                if(roots == null) continue;
+                for(double t : roots) {
+                    if(t < 0 || t > 1) continue;
+                    if(angleCount == angles.length) angles = Arrays.copyOf(angles, angleCount * 2);
+                    angles[angleCount++] = getAngle(center, p.x + t * dx, p.y + t * dy);
+                }
+            }
+        }
+        for(Circle other : circles) {
+            if(other == circle) continue;
+            Coordinate otherCenter = other.getCenter();
+            double dx = otherCenter.x - center.x;
+            double dy = otherCenter.y - center.y;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if(distance >= radius + other.getRadius() || distance <= Math.abs(radius - other.getRadius())) continue;
+
+            double a = (radius * radius - other.getRadius() * other.getRadius() + distance * distance) / (2 * distance);
+            double h = Math.sqrt(Math.max(radius * radius - a * a, 0.0));
+            double baseX = center.x + a * dx / distance;
+            double baseY = center.y + a * dy / distance;
+            if(angleCount + 2 > angles.length) angles = Arrays.copyOf(angles, angles.length * 2);
+            angles[angleCount++] = getAngle(center, baseX + h * dy / distance, baseY - h * dx / distance);
+            angles[angleCount++] = getAngle(center, baseX - h * dy / distance, baseY + h * dx / distance);
+        }
+        Arrays.sort(angles, 0, angleCount);
+
+        double integral = 0.0;
+        if(angleCount == 0) {
+            if(isArcInside(circle, 0.0, TWO_PI, locator, circles)) {
+                integral = getArcIntegral(center, radius, 0.0, TWO_PI);
+            }
+        }
+        else {
+            for(int i = 0; i < angleCount; i++) {
+                double startAngle = angles[i];
+                double endAngle = (i + 1 < angleCount) ? angles[i + 1] : angles[0] + TWO_PI;
+                if(endAngle - startAngle <= 0) continue;
+                if(isArcInside(circle, startAngle, endAngle, locator, circles)) {
+                    integral += getArcIntegral(center, radius, startAngle, endAngle);
+                }
+            }
+        }
+
+        return integral;
+    }
+
+    /**
+     * Tests the middle point of an arc that doesn't cross the polygon rings and the other circles.
+     * The arc can still touch a ring at a tangent point (e.g. the middle point of a whole circle tangent to an edge),
+     * so another point of the arc is tested if the point is on the boundary of the polygon.
+     * */
+    private static boolean isArcInside(Circle circle, double startAngle, double endAngle, PointOnGeometryLocator locator, List<Circle> circles) {
+        for(double fraction : ARC_TEST_FRACTIONS) {
+            double angle = startAngle + (endAngle - startAngle) * fraction;
+            double x = circle.getCenter().x + circle.getRadius() * Math.cos(angle);
+            double y = circle.getCenter().y + circle.getRadius() * Math.sin(angle);
+            int location = locator.locate(new Coordinate(x, y));
+            if(location == Location.BOUNDARY) continue;
+
+            for(Circle other : circles) {
+                if(other != circle && other.containsInterior(x, y))
+                    return false;
+            }
+            return location == Location.INTERIOR;
+        }
+
+        return false;
+    }
+
+    /**
+     * Integral of x dy along the arc from startAngle to endAngle (counterclockwise).
+     * x = cx + r cos(theta), dy = r cos(theta) d(theta)
+     * */
+    private static double getArcIntegral(Coordinate center, double radius, double startAngle, double endAngle) {
+        return center.x * radius * (Math.sin(endAngle) - Math.sin(startAngle))
+                + radius * radius / 2 * ((endAngle - startAngle) + (Math.sin(2 * endAngle) - Math.sin(2 * startAngle)) / 2);
+    }
+
+    /**
+     * Solves |p + t * (dx, dy) - center| = radius.
+     *
+     * @return Two roots in ascending order, or null if the line doesn't cross the circle
+     * */
+    private static double[] getSegmentRoots(Coordinate p, double dx, double dy, Circle circle) {
+        double fx = p.x - circle.getCenter().x;
+        double fy = p.y - circle.getCenter().y;
+        double a = dx * dx + dy * dy;
+        double b = 2 * (fx * dx + fy * dy);
+        double c = fx * fx + fy * fy - circle.getRadius() * circle.getRadius();
+        double discriminant = b * b - 4 * a * c;
+        if(discriminant <= 0)
+            return null;
+
+        double root = Math.sqrt(discriminant);
+        return new double[]{(-b - root) / (2 * a), (-b + root) / (2 * a)};
+    }
+
+    private static double getAngle(Coordinate center, double x, double y) {
+        double angle = Math.atan2(y - center.y, x - center.x);
+        return angle < 0 ? angle + TWO_PI : angle;
+    }
+}
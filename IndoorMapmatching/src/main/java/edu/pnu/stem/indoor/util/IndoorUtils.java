@@ -2,14 +2,18 @@ package edu.pnu.stem.indoor.util;
 
 
 import edu.pnu.stem.indoor.feature.CellSpace;
+import edu.pnu.stem.indoor.feature.DoorGraph;
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
 import edu.pnu.stem.indoor.feature.VisibilityGraph;
 import edu.pnu.stem.indoor.util.parser.ChangeCoord;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.operation.distance.DistanceOp;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Created by STEM_KTH on 2017-06-09.
@@ -22,12 +26,14 @@ public class IndoorUtils {
 
     /**
      * This function provides an indoor route that consider the indoor space geometry for a given trajectory.
+     * The door2door graph of the indoor features is used, so it can be called by several threads with a frozen snapshot of indoor features.
      *
      * @param trajectory It consists of two points(start and end point) that want to create an indoor route
-     * @param cellSpaces List of CellSpace that contains all indoor space information in the building
+     * @param indoorFeatures indoor features that contains all indoor space information in the building
      * @return Indoor route
      * */
-    public static LineString getIndoorRoute(LineString trajectory, ArrayList<CellSpace> cellSpaces) {
+    public static LineString getIndoorRoute(LineString trajectory, IndoorFeatures indoorFeatures) {
+        ArrayList<CellSpace> cellSpaces = indoorFeatures.getCellSpaces();
         // TODO : Make IndoorRoute with way-points (currently make with just two points)
         LineString resultIndoorPath = null;
         int startPCellIndex = -1;
@@ -38,14 +44,13 @@ public class IndoorUtils {
 
         int cellIndex = 0;
         for (CellSpace cellSpace : cellSpaces) {
-            Polygon cellSpaceGeom = cellSpace.getGeom();
             /*
             possible case : locate of trajectory coordinates
             1. contain in a cell
             2. on a cell boundary
             2-1. on a cell door boundary
             */
-            if (cellSpaceGeom.covers(startP) && cellSpaceGeom.covers(endP)) {
+            if (cellSpace.covers(startP) && cellSpace.covers(endP)) {
                 /*
                 In case : trajectory is included in same cell
                 but in this case, one of the trajectory boundary point possible to located at the boundary of the cell
@@ -64,10 +69,10 @@ public class IndoorUtils {
                         isEndPOnADoor = true;
                     }
                 }
-                if(!cellSpaceGeom.contains(startP) && !isStartPOnADoor) {
+                if(!cellSpace.contains(startP) && !isStartPOnADoor) {
                     endPCellIndex = cellIndex;
                 }
-                else if(!cellSpaceGeom.contains(endP) && !isEndPOnADoor) {
+                else if(!cellSpace.contains(endP) && !isEndPOnADoor) {
                     startPCellIndex = cellIndex;
                 }
                 else {
@@ -77,10 +82,10 @@ public class IndoorUtils {
                 }
             }
             else {
-                if(cellSpaceGeom.covers(startP) && startPCellIndex == -1) {
+                if(cellSpace.covers(startP) && startPCellIndex == -1) {
                     startPCellIndex = cellIndex;
                 }
-                else if(cellSpaceGeom.covers(endP) && endPCellIndex == -1) {
+                else if(cellSpace.covers(endP) && endPCellIndex == -1) {
                     endPCellIndex = cellIndex;
                 }
             }
@@ -107,7 +112,7 @@ public class IndoorUtils {
                 resultIndoorPath = makeIndoorRouteInCell(startP, endP, cellSpaces.get(startPCellIndex));
             }
             else {
-                resultIndoorPath = getIndoorRoute(startPCellIndex, endPCellIndex, startP, endP, cellSpaces);
+                resultIndoorPath = getIndoorRoute(startPCellIndex, endPCellIndex, startP, endP, cellSpaces, indoorFeatures.getDoorGraph());
                 if(resultIndoorPath == null) {
                     // In case : There is no connection between start and end
                     // In this case, the endP is corrected to belong to the cell to which startP belongs
@@ -121,7 +126,7 @@ public class IndoorUtils {
             }
         }
         else if(resultIndoorPath == null) {
-            resultIndoorPath = getIndoorRoute(startPCellIndex, endPCellIndex, startP, endP, cellSpaces);
+            resultIndoorPath = getIndoorRoute(startPCellIndex, endPCellIndex, startP, endP, cellSpaces, indoorFeatures.getDoorGraph());
         }
 
         return resultIndoorPath;
@@ -137,56 +142,16 @@ public class IndoorUtils {
      * @param startP
      * @param endP
      * @param cellSpaces
+     * @param doorGraph door2door graph of the building
      * @return
      */
-    private static LineString getIndoorRoute(int startPCellIndex, int endPCellIndex, Point startP, Point endP, ArrayList<CellSpace> cellSpaces) {
+    private static LineString getIndoorRoute(int startPCellIndex, int endPCellIndex, Point startP, Point endP, ArrayList<CellSpace> cellSpaces, DoorGraph doorGraph) {
         LineString resultIndoorPath = null;
-        VisibilityGraph graph = new VisibilityGraph();
 
         if(startPCellIndex != endPCellIndex) {
-            // Makes door2door graph
-            if(VisibilityGraph.getBaseGraph() == null) {
-                ArrayList<LineString> doors = new ArrayList<>();
-                for (CellSpace cellSpace: cellSpaces) {
-                    ArrayList<LineString> d2dGraph = cellSpace.getDoor2doorEdges();
-                    if(d2dGraph != null && d2dGraph.size() != 0) {
-                        graph.addEdges(d2dGraph);
-                    }
-                    doors.addAll(cellSpace.getDoors());
-                }
-                // Determine whether the indoor model is thin or thick by door objects
-                // If it is a thick model, creates edges for the door2door graph by finding separated two objects but actually same object (door).
-                HashSet<LineString> interDoorGraph = new HashSet<>();
-                for(int i = 0; i < doors.size(); i++) {
-                    for(int j = i + 1; j <  doors.size(); j++) {
-                        LineString doorA = doors.get(i);
-                        LineString doorB = doors.get(j);
-                        if(doorA.equals(doorB)) {
-                            break; // In case: thin model
-                        }
-                        else {
-                            if(doorA.buffer(BUFFER_SIZE,2).covers(doorB)) { // In case: thick model
-                                interDoorGraph.add(gf.createLineString(new Coordinate[]{doorA.getStartPoint().getCoordinate(), doorB.getStartPoint().getCoordinate()}));
-                                interDoorGraph.add(gf.createLineString(new Coordinate[]{doorA.getEndPoint().getCoordinate(), doorB.getEndPoint().getCoordinate()}));
-                            }
-                        }
-                    }
-                }
-                doors.clear();
-                doors.addAll(interDoorGraph);
-                graph.addEdges(doors);
-
-                VisibilityGraph.setBaseGraph(graph.getEdges());
-            }
-            else {
-                // Reuse VisibilityGraph object using base graph
-                graph = VisibilityGraph.getBaseGraph();
-            }
-            // Make point2door edges and reflects it to door2door graph
+            // Make point2door edges and overlay it on door2door graph
             ArrayList<LineString> start2doorGraph =  makePoint2DoorEdge(startP, cellSpaces.get(startPCellIndex));
             ArrayList<LineString> end2doorGraph =  makePoint2DoorEdge(endP, cellSpaces.get(endPCellIndex));
-            graph.addEdges(start2doorGraph);
-            graph.addEdges(end2doorGraph);
             // Get point2point shortest path using door2door graph
             if(end2doorGraph.isEmpty()) {
                 // In case: a cell that containing the end point is disconnected with a building
@@ -197,8 +162,9 @@ public class IndoorUtils {
                 resultIndoorPath = gf.createLineString(new Coordinate[]{startP.getCoordinate(), newEndPointCoord});
             }
             else {
-                Coordinate[] coords = new Coordinate[]{startP.getCoordinate(), endP.getCoordinate()};
-                resultIndoorPath = graph.getShortestRoute(coords);
+                ArrayList<LineString> point2doorGraph = new ArrayList<>(start2doorGraph);
+                point2doorGraph.addAll(end2doorGraph);
+                resultIndoorPath = doorGraph.getShortestRoute(startP.getCoordinate(), endP.getCoordinate(), point2doorGraph);
             }
         }
         else {
@@ -208,6 +174,49 @@ public class IndoorUtils {
         return resultIndoorPath;
     }
 
+    /**
+     * This function makes the edges of the door2door graph of the building.
+     * The graph consists of the door2door edges of each cell space and, in the thick model, the edges between two doors that are actually the same door.
+     * Consider only same floor's doors connection
+     *
+     * @param cellSpaces List of CellSpace that contains all indoor space information in the building
+     * @return edges of the door2door graph
+     * */
+    public static ArrayList<LineString> makeDoor2DoorGraphEdges(ArrayList<CellSpace> cellSpaces) {
+        VisibilityGraph graph = new VisibilityGraph();
+        ArrayList<LineString> doors = new ArrayList<>();
+        for (CellSpace cellSpace: cellSpaces) {
+            ArrayList<LineString> d2dGraph = cellSpace.getDoor2doorEdges();
+            if(d2dGraph != null && d2dGraph.size() != 0) {
+                graph.addEdges(d2dGraph);
+            }
+            doors.addAll(cellSpace.getDoors());
+        }
+        // Determine whether the indoor model is thin or thick by door objects
+        // If it is a thick model, creates edges for the door2door graph by finding separated two objects but actually same object (door).
+        HashSet<LineString> interDoorGraph = new HashSet<>();
+        for(int i = 0; i < doors.size(); i++) {
+            for(int j = i + 1; j <  doors.size(); j++) {
+                LineString doorA = doors.get(i);
+                LineString doorB = doors.get(j);
+                if(doorA.equals(doorB)) {
+                    break; // In case: thin model
+                }
+                else {
+                    if(doorA.buffer(BUFFER_SIZE,2).covers(doorB)) { // In case: thick model
+                        interDoorGraph.add(gf.createLineString(new Coordinate[]{doorA.getStartPoint().getCoordinate(), doorB.getStartPoint().getCoordinate()}));
+                        interDoorGraph.add(gf.createLineString(new Coordinate[]{doorA.getEndPoint().getCoordinate(), doorB.getEndPoint().getCoordinate()}));
+                    }
+                }
+            }
+        }
+        doors.clear();
+        doors.addAll(interDoorGraph);
+        graph.addEdges(doors);
+
+        return graph.getEdges();
+    }
+
     /**
      * A function that returns all paths from a given point to doors in a target cell spaces.
      *
@@ -247,10 +256,10 @@ public class IndoorUtils {
         Polygon cellSpaceGeom = cellSpace.getGeom();
 
 
-        if(!cellSpaceGeom.covers(startP)) {
+        if(!cellSpace.covers(startP)) {
             startP = getNearestPoint(startP, cellSpaceGeom);
         }
-        else if(!cellSpaceGeom.covers(endP)) {
+        else if(!cellSpace.covers(endP)) {
             endP = getNearestPoint(endP, cellSpaceGeom);
         }
 
@@ -259,7 +268,7 @@ public class IndoorUtils {
         LineString lineString = gf.createLineString(coords);
 
         // TODO: How to determine that topology relation between a linestring and cell geometry exterior??
-        if(cellSpaceGeom.covers(lineString)) {  // in thick model, cover operation is better than contains
+        if(cellSpace.covers(lineString)) {  // in thick model, cover operation is better than contains
             // In case : The Cell contains a straight line between start and end points
             p2pIndoorPath = gf.createLineString(coords);
         }
@@ -291,23 +300,38 @@ public class IndoorUtils {
     }
 
     /**
+     * The area of the exact circle is calculated by CircleAreaUtils (See getCellSpaceIndexWithEpsilon(Coordinate, double, ArrayList, boolean)).
      *
      * @param targetCoordinate
      * @param cellSpaces
      * @return
      * */
     public static Integer getCellSpaceIndexWithEpsilon(Coordinate targetCoordinate, ArrayList<CellSpace> cellSpaces) {
+        return getCellSpaceIndexWithEpsilon(targetCoordinate, cellSpaces, true);
+    }
+
+    /**
+     *
+     * @param targetCoordinate
+     * @param cellSpaces
+     * @param isAnalyticCircleArea Whether the area of the Epsilon-sized buffer is calculated analytically
+     * @return
+     * */
+    public static Integer getCellSpaceIndexWithEpsilon(Coordinate targetCoordinate, ArrayList<CellSpace> cellSpaces, boolean isAnalyticCircleArea) {
         int epsilon = EPSILON;
-        int cellIndex = getCellSpaceIndexWithEpsilon(targetCoordinate, epsilon, cellSpaces);
+        int cellIndex = getCellSpaceIndexWithEpsilon(targetCoordinate, epsilon, cellSpaces, isAnalyticCircleArea);
         while (cellIndex == -1) {
             epsilon *= 2;
-            cellIndex = getCellSpaceIndexWithEpsilon(targetCoordinate, epsilon, cellSpaces);
+            cellIndex = getCellSpaceIndexWithEpsilon(targetCoordinate, epsilon, cellSpaces, isAnalyticCircleArea);
         }
 
         return cellIndex;
     }
 
     /**
+     * The area of the exact circle is calculated by CircleAreaUtils, so the result can differ from the one of the polygon buffer
+     * (a circle of 8 segments) used before when two cell spaces have almost the same area in the buffer.
+     * To use the polygon buffer, call getCellSpaceIndexWithEpsilon(Coordinate, double, ArrayList, false).
      *
      * @param targetCoordinate
      * @param epsilon
@@ -315,15 +339,35 @@ public class IndoorUtils {
      * @return
      * */
     public static Integer getCellSpaceIndexWithEpsilon(Coordinate targetCoordinate, double epsilon, ArrayList<CellSpace> cellSpaces) {
-        Point point = gf.createPoint(targetCoordinate);
-        Polygon bufferedPolygon = (Polygon) point.buffer(epsilon, 2);
+        return getCellSpaceIndexWithEpsilon(targetCoordinate, epsilon, cellSpaces, true);
+    }
+
+    /**
+     *
+     * @param targetCoordinate
+     * @param epsilon
+     * @param cellSpaces
+     * @param isAnalyticCircleArea Whether the area is calculated analytically (otherwise point.buffer(epsilon, 2) and the overlay operation of JTS)
+     * @return
+     * */
+    public static Integer getCellSpaceIndexWithEpsilon(Coordinate targetCoordinate, double epsilon, ArrayList<CellSpace> cellSpaces, boolean isAnalyticCircleArea) {
+        List<Circle> circle = Collections.singletonList(new Circle(targetCoordinate, epsilon));
+        Envelope circleEnvelope = circle.get(0).getEnvelope();
+        Polygon bufferedPolygon = isAnalyticCircleArea ? null : (Polygon) gf.createPoint(targetCoordinate).buffer(epsilon, 2);
 
         int closestCellIndex = -1;
         HashMap<Integer, Double> resultWithArea = new HashMap<>();
         for (CellSpace cellSpace : cellSpaces) {
             Polygon cellGeometry = cellSpace.getGeom();
             closestCellIndex++;
-            if(cellGeometry.intersects(bufferedPolygon)){
+            if(isAnalyticCircleArea) {
+                if(!circleEnvelope.intersects(cellGeometry.getEnvelopeInternal())) continue;
+                double area = CircleAreaUtils.getIntersectionArea(cellGeometry, cellSpace.getPreparedGeom().getPointLocator(), circle);
+                if(area > 0){
+                    resultWithArea.put(closestCellIndex, area);
+                }
+            }
+            else if(cellSpace.intersects(bufferedPolygon)){
                 resultWithArea.put(closestCellIndex, cellGeometry.intersection(bufferedPolygon).getArea());
             }
         }
@@ -403,12 +447,12 @@ public class IndoorUtils {
      *
      * @param trajectory Given Indoor route
      * @param maxIndoorDistance The maximum distance a person can travel per second
-     * @param cellSpaces List of CellSpace that contains all indoor space information in the building
+     * @param indoorFeatures indoor features that contains all indoor space information in the building
      * @param sameCount This is a variable that determines whether the number of points constituting the newly created path
      *                  should be the same as the number op points constituting the input path. Default value is false.
      * @return Indoor route with maximum indoor distance filter
      * */
-    public static LineString applyIndoorDistanceFilter(LineString trajectory, double maxIndoorDistance, ArrayList<CellSpace> cellSpaces, boolean sameCount) {
+    public static LineString applyIndoorDistanceFilter(LineString trajectory, double maxIndoorDistance, IndoorFeatures indoorFeatures, boolean sameCount) {
         Coordinate correctedCoordinate = null;
         ArrayList<Coordinate> pathCoordinates = new ArrayList<>();
 
@@ -423,13 +467,13 @@ public class IndoorUtils {
                 startP = trajectory.getCoordinateN(i);
                 trajectoryCoordinates = new Coordinate[] {startP, endP};
                 trajectorySegment = gf.createLineString(trajectoryCoordinates);
-                trajectorySegment = getIndoorRoute(trajectorySegment, cellSpaces);
+                trajectorySegment = getIndoorRoute(trajectorySegment, indoorFeatures);
             }
             else {
                 startP = correctedCoordinate;
                 trajectoryCoordinates = new Coordinate[] {startP, endP};
                 trajectorySegment = gf.createLineString(trajectoryCoordinates);
-                trajectorySegment = getIndoorRoute(trajectorySegment, cellSpaces);
+                trajectorySegment = getIndoorRoute(trajectorySegment, indoorFeatures);
                 correctedCoordinate = null;
             }
 
@@ -466,11 +510,11 @@ public class IndoorUtils {
      *
      * @param trajectory Given Indoor route
      * @param maxIndoorDistance The maximum distance a person can travel per second
-     * @param cellSpaces List of CellSpace that contains all indoor space information in the building
+     * @param indoorFeatures indoor features that contains all indoor space information in the building
      * @return Indoor route with maximum indoor distance filter
      * */
-    public static LineString applyIndoorDistanceFilter(LineString trajectory, double maxIndoorDistance, ArrayList<CellSpace> cellSpaces) {
-       return applyIndoorDistanceFilter(trajectory, maxIndoorDistance, cellSpaces, true);
+    public static LineString applyIndoorDistanceFilter(LineString trajectory, double maxIndoorDistance, IndoorFeatures indoorFeatures) {
+       return applyIndoorDistanceFilter(trajectory, maxIndoorDistance, indoorFeatures, true);
     }
 
     /**
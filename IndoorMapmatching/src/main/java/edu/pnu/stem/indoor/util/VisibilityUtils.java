@@ -0,0 +1,393 @@
+package edu.pnu.stem.indoor.util;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * VisibilityUtils finds the visible vertex pairs of a polygon (with holes) by the rotational sweep (Lee's algorithm).
+ * Two vertices are visible if the polygon covers the straight line between them (the same as polygon.covers(line)),
+ * so a line on the boundary of the polygon is visible.
+ *
+ * For each vertex p, the other vertices are sorted by the angle around p and the boundary edges crossing the ray from p
+ * are kept in a balanced tree ordered by the distance from p. A vertex w is visible from p if
+ * 1. the direction from p to w is in the interior angle of the polygon at p, and the nearest edge on the ray is not before w, or
+ * 2. w is behind another vertex u on the same ray, the line from p to u is visible, the direction from u to w is in the interior angle at u,
+ *    and the nearest edge on the ray is not before w (no edge is before u because u is visible).
+ * Only the first edge of the tree is tested for each vertex, so the total cost is O(V^2 log V).
+ * The degenerate vertices (a vertex on an edge or a vertex where rings touch) have no unique interior angle for the sweep,
+ * so the covers test of the prepared polygon is used only for the lines from them and the lines through them.
+ */
+public class VisibilityUtils {
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * This function returns the visibility between the given vertices of a polygon.
+     *
+     * @param polygon polygon (e.g. geometry of a cell space)
+     * @param prepared prepared geometry of the polygon (used for the degenerate vertices)
+     * @param vertices vertices of the polygon (e.g. polygon.getCoordinates())
+     * @return visible[i][j] is true if the polygon covers the line from vertices[i] to vertices[j] (false for the same coordinates)
+     * */
+    public static boolean[][] getVertexVisibility(Polygon polygon, PreparedPolygon prepared, Coordinate[] vertices) {
+        Sweep sweep = new Sweep(polygon, prepared);
+        boolean[][] distinctVisible = new boolean[sweep.vertexCount][];
+        for(int p = 0; p < sweep.vertexCount; p++) {
+            distinctVisible[p] = sweep.getVisibleVertices(p);
+        }
+
+        int[] vertexIndexes = new int[vertices.length];
+        for(int i = 0; i < vertices.length; i++) {
+            Integer index = sweep.vertexIndexMap.get(vertices[i]);
+            if(index == null)
+                throw new IllegalArgumentException("The coordinate isn't a vertex of the polygon: " + vertices[i]);
+            vertexIndexes[i] = index;
+        }
+        boolean[][] visible = new boolean[vertices.length][vertices.length];
+        for(int i = 0; i < vertices.length; i++) {
+            for(int j = 0; j < vertices.length; j++) {
+                if(vertexIndexes[i] != vertexIndexes[j]) {
+                    visible[i][j] = distinctVisible[vertexIndexes[i]][vertexIndexes[j]];
+                }
+            }
+        }
+
+        return visible;
+    }
+
+    /**
+     * Distinct vertices and boundary edges of a polygon, and the rotational sweep from a vertex.
+     * */
+    private static class Sweep {
+        private final PreparedPolygon prepared;
+        private final GeometryFactory gf = new GeometryFactory();
+        private final HashMap<Coordinate, Integer> vertexIndexMap = new HashMap<>();
+        private final ArrayList<Coordinate> vertices = new ArrayList<>();
+        private final ArrayList<Coordinate[]> cones = new ArrayList<>();   // {start, end} of the interior angle (counterclockwise), null if the vertex is shared
+        private final ArrayList<Integer> occurrences = new ArrayList<>();
+        private final ArrayList<int[]> edges = new ArrayList<>();
+        private final int vertexCount;
+        private final boolean[] isOnEdge;    // true if the vertex is on an edge that isn't incident to it
+
+        // State of the sweep from a vertex
+        private Coordinate origin;
+        private double directionX;
+        private double directionY;
+
+        Sweep(Polygon polygon, PreparedPolygon prepared) {
+            this.prepared = prepared;
+            addRing(polygon.getExteriorRing(), true);
+            for(int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                addRing(polygon.getInteriorRingN(i), false);
+            }
+            vertexCount = vertices.size();
+            isOnEdge = new boolean[vertexCount];
+            for(int[] edge : edges) {
+                Coordinate a = vertices.get(edge[0]);
+                Coordinate b = vertices.get(edge[1]);
+                for(int v = 0; v < vertexCount; v++) {
+                    if(v == edge[0] || v == edge[1]) continue;
+                    Coordinate vertex = vertices.get(v);
+                    if(Orientation.index(a, b, vertex) == Orientation.COLLINEAR
+                            && Math.min(a.x, b.x) <= vertex.x && vertex.x <= Math.max(a.x, b.x)
+                            && Math.min(a.y, b.y) <= vertex.y && vertex.y <= Math.max(a.y, b.y)) {
+                        isOnEdge[v] = true;
+                    }
+                }
+            }
+        }
+
+        private void addRing(LineString ring, boolean isShell) {
+            Coordinate[] coords = ring.getCoordinates();
+            ArrayList<Coordinate> points = new ArrayList<>();
+            for(int i = 0; i < coords.length - 1; i++) {
+                if(!points.isEmpty() && points.get(points.size() - 1).equals2D(coords[i])) continue;
+                points.add(coords[i]);
+            }
+            while(points.size() > 1 && points.get(0).equals2D(points.get(points.size() - 1))) {
+                points.remove(points.size() - 1);
+            }
+            if(points.size() < 3) {
+                for(Coordinate point : points) {
+                    getVertex(point, null);
+                }
+                return;
+            }
+
+            // The interior of the polygon is on the left of the shell if it is counterclockwise, and on the right of the holes
+            boolean isInteriorOnLeft = isShell == Orientation.isCCW(coords);
+            int pointNumber = points.size();
+            for(int i = 0; i < pointNumber; i++) {
+                Coordinate previous = points.get((i + pointNumber - 1) % pointNumber);
+                Coordinate current = points.get(i);
+                Coordinate next = points.get((i + 1) % pointNumber);
+                Coordinate[] cone = isInteriorOnLeft ? new Coordinate[]{next, previous} : new Coordinate[]{previous, next};
+                int from = getVertex(current, cone);
+                int to = getVertex(next, null);
+                edges.add(new int[]{from, to});
+            }
+        }
+
+        private int getVertex(Coordinate coord, Coordinate[] cone) {
+            Integer index = vertexIndexMap.get(coord);
+            if(index == null) {
+                index = vertices.size();
+                vertexIndexMap.put(coord, index);
+                vertices.add(coord);
+                cones.add(null);
+                occurrences.add(0);
+            }
+            if(cone != null) {
+                // A vertex shared by several rings (or several times in a ring) has no unique interior angle
+                int occurrence = occurrences.get(index) + 1;
+                occurrences.set(index, occurrence);
+                cones.set(index, occurrence == 1 ? cone : null);
+            }
+            return index;
+        }
+
+        /**
+         * @return true if the direction from vertex u to the point q is in the closed interior angle at u
+         * */
+        private boolean isInCone(int u, Coordinate q) {
+            Coordinate[] cone = cones.get(u);
+            Coordinate center = vertices.get(u);
+            int startToEnd = Orientation.index(center, cone[0], cone[1]);
+            int startToQ = Orientation.index(center, cone[0], q);
+            int qToEnd = Orientation.index(center, q, cone[1]);
+            if(startToEnd == Orientation.COLLINEAR) {
+                // The interior angle is 180 degrees (start and end are opposite)
+                return startToQ != Orientation.CLOCKWISE;
+            }
+            if(startToEnd == Orientation.COUNTERCLOCKWISE) {
+                return startToQ != Orientation.CLOCKWISE && qToEnd != Orientation.CLOCKWISE;
+            }
+            // Reflex angle: q is outside only if it is strictly in the convex angle from end to start
+            return !(Orientation.index(center, cone[1], q) == Orientation.COUNTERCLOCKWISE && Orientation.index(center, q, cone[0]) == Orientation.COUNTERCLOCKWISE);
+        }
+
+        /**
+         * @return true if the vertex is shared by several rings (or several times in a ring) or it is on an edge
+         * */
+        private boolean isDegenerateVertex(int u) {
+            return cones.get(u) == null || isOnEdge[u];
+        }
+
+        private boolean covers(Coordinate from, Coordinate to) {
+            return prepared.covers(gf.createLineString(new Coordinate[]{from, to}));
+        }
+
+        /**
+         * Rotational sweep from the vertex p.
+         *
+         * @return visible[w] is true if w is visible from p
+         * */
+        boolean[] getVisibleVertices(int p) {
+            boolean[] visible = new boolean[vertexCount];
+            origin = vertices.get(p);
+
+            // The interior angle at a degenerate vertex isn't unique, so the lines from it are tested by the covers test
+            if(isDegenerateVertex(p)) {
+                for(int w = 0; w < vertexCount; w++) {
+                    if(w != p) visible[w] = covers(origin, vertices.get(w));
+                }
+                return visible;
+            }
+
+            // Sort the other vertices by the angle around p (and the distance for the same angle)
+            Integer[] order = new Integer[vertexCount - 1];
+            for(int w = 0, k = 0; w < vertexCount; w++) {
+                if(w != p) order[k++] = w;
+            }
+            Arrays.sort(order, (w1, w2) -> compareAngle(vertices.get(w1), vertices.get(w2)));
+            int[] rank = new int[vertexCount];
+            for(int k = 0; k < order.length; k++) {
+                rank[order[k]] = k;
+            }
+
+            // Events of the edges: an edge is in the status while the ray is strictly between its start and end
+            ArrayList<ArrayList<int[]>> startEdges = new ArrayList<>();
+            ArrayList<ArrayList<int[]>> endEdges = new ArrayList<>();
+            for(int w = 0; w < vertexCount; w++) {
+                startEdges.add(null);
+                endEdges.add(null);
+            }
+            TreeSet<int[]> status = new TreeSet<>(edgeComparator());
+            directionX = 1.0;
+            directionY = 0.0;
+            for(int[] edge : edges) {
+                if(edge[0] == p || edge[1] == p) continue;
+                int orientation = Orientation.index(origin, vertices.get(edge[0]), vertices.get(edge[1]));
+                if(orientation == Orientation.COLLINEAR) continue;   // The edge is on a ray, so it doesn't cross the rays
+                int[] sweepEdge = orientation == Orientation.COUNTERCLOCKWISE ? new int[]{edge[0], edge[1]} : new int[]{edge[1], edge[0]};
+                addEvent(startEdges, sweepEdge[0], sweepEdge);
+                addEvent(endEdges, sweepEdge[1], sweepEdge);
+                if(rank[sweepEdge[0]] > rank[sweepEdge[1]]) {
+                    // The edge crosses the initial ray (angle 0)
+                    status.add(sweepEdge);
+                }
+            }
+
+            int groupStart = 0;
+            while(groupStart < order.length) {
+                int groupEnd = groupStart + 1;
+                while(groupEnd < order.length && isSameDirection(vertices.get(order[groupStart]), vertices.get(order[groupEnd]))) {
+                    groupEnd++;
+                }
+
+                Coordinate first = vertices.get(order[groupStart]);
+                directionX = first.x - origin.x;
+                directionY = first.y - origin.y;
+                for(int k = groupStart; k < groupEnd; k++) {
+                    removeEdges(status, endEdges.get(order[k]));
+                }
+
+                // Visibility of the vertices on the ray (ordered by the distance).
+                // The edges of the vertices on the ray aren't in the status, so only the nearest edge can block them
+                int[] nearestEdge = status.isEmpty() ? null : status.first();
+                double edgeDistance = nearestEdge == null ? Double.POSITIVE_INFINITY : getRayDistance(nearestEdge);
+                for(int k = groupStart; k < groupEnd; k++) {
+                    int w = order[k];
+                    Coordinate target = vertices.get(w);
+                    boolean isCrossed = edgeDistance < getRayDistance(target) - EPSILON;
+
+                    if(k == groupStart) {
+                        visible[w] = !isCrossed && isInCone(p, target);
+                    }
+                    else {
+                        int u = order[k - 1];
+                        if(!visible[u]) {
+                            visible[w] = false;
+                        }
+                        else if(isDegenerateVertex(u) || edgeDistance <= getRayDistance(vertices.get(u)) + EPSILON) {
+                            // The ray passes through a degenerate vertex (or an edge touches the ray at u)
+                            visible[w] = covers(origin, target);
+                        }
+                        else {
+                            visible[w] = !isCrossed && isInCone(u, target);
+                        }
+                    }
+                }
+
+                for(int k = groupStart; k < groupEnd; k++) {
+                    ArrayList<int[]> events = startEdges.get(order[k]);
+                    if(events != null) status.addAll(events);
+                }
+                groupStart = groupEnd;
+            }
+
+            return visible;
+        }
+
+        private void addEvent(ArrayList<ArrayList<int[]>> events, int vertex, int[] edge) {
+            if(events.get(vertex) == null) events.set(vertex, new ArrayList<>());
+            events.get(vertex).add(edge);
+        }
+
+        private void removeEdges(TreeSet<int[]> status, ArrayList<int[]> events) {
+            if(events == null) return;
+            for(int[] edge : events) {
+                if(!status.remove(edge)) {
+                    // In case: the order of the tree is broken by the numerical error
+                    status.removeIf(e -> e == edge);
+                }
+            }
+        }
+
+        /**
+         * Counterclockwise angle from the positive x axis around the origin, and the distance for the same angle.
+         * */
+        private int compareAngle(Coordinate a, Coordinate b) {
+            int halfA = getHalfPlane(a);
+            int halfB = getHalfPlane(b);
+            if(halfA != halfB) return Integer.compare(halfA, halfB);
+            int orientation = Orientation.index(origin, a, b);
+            if(orientation == Orientation.COUNTERCLOCKWISE) return -1;
+            if(orientation == Orientation.CLOCKWISE) return 1;
+            return Double.compare(origin.distance(a), origin.distance(b));
+        }
+
+        private int getHalfPlane(Coordinate a) {
+            double dy = a.y - origin.y;
+            double dx = a.x - origin.x;
+            return (dy > 0 || (dy == 0 && dx > 0)) ? 0 : 1;
+        }
+
+        private boolean isSameDirection(Coordinate a, Coordinate b) {
+            return getHalfPlane(a) == getHalfPlane(b) && Orientation.index(origin, a, b) == Orientation.COLLINEAR;
+        }
+
+        /**
+         * @return distance of a point on the current ray as a multiple of the direction vector
+         * */
+        private double getRayDistance(Coordinate point) {
+            double length2 = directionX * directionX + directionY * directionY;
+            return ((point.x - origin.x) * directionX + (point.y - origin.y) * directionY) / length2;
+        }
+
+        /**
+         * @return distance of the crossing point of an edge and the current ray as a multiple of the direction vector
+         * */
+        private double getRayDistance(int[] edge) {
+            Coordinate a = vertices.get(edge[0]);
+            Coordinate b = vertices.get(edge[1]);
+            double edgeX = b.x - a.x;
+            double edgeY = b.y - a.y;
+            double denominator = directionX * edgeY - directionY * edgeX;
+            if(denominator == 0) {
+                return Math.min(getRayDistance(a), getRayDistance(b));
+            }
+            return ((a.x - origin.x) * edgeY - (a.y - origin.y) * edgeX) / denominator;
+        }
+
+        /**
+         * Order of the edges crossing the current ray by the distance from the origin.
+         * The edges sharing a vertex on the ray are ordered by their other vertices.
+         * */
+        private Comparator<int[]> edgeComparator() {
+            return (e1, e2) -> {
+                if(e1 == e2) return 0;
+                double t1 = getRayDistance(e1);
+                double t2 = getRayDistance(e2);
+                if(Math.abs(t1 - t2) > EPSILON * Math.max(1.0, Math.abs(t1))) {
+                    return Double.compare(t1, t2);
+                }
+
+                int shared = -1;
+                int other1 = -1;
+                int other2 = -1;
+                for(int i = 0; i < 2; i++) {
+                    for(int j = 0; j < 2; j++) {
+                        if(e1[i] == e2[j]) {
+                            shared = e1[i];
+                            other1 = e1[1 - i];
+                            other2 = e2[1 - j];
+                        }
+                    }
+                }
+                if(shared != -1) {
+                    Coordinate sharedVertex = vertices.get(shared);
+                    Coordinate a = vertices.get(other1);
+                    Coordinate b = vertices.get(other2);
+                    // e1 is nearer if the origin and the other vertex of e2 are on the opposite sides of e1
+                    int originSide = Orientation.index(sharedVertex, a, origin);
+                    int otherSide = Orientation.index(sharedVertex, a, b);
+                    if(originSide != Orientation.COLLINEAR && otherSide != Orientation.COLLINEAR) {
+                        return originSide != otherSide ? -1 : 1;
+                    }
+                }
+                if(e1[0] != e2[0]) return Integer.compare(e1[0], e2[0]);
+                return Integer.compare(e1[1], e2[1]);
+            };
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package edu.pnu.stem.indoor.util.mapmatching;
 
 import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.movingobject.TrajectoryStore;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.index.ItemVisitor;
 
 /**
  *
@@ -12,11 +16,25 @@ import org.locationtech.jts.geom.LineString;
  */
 public class DirectIndoorMapMatching implements IndoorMapMatching {
     private IndoorFeatures indoorFeatures;
+    private final Envelope searchEnvelope = new Envelope();
+    private final CoveringCellVisitor coveringCellVisitor = new CoveringCellVisitor();
+    private boolean isAnalyticCircleArea = true;
 
     public DirectIndoorMapMatching(IndoorFeatures indoorFeatures) {
         setIndoorFeatures(indoorFeatures);
     }
 
+    /**
+     * Select the way to calculate the area of the Epsilon-sized buffer of a position that no cell space covers.
+     * If it is analytic (default), the area of an exact circle is calculated by CircleAreaUtils.
+     * Otherwise, the buffer polygon and the overlay operation of JTS are used (See IndoorFeatures.getCellSpaceIndexWithEpsilon(Coordinate, boolean)).
+     *
+     * @param isAnalytic Whether the overlapped area is calculated analytically
+     * */
+    public void setAnalyticCircleArea(boolean isAnalytic) {
+        this.isAnalyticCircleArea = isAnalytic;
+    }
+
     @Override
     public void setIndoorFeatures(IndoorFeatures indoorFeatures) {
         this.indoorFeatures = indoorFeatures;
@@ -34,39 +52,128 @@ public class DirectIndoorMapMatching implements IndoorMapMatching {
     }
 
     /**
-     *
+     * This function returns the DIMM result of each position of a trajectory.
+     * (See getDIMMResult(double[], double[], int, int, int[], int))
      * */
     public int[] getDIMMResult(LineString trajectory) {
         int[] dimmResult = new int[trajectory.getNumPoints()];
+        getDIMMResult(trajectory.getCoordinateSequence(), dimmResult);
+        return dimmResult;
+    }
 
-        for(int i = 0; i < trajectory.getNumPoints(); i++){
-            Coordinate coordinate = trajectory.getCoordinateN(i);
-            int[] candidateCellIndexArray = indoorFeatures.getCellSpaceIndex(coordinate);
-            if(candidateCellIndexArray.length == 1) {
-                dimmResult[i] = candidateCellIndexArray[0];
-            }
-            else {
-                /*
-                If there is more than one DIMM result for one coordinate
-                If there exist the same value as the DIMM result for the previous coordinate,
-                it is set to that value, otherwise it is decided as the first value
-                * */
-                dimmResult[i] = -1;
-                for (int candidateCellIndex : candidateCellIndexArray) {
-                    if (i > 0 && dimmResult[i - 1] == candidateCellIndex) {
-                        dimmResult[i] = candidateCellIndex;
-                        break;
-                    }
-                }
-                if(dimmResult[i] == -1) {
-                    dimmResult[i] = candidateCellIndexArray[0];
-                }
+    /**
+     * This function writes the DIMM result of each position of a coordinate sequence (e.g. a view of TrajectoryStore).
+     *
+     * @param positions positions of a trajectory
+     * @param dimmResult array to write the results (the length must be at least positions.size())
+     * */
+    public void getDIMMResult(CoordinateSequence positions, int[] dimmResult) {
+        int size = positions.size();
+        if(dimmResult.length < size)
+            throw new IllegalArgumentException("The result array is shorter than the positions: " + dimmResult.length + ", " + size);
+
+        int previousResult = -1;
+        for(int i = 0; i < size; i++) {
+            previousResult = getDIMMResult(positions.getX(i), positions.getY(i), previousResult);
+            dimmResult[i] = previousResult;
+        }
+    }
+
+    /**
+     * This function writes the DIMM result of each trajectory of a trajectory store to an array of all points of the store.
+     * The result of the p-th point of the store (See TrajectoryStore.getStart) is dimmResult[p].
+     *
+     * @param trajectoryStore trajectories
+     * @param dimmResult array to write the results (the length must be at least trajectoryStore.getNumPoints())
+     * */
+    public void getDIMMResult(TrajectoryStore trajectoryStore, int[] dimmResult) {
+        if(dimmResult.length < trajectoryStore.getNumPoints())
+            throw new IllegalArgumentException("The result array is shorter than the points of the store: " + dimmResult.length + ", " + trajectoryStore.getNumPoints());
+
+        double[] xs = trajectoryStore.getXs();
+        double[] ys = trajectoryStore.getYs();
+        for(int t = 0; t < trajectoryStore.getNumTrajectories(); t++) {
+            int start = trajectoryStore.getStart(t);
+            getDIMMResult(xs, ys, start, trajectoryStore.getNumPoints(t), dimmResult, start);
+        }
+    }
+
+    /**
+     * This function writes the DIMM result of each position of a trajectory given by x and y arrays.
+     * The cell spaces are found by the spatial index of the indoor features, and the scratch objects of this instance are reused,
+     * so no object is made for a position unless no cell space covers it (the Epsilon-sized buffer is used, See IndoorFeatures.getCellSpaceIndexWithEpsilon).
+     * Because of the scratch objects, an instance must not be used by several threads at the same time.
+     *
+     * If there is more than one cell space for a position and one of them is the DIMM result of the previous position, it is the result.
+     * Otherwise the result is the cell space of the smallest index. It is the same as getDIMMResult(LineString).
+     *
+     * @param xs x of the positions
+     * @param ys y of the positions
+     * @param start index of the first position in xs and ys
+     * @param length the number of positions
+     * @param dimmResult array to write the results
+     * @param resultStart index of dimmResult to write the result of the first position
+     * */
+    public void getDIMMResult(double[] xs, double[] ys, int start, int length, int[] dimmResult, int resultStart) {
+        if(start < 0 || length < 0 || start + length > xs.length || start + length > ys.length)
+            throw new IllegalArgumentException("The range of the positions is out of the arrays: " + start + ", " + length);
+        if(resultStart < 0 || resultStart + length > dimmResult.length)
+            throw new IllegalArgumentException("The range of the results is out of the array: " + resultStart + ", " + length);
+
+        int previousResult = -1;
+        for(int i = 0; i < length; i++) {
+            previousResult = getDIMMResult(xs[start + i], ys[start + i], previousResult);
+            dimmResult[resultStart + i] = previousResult;
+        }
+    }
+
+    private int getDIMMResult(double x, double y, int previousResult) {
+        coveringCellVisitor.reset(x, y, previousResult);
+        searchEnvelope.init(x, x, y, y);
+        indoorFeatures.queryCellSpaceIndex(searchEnvelope, coveringCellVisitor);
+
+        if(coveringCellVisitor.coveringCellCount == 0) {
+            return indoorFeatures.getCellSpaceIndexWithEpsilon(new Coordinate(x, y), isAnalyticCircleArea);
+        }
+        else if(coveringCellVisitor.isPreviousCovering) {
+            return previousResult;
+        }
+        else {
+            return coveringCellVisitor.minCellIndex;
+        }
+    }
+
+    /**
+     * Visitor of the spatial index that tests whether the cell spaces cover a position.
+     * */
+    private class CoveringCellVisitor implements ItemVisitor {
+        private final Coordinate coordinate = new Coordinate();
+        private int previousResult;
+        private int coveringCellCount;
+        private int minCellIndex;
+        private boolean isPreviousCovering;
+
+        void reset(double x, double y, int previousResult) {
+            coordinate.x = x;
+            coordinate.y = y;
+            this.previousResult = previousResult;
+            coveringCellCount = 0;
+            minCellIndex = Integer.MAX_VALUE;
+            isPreviousCovering = false;
+        }
+
+        @Override
+        public void visitItem(Object item) {
+            int cellIndex = (Integer) item;
+            if(indoorFeatures.getCellSpace(cellIndex).covers(coordinate)) {
+                coveringCellCount++;
+                minCellIndex = Math.min(minCellIndex, cellIndex);
+                isPreviousCovering |= cellIndex == previousResult;
             }
         }
-        return dimmResult;
     }
 
     int getDIMMResult(Coordinate coord) {
-        return indoorFeatures.getCellSpaceIndex(coord)[0];
+        return indoorFeatures.getCellSpaceIndex(coord, isAnalyticCircleArea)[0];
     }
 }
@@ -1,16 +1,34 @@
 package edu.pnu.stem.indoor.util.mapmatching;
 
+import edu.pnu.stem.indoor.feature.CellBufferOverlapMatrix;
+import edu.pnu.stem.indoor.feature.CellSpace;
 import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.Circle;
+import edu.pnu.stem.indoor.util.CircleAreaUtils;
+import edu.pnu.stem.indoor.util.mapmatching.etc.DenseProbabilityMatrix;
+import edu.pnu.stem.indoor.util.mapmatching.etc.FixedLagSmoother;
+import edu.pnu.stem.indoor.util.mapmatching.etc.FloatProbabilityMatrix;
+import edu.pnu.stem.indoor.util.mapmatching.etc.ForwardFilter;
 import edu.pnu.stem.indoor.util.mapmatching.etc.HiddenMarkovModel;
+import edu.pnu.stem.indoor.util.mapmatching.etc.ProbabilityMatrix;
+import edu.pnu.stem.indoor.util.mapmatching.etc.SparseProbabilityMatrix;
+import edu.pnu.stem.indoor.util.mapmatching.etc.ViterbiDecoder;
 import edu.pnu.stem.indoor.util.IndoorUtils;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.util.GeometricShapeFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
+ * HMMIndoorMapMatching performs the indoor map matching based on the hidden Markov model (HIMM).
  *
+ * To track many devices at the same time, make the A matrix (and the static B matrix and the initial state probability)
+ * once in a building-level instance and create a session for each device (See createSession).
+ * The sessions share the frozen model of the building-level instance,
+ * and each session keeps only its own state (initial state probability, changed rows of the B matrix and sliding window).
  *
  * Created by STEM_KTH on 2017-08-01.
  * @author Taehoon Kim, Pusan National University, STEM Lab.
@@ -18,41 +36,252 @@ import java.util.List;
 public class HMMIndoorMapMatching implements IndoorMapMatching {
     private double circleSize = 10;
     private double bufferLength = 10;
+    private boolean isSparseMatrixA = false;
+    private boolean isCompactMatrix = false;
+    private boolean isAnalyticCircleArea = true;
 
     private IndoorFeatures indoorFeatures;
     private DirectIndoorMapMatching dimm;
     private HiddenMarkovModel hmm;
-    private Geometry[] unionBufferGeom;
+    private ArrayList<ArrayList<Circle>> unionBufferCircles;    // Circles of the merged buffer geometry of each cell (null if there is no buffer)
     private int[] cellIndexCount;
-    private ArrayList<Geometry> tempRawCircleBufferGeom;
+    private ArrayList<Circle> tempRawCircleBuffer;
     private ArrayList<Integer> tempCellIndex;
+    private ViterbiDecoder viterbiDecoder;      // Scratch objects of the map matching of a window (reused for each positioning point)
+    private ForwardFilter windowFilter;
+    private int[] windowDimmResult = new int[0];
+    private int[] windowObservations = new int[0];
+    private int beamWidth = 0;                  // Beam mode of the forward algorithm (See setBeam)
+    private double beamThreshold = 0.0;
+    private long beamStepCount = 0;
+    private double prunedMassSum = 0.0;
+    private double maxPrunedMass = 0.0;
+    private double candidateCutMassSum = 0.0;
+    private double maxCandidateCutMass = 0.0;
 
     public HMMIndoorMapMatching(IndoorFeatures indoorFeatures){
+        this(indoorFeatures, createModel(indoorFeatures));
+    }
+
+    /**
+     * @param hmm The hidden Markov model of this instance (a new model, or a session of a frozen model)
+     * */
+    private HMMIndoorMapMatching(IndoorFeatures indoorFeatures, HiddenMarkovModel hmm) {
         dimm = new DirectIndoorMapMatching(indoorFeatures);
-        hmm = new HiddenMarkovModel(indoorFeatures.getCellSpaces().size());
-        unionBufferGeom = new Geometry[hmm.getNumState()];
-        for(int i = 0; i < unionBufferGeom.length; i++) {
-            unionBufferGeom[i] = null;
+        this.hmm = hmm;
+        unionBufferCircles = new ArrayList<>();
+        for(int i = 0; i < hmm.getNumState(); i++) {
+            unionBufferCircles.add(null);
         }
         cellIndexCount = new int[hmm.getNumState()];
-        tempRawCircleBufferGeom = new ArrayList<>();
+        tempRawCircleBuffer = new ArrayList<>();
         tempCellIndex = new ArrayList<>();
+        viterbiDecoder = hmm.createViterbiDecoder();
+        windowFilter = createForwardFilter();
         setIndoorFeatures(indoorFeatures);
     }
 
+    private static HiddenMarkovModel createModel(IndoorFeatures indoorFeatures) {
+        HiddenMarkovModel hmm = new HiddenMarkovModel(indoorFeatures.getCellSpaces().size());
+        hmm.setScaled(true);
+        return hmm;
+    }
+
+    /**
+     * Creates a map matching session for a tracked device.
+     * The model of this instance (A matrix, B matrix made by makeBMatrixCellBuffer and initial state probability) is frozen
+     * and shared by the session without copying (See HiddenMarkovModel.createSession),
+     * so make the matrices before creating the first session. After that, the matrices of this instance can't be changed.
+     * The session has its own initial state probability, B matrix rows of the circle buffer, sliding window and scratch buffers,
+     * and it starts with the settings of this instance (circle size, buffer length, area calculation, scaled forward and beam mode).
+     * A session must be used by one thread at a time. To use the sessions in several threads,
+     * create this instance with a frozen snapshot of the indoor features (See IndoorFeatures.createFrozenSnapshot).
+     *
+     * @return A new session that shares the model of this instance
+     * */
+    public HMMIndoorMapMatching createSession() {
+        if(hmm.isSession())
+            throw new IllegalStateException("Can't create a session of a session");
+
+        HMMIndoorMapMatching session = new HMMIndoorMapMatching(indoorFeatures, hmm.createSession());
+        session.circleSize = circleSize;
+        session.bufferLength = bufferLength;
+        session.isSparseMatrixA = isSparseMatrixA;
+        session.isCompactMatrix = isCompactMatrix;
+        session.setAnalyticCircleArea(isAnalyticCircleArea);
+        session.setBeam(beamWidth, beamThreshold);
+        return session;
+    }
+
+    /**
+     * Restores the state of a session to the shared model (initial state probability and B matrix)
+     * and removes the sliding window, so that the session can be reused for a new trajectory.
+     * */
+    public void resetSession() {
+        hmm.resetSession();
+        clearSlidingWindow();
+    }
+
     public void setCircleSize(double radius) {
         this.circleSize = radius;
     }
 
+    /**
+     * Select the storage of the A matrix made by the makeAMatrix functions.
+     * If it is sparse, only the connected cell pairs are stored (SparseProbabilityMatrix),
+     * and the forward and Viterbi algorithms visit only the connected cells.
+     * In this case, each makeAMatrix function starts from an empty matrix.
+     * Otherwise, the two-dimensional A matrix of the model is reused.
+     *
+     * @param isSparse Whether the A matrix is stored in sparse form
+     * */
+    public void setSparseMatrixA(boolean isSparse) {
+        this.isSparseMatrixA = isSparse;
+    }
+
+    /**
+     * Select the storage of the A and B matrices for a large building.
+     * If it is compact, the matrices are stored in FloatProbabilityMatrix (a flat array of single precision values),
+     * which needs half of the memory of the two-dimensional arrays and no array object per row.
+     * A sparse A matrix (See setSparseMatrixA) is still stored in sparse form.
+     * The B matrix is replaced by an empty matrix, so call it before making the matrices.
+     *
+     * @param isCompact Whether the matrices are stored in FloatProbabilityMatrix
+     * */
+    public void setCompactMatrix(boolean isCompact) {
+        if(hmm.isFrozen() || hmm.isSession())
+            throw new IllegalStateException("Can't change the storage of the matrices shared by the sessions");
+
+        this.isCompactMatrix = isCompact;
+        if(isCompact) {
+            hmm.setMatrixB(new FloatProbabilityMatrix(hmm.getNumState()));
+        }
+        else {
+            hmm.setMatrixB(new double[hmm.getNumState()][hmm.getNumState()]);
+        }
+    }
+
+    /**
+     * Select the forward algorithm used to compare the candidates.
+     * If it is scaled (default), the candidates are compared by the log-likelihood,
+     * so a long trajectory does not underflow to zero probability and fall back to DIMM.
+     * Otherwise, the raw probability of the forward algorithm is compared.
+     *
+     * @param isScaled Whether the scaled forward algorithm is used
+     * */
+    public void setScaledForward(boolean isScaled) {
+        hmm.setScaled(isScaled);
+        windowFilter = createForwardFilter();
+    }
+
+    /**
+     * Select the beam mode of the forward algorithm for large buildings.
+     * After each observation, only the beamWidth most probable cells (or the cells above relativeThreshold * the maximum probability)
+     * are kept, so the forward step visits only the rows of the kept cells instead of all cells.
+     * The beam of each positioning point is seeded with its candidate cells (See getCandidateIndexArray and ForwardFilter.setCandidateStates):
+     * the predicted and the observation probabilities are calculated only for the candidate cells, so a step doesn't visit all cells.
+     * The predicted probability of the cells outside the candidate set is dropped, and it is accumulated separately (See getCandidateCutMassSum).
+     * The pruned probability mass of the top-K / threshold beam is accumulated (See getPrunedMassSum).
+     * If both values are zero (default), no cell is pruned.
+     *
+     * @param beamWidth The maximum number of cells kept (K), or 0 for no limit
+     * @param relativeThreshold The relative threshold in [0, 1], or 0 for no threshold
+     * */
+    public void setBeam(int beamWidth, double relativeThreshold) {
+        if(beamWidth < 0)
+            throw new IllegalArgumentException("beam width is negative: " + beamWidth);
+        if(relativeThreshold < 0 || relativeThreshold > 1)
+            throw new IllegalArgumentException("relative threshold must be in [0, 1]: " + relativeThreshold);
+
+        this.beamWidth = beamWidth;
+        this.beamThreshold = relativeThreshold;
+        windowFilter = createForwardFilter();
+    }
+
+    /**
+     * @return The number of observations pushed to the forward algorithm in the beam mode since the last resetBeamStatistics
+     * */
+    public long getBeamStepCount() {
+        return beamStepCount;
+    }
+
+    /**
+     * @return The sum of the fractions of the probability mass pruned at each step in the beam mode since the last resetBeamStatistics
+     * */
+    public double getPrunedMassSum() {
+        return prunedMassSum;
+    }
+
+    /**
+     * @return The largest fraction of the probability mass pruned at a step in the beam mode since the last resetBeamStatistics
+     * */
+    public double getMaxPrunedMass() {
+        return maxPrunedMass;
+    }
+
+    /**
+     * @return The sum of the fractions of the predicted probability mass outside the candidate cells at each step in the beam mode
+     *         since the last resetBeamStatistics
+     * */
+    public double getCandidateCutMassSum() {
+        return candidateCutMassSum;
+    }
+
+    /**
+     * @return The largest fraction of the predicted probability mass outside the candidate cells at a step in the beam mode
+     *         since the last resetBeamStatistics
+     * */
+    public double getMaxCandidateCutMass() {
+        return maxCandidateCutMass;
+    }
+
+    public void resetBeamStatistics() {
+        beamStepCount = 0;
+        prunedMassSum = 0.0;
+        maxPrunedMass = 0.0;
+        candidateCutMassSum = 0.0;
+        maxCandidateCutMass = 0.0;
+    }
+
+    private ForwardFilter createForwardFilter() {
+        ForwardFilter filter = hmm.createForwardFilter();
+        filter.setBeam(beamWidth, beamThreshold);
+        return filter;
+    }
+
+    /**
+     * Push an observation to the forward filter and accumulate the pruned probability mass
+     * and the probability mass outside the candidate cells in the beam mode.
+     * */
+    private void pushObservation(ForwardFilter filter, int observation) {
+        filter.push(observation);
+        if(filter.isBeam()) {
+            beamStepCount++;
+            prunedMassSum += filter.getLastPrunedMass();
+            maxPrunedMass = Math.max(maxPrunedMass, filter.getLastPrunedMass());
+            candidateCutMassSum += filter.getLastCandidateCutMass();
+            maxCandidateCutMass = Math.max(maxCandidateCutMass, filter.getLastCandidateCutMass());
+        }
+    }
+
+    /**
+     * Select the way to calculate the area where a circle buffer overlaps with a cell.
+     * If it is analytic (default), the area of an exact circle is calculated by CircleAreaUtils without the overlay operation.
+     * Otherwise, the circle is approximated by a polygon and the area is calculated by the overlay operation of JTS.
+     * It is used to set the initial probability and the B matrix based on positioning reference buffer,
+     * and to find the cell space of a position that no cell space covers with the Epsilon-sized buffer (also in the DIMM results used as observations).
+     *
+     * @param isAnalytic Whether the overlapped area is calculated analytically
+     * */
+    public void setAnalyticCircleArea(boolean isAnalytic) {
+        this.isAnalyticCircleArea = isAnalytic;
+        dimm.setAnalyticCircleArea(isAnalytic);
+    }
+
 
     public void clear() {
         hmm.clear();
-        for(int i = 0; i < unionBufferGeom.length; i++) {
-            unionBufferGeom[i] = null;
-        }
-        cellIndexCount = new int[hmm.getNumState()];
-        tempRawCircleBufferGeom.clear();
-        tempCellIndex.clear();
+        clearSlidingWindow();
     }
 
     /**
@@ -61,11 +290,15 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      * */
     public void clearOnlyBMatrix() {
         hmm.clearOnlyBMatrix();
-        for(int i = 0; i < unionBufferGeom.length; i++) {
-            unionBufferGeom[i] = null;
+        clearSlidingWindow();
+    }
+
+    private void clearSlidingWindow() {
+        for(int i = 0; i < unionBufferCircles.size(); i++) {
+            unionBufferCircles.set(i, null);
         }
-        cellIndexCount = new int[hmm.getNumState()];
-        tempRawCircleBufferGeom.clear();
+        Arrays.fill(cellIndexCount, 0);
+        tempRawCircleBuffer.clear();
         tempCellIndex.clear();
     }
 
@@ -82,9 +315,21 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
 
         boolean isSet = false;
         while (!isSet) {
-            Polygon circleBuffer = (Polygon) startP.buffer(candidateRadius);
-            for(int i = 0; i < indoorFeatures.getCellSpaces().size(); i++) {
-                if(indoorFeatures.getCellSpace(i).getGeom().intersects(circleBuffer)) {
+            if(isAnalyticCircleArea) {
+                Circle circle = new Circle(startP.getCoordinate(), candidateRadius);
+                for(int i : indoorFeatures.queryCellSpaceIndex(circle.getEnvelope())) {
+                    CellSpace cellSpace = indoorFeatures.getCellSpace(i);
+                    double area = CircleAreaUtils.getIntersectionArea(cellSpace.getGeom(),
+                            cellSpace.getPreparedGeom().getPointLocator(), Collections.singletonList(circle));
+                    if(area > 0) {
+                        initStateP[i] = area;
+                        isSet = true;
+                    }
+                }
+            }
+            else {
+                Polygon circleBuffer = (Polygon) startP.buffer(candidateRadius);
+                for(int i : indoorFeatures.getIntersectingCellSpaceIndex(circleBuffer)) {
                     initStateP[i] = indoorFeatures.getCellSpace(i).getGeom().intersection(circleBuffer).getArea();
                     isSet = true;
                 }
@@ -98,24 +343,27 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      *  How to set the state transition probability matrix (A matrix) based on connectivity of indoor graph
      * */
     public void makeAMatrixByTopology() {
-        double[][] matrixA = hmm.getMatrixA();
-
+        checkMatrixAChangeable();
         boolean[][] topologyGraph = indoorFeatures.getTopologyGraph();
+        ProbabilityMatrix matrixA = getMatrixAForBuild(topologyGraph);
+
         for (int i = 0; i < topologyGraph.length; i++) {
             int connectCount = 0;
             for(int j = 0; j < topologyGraph.length; j++) {
                 if(topologyGraph[i][j]) {
-                    matrixA[i][j] = 1;
+                    matrixA.set(i, j, 1);
                     if(i != j) {
                         connectCount++;
                     }
                 }
             }
-            if(connectCount == 0) matrixA[i][i] = 0.0;
+            if(connectCount == 0) matrixA.set(i, i, 0.0);
         }
 
         // normalization
-        matrixA = normalization(matrixA);
+        for (int i = 0; i < topologyGraph.length; i++) {
+            matrixA.normalizeRow(i);
+        }
 
         hmm.setMatrixA(matrixA);
     }
@@ -128,26 +376,27 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      * */
     public void makeAMatrixByStaticP(final double sigma) {
         if(sigma > 1) return;
-        double[][] matrixA = hmm.getMatrixA();
+        checkMatrixAChangeable();
 
         int doorCount;
         int connectCount;
         boolean[][] topologyGraph = indoorFeatures.getTopologyGraph();
+        ProbabilityMatrix matrixA = getMatrixAForBuild(topologyGraph);
         for (int i = 0; i < topologyGraph.length; i++) {
             connectCount = 0;
             doorCount = indoorFeatures.getCellSpace(i).getDoors().size();
             for(int j = 0; j < topologyGraph.length; j++) {
                 if(topologyGraph[i][j]) {
                     if(i == j) {
-                        matrixA[i][j] = sigma;
+                        matrixA.set(i, j, sigma);
                     }
                     else {
-                        matrixA[i][j] = (1.0 - sigma) / doorCount;
+                        matrixA.set(i, j, (1.0 - sigma) / doorCount);
                         connectCount++;
                     }
                 }
             }
-            if(connectCount == 0) matrixA[i][i] = 0.0;
+            if(connectCount == 0) matrixA.set(i, i, 0.0);
         }
 
         hmm.setMatrixA(matrixA);
@@ -158,8 +407,7 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      *  Set the probability value using the shortest hop count between two cells
      * */
     public void makeAMatrixByDistance() {
-        double[][] matrixA = hmm.getMatrixA();
-
+        checkMatrixAChangeable();
         boolean[][] topologyGraph = indoorFeatures.getTopologyGraph();
         int[][] hopCount = new int[topologyGraph.length][topologyGraph.length];
         for (int i = 0; i < topologyGraph.length; i++) {
@@ -183,51 +431,97 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
             }
         }
 
+        boolean[][] reachableGraph = new boolean[hopCount.length][hopCount.length];
+        for(int i = 0; i < hopCount.length; i++) {
+            for (int j = 0; j < hopCount.length; j++) {
+                reachableGraph[i][j] = hopCount[i][j] != Integer.MAX_VALUE;
+            }
+        }
+        ProbabilityMatrix matrixA = getMatrixAForBuild(reachableGraph);
+
         // TODO: The probability value to be set is 1 or less. So, the normalization is not performed....Is it necessary?
         int connectCount;
         for(int i = 0; i < hopCount.length; i++) {
             connectCount = 0;
             for (int j = 0; j < hopCount.length; j++) {
                 if(hopCount[i][j] != Integer.MAX_VALUE) {
-                    matrixA[i][j] = 1.0 / hopCount[i][j];
+                    matrixA.set(i, j, 1.0 / hopCount[i][j]);
                     if(i != j)
                         connectCount++;
                 }
             }
-            if(connectCount == 0) matrixA[i][i] = 0.0;
+            if(connectCount == 0) matrixA.set(i, i, 0.0);
         }
 
         hmm.setMatrixA(matrixA);
     }
 
+    /**
+     * The A matrix of a frozen model is shared by the sessions, so it is checked before the matrix is calculated.
+     * */
+    private void checkMatrixAChangeable() {
+        if(hmm.isFrozen() || hmm.isSession())
+            throw new IllegalStateException("Can't change the A matrix shared by the sessions");
+    }
+
+    /**
+     * Returns the A matrix to be filled by the makeAMatrix functions.
+     * The sparse matrix is newly created with the given structure,
+     * and the two-dimensional A matrix of the model is reused (without initialization) otherwise.
+     *
+     * @param pattern The cell pairs that can have a transition probability
+     * */
+    private ProbabilityMatrix getMatrixAForBuild(boolean[][] pattern) {
+        if(isSparseMatrixA) {
+            return new SparseProbabilityMatrix(pattern);
+        }
+        if(isCompactMatrix) {
+            // The float matrix of the model is reused to avoid allocating a large matrix again
+            ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+            if(matrixA instanceof FloatProbabilityMatrix) {
+                matrixA.clear();
+                return matrixA;
+            }
+            return new FloatProbabilityMatrix(hmm.getNumState());
+        }
+
+        double[][] matrixA = hmm.getMatrixA();
+        if(matrixA == null) {
+            matrixA = new double[hmm.getNumState()][hmm.getNumState()];
+        }
+        return new DenseProbabilityMatrix(matrixA);
+    }
+
     /**
      *  How to Set Observation Probability Matrix (B matrix) Based on Cell Geometry Buffer Geometry
      *  The area where the buffer geometry overlaps with another cell (or the same cell) is set as the observation probability value
+     *  The normalized matrix is cached in IndoorFeatures for each buffer length (See IndoorFeatures.getCellBufferOverlapMatrix),
+     *  so the overlay operations are performed only once in the repeated experiments with the same buffer length.
+     *  All entries of the B matrix are replaced.
+     *  To share the B matrix with sessions, call it before creating the sessions (See createSession).
      *
      * @param bufferLength The length of the buffer to apply
      * */
     public void makeBMatrixCellBuffer(final double bufferLength) {
         this.bufferLength = bufferLength;
-        double[][] matrixB = hmm.getMatrixB();
-
-        for(int i = 0; i < hmm.getNumState(); i++) {
-            Geometry aGeom = indoorFeatures.getCellSpace(i).getGeom().buffer(bufferLength);
-
-            for(int j = 0; j < hmm.getNumState(); j++) {
-                Polygon bGeom = indoorFeatures.getCellSpace(j).getGeom();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        CellBufferOverlapMatrix overlapMatrix = indoorFeatures.getCellBufferOverlapMatrix(bufferLength);
 
-                if(i == j) matrixB[i][j] = bGeom.getArea();
-                else {
-                    if(aGeom.intersects(bGeom)) {
-                        matrixB[i][j] = aGeom.intersection(bGeom).getArea();
-                    }
+        double[][] denseMatrixB = hmm.getMatrixB();
+        if(denseMatrixB != null) {
+            for(int i = 0; i < hmm.getNumState(); i++) {
+                overlapMatrix.copyRowTo(i, denseMatrixB[i]);
+            }
+        }
+        else {
+            // Only the stored entries of the sparse matrix are written (e.g. to the float B matrix of the compact mode)
+            matrixB.clear();
+            for(int i = 0; i < hmm.getNumState(); i++) {
+                for(int k = overlapMatrix.getRowStart(i); k < overlapMatrix.getRowEnd(i); k++) {
+                    matrixB.set(i, overlapMatrix.getColumn(k), overlapMatrix.getValue(k));
                 }
             }
         }
-        // normalization
-        matrixB = normalization(matrixB);
-
-        hmm.setMatrixB(matrixB);
     }
 
     /**
@@ -241,22 +535,20 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      * @param radius The radius of the original buffer to apply
      * */
     public void makeBMatrixCircleBuffer(final Coordinate lastCoord, final double radius) {
-        double[][] matrixB = hmm.getMatrixB();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
 
-        Polygon circleBuffer = createCircle(lastCoord, radius);
+        Circle circleBuffer = new Circle(lastCoord, radius);
         // TODO: Implicitly select a cell index. Need to change to choose by probabilistic method
-        int cellIndex = indoorFeatures.getCellSpaceIndex(lastCoord)[0];
+        int cellIndex = indoorFeatures.getCellSpaceIndex(lastCoord, isAnalyticCircleArea)[0];
 
-        if(unionBufferGeom[cellIndex] == null) {
-            unionBufferGeom[cellIndex] = circleBuffer;
+        if(unionBufferCircles.get(cellIndex) == null) {
+            setUnionBuffer(cellIndex, circleBuffer);
         }
         else {
-            unionBufferGeom[cellIndex] = unionBufferGeom[cellIndex].union(circleBuffer);
+            unionBufferCircles.get(cellIndex).add(circleBuffer);
         }
 
-        matrixB = getUpdatedMatrixB(matrixB, cellIndex);
-
-        hmm.setMatrixB(matrixB);
+        updateMatrixB(matrixB, cellIndex);
     }
 
     /**
@@ -269,18 +561,18 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      * @param windowSize The size of sliding window
      * */
     public void makeBMatrixCircleBuffer(final Coordinate lastCoord, final double radius, final int windowSize) {
-        double[][] matrixB = hmm.getMatrixB();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
 
-        Polygon circleBuffer = createCircle(lastCoord, radius);
+        Circle circleBuffer = new Circle(lastCoord, radius);
         // TODO: Implicitly select a cell index. Need to change to choose by probabilistic method
-        int lastIndex = indoorFeatures.getCellSpaceIndex(lastCoord)[0];
+        int lastIndex = indoorFeatures.getCellSpaceIndex(lastCoord, isAnalyticCircleArea)[0];
 
-        if(tempRawCircleBufferGeom.size() < windowSize) {
-            if(unionBufferGeom[lastIndex] == null) {
-                unionBufferGeom[lastIndex] = circleBuffer;
+        if(tempRawCircleBuffer.size() < windowSize) {
+            if(unionBufferCircles.get(lastIndex) == null) {
+                setUnionBuffer(lastIndex, circleBuffer);
             }
             else {
-                unionBufferGeom[lastIndex] = unionBufferGeom[lastIndex].union(circleBuffer);
+                unionBufferCircles.get(lastIndex).add(circleBuffer);
             }
         }
         else {
@@ -291,71 +583,123 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
             // 이외의 경우 -> 첫번째 인덱스에 해당되는 객체만 업데이트
             int firstIndex = tempCellIndex.get(0);
             tempCellIndex.remove(0);
-            tempRawCircleBufferGeom.remove(0);
+            tempRawCircleBuffer.remove(0);
 
-            if(unionBufferGeom[lastIndex] == null) {
-                unionBufferGeom[lastIndex] = circleBuffer;
+            if(unionBufferCircles.get(lastIndex) == null) {
+                setUnionBuffer(lastIndex, circleBuffer);
             }
             else if(cellIndexCount[lastIndex] == 1) {
                 if(lastIndex != firstIndex) {
-                    unionBufferGeom[lastIndex] = unionBufferGeom[lastIndex].union(circleBuffer);
+                    unionBufferCircles.get(lastIndex).add(circleBuffer);
                 }
                 else {
-                    unionBufferGeom[lastIndex] = circleBuffer;
+                    setUnionBuffer(lastIndex, circleBuffer);
                 }
             }
             else {
-                unionBufferGeom[lastIndex] = getUpdatedGeometry(lastIndex);
+                unionBufferCircles.set(lastIndex, getUpdatedCircles(lastIndex));
             }
             if(cellIndexCount[firstIndex] == 1) {
                 if(lastIndex != firstIndex) {
-                    unionBufferGeom[firstIndex] = null;
+                    unionBufferCircles.set(firstIndex, null);
                     for(int j = 0; j < hmm.getNumState(); j++) {
-                        matrixB[firstIndex][j] = 0;
+                        matrixB.set(firstIndex, j, 0);
                     }
                 }
             }
             else {
-                unionBufferGeom[firstIndex] = getUpdatedGeometry(firstIndex);
-                matrixB = getUpdatedMatrixB(matrixB, firstIndex);
+                unionBufferCircles.set(firstIndex, getUpdatedCircles(firstIndex));
+                updateMatrixB(matrixB, firstIndex);
             }
             cellIndexCount[firstIndex]--;
         }
 
-        matrixB = getUpdatedMatrixB(matrixB, lastIndex);
+        updateMatrixB(matrixB, lastIndex);
 
-        tempRawCircleBufferGeom.add(circleBuffer);
+        tempRawCircleBuffer.add(circleBuffer);
         tempCellIndex.add(lastIndex);
         cellIndexCount[lastIndex]++;
-        hmm.setMatrixB(matrixB);
     }
 
-    public Geometry getUpdatedGeometry(int cellIndex) {
-        Geometry updatedGeom = null;
-        boolean isFirst = true;
+    private void setUnionBuffer(int cellIndex, Circle circleBuffer) {
+        ArrayList<Circle> circles = new ArrayList<>();
+        circles.add(circleBuffer);
+        unionBufferCircles.set(cellIndex, circles);
+    }
+
+    /**
+     * @param cellIndex cell index
+     * @return The circles in the sliding window whose positioning coordinates belong to the cell (null if there is no circle)
+     * */
+    private ArrayList<Circle> getUpdatedCircles(int cellIndex) {
+        ArrayList<Circle> updatedCircles = null;
         for(int i = 0; i < tempCellIndex.size(); i++) {
             if(tempCellIndex.get(i).equals(cellIndex)) {
-                if(isFirst) {
-                    updatedGeom = tempRawCircleBufferGeom.get(i);
-                    isFirst = false;
-                }
-                else {
-                    updatedGeom = updatedGeom.union(tempRawCircleBufferGeom.get(i));
+                if(updatedCircles == null) {
+                    updatedCircles = new ArrayList<>();
                 }
+                updatedCircles.add(tempRawCircleBuffer.get(i));
             }
         }
-        return updatedGeom;
+        return updatedCircles;
+    }
+
+    public Geometry getUpdatedGeometry(int cellIndex) {
+        return getUnionGeometry(getUpdatedCircles(cellIndex));
     }
 
     public double[][] getUpdatedMatrixB(double[][] matrixB, int cell_index) {
-        for(int j = 0; j < hmm.getNumState(); j++) {
-            Polygon cellGeom = indoorFeatures.getCellSpace(j).getGeom();
-            if(cellGeom.intersects(unionBufferGeom[cell_index])) {
-                matrixB[cell_index][j] = cellGeom.intersection(unionBufferGeom[cell_index]).getArea();
+        updateMatrixB(new DenseProbabilityMatrix(matrixB), cell_index);
+        return matrixB;
+    }
+
+    /**
+     * Set the row of a cell of the B matrix by the area where the union buffer of the cell overlaps with each cell (normalized).
+     *
+     * @param matrixB B matrix (any storage form)
+     * @param cell_index index of the cell
+     * */
+    private void updateMatrixB(ProbabilityMatrix matrixB, int cell_index) {
+        ArrayList<Circle> circles = unionBufferCircles.get(cell_index);
+        if(isAnalyticCircleArea) {
+            Envelope envelope = new Envelope();
+            for(Circle circle : circles) {
+                envelope.expandToInclude(circle.getEnvelope());
+            }
+            for(int j : indoorFeatures.queryCellSpaceIndex(envelope)) {
+                CellSpace cellSpace = indoorFeatures.getCellSpace(j);
+                double area = CircleAreaUtils.getIntersectionArea(cellSpace.getGeom(), cellSpace.getPreparedGeom().getPointLocator(), circles);
+                if(area > 0) {
+                    matrixB.set(cell_index, j, area);
+                }
             }
         }
-        matrixB = normalization(matrixB, cell_index);
-        return matrixB;
+        else {
+            Geometry unionBufferGeom = getUnionGeometry(circles);
+            for(int j : indoorFeatures.getIntersectingCellSpaceIndex(unionBufferGeom)) {
+                Polygon cellGeom = indoorFeatures.getCellSpace(j).getGeom();
+                matrixB.set(cell_index, j, cellGeom.intersection(unionBufferGeom).getArea());
+            }
+        }
+        matrixB.normalizeRow(cell_index);
+    }
+
+    /**
+     * Merges the circle buffer polygons in the order of the circles.
+     *
+     * @param circles circles to merge
+     * @return merged buffer geometry (null if there is no circle)
+     * */
+    private Geometry getUnionGeometry(List<Circle> circles) {
+        if(circles == null)
+            return null;
+
+        Geometry unionGeom = null;
+        for(Circle circle : circles) {
+            Polygon circleBuffer = createCircle(circle.getCenter(), circle.getRadius());
+            unionGeom = (unionGeom == null) ? circleBuffer : unionGeom.union(circleBuffer);
+        }
+        return unionGeom;
     }
 
     @Override
@@ -385,20 +729,98 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
     private ArrayList<Integer> getRealTimeMapMatchingResult(LineString trajectory) {
         ArrayList<Integer> mapMatchingIndexList = new ArrayList<>();
         ArrayList<Coordinate> coordinates = new ArrayList<>();
+        // The map matching results are only appended, so the forward variables are updated incrementally
+        ForwardFilter filter = createForwardFilter();
 
         coordinates.add(trajectory.getCoordinateN(0));
         for(int pointIndex = 1; pointIndex < trajectory.getNumPoints(); pointIndex++) {
             coordinates.add(trajectory.getCoordinateN(pointIndex));
             LineString tempTrajectory = IndoorUtils.createLineString(coordinates);
-            int observationResult = realTimeMapMatching(tempTrajectory, mapMatchingIndexList);
+            int observationResult = realTimeMapMatching(tempTrajectory, mapMatchingIndexList, filter);
             mapMatchingIndexList.add(observationResult);
             if(observationResult == -1)
                 break;
+            pushObservation(filter, observationResult);
         }
 
         return mapMatchingIndexList;
     }
 
+    /**
+     * Create symbolic indoor map matching results by fixed-lag smoothing (forward-backward algorithm of HMM)
+     * The DIMM result of each positioning point is used as the observation,
+     * and the result of a positioning point is decided when the next lag positioning points are given:
+     * the candidate cell with the maximum probability smoothed by the observations up to lag points later.
+     * So the results have a latency of lag positioning points, but the decisions near doors are corrected by the following positions.
+     * The matrices of the hidden Markov model must be set before (e.g. setInitalProbability, makeAMatrixByTopology and makeBMatrixCellBuffer).
+     *
+     * @param trajectory The trajectory
+     * @param lag The number of following positioning points used to decide each positioning point
+     * @return cell space label of each positioning point
+     * */
+    public String[] getSmoothedMapMatchingResult(LineString trajectory, int lag) {
+        String[] mapMatchingResult = new String[trajectory.getNumPoints()];
+        int[] smoothedResult = getSmoothedMapMatchingIndexes(trajectory, lag);
+        for(int i = 0; i < smoothedResult.length; i++) {
+            mapMatchingResult[i] = indoorFeatures.getCellSpaceLabel(smoothedResult[i]);
+        }
+
+        return mapMatchingResult;
+    }
+
+    private int[] getSmoothedMapMatchingIndexes(LineString trajectory, int lag) {
+        int size = trajectory.getNumPoints();
+        int[] observations = new int[size];
+        int[] smoothedResult = new int[size];
+        dimm.getDIMMResult(trajectory.getCoordinateSequence(), observations);
+
+        // Each positioning point is decided when lag positioning points are pushed after it,
+        // and the remaining points are decided at the end of the trajectory
+        FixedLagSmoother smoother = hmm.createFixedLagSmoother(lag);
+        for(int pointIndex = 0; pointIndex < size; pointIndex++) {
+            int step = smoother.push(observations[pointIndex]);
+            if(step >= 0) {
+                smoothedResult[step] = selectSmoothedCandidate(trajectory, step, smoother.getSmoothed(step), observations[step]);
+            }
+        }
+        for(int step = Math.max(size - lag, 0); step < size; step++) {
+            smoothedResult[step] = selectSmoothedCandidate(trajectory, step, smoother.getSmoothed(step), observations[step]);
+        }
+
+        return smoothedResult;
+    }
+
+    /**
+     * Select the cell index with the maximum smoothed probability from the candidate set of a positioning point.
+     * The radius of the candidate set is the same as the real-time map matching:
+     * the larger value of the buffer length and the distance from the previous positioning point (doubled until the set isn't empty).
+     *
+     * @param trajectory The trajectory
+     * @param pointIndex The index of the positioning point
+     * @param smoothed The smoothed probability of each cell of the positioning point
+     * @param defaultResult The result if no candidate has a probability greater than zero (e.g. DIMM result)
+     * @return selected cell index
+     * */
+    private int selectSmoothedCandidate(LineString trajectory, int pointIndex, double[] smoothed, int defaultResult) {
+        Point point = trajectory.getPointN(pointIndex);
+        double candidateRadius = bufferLength;
+        if(pointIndex > 0) {
+            candidateRadius = Math.max(bufferLength, trajectory.getPointN(pointIndex - 1).distance(point));
+        }
+        int[] candidateIndexes = getNonEmptyCandidateIndexArray(point, candidateRadius);
+
+        int selectedResult = defaultResult;
+        double maxProbability = 0.0;
+        for (int candidateCellIndex : candidateIndexes) {
+            if (smoothed[candidateCellIndex] > maxProbability) {
+                maxProbability = smoothed[candidateCellIndex];
+                selectedResult = candidateCellIndex;
+            }
+        }
+
+        return selectedResult;
+    }
+
     /**
      * Create symbolic indoor map matching results
      * Map matching is performed using the map matching result generated so far with respect to the input position
@@ -413,7 +835,7 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
         for(int i = 0; i < observationLabelList.size(); i++) {
             observations[i] = indoorFeatures.getCellSpaceIndex(observationLabelList.get(i));
         }
-        int cellSpaceIndex = realTimeMapMatching(endPoint, observations, radius);
+        int cellSpaceIndex = realTimeMapMatching(endPoint, null, observations, observations.length, radius);
 
         if(cellSpaceIndex == -1) {
             mapMatchingResult = "Impossible";
@@ -435,25 +857,36 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      * */
     public String getMapMatchingResult(Point endPoint, Geometry trajectory, double radius) {
         String mapMatchingResult;
-        int[] dimmResult = null, observations = null;
+        int[] observations = null;
+        int observationLength = 0;
 
         if(trajectory.getNumPoints() == 0) {
             setInitalProbability(endPoint);
             observations = new int[1];
+            observationLength = 1;
         }
         else if(trajectory instanceof Point) {
             setInitalProbability((Point) trajectory);
-            observations = new int[]{indoorFeatures.getCellSpaceIndex(trajectory.getCoordinate())[0],0};
+            observations = new int[]{indoorFeatures.getCellSpaceIndex(trajectory.getCoordinate(), isAnalyticCircleArea)[0],0};
+            observationLength = 2;
         }
         else if(trajectory instanceof LineString){
             Point startP = ((LineString) trajectory).getStartPoint();
             setInitalProbability(startP);
 
-            dimmResult = dimm.getDIMMResult((LineString) trajectory);
-            observations = hmm.decode(dimmResult);
+            // The DIMM result and the decoded path are written to the scratch arrays (reused for each positioning point)
+            CoordinateSequence positions = ((LineString) trajectory).getCoordinateSequence();
+            observationLength = positions.size();
+            if(windowDimmResult.length < observationLength) {
+                windowDimmResult = new int[observationLength];
+                windowObservations = new int[observationLength];
+            }
+            dimm.getDIMMResult(positions, windowDimmResult);
+            viterbiDecoder.decode(windowDimmResult, 0, observationLength, windowObservations);
+            observations = windowObservations;
         }
 
-        int cellSpaceIndex = realTimeMapMatching(endPoint, observations, radius);
+        int cellSpaceIndex = realTimeMapMatching(endPoint, getPositions(trajectory), observations, observationLength, radius);
         //int cellSpaceIndex = observations[observations.length - 1];
 
         if(cellSpaceIndex == -1) {
@@ -469,35 +902,38 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
     /**
      * A function of performing map matching on the input positioning coordinates,
      * after all the matrices of the hidden Markov model are set.
+     * In the beam mode, the previous observations are calculated only for the candidate set of their positioning points
+     * (the radius is the larger value of the given radius and the distance from the previous positioning point).
      *
      * @param endPoint The input position
+     * @param positions The positioning points of the previous observations (null if they aren't known)
      * @param observations The map matching result (cell index) generated so far
+     * @param observationLength The number of values of observations used (the last one is replaced by the candidates)
      * @param radius The radius of the original buffer to apply
      * */
-    private int realTimeMapMatching(Point endPoint, int[] observations, double radius) {
+    private int realTimeMapMatching(Point endPoint, CoordinateSequence positions, int[] observations, int observationLength, double radius) {
         // Generate a candidate set for the last positioning point
-        int[] candidateIndexes = getCandidateIndexArray(endPoint, radius);
-        double candidateRadius = radius;
-        while(candidateIndexes.length == 0) {
-            // If the candidate set is not generated by the size of the currently set radius,
-            // the radius is doubled and the iteration is repeated until the candidate set is generated.
-            candidateRadius *= 2;
-            candidateIndexes = getCandidateIndexArray(endPoint, candidateRadius);
-        }
+        // If the candidate set is not generated by the size of the currently set radius,
+        // the radius is doubled and the iteration is repeated until the candidate set is generated.
+        int[] candidateIndexes = getNonEmptyCandidateIndexArray(endPoint, radius);
 
         // Select a cell index from candidate set by property of HMM evaluate (using Forward algorithm) results
-        int selectedResult = -1;
-        double maxProbability = 0.0;
-        for (Integer candidateCellIndex : candidateIndexes) {
-            observations[observations.length - 1] = candidateCellIndex;
-            double temporalProbability = hmm.evaluate(observations);
-            if (temporalProbability > maxProbability) { // Grid way with forward algorithm
-                maxProbability = temporalProbability;
-                selectedResult = candidateCellIndex;
+        // The forward variables of the previous observations are shared by all candidates
+        ForwardFilter filter = windowFilter;
+        filter.reset();
+        for(int i = 0; i < observationLength - 1; i++) {
+            if(filter.isBeam() && positions != null && i < positions.size()) {
+                Point point = endPoint.getFactory().createPoint(positions.getCoordinate(i));
+                double candidateRadius = radius;
+                if(i > 0) {
+                    candidateRadius = Math.max(radius, positions.getCoordinate(i - 1).distance(positions.getCoordinate(i)));
+                }
+                filter.setCandidateStates(getNonEmptyCandidateIndexArray(point, candidateRadius));
             }
+            pushObservation(filter, observations[i]);
         }
 
-        return selectedResult;
+        return selectCandidate(filter, candidateIndexes, -1);
     }
 
     /**
@@ -508,8 +944,9 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
      *
      * @param tempTrajectory The current trajectory
      * @param mapMatchingIndexList The map matching result (cell index) generated so far
+     * @param filter The forward filter that all results of mapMatchingIndexList are pushed
      * */
-    private int realTimeMapMatching(LineString tempTrajectory, ArrayList<Integer> mapMatchingIndexList) {
+    private int realTimeMapMatching(LineString tempTrajectory, ArrayList<Integer> mapMatchingIndexList, ForwardFilter filter) {
         // Compares the distance between positioning coordinates and the size of the radius,
         // and then, sets the larger value as the radius
         double candidateRadius = tempTrajectory.getPointN(tempTrajectory.getNumPoints() - 2).distance(tempTrajectory.getEndPoint());
@@ -518,17 +955,13 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
         }
 
         // Generate a candidate set for the positioning point
-        // If positioning point is first one, get map matching result using realTimeMapMatching function
+        // If positioning point is first one, select a cell index from the candidate set of the point by the initial probability
         int selectedResult = -1;
         if(mapMatchingIndexList.isEmpty()) {
             Point point = tempTrajectory.getStartPoint();
-            selectedResult = realTimeMapMatching(point, new int[1], candidateRadius);
+            selectedResult = selectCandidate(filter, getNonEmptyCandidateIndexArray(point, candidateRadius), -1);
             mapMatchingIndexList.add(selectedResult);
-        }
-        // Else, Make a observation array
-        int[] observations = new int[mapMatchingIndexList.size() + 1];
-        for(int i = 0; i < mapMatchingIndexList.size(); i++) {
-            observations[i] = mapMatchingIndexList.get(i);
+            pushObservation(filter, selectedResult);
         }
 
         // Generate a candidate set for the last positioning point
@@ -536,10 +969,44 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
         int[] candidateIndexes = getCandidateIndexArray(point, candidateRadius);
 
         // Select a cell index from candidate set by property of HMM evaluate results
-        double maxProbability = 0.0;
-        for (Integer candidateCellIndex : candidateIndexes) {
-            observations[observations.length - 1] = candidateCellIndex;
-            double temporalProbability = hmm.evaluate(observations);
+        return selectCandidate(filter, candidateIndexes, selectedResult);
+    }
+
+    /**
+     * Select a cell index from candidate set by the probability that the model has generated
+     * the observations pushed to the filter followed by each candidate (Grid way with forward algorithm).
+     * In the beam mode, the candidate set is also the candidate states of the filter (See ForwardFilter.setCandidateStates),
+     * so the selected cell index pushed to the filter next is calculated only for the candidate cells.
+     * If no candidate has a probability greater than zero within the candidate cells, all cells are used.
+     *
+     * @param filter The forward filter that the previous observations are pushed
+     * @param candidateIndexes The candidate set for the last positioning point
+     * @param defaultResult The result if no candidate has a probability greater than zero
+     * @return selected cell index
+     * */
+    private int selectCandidate(ForwardFilter filter, int[] candidateIndexes, int defaultResult) {
+        if(filter.isBeam() && candidateIndexes.length > 0) {
+            filter.setCandidateStates(candidateIndexes);
+            int selectedResult = selectMaxCandidate(filter, candidateIndexes);
+            if(selectedResult != -1)
+                return selectedResult;
+            filter.setCandidateStates(null);
+        }
+        int selectedResult = selectMaxCandidate(filter, candidateIndexes);
+
+        return selectedResult == -1 ? defaultResult : selectedResult;
+    }
+
+    /**
+     * @return The candidate with the maximum probability, or -1 if no candidate has a probability greater than zero
+     * */
+    private int selectMaxCandidate(ForwardFilter filter, int[] candidateIndexes) {
+        int selectedResult = -1;
+        // In the scaled mode, log-likelihoods are compared (zero probability is negative infinity)
+        double maxProbability = filter.isScaled() ? Double.NEGATIVE_INFINITY : 0.0;
+        for (int candidateCellIndex : candidateIndexes) {
+            double temporalProbability = filter.isScaled() ?
+                    filter.getCandidateLogLikelihood(candidateCellIndex) : filter.getCandidateLikelihood(candidateCellIndex);
             if (temporalProbability > maxProbability) {
                 maxProbability = temporalProbability;
                 selectedResult = candidateCellIndex;
@@ -550,65 +1017,43 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
     }
 
     /**
-     *
-     *
-     * @param point
-     * @param candidateBufferRadius
+     * @return The positioning points of a trajectory (null if it isn't a point or a line string)
      * */
-    private int[] getCandidateIndexArray(Point point, double candidateBufferRadius) {
-        Polygon circleBuffer = (Polygon) point.buffer(candidateBufferRadius);
-        ArrayList<Integer> candidateSet = new ArrayList<>();
-        for(int i = 0; i < indoorFeatures.getCellSpaces().size(); i++) {
-            if(indoorFeatures.getCellSpace(i).getGeom().intersects(circleBuffer))
-                candidateSet.add(i);
-        }
-        int[] candidateInitStateIndexes = new int[candidateSet.size()];
-        for (int i = 0; i < candidateInitStateIndexes.length; i++) {
-            candidateInitStateIndexes[i] = candidateSet.get(i);
-        }
-        return candidateInitStateIndexes;
+    private static CoordinateSequence getPositions(Geometry trajectory) {
+        if(trajectory instanceof LineString)
+            return ((LineString) trajectory).getCoordinateSequence();
+        if(trajectory instanceof Point)
+            return ((Point) trajectory).getCoordinateSequence();
+        return null;
     }
 
     /**
-     * Perform two-dimensional matrix normalization
+     * Same as getCandidateIndexArray, but the radius is doubled until the candidate set isn't empty.
      *
-     * @param matrix Matrix to be normalized
+     * @param point positioning point
+     * @param candidateBufferRadius The radius of the circle buffer to start with
+     * @return candidate cell space index array in ascending order (not empty)
      * */
-    private double[][] normalization(double[][] matrix) {
-        double rowSum;
-        for (int i = 0; i < matrix.length; i++) {
-            rowSum = 0.0;
-            for(int j = 0; j < matrix.length; j++) {
-                rowSum += matrix[i][j];
-            }
-            if(rowSum != 0) {
-                for(int j = 0; j < matrix.length; j++) {
-                    matrix[i][j] = matrix[i][j] / rowSum;
-                }
-            }
+    private int[] getNonEmptyCandidateIndexArray(Point point, double candidateBufferRadius) {
+        int[] candidateIndexes = getCandidateIndexArray(point, candidateBufferRadius);
+        while(candidateIndexes.length == 0) {
+            candidateBufferRadius *= 2;
+            candidateIndexes = getCandidateIndexArray(point, candidateBufferRadius);
         }
 
-        return matrix;
+        return candidateIndexes;
     }
 
     /**
-     * Normalize only one row of a two-dimensional matrix
+     * Returns the indexes of the cell spaces that intersect a circle buffer of the given point.
      *
-     * @param matrix Matrix to be normalized
-     * @param rowIndex Row index to be normalized
+     * @param point positioning point
+     * @param candidateBufferRadius The radius of the circle buffer
+     * @return candidate cell space index array in ascending order
      * */
-    private double[][] normalization(double[][] matrix, int rowIndex) {
-        double rowSum = 0.0;
-        for(int j = 0; j < matrix.length; j++) {
-            rowSum += matrix[rowIndex][j];
-        }
-        if(rowSum != 0) {
-            for(int j = 0; j < matrix.length; j++) {
-                matrix[rowIndex][j] = matrix[rowIndex][j] / rowSum;
-            }
-        }
-
-        return matrix;
+    private int[] getCandidateIndexArray(Point point, double candidateBufferRadius) {
+        Polygon circleBuffer = (Polygon) point.buffer(candidateBufferRadius);
+        return indoorFeatures.getIntersectingCellSpaceIndex(circleBuffer);
     }
 
     /**
@@ -666,7 +1111,7 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
         }
         else if(trajectory instanceof Point) {
             setInitalProbability((Point) trajectory);
-            observations = new int[]{indoorFeatures.getCellSpaceIndex(trajectory.getCoordinate())[0],0};
+            observations = new int[]{indoorFeatures.getCellSpaceIndex(trajectory.getCoordinate(), isAnalyticCircleArea)[0],0};
         }
         else if(trajectory instanceof LineString){
             Point startP = ((LineString) trajectory).getStartPoint();
@@ -678,7 +1123,7 @@ public class HMMIndoorMapMatching implements IndoorMapMatching {
         }
 
         // Perform HIMM on the input positioning point
-        int cellSpaceIndex = realTimeMapMatching(endPoint, observations, radius);
+        int cellSpaceIndex = realTimeMapMatching(endPoint, getPositions(trajectory), observations, observations.length, radius);
 
         // Return DIMM results if you can not find the result
         if(cellSpaceIndex == -1) {
@@ -14,6 +14,8 @@ public interface IndoorMapMatching {
     /**
      * This function sets IndoorFeatures within a class to do map matching.
      * Usually used in constructors of class.
+     * Map matching only reads the indoor features, so the instances running in different threads
+     * can share a frozen snapshot of indoor features (See IndoorFeatures.createFrozenSnapshot).
      *
      * @param indoorFeatures Space information for map matching
      * */
@@ -0,0 +1,139 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * CopyOnWriteProbabilityMatrix is the B matrix of a session of a frozen HiddenMarkovModel (See HiddenMarkovModel.createSession).
+ * The rows are read from the shared matrix until they are changed, and a row is copied to the session at the first change.
+ * So a session holds only the rows of the cells it has changed (e.g. the cells of the sliding window of the circle buffer B matrix)
+ * instead of a whole N x N matrix.
+ */
+class CopyOnWriteProbabilityMatrix implements ProbabilityMatrix {
+    private final int size;
+    private final ProbabilityMatrix sharedMatrix;   // null if the shared model has no B matrix (all entries are zero)
+    private ProbabilityMatrix baseMatrix;           // The matrix of the rows that are not copied (null after clear())
+    private final double[][] rows;                  // Copied rows (null if the row is read from baseMatrix)
+
+    CopyOnWriteProbabilityMatrix(int size, ProbabilityMatrix sharedMatrix) {
+        this.size = size;
+        this.sharedMatrix = sharedMatrix;
+        this.baseMatrix = sharedMatrix;
+        this.rows = new double[size][];
+    }
+
+    /**
+     * Removes the copied rows, so all rows are read from the shared matrix again.
+     * */
+    void reset() {
+        for(int i = 0; i < size; i++) {
+            rows[i] = null;
+        }
+        baseMatrix = sharedMatrix;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        double[] rowValues = rows[row];
+        if(rowValues != null)
+            return rowValues[column];
+        return baseMatrix == null ? 0.0 : baseMatrix.get(row, column);
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        getRowForWrite(row)[column] = value;
+    }
+
+    /**
+     * Sets all entries to zero. The shared matrix isn't read until reset() is called.
+     * */
+    @Override
+    public void clear() {
+        for(int i = 0; i < size; i++) {
+            rows[i] = null;
+        }
+        baseMatrix = null;
+    }
+
+    @Override
+    public void normalizeRow(int row) {
+        double[] rowValues = getRowForWrite(row);
+        double rowSum = 0.0;
+        for (double value : rowValues) {
+            rowSum += value;
+        }
+        if(rowSum != 0) {
+            for (int j = 0; j < rowValues.length; j++) {
+                rowValues[j] = rowValues[j] / rowSum;
+            }
+        }
+    }
+
+    /**
+     * @return The copied row (copied from the base matrix if it isn't copied yet)
+     * */
+    private double[] getRowForWrite(int row) {
+        double[] rowValues = rows[row];
+        if(rowValues == null) {
+            rowValues = new double[size];
+            if(baseMatrix != null) {
+                for(int j = 0; j < size; j++) {
+                    rowValues[j] = baseMatrix.get(row, j);
+                }
+            }
+            rows[row] = rowValues;
+        }
+        return rowValues;
+    }
+
+    @Override
+    public void addRowTo(int row, double weight, double[] result) {
+        double[] rowValues = rows[row];
+        if(rowValues == null) {
+            if(baseMatrix != null) {
+                baseMatrix.addRowTo(row, weight, result);
+            }
+            return;
+        }
+        for (int j = 0; j < size; j++) {
+            if(rowValues[j] == 0) continue;
+            result[j] += weight * rowValues[j];
+        }
+    }
+
+    @Override
+    public double dotRow(int row, double[] vector) {
+        double[] rowValues = rows[row];
+        if(rowValues == null)
+            return baseMatrix == null ? 0.0 : baseMatrix.dotRow(row, vector);
+
+        double sum = 0.0;
+        for (int j = 0; j < size; j++) {
+            if(rowValues[j] == 0) continue;
+            sum += rowValues[j] * vector[j];
+        }
+        return sum;
+    }
+
+    @Override
+    public void maxRowTo(int row, double score, double[] best, int[] backPointer) {
+        double[] rowValues = rows[row];
+        if(rowValues == null) {
+            if(baseMatrix != null) {
+                baseMatrix.maxRowTo(row, score, best, backPointer);
+            }
+            return;
+        }
+        for (int j = 0; j < size; j++) {
+            if(rowValues[j] == 0) continue;
+            double weight = score + rowValues[j];
+            if(weight > best[j]) {
+                best[j] = weight;
+                backPointer[j] = row;
+            }
+        }
+    }
+}
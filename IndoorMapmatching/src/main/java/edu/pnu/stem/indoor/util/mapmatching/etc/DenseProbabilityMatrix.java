@@ -0,0 +1,92 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * DenseProbabilityMatrix stores all entries of the matrix in a two-dimensional array.
+ * The array is shared with the caller, so changes of the array are reflected in the matrix.
+ */
+public class DenseProbabilityMatrix implements ProbabilityMatrix {
+    private final double[][] matrix;
+
+    public DenseProbabilityMatrix(int size) {
+        this(new double[size][size]);
+    }
+
+    public DenseProbabilityMatrix(double[][] matrix) {
+        this.matrix = matrix;
+    }
+
+    public double[][] getArray() {
+        return matrix;
+    }
+
+    @Override
+    public int size() {
+        return matrix.length;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return matrix[row][column];
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        matrix[row][column] = value;
+    }
+
+    @Override
+    public void clear() {
+        for (double[] rowValues : matrix) {
+            for (int j = 0; j < rowValues.length; j++) {
+                rowValues[j] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void normalizeRow(int row) {
+        double[] rowValues = matrix[row];
+        double rowSum = 0.0;
+        for (double value : rowValues) {
+            rowSum += value;
+        }
+        if(rowSum != 0) {
+            for (int j = 0; j < rowValues.length; j++) {
+                rowValues[j] = rowValues[j] / rowSum;
+            }
+        }
+    }
+
+    @Override
+    public void addRowTo(int row, double weight, double[] result) {
+        double[] rowValues = matrix[row];
+        for (int j = 0; j < rowValues.length; j++) {
+            if(rowValues[j] == 0) continue;
+            result[j] += weight * rowValues[j];
+        }
+    }
+
+    @Override
+    public double dotRow(int row, double[] vector) {
+        double[] rowValues = matrix[row];
+        double sum = 0.0;
+        for (int j = 0; j < rowValues.length; j++) {
+            if(rowValues[j] == 0) continue;
+            sum += rowValues[j] * vector[j];
+        }
+        return sum;
+    }
+
+    @Override
+    public void maxRowTo(int row, double score, double[] best, int[] backPointer) {
+        double[] rowValues = matrix[row];
+        for (int j = 0; j < rowValues.length; j++) {
+            if(rowValues[j] == 0) continue;
+            double weight = score + rowValues[j];
+            if(weight > best[j]) {
+                best[j] = weight;
+                backPointer[j] = row;
+            }
+        }
+    }
+}
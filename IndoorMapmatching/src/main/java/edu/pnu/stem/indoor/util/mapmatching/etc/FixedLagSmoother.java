@@ -0,0 +1,171 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * FixedLagSmoother is a streaming forward-backward algorithm of HiddenMarkovModel with a fixed lag.
+ * Observations are pushed one at a time, and the state probability of a time step is smoothed
+ * by the observations of at most lag time steps after it: P(state of step s | observations of steps 0 .. s + lag).
+ *
+ * The normalized forward variables and the observations of the last lag + 1 time steps are kept in ring buffers.
+ * The backward variables are calculated from the last pushed step whenever a smoothed probability is requested,
+ * so a step costs O(lag * (N + number of non-zero entries of A)) and nothing is allocated after the smoother is created.
+ *
+ * If an observation is impossible in the model (all forward variables are zero), the observation is ignored
+ * and the predicted probability is used, so one wrong observation doesn't make the following steps impossible.
+ *
+ * The smoother reads the matrices of the model whenever it is used (like ForwardFilter).
+ * If the model is changed while observations are pushed, call reset() and push the observations again.
+ */
+public class FixedLagSmoother {
+    private final HiddenMarkovModel hmm;
+    private final int numState;
+    private final int lag;
+    private final double[][] forwards;      // Normalized forward variables of time step t are forwards[t % (lag + 2)] (one more for the previous step)
+    private final int[] observations;       // Observation of time step t is observations[t % (lag + 1)]
+    private final double[] backward;        // Backward variables (normalized)
+    private final double[] weighted;        // Backward variables multiplied by the observation probability
+    private final double[] smoothed;        // Smoothed probability of the last requested time step
+    private int length;
+
+    FixedLagSmoother(HiddenMarkovModel hmm, int lag) {
+        if(lag < 0)
+            throw new IllegalArgumentException("lag is negative: " + lag);
+
+        this.hmm = hmm;
+        this.numState = hmm.getNumState();
+        this.lag = lag;
+        forwards = new double[lag + 2][numState];
+        observations = new int[lag + 1];
+        backward = new double[numState];
+        weighted = new double[numState];
+        smoothed = new double[numState];
+        reset();
+    }
+
+    /**
+     * Removes all pushed observations.
+     * After calling this function, the smoother starts again from the initial state probability of the model.
+     * */
+    public void reset() {
+        length = 0;
+    }
+
+    public int getLag() {
+        return lag;
+    }
+
+    /**
+     * @return The number of observations pushed so far
+     * */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Push a new observation and update the forward variables.
+     *
+     * @param observation The new observation
+     * @return The time step whose smoothed probability has all lag observations after it (getSmoothed(step)),
+     *         or -1 if less than lag + 1 observations are pushed
+     * */
+    public int push(int observation) {
+        double[] forward = forwards[length % forwards.length];
+        if(length == 0) {
+            System.arraycopy(hmm.getInitStateP(), 0, forward, 0, numState);
+        }
+        else {
+            // forward[i] = sum of previous[j] * A[j][i], visiting only non-zero forward variables and non-zero entries of A
+            double[] previous = forwards[(length - 1) % forwards.length];
+            ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+            for(int i = 0; i < numState; i++) {
+                forward[i] = 0.0;
+            }
+            for(int j = 0; j < numState; j++) {
+                if(previous[j] == 0) continue;
+                matrixA.addRowTo(j, previous[j], forward);
+            }
+        }
+
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        double sum = 0.0;
+        for(int i = 0; i < numState; i++) {
+            sum += forward[i] * matrixB.get(i, observation);
+        }
+        if(sum > 0) {
+            for(int i = 0; i < numState; i++) {
+                forward[i] = forward[i] * matrixB.get(i, observation) / sum;
+            }
+        }
+        else {
+            // The observation is impossible, so only the prediction is used
+            normalize(forward);
+        }
+        observations[length % observations.length] = observation;
+        length++;
+
+        return length > lag ? length - 1 - lag : -1;
+    }
+
+    /**
+     * Calculates the smoothed probability of a time step by the observations pushed so far.
+     * Only the last lag + 1 time steps can be requested. The last step is the same as the normalized forward variables.
+     *
+     * @param step time step in [getLength() - 1 - lag, getLength() - 1]
+     * @return The smoothed probability of each state (normalized).
+     *         The returned array is owned by the smoother and is changed by the next call
+     * */
+    public double[] getSmoothed(int step) {
+        if(step < 0 || step >= length || step < length - 1 - lag)
+            throw new IllegalArgumentException("The time step isn't in the lag buffer: " + step);
+
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+        for(int i = 0; i < numState; i++) {
+            backward[i] = 1.0;
+        }
+        for(int t = length - 1; t > step; t--) {
+            // backward of step t - 1: sum over j of A[i][j] * B[j][o_t] * backward[j]
+            int observation = observations[t % observations.length];
+            for(int j = 0; j < numState; j++) {
+                weighted[j] = matrixB.get(j, observation) * backward[j];
+            }
+            for(int i = 0; i < numState; i++) {
+                backward[i] = matrixA.dotRow(i, weighted);
+            }
+            if(!normalize(backward)) {
+                // The future observations are impossible from every state, so they give no information
+                for(int i = 0; i < numState; i++) {
+                    backward[i] = 1.0;
+                }
+            }
+        }
+
+        double[] forward = forwards[step % forwards.length];
+        for(int i = 0; i < numState; i++) {
+            smoothed[i] = forward[i] * backward[i];
+        }
+        if(!normalize(smoothed)) {
+            System.arraycopy(forward, 0, smoothed, 0, numState);
+        }
+
+        return smoothed;
+    }
+
+    /**
+     * Divides the values by the sum of them.
+     *
+     * @return false if the sum is zero (the values aren't changed)
+     * */
+    private static boolean normalize(double[] values) {
+        double sum = 0.0;
+        for(double value : values) {
+            sum += value;
+        }
+        if(sum > 0) {
+            for(int i = 0; i < values.length; i++) {
+                values[i] = values[i] / sum;
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * FloatProbabilityMatrix stores all entries of the matrix in a single float array in row-major order.
+ * It uses half of the memory of DenseProbabilityMatrix (and no array object per row), so the matrices of a large building
+ * (e.g. 5,000 cell spaces) can be kept in memory for several models.
+ * The rows are padded to a multiple of 16 floats (64 bytes, a cache line), so a row starts at the same offset in a cache line
+ * as the first row (the JVM doesn't guarantee the alignment of the array itself).
+ *
+ * The values are stored in single precision, so a value read by get() is the nearest float of the value set.
+ * The kernels of the forward and Viterbi algorithms calculate in double precision.
+ */
+public class FloatProbabilityMatrix implements ProbabilityMatrix {
+    private static final int ROW_ALIGNMENT = 16;    // floats in a cache line of 64 bytes
+
+    private final int size;
+    private final int rowStride;    // The number of floats of a row including the padding
+    private final float[] values;
+
+    public FloatProbabilityMatrix(int size) {
+        if(size < 0)
+            throw new IllegalArgumentException("size is negative: " + size);
+
+        this.size = size;
+        this.rowStride = (size + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+        long length = (long) size * rowStride;
+        if(length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("size is too large for a float array: " + size);
+        this.values = new float[(int) length];
+    }
+
+    /**
+     * Creates a matrix from the values of the given matrix (rounded to float).
+     *
+     * @param matrix dense matrix
+     * */
+    public FloatProbabilityMatrix(double[][] matrix) {
+        this(matrix.length);
+        for(int i = 0; i < size; i++) {
+            int base = i * rowStride;
+            for(int j = 0; j < size; j++) {
+                values[base + j] = (float) matrix[i][j];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of floats of a row including the padding (a multiple of 16)
+     * */
+    int getRowStride() {
+        return rowStride;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return values[index(row, column)];
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        values[index(row, column)] = (float) value;
+    }
+
+    private int index(int row, int column) {
+        if(column < 0 || column >= size)
+            throw new IndexOutOfBoundsException("column: " + column + ", size: " + size);
+        return row * rowStride + column;
+    }
+
+    @Override
+    public void clear() {
+        for(int k = 0; k < values.length; k++) {
+            values[k] = 0;
+        }
+    }
+
+    @Override
+    public void normalizeRow(int row) {
+        int base = row * rowStride;
+        double rowSum = 0.0;
+        for(int j = 0; j < size; j++) {
+            rowSum += values[base + j];
+        }
+        if(rowSum != 0) {
+            for(int j = 0; j < size; j++) {
+                values[base + j] = (float) (values[base + j] / rowSum);
+            }
+        }
+    }
+
+    @Override
+    public void addRowTo(int row, double weight, double[] result) {
+        int base = row * rowStride;
+        for(int j = 0; j < size; j++) {
+            float value = values[base + j];
+            if(value == 0) continue;
+            result[j] += weight * value;
+        }
+    }
+
+    @Override
+    public double dotRow(int row, double[] vector) {
+        int base = row * rowStride;
+        double sum = 0.0;
+        for(int j = 0; j < size; j++) {
+            float value = values[base + j];
+            if(value == 0) continue;
+            sum += value * vector[j];
+        }
+        return sum;
+    }
+
+    @Override
+    public void maxRowTo(int row, double score, double[] best, int[] backPointer) {
+        int base = row * rowStride;
+        for(int j = 0; j < size; j++) {
+            float value = values[base + j];
+            if(value == 0) continue;
+            double weight = score + value;
+            if(weight > best[j]) {
+                best[j] = weight;
+                backPointer[j] = row;
+            }
+        }
+    }
+}
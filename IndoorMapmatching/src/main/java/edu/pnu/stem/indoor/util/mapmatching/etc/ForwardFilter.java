@@ -0,0 +1,563 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import java.util.Arrays;
+
+/**
+ * ForwardFilter is a streaming version of the forward algorithm of HiddenMarkovModel.
+ * Observations are pushed one at a time and only the forward variables of the last time step are kept,
+ * so a new observation costs O(N^2) (O(number of non-zero entries of A) with a sparse A matrix)
+ * instead of re-running the forward algorithm from t = 0.
+ * The likelihood values are the same as HiddenMarkovModel.evaluate() of the pushed observation sequence.
+ *
+ * In the scaled mode, the forward variables are normalized at each time step and the logarithms of the scaling coefficients are accumulated.
+ * So the log-likelihood does not underflow even for a very long observation sequence.
+ *
+ * In the beam mode (See setBeam), only the K most probable states (or the states above a threshold relative to the most probable one)
+ * are kept after each observation, and the prediction visits only the rows of the kept states.
+ * The pruned probability mass is removed from the likelihood, and it is reported by getLastPrunedMass and getPrunedMassSum.
+ * If the candidate states of the next observation are given (See setCandidateStates), the beam is seeded with them:
+ * the prediction and the observation probability are calculated only for the candidate states,
+ * and the kept states are listed between the time steps, so a time step doesn't visit all N states.
+ * The predicted mass of the states outside the candidate set is dropped, and it is reported separately from the pruned mass
+ * by getLastCandidateCutMass and getCandidateCutMassSum.
+ *
+ * The filter reads the matrices of the model whenever it is used.
+ * If the model is changed (A matrix, B matrix or initial state probability), call reset() and push the observations again.
+ */
+public class ForwardFilter {
+    private final HiddenMarkovModel hmm;
+    private final double[] belief;      // Forward variables of the last pushed observation
+    private final double[] predicted;   // Forward variables of the next time step before applying the observation probability
+    private final boolean isScaled;
+    private double logScale;            // Sum of the logarithm of the scaling coefficients (scaled mode only)
+    private boolean isPredicted;
+    private int length;
+
+    private int beamWidth = 0;              // 0 if the number of states isn't limited
+    private double beamThreshold = 0.0;     // 0 if the states aren't pruned by the relative threshold
+    private final int[] activeStates;       // States whose forward variable isn't zero (beam mode only, in ascending order)
+    private int activeCount;
+    private int[] candidateStates;          // States that can explain the next observation (null if all states can)
+    private double lastPrunedMass;
+    private double prunedMassSum;
+    private double lastCandidateCutMass;
+    private double candidateCutMassSum;
+    private double[] transitionRowSums;     // Row sums of the A matrix (made at the first candidate step after reset)
+
+    ForwardFilter(HiddenMarkovModel hmm, boolean isScaled) {
+        this.hmm = hmm;
+        this.isScaled = isScaled;
+        belief = new double[hmm.getNumState()];
+        predicted = new double[hmm.getNumState()];
+        activeStates = new int[hmm.getNumState()];
+        reset();
+    }
+
+    /**
+     * Removes all pushed observations.
+     * After calling this function, the filter starts again from the initial state probability of the model.
+     * */
+    public void reset() {
+        // In the beam mode, only the listed states can have a forward variable that isn't zero
+        for(int k = 0; k < activeCount; k++) {
+            belief[activeStates[k]] = 0.0;
+        }
+        candidateStates = null;
+        length = 0;
+        logScale = 0.0;
+        isPredicted = false;
+        activeCount = 0;
+        lastPrunedMass = 0.0;
+        prunedMassSum = 0.0;
+        lastCandidateCutMass = 0.0;
+        candidateCutMassSum = 0.0;
+        transitionRowSums = null;
+    }
+
+    /**
+     * Select the beam mode. After each pushed observation, the states that are not in the beam are set to zero.
+     * If both values are zero (default), no state is pruned.
+     * The forward variables of the observations pushed before are not pruned.
+     *
+     * @param beamWidth The maximum number of states kept (K), or 0 for no limit
+     * @param relativeThreshold The states whose forward variable is less than (relativeThreshold * the maximum) are pruned, or 0 for no threshold
+     * */
+    public void setBeam(int beamWidth, double relativeThreshold) {
+        if(beamWidth < 0)
+            throw new IllegalArgumentException("beam width is negative: " + beamWidth);
+        if(relativeThreshold < 0 || relativeThreshold > 1)
+            throw new IllegalArgumentException("relative threshold must be in [0, 1]: " + relativeThreshold);
+
+        this.beamWidth = beamWidth;
+        this.beamThreshold = relativeThreshold;
+        activeCount = 0;
+        for(int i = 0; length > 0 && i < belief.length; i++) {
+            if(belief[i] != 0) activeStates[activeCount++] = i;
+        }
+    }
+
+    /**
+     * Limits the states of the next pushed observation to the candidate states in the beam mode
+     * (e.g. the candidate cells of the positioning point of the next observation).
+     * The prediction and the observation probability are calculated only for the candidate states,
+     * and the other states are set to zero by the next push, so the time step costs O(candidates x kept states) instead of O(N).
+     * If no candidate state explains the pushed observation, the time step is calculated for all states.
+     * The probability of the states outside the candidate set isn't calculated,
+     * but the fraction of the predicted mass that they have is reported by getLastCandidateCutMass.
+     * The candidate states are used by getCandidateLikelihood and push until the next observation is pushed.
+     * They are ignored if the filter isn't in the beam mode.
+     *
+     * @param candidateStates The candidate states in ascending order (e.g. the result of IndoorFeatures.getIntersectingCellSpaceIndex),
+     *                        or null to use all states
+     * */
+    public void setCandidateStates(int[] candidateStates) {
+        this.candidateStates = candidateStates;
+        isPredicted = false;
+    }
+
+    /**
+     * @return Whether the states are pruned after each observation
+     * */
+    public boolean isBeam() {
+        return beamWidth > 0 || beamThreshold > 0;
+    }
+
+    /**
+     * @return The number of states kept after the last pushed observation (beam mode only)
+     * */
+    public int getNumActiveStates() {
+        return activeCount;
+    }
+
+    /**
+     * @return The fraction of the probability mass pruned after the last pushed observation
+     * */
+    public double getLastPrunedMass() {
+        return lastPrunedMass;
+    }
+
+    /**
+     * @return The sum of the fractions of the probability mass pruned after each pushed observation
+     * */
+    public double getPrunedMassSum() {
+        return prunedMassSum;
+    }
+
+    /**
+     * @return The fraction of the predicted probability mass of the states outside the candidate set,
+     *         dropped by the last pushed observation (0 if the candidate states weren't used)
+     * */
+    public double getLastCandidateCutMass() {
+        return lastCandidateCutMass;
+    }
+
+    /**
+     * @return The sum of the fractions of the predicted probability mass dropped by the candidate set at each pushed observation
+     * */
+    public double getCandidateCutMassSum() {
+        return candidateCutMassSum;
+    }
+
+    /**
+     * @return Whether the forward variables are normalized at each time step
+     * */
+    public boolean isScaled() {
+        return isScaled;
+    }
+
+    /**
+     * @return The number of observations pushed so far
+     * */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Push a new observation and update the forward variables.
+     *
+     * @param observation The new observation
+     * @return The updated forward variables (belief vector, normalized in the scaled mode).
+     *         The returned array is owned by the filter and must not be modified
+     * */
+    public double[] push(int observation) {
+        predict();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        if(isCandidateBeam() && !isObservable(observation)) {
+            // No candidate state explains the observation, so the time step is calculated for all states
+            candidateStates = null;
+            isPredicted = false;
+            predict();
+        }
+        if(isCandidateBeam()) {
+            // The cut mass is calculated from the kept states before they are cleared
+            double candidateMass = 0.0;
+            for(int i : candidateStates) {
+                candidateMass += predicted[i];
+            }
+            lastCandidateCutMass = getCandidateCutMass(candidateMass);
+
+            // Only the candidate states can have a forward variable that isn't zero
+            for(int k = 0; k < activeCount; k++) {
+                belief[activeStates[k]] = 0.0;
+            }
+            activeCount = 0;
+            for(int i : candidateStates) {
+                double p = matrixB.get(i, observation);
+                if(p == 0 || predicted[i] == 0) continue;
+                belief[i] = predicted[i] * p;
+                activeStates[activeCount++] = i;
+            }
+        }
+        else {
+            lastCandidateCutMass = 0.0;
+            activeCount = 0;
+            for(int i = 0; i < belief.length; i++) {
+                double p = matrixB.get(i, observation);
+                belief[i] = (p == 0) ? 0 : predicted[i] * p;
+                if(belief[i] != 0 && isBeam()) {
+                    activeStates[activeCount++] = i;
+                }
+            }
+        }
+        candidateCutMassSum += lastCandidateCutMass;
+        if(isScaled) {
+            scale();
+        }
+        if(isBeam()) {
+            prune();
+        }
+        length++;
+        isPredicted = false;
+        candidateStates = null;
+
+        return belief;
+    }
+
+    /**
+     * @return The forward variables of the last pushed observation (normalized in the scaled mode).
+     *         The returned array is owned by the filter and must not be modified
+     * */
+    public double[] getBelief() {
+        return belief;
+    }
+
+    /**
+     * @return The probability that the pushed observation sequence has been generated by the model
+     * */
+    public double getLikelihood() {
+        if(length == 0)
+            return 0.0;
+        if(isScaled)
+            return Math.exp(logScale);
+
+        double probabilitySum = 0;
+        if(isBeam()) {
+            for(int k = 0; k < activeCount; k++) {
+                probabilitySum += belief[activeStates[k]];
+            }
+        }
+        else {
+            for(double forward : belief) {
+                probabilitySum += forward;
+            }
+        }
+
+        return probabilitySum;
+    }
+
+    /**
+     * @return The logarithm of the probability that the pushed observation sequence has been generated by the model
+     * */
+    public double getLogLikelihood() {
+        if(isScaled && length > 0)
+            return logScale;
+
+        return Math.log(getLikelihood());
+    }
+
+    /**
+     * Calculates the probability of the pushed observation sequence extended by the given observation
+     * without changing the state of the filter.
+     * The cost of this function is O(N) except the first call after push() (O(candidates) in the beam mode with the candidate states).
+     *
+     * @param observation The candidate observation for the next time step
+     * @return The probability that the extended observation sequence has been generated by the model
+     * */
+    public double getCandidateLikelihood(int observation) {
+        if(isScaled)
+            return Math.exp(getCandidateLogLikelihood(observation));
+
+        return getPredictedProbability(observation);
+    }
+
+    /**
+     * Calculates the logarithm of getCandidateLikelihood().
+     * In the scaled mode, it does not underflow even if the candidate likelihood is not representable as a double.
+     *
+     * @param observation The candidate observation for the next time step
+     * @return The logarithm of the probability that the extended observation sequence has been generated by the model
+     * */
+    public double getCandidateLogLikelihood(int observation) {
+        return logScale + Math.log(getPredictedProbability(observation));
+    }
+
+    /**
+     * @return The sum of the predicted forward variables multiplied by the observation probability
+     * */
+    private double getPredictedProbability(int observation) {
+        predict();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        double probabilitySum = 0;
+        if(isCandidateBeam()) {
+            for(int i : candidateStates) {
+                double p = matrixB.get(i, observation);
+                if(p == 0) continue;
+                probabilitySum += predicted[i] * p;
+            }
+        }
+        else {
+            for(int i = 0; i < predicted.length; i++) {
+                double p = matrixB.get(i, observation);
+                if(p == 0) continue;
+                probabilitySum += predicted[i] * p;
+            }
+        }
+
+        return probabilitySum;
+    }
+
+    /**
+     * Calculates getCandidateLikelihood() for each candidate observation.
+     *
+     * @param observations The candidate observations for the next time step
+     * @return The probability of each extended observation sequence
+     * */
+    public double[] getCandidateLikelihoods(int[] observations) {
+        double[] likelihoods = new double[observations.length];
+        for(int i = 0; i < observations.length; i++) {
+            likelihoods[i] = getCandidateLikelihood(observations[i]);
+        }
+
+        return likelihoods;
+    }
+
+    /**
+     * Normalizes the forward variables so that the sum of them is one, and accumulates the scaling coefficient.
+     * If the sum is zero, the observation sequence is impossible and the log-likelihood is negative infinity.
+     * */
+    private void scale() {
+        double coefficient = 0.0;
+        if(isBeam()) {
+            // Only the listed states have a forward variable that isn't zero
+            for(int k = 0; k < activeCount; k++) {
+                coefficient += belief[activeStates[k]];
+            }
+            if(coefficient > 0) {
+                for(int k = 0; k < activeCount; k++) {
+                    belief[activeStates[k]] = belief[activeStates[k]] / coefficient;
+                }
+            }
+        }
+        else {
+            for(double forward : belief) {
+                coefficient += forward;
+            }
+            if(coefficient > 0) {
+                for(int i = 0; i < belief.length; i++) {
+                    belief[i] = belief[i] / coefficient;
+                }
+            }
+        }
+        logScale += Math.log(coefficient);
+    }
+
+    /**
+     * Keeps only the states in the beam and sets the others to zero.
+     * Only the listed states (the states whose forward variable isn't zero) are visited.
+     * The pruned mass is removed from the likelihood: in the scaled mode, the kept forward variables are normalized again
+     * and the logarithm of the kept fraction is added to the log-likelihood.
+     * The kept states are sorted, so the prediction adds the rows in the same order as without the beam.
+     * */
+    private void prune() {
+        double total = 0.0;
+        double max = 0.0;
+        for(int k = 0; k < activeCount; k++) {
+            double forward = belief[activeStates[k]];
+            total += forward;
+            max = Math.max(max, forward);
+        }
+
+        int keptCount = 0;
+        double threshold = beamThreshold * max;
+        for(int k = 0; k < activeCount; k++) {
+            int i = activeStates[k];
+            if(belief[i] >= threshold) {
+                activeStates[keptCount++] = i;
+            }
+            else {
+                belief[i] = 0.0;
+            }
+        }
+        if(beamWidth > 0 && keptCount > beamWidth) {
+            selectTop(keptCount, beamWidth);
+            for(int k = beamWidth; k < keptCount; k++) {
+                belief[activeStates[k]] = 0.0;
+            }
+            keptCount = beamWidth;
+            Arrays.sort(activeStates, 0, keptCount);
+        }
+
+        double kept = 0.0;
+        for(int k = 0; k < keptCount; k++) {
+            kept += belief[activeStates[k]];
+        }
+        activeCount = keptCount;
+
+        lastPrunedMass = total > 0 ? (total - kept) / total : 0.0;
+        prunedMassSum += lastPrunedMass;
+        if(isScaled && kept > 0 && kept < total) {
+            for(int k = 0; k < keptCount; k++) {
+                belief[activeStates[k]] = belief[activeStates[k]] / kept * total;
+            }
+            logScale += Math.log(kept / total);
+        }
+    }
+
+    /**
+     * Moves the k states with the largest forward variables to activeStates[0 .. k - 1] (quick select).
+     * */
+    private void selectTop(int count, int k) {
+        int left = 0;
+        int right = count - 1;
+        while(left < right) {
+            double pivot = belief[activeStates[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while(i <= j) {
+                while(belief[activeStates[i]] > pivot) i++;
+                while(belief[activeStates[j]] < pivot) j--;
+                if(i <= j) {
+                    int temp = activeStates[i];
+                    activeStates[i] = activeStates[j];
+                    activeStates[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if(k - 1 <= j) right = j;
+            else if(k - 1 >= i) left = i;
+            else break;
+        }
+    }
+
+    /**
+     * The predicted mass of all states is the sum of belief[j] * (row sum of A[j]) over the kept states j,
+     * so the states outside the candidate set don't need to be predicted.
+     *
+     * @param candidateMass The sum of the predicted forward variables of the candidate states
+     * @return The fraction of the predicted mass of the states outside the candidate set
+     * */
+    private double getCandidateCutMass(double candidateMass) {
+        double predictedMass = 0.0;
+        if(length == 0) {
+            for(double p : hmm.getInitStateP()) {
+                predictedMass += p;
+            }
+        }
+        else {
+            if(transitionRowSums == null) {
+                transitionRowSums = getTransitionRowSums();
+            }
+            for(int k = 0; k < activeCount; k++) {
+                int j = activeStates[k];
+                predictedMass += belief[j] * transitionRowSums[j];
+            }
+        }
+
+        return predictedMass > 0 ? Math.max(0.0, (predictedMass - candidateMass) / predictedMass) : 0.0;
+    }
+
+    private double[] getTransitionRowSums() {
+        ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+        double[] ones = new double[belief.length];
+        Arrays.fill(ones, 1.0);
+        double[] rowSums = new double[belief.length];
+        for(int i = 0; i < rowSums.length; i++) {
+            rowSums[i] = matrixA.dotRow(i, ones);
+        }
+        return rowSums;
+    }
+
+    /**
+     * @return Whether a candidate state has a forward variable that isn't zero after the observation
+     * */
+    private boolean isObservable(int observation) {
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        for(int i : candidateStates) {
+            if(predicted[i] != 0 && matrixB.get(i, observation) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the next time step is calculated only for the candidate states
+     * */
+    private boolean isCandidateBeam() {
+        return candidateStates != null && isBeam();
+    }
+
+    /**
+     * Calculates the forward variables of the next time step before applying the observation probability.
+     * The result is kept until the next observation is pushed.
+     * */
+    private void predict() {
+        if(isPredicted) return;
+
+        if(length == 0) {
+            double[] initStateP = hmm.getInitStateP();
+            if(isCandidateBeam()) {
+                for(int i : candidateStates) {
+                    predicted[i] = initStateP[i];
+                }
+            }
+            else {
+                System.arraycopy(initStateP, 0, predicted, 0, predicted.length);
+            }
+        }
+        else if(isCandidateBeam()) {
+            // predicted[i] of each candidate state i = sum of belief[j] * A[j][i] over the kept states j (in the same order as addRowTo)
+            ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+            for(int i : candidateStates) {
+                double sum = 0.0;
+                for(int k = 0; k < activeCount; k++) {
+                    int j = activeStates[k];
+                    double a = matrixA.get(j, i);
+                    if(a == 0) continue;
+                    sum += belief[j] * a;
+                }
+                predicted[i] = sum;
+            }
+        }
+        else {
+            // predicted[i] = sum of belief[j] * A[j][i], visiting only non-zero beliefs and non-zero entries of A
+            ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+            for(int i = 0; i < predicted.length; i++) {
+                predicted[i] = 0.0;
+            }
+            if(isBeam()) {
+                for(int k = 0; k < activeCount; k++) {
+                    int j = activeStates[k];
+                    matrixA.addRowTo(j, belief[j], predicted);
+                }
+            }
+            else {
+                for(int j = 0; j < belief.length; j++) {
+                    if(belief[j] == 0) continue;
+                    matrixA.addRowTo(j, belief[j], predicted);
+                }
+            }
+        }
+        isPredicted = true;
+    }
+}
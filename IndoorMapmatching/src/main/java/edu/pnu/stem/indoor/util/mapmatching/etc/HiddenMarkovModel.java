@@ -1,7 +1,11 @@
 package edu.pnu.stem.indoor.util.mapmatching.etc;
 
 /**
+ * HiddenMarkovModel keeps the A matrix, the B matrix and the initial state probability of the indoor map matching.
  *
+ * A model of a building can be shared by many sessions (e.g. simultaneously tracked devices) without copying the A matrix.
+ * The shared model is frozen (See freeze), and each session (See createSession) refers to the A matrix of the frozen model
+ * and has only its own initial state probability and the rows of the B matrix it has changed.
  *
  * Created by STEM_KTH on 2017-07-25.
  * @author Taehoon Kim, Pusan National University, STEM Lab.
@@ -10,28 +14,200 @@ public class HiddenMarkovModel {
     private int numState;
     private int numObservation;
     private double[] initStateP;
-    private double[][] matrixA;
-    private double[][] matrixB;
+    private double[][] matrixA;     // null if the A matrix is not stored in a two-dimensional array (e.g. sparse matrix)
+    private ProbabilityMatrix transitionMatrix;     // A matrix used by the forward and Viterbi algorithms
+    private double[][] matrixB;     // null if the B matrix is not stored in a two-dimensional array (e.g. float matrix)
+    private ProbabilityMatrix observationMatrix;    // B matrix used by the forward and Viterbi algorithms
+    private boolean isScaled = false;  // Whether the forward algorithm normalizes the forward variables at each time step
+    private boolean isFrozen = false;  // A frozen model can't be changed and is shared by its sessions
+    private final HiddenMarkovModel sharedModel;    // The frozen model of a session (null if this isn't a session)
 
     public HiddenMarkovModel(int stateNum) {
         numState = stateNum;
         numObservation = numState;
         initStateP = new double[numState];
-        matrixA = new double[numState][numState];
-        matrixB = new double[numState][numObservation];
+        sharedModel = null;
+    }
+
+    /**
+     * Makes a session of a frozen model.
+     * The A matrix is shared, and the initial state probability is copied.
+     * The rows of the B matrix are read from the shared B matrix until they are changed (See CopyOnWriteProbabilityMatrix).
+     * */
+    private HiddenMarkovModel(HiddenMarkovModel sharedModel) {
+        this.sharedModel = sharedModel;
+        numState = sharedModel.numState;
+        numObservation = sharedModel.numObservation;
+        initStateP = sharedModel.initStateP.clone();
+        transitionMatrix = sharedModel.transitionMatrix;
+        observationMatrix = new CopyOnWriteProbabilityMatrix(numState, sharedModel.observationMatrix);
+        isScaled = sharedModel.isScaled;
     }
 
     public int getNumState() { return numState; }
 
+    public boolean isScaled() {
+        return isScaled;
+    }
+
+    /**
+     * Select the numerically stable (scaled) forward algorithm.
+     * The raw forward algorithm multiplies probabilities across all time steps,
+     * so the probability of a long observation sequence underflows to zero.
+     * The scaled one normalizes the forward variables at each time step and keeps the logarithm of the scaling coefficients.
+     *
+     * @param isScaled Whether the forward algorithm is scaled
+     * */
+    public void setScaled(boolean isScaled) {
+        checkNotFrozen();
+        this.isScaled = isScaled;
+    }
+
+    /**
+     * @return initial state probability. The returned array must not be modified if the model is frozen
+     * */
+    public double[] getInitStateP() {
+        return initStateP;
+    }
+
+    /**
+     * @return true if the model is frozen (See freeze)
+     * */
+    public boolean isFrozen() {
+        return isFrozen;
+    }
+
+    /**
+     * @return true if the model is a session of a frozen model (See createSession)
+     * */
+    public boolean isSession() {
+        return sharedModel != null;
+    }
+
+    /**
+     * Makes the model immutable so that it can be shared by many sessions (See createSession).
+     * After this call, the A matrix, the B matrix, the initial state probability and the scaled mode can't be changed (IllegalStateException),
+     * and getMatrixA and getMatrixB return null (the matrices are accessed only through ProbabilityMatrix).
+     * The forward and Viterbi algorithms of the frozen model itself can still be used.
+     * If no B matrix is set, the shared B matrix is a zero matrix.
+     * */
+    public synchronized void freeze() {
+        if(isFrozen)
+            return;
+        if(sharedModel != null)
+            throw new IllegalStateException("Can't freeze a session of a frozen model");
+
+        // An empty matrix without storage is shared if a matrix isn't set yet
+        transitionMatrix = new ReadOnlyProbabilityMatrix(transitionMatrix != null ?
+                transitionMatrix : new CopyOnWriteProbabilityMatrix(numState, null));
+        observationMatrix = new ReadOnlyProbabilityMatrix(observationMatrix != null ?
+                observationMatrix : new CopyOnWriteProbabilityMatrix(numState, null));
+        matrixA = null;
+        matrixB = null;
+        isFrozen = true;
+    }
+
+    /**
+     * Creates a session of this model for a tracked device (this model is frozen if it isn't yet).
+     * The session shares the A matrix of this model, and it has its own copy of the initial state probability
+     * and its own B matrix whose rows are copied from the B matrix of this model at their first change.
+     * So a session costs O(N) memory (and N values for each changed row of the B matrix) instead of the N x N A matrix.
+     * The A matrix of the session can't be changed. Each session must be used by one thread at a time,
+     * but the sessions of a model can be created and used by different threads.
+     *
+     * @return A new session of this model
+     * */
+    public synchronized HiddenMarkovModel createSession() {
+        if(sharedModel != null)
+            throw new IllegalStateException("Can't create a session of a session");
+
+        freeze();
+        return new HiddenMarkovModel(this);
+    }
+
+    /**
+     * Restores the initial state probability and the B matrix of the session to the shared model,
+     * so that the session can be reused for a new trajectory.
+     * */
+    public void resetSession() {
+        if(sharedModel == null)
+            throw new IllegalStateException("The model isn't a session");
+
+        System.arraycopy(sharedModel.initStateP, 0, initStateP, 0, numState);
+        if(observationMatrix instanceof CopyOnWriteProbabilityMatrix) {
+            ((CopyOnWriteProbabilityMatrix) observationMatrix).reset();
+        }
+        else {
+            observationMatrix = new CopyOnWriteProbabilityMatrix(numState, sharedModel.observationMatrix);
+            matrixB = null;
+        }
+    }
+
+    private void checkNotFrozen() {
+        if(isFrozen)
+            throw new IllegalStateException("Can't change the frozen model");
+    }
+
+    private void checkMatrixAChangeable() {
+        checkNotFrozen();
+        if(sharedModel != null)
+            throw new IllegalStateException("Can't change the A matrix of a session (it is shared by the sessions)");
+    }
+
+    /**
+     * Returns the A matrix as a two-dimensional array.
+     * If no A matrix is set yet, an empty matrix is created.
+     * Only a matrix stored in DenseProbabilityMatrix has a two-dimensional array. So it returns null
+     * if the A matrix is sparse (SparseProbabilityMatrix) or float (FloatProbabilityMatrix),
+     * or if the model is frozen or a session of a frozen model. Use getTransitionMatrix in that case.
+     *
+     * @return A matrix, or null if the A matrix isn't stored in a two-dimensional array
+     * */
     public double[][] getMatrixA() {
+        if(transitionMatrix == null) {
+            setMatrixA(new double[numState][numState]);
+        }
         return matrixA;
     }
 
+    /**
+     * @return A matrix used by the forward and Viterbi algorithms
+     * */
+    public ProbabilityMatrix getTransitionMatrix() {
+        if(transitionMatrix == null) {
+            setMatrixA(new double[numState][numState]);
+        }
+        return transitionMatrix;
+    }
+
+    /**
+     * Returns the B matrix as a two-dimensional array.
+     * If no B matrix is set yet, an empty matrix is created.
+     * Only a matrix stored in DenseProbabilityMatrix has a two-dimensional array. So it returns null
+     * if the B matrix is float (FloatProbabilityMatrix) or another form,
+     * or if the model is frozen or a session of a frozen model (the rows are copied on write). Use getObservationMatrix in that case.
+     *
+     * @return B matrix, or null if the B matrix isn't stored in a two-dimensional array
+     * */
     public double[][] getMatrixB() {
+        if(observationMatrix == null) {
+            setMatrixB(new double[numState][numObservation]);
+        }
         return matrixB;
     }
 
+    /**
+     * @return B matrix used by the forward and Viterbi algorithms (row: state, column: observation)
+     * */
+    public ProbabilityMatrix getObservationMatrix() {
+        if(observationMatrix == null) {
+            setMatrixB(new double[numState][numObservation]);
+        }
+        return observationMatrix;
+    }
+
     public void setInitStateP(int[] initStateIndex) {
+        checkNotFrozen();
         double probability = 1.0 / initStateIndex.length;
         for(int stateIndex : initStateIndex) {
             this.initStateP[stateIndex] = probability;
@@ -39,37 +215,85 @@ public class HiddenMarkovModel {
     }
 
     public void setInitStateP(double[] initStateP) {
+        checkNotFrozen();
         for(int i = 0; i < initStateP.length; i++) {
             this.initStateP[i] = initStateP[i];
         }
     }
 
     public void setMatrixA(double[][] matrixA) {
+        checkMatrixAChangeable();
         this.matrixA = matrixA;
+        this.transitionMatrix = new DenseProbabilityMatrix(matrixA);
+    }
+
+    /**
+     * Sets the A matrix in any storage form.
+     * A sparse matrix makes the forward and Viterbi algorithms visit only the connected states.
+     *
+     * @param transitionMatrix A matrix
+     * */
+    public void setMatrixA(ProbabilityMatrix transitionMatrix) {
+        checkMatrixAChangeable();
+        if(transitionMatrix.size() != numState)
+            throw new IllegalArgumentException("size of A matrix is different from the number of states");
+
+        this.transitionMatrix = transitionMatrix;
+        if(transitionMatrix instanceof DenseProbabilityMatrix) {
+            this.matrixA = ((DenseProbabilityMatrix) transitionMatrix).getArray();
+        }
+        else {
+            this.matrixA = null;
+        }
     }
 
     public void setMatrixB(double[][] matrixB) {
+        checkNotFrozen();
         this.matrixB = matrixB;
+        this.observationMatrix = new DenseProbabilityMatrix(matrixB);
     }
 
     /**
+     * Sets the B matrix in any storage form.
+     * A float matrix (FloatProbabilityMatrix) halves the memory of the B matrix of a large building.
      *
+     * @param observationMatrix B matrix
+     * */
+    public void setMatrixB(ProbabilityMatrix observationMatrix) {
+        checkNotFrozen();
+        if(observationMatrix.size() != numState)
+            throw new IllegalArgumentException("size of B matrix is different from the number of states");
+
+        this.observationMatrix = observationMatrix;
+        if(observationMatrix instanceof DenseProbabilityMatrix) {
+            this.matrixB = ((DenseProbabilityMatrix) observationMatrix).getArray();
+        }
+        else {
+            this.matrixB = null;
+        }
+    }
+
+    /**
+     * Sets the initial state probability and the matrices to zero.
+     * The A matrix of a session isn't cleared because it is shared by the sessions.
      * */
     public void clear(){
+        checkNotFrozen();
         for(int i = 0; i < numState; i++) {
             initStateP[i] = 0;
-            for(int j = 0; j < numState; j++) {
-                matrixA[i][j] = 0;
-                matrixB[i][j] = 0;
-            }
+        }
+        if(observationMatrix != null) {
+            observationMatrix.clear();
+        }
+        if(transitionMatrix != null && sharedModel == null) {
+            transitionMatrix.clear();
         }
     }
 
     public void clearOnlyBMatrix() {
-        for(int i = 0; i < numState; i++) {
-            for(int j = 0; j < numState; j++) {
-                matrixB[i][j] = 0;
-            }
+        checkNotFrozen();
+        if(observationMatrix != null) {
+            observationMatrix.clear();
         }
     }
 
@@ -80,6 +304,8 @@ public class HiddenMarkovModel {
        sequence O = {o1, o2, ..., oK}, calculate the probability that model
      * M has generated sequence O.
      * This can be computed efficiently using the either the Viterbi or the Forward algorithms.
+     * If the model is scaled, the result is exp(logLikelihood(observations)).
+     * It can still be zero when the probability is not representable as a double, so compare logLikelihood() in that case.
      *
      * @param observations A sequence of observations
      * @return The probability that the given sequence has been generated by this model
@@ -92,132 +318,109 @@ public class HiddenMarkovModel {
         if(observations.length == 0)
             return 0.0;
 
-        return forwardAlgorithm(observations);
+        return forwardAlgorithm(observations).getLikelihood();
     }
 
     /**
-     * Baum-Welch forward pass
-     * reference : http://courses.media.mit.edu/2010fall/mas622j/ProblemSets/ps4/tutorial.pdf
+     * Calculates the logarithm of the probability that this model has generated the given sequence.
+     * The scaled forward algorithm is always used, so the result does not underflow on a long sequence.
      *
      * @param observations A sequence of observations
-     * @return The probability that the given sequence has been generated by this model
+     * @return The log-likelihood of the given sequence (negative infinity if the sequence is impossible)
      * */
-    private double forwardAlgorithm(int[] observations) {
-        int T = observations.length;
-
-        double[][] fwd = new double[T][numState];
-
-        // 1. Initialization
-        for(int i = 0; i < numState; i++) {
-            fwd[0][i] = initStateP[i] * matrixB[i][observations[0]];
-        }
-
-        // 2. Induction
-        for(int t = 1; t < T; t++) {
-            for(int i = 0; i < numState; i++) {
-                double p = matrixB[i][observations[t]];
-                double sum = 0.0;
+    public double logLikelihood(int[] observations) {
 
-                if(p == 0) continue;
-                for(int j = 0; j < numState; j++) {
-                    sum += fwd[t-1][j] * matrixA[j][i];
-                }
-                fwd[t][i] = sum * p;
-            }
-        }
-        double probabilitySum = 0;
-        for(int i = 0; i < numState; i++) {
-            probabilitySum += fwd[T-1][i];
-        }
-
-        return probabilitySum;
-    }
-
-    public int[] decode(int[] observations) {
         if(observations == null)
             throw new IllegalArgumentException("observation is null");
 
         if(observations.length == 0)
-            return null;
+            return Double.NEGATIVE_INFINITY;
+
+        ForwardFilter filter = new ForwardFilter(this, true);
+        for(int observation : observations) {
+            filter.push(observation);
+        }
 
-        return viterbi(observations);
+        return filter.getLogLikelihood();
     }
 
     /**
-     * Viterbi-forward Algorithm
-     * reference : https://github.com/accord-net/framework/blob/development/Sources/Accord.Statistics/Models/Markov/HiddenMarkovModel%601.cs
+     * Baum-Welch forward pass
+     * reference : http://courses.media.mit.edu/2010fall/mas622j/ProblemSets/ps4/tutorial.pdf
+     * Only the forward variables of the last time step are kept by ForwardFilter.
+     *
+     * @param observations A sequence of observations
+     * @return The forward filter that all observations are pushed
      * */
-    private int[] viterbi(int[] observations) {
-        int T = observations.length;
-        int states = numState;
-        int maxState;
-        double maxWeight;
-        double weight;
-
-        double[] logPi = initStateP;
-        double[][] logA = matrixA;
-
-        int[][] s = new int[states][T];
-        double[][] lnFwd = new double[states][T];
-
-        // Base
-        for (int i = 0; i < states; i++) {
-            lnFwd[i][0] = logPi[i] + Math.log(matrixB[i][observations[0]]);
+    private ForwardFilter forwardAlgorithm(int[] observations) {
+        ForwardFilter filter = createForwardFilter();
+        for(int observation : observations) {
+            filter.push(observation);
         }
 
-        // Induction
-        for (int t = 1; t < T; t++)
-        {
-            for (int j = 0; j < states; j++)
-            {
-                maxState = 0;
-                maxWeight = lnFwd[0][t - 1] + logA[0][j];
-
-                for (int i = 1; i < states; i++)
-                {
-                    weight = lnFwd[i][t - 1] + logA[i][j];
-
-                    if (weight > maxWeight)
-                    {
-                        maxState = i;
-                        maxWeight = weight;
-                    }
-                }
-
-                lnFwd[j][t] = maxWeight + matrixB[j][observations[t]];
-                s[j][t] = maxState;
-            }
-        }
-
-        // Find maximum value for time T-1
-        maxState = -1;
-        maxWeight = lnFwd[0][T - 1];
-
-        for (int i = 1; i < states; i++)
-        {
-            if (lnFwd[i][T - 1] > maxWeight)
-            {
-                maxState = i;
-                maxWeight = lnFwd[i][T - 1];
-            }
-        }
+        return filter;
+    }
 
-        if(maxState < 0) {
-            maxState = observations[T-1];
-        }
+    /**
+     * Creates a streaming forward filter of this model.
+     * It is used when observations are given one at a time (e.g. real-time map matching),
+     * so that the forward algorithm does not have to be re-run from the first observation.
+     *
+     * @return A new forward filter (scaled if the model is scaled) that starts from the initial state probability
+     * */
+    public ForwardFilter createForwardFilter() {
+        return new ForwardFilter(this, isScaled);
+    }
 
-        // Trackback
-        int[] path = new int[T];
-        path[T - 1] = maxState;
+    /**
+     * Creates a fixed-lag smoother (streaming forward-backward algorithm) of this model.
+     * The state probability of each observation is smoothed by the next lag observations.
+     *
+     * @param lag The number of observations after a time step that are used to smooth it
+     * @return A new fixed-lag smoother that starts from the initial state probability
+     * */
+    public FixedLagSmoother createFixedLagSmoother(int lag) {
+        return new FixedLagSmoother(this, lag);
+    }
 
-        for (int t = T - 2; t >= 0; t--)
-            path[t] = s[path[t + 1]][t + 1];
+    /**
+     * Creates a reusable Viterbi decoder of this model.
+     * It is used when many observation sequences are decoded (e.g. the window of each positioning point),
+     * so that the lattice of the Viterbi algorithm is not allocated for each sequence.
+     *
+     * @return A new Viterbi decoder
+     * */
+    public ViterbiDecoder createViterbiDecoder() {
+        return new ViterbiDecoder(this, 0);
+    }
 
+    /**
+     * Creates a Viterbi decoder of this model for the online mode with a fixed lag.
+     * (See ViterbiDecoder.push)
+     *
+     * @param lag The maximum number of time steps that are not finalized
+     * @return A new Viterbi decoder
+     * */
+    public ViterbiDecoder createViterbiDecoder(int lag) {
+        if(lag <= 0)
+            throw new IllegalArgumentException("lag must be positive: " + lag);
 
-        // Returns the sequence probability as an out parameter
-        //logLikelihood = maxWeight;
+        return new ViterbiDecoder(this, lag);
+    }
 
-        // Returns the most likely (Viterbi path) for the given sequence
-        return path;
+    /**
+     * Viterbi-forward Algorithm
+     * reference : https://github.com/accord-net/framework/blob/development/Sources/Accord.Statistics/Models/Markov/HiddenMarkovModel%601.cs
+     *
+     * The maximum over the predecessors of a state is found by visiting only the non-zero entries of the A matrix.
+     * The weight of a zero entry is the score of the predecessor itself,
+     * so it is covered by the predecessor with the maximum score among all states.
+     * (See ViterbiDecoder)
+     *
+     * @param observations A sequence of observations
+     * @return The most likely state sequence (null if there is no observation)
+     * */
+    public int[] decode(int[] observations) {
+        return new ViterbiDecoder(this, 0).decode(observations);
     }
 }
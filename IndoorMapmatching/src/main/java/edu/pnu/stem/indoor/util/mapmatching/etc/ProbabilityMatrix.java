@@ -0,0 +1,73 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * ProbabilityMatrix is a storage of a square probability matrix of HiddenMarkovModel.
+ * The forward and Viterbi kernels of HiddenMarkovModel access the matrix only row by row through this interface,
+ * so the storage can skip the entries that are zero.
+ */
+public interface ProbabilityMatrix {
+
+    /**
+     * @return The number of rows (and columns) of the matrix
+     * */
+    int size();
+
+    /**
+     * @param row row index
+     * @param column column index
+     * @return The value of the entry
+     * */
+    double get(int row, int column);
+
+    /**
+     * @param row row index
+     * @param column column index
+     * @param value The value of the entry
+     * */
+    void set(int row, int column, double value);
+
+    /**
+     * Sets all entries to zero.
+     * */
+    void clear();
+
+    /**
+     * Divides all entries of a row by the sum of the row.
+     * Nothing is changed if the sum of the row is zero.
+     *
+     * @param row Row index to be normalized
+     * */
+    void normalizeRow(int row);
+
+    /**
+     * Adds weighted values of a row to the result: result[column] += weight * matrix[row][column].
+     * It is a step of the forward algorithm, and only the non-zero entries are visited.
+     *
+     * @param row row index
+     * @param weight The weight multiplied to the entries of the row
+     * @param result The vector the weighted values are added to
+     * */
+    void addRowTo(int row, double weight, double[] result);
+
+    /**
+     * Returns the sum of matrix[row][column] * vector[column] over all columns.
+     * It is a step of the backward algorithm, and only the non-zero entries are visited.
+     *
+     * @param row row index
+     * @param vector The vector multiplied to the row
+     * @return The dot product of the row and the vector
+     * */
+    double dotRow(int row, double[] vector);
+
+    /**
+     * Updates the maximum of (score + matrix[row][column]) for each column.
+     * It is a step of the Viterbi algorithm, and only the non-zero entries are visited.
+     * If the value is greater than best[column], the value and the row are stored in best and backPointer.
+     *
+     * @param row row index
+     * @param score The score of the row
+     * @param best The maximum value of each column found so far
+     * @param backPointer The row of the maximum value of each column found so far
+     * */
+    void maxRowTo(int row, double score, double[] best, int[] backPointer);
+}
@@ -0,0 +1,54 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * ReadOnlyProbabilityMatrix is a view of a matrix of a frozen HiddenMarkovModel (See HiddenMarkovModel.freeze).
+ * The kernels are delegated to the matrix, and the functions that change the matrix throw IllegalStateException,
+ * so the matrix shared by the sessions can't be changed through the model.
+ */
+class ReadOnlyProbabilityMatrix implements ProbabilityMatrix {
+    private final ProbabilityMatrix matrix;
+
+    ReadOnlyProbabilityMatrix(ProbabilityMatrix matrix) {
+        this.matrix = matrix;
+    }
+
+    @Override
+    public int size() {
+        return matrix.size();
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return matrix.get(row, column);
+    }
+
+    @Override
+    public void set(int row, int column, double value) {
+        throw new IllegalStateException("Can't change the matrix of the frozen model");
+    }
+
+    @Override
+    public void clear() {
+        throw new IllegalStateException("Can't change the matrix of the frozen model");
+    }
+
+    @Override
+    public void normalizeRow(int row) {
+        throw new IllegalStateException("Can't change the matrix of the frozen model");
+    }
+
+    @Override
+    public void addRowTo(int row, double weight, double[] result) {
+        matrix.addRowTo(row, weight, result);
+    }
+
+    @Override
+    public double dotRow(int row, double[] vector) {
+        return matrix.dotRow(row, vector);
+    }
+
+    @Override
+    public void maxRowTo(int row, double score, double[] best, int[] backPointer) {
+        matrix.maxRowTo(row, score, best, backPointer);
+    }
+}
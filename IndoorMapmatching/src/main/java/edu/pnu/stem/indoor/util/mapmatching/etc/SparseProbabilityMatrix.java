@@ -0,0 +1,167 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+/**
+ * SparseProbabilityMatrix stores only the entries of a fixed structure in CSR (compressed sparse row) form.
+ * The structure is given when the matrix is created (e.g. the topology graph of cell spaces),
+ * and the entries outside of the structure are always zero.
+ * For a building with a few doors per cell space, the memory and the forward/Viterbi steps are proportional to the number of connections.
+ */
+public class SparseProbabilityMatrix implements ProbabilityMatrix {
+    private final int size;
+    private final int[] rowPointer;     // Entries of row i are stored in [rowPointer[i], rowPointer[i + 1])
+    private final int[] columnIndex;    // Column index of each entry (sorted in each row)
+    private final double[] values;      // Value of each entry
+
+    /**
+     * Creates a matrix whose structure is the true entries of the given pattern.
+     * All values are initialized with zero.
+     *
+     * @param pattern The structure of the matrix (e.g. topology graph of cell spaces)
+     * */
+    public SparseProbabilityMatrix(boolean[][] pattern) {
+        size = pattern.length;
+        rowPointer = new int[size + 1];
+        for(int i = 0; i < size; i++) {
+            int count = 0;
+            for(int j = 0; j < size; j++) {
+                if(pattern[i][j]) count++;
+            }
+            rowPointer[i + 1] = rowPointer[i] + count;
+        }
+
+        columnIndex = new int[rowPointer[size]];
+        values = new double[rowPointer[size]];
+        int index = 0;
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                if(pattern[i][j]) columnIndex[index++] = j;
+            }
+        }
+    }
+
+    /**
+     * Creates a matrix from the non-zero entries of the given matrix.
+     *
+     * @param matrix dense matrix
+     * */
+    public SparseProbabilityMatrix(double[][] matrix) {
+        this(getNonZeroPattern(matrix));
+        for(int i = 0; i < size; i++) {
+            for(int k = rowPointer[i]; k < rowPointer[i + 1]; k++) {
+                values[k] = matrix[i][columnIndex[k]];
+            }
+        }
+    }
+
+    private static boolean[][] getNonZeroPattern(double[][] matrix) {
+        boolean[][] pattern = new boolean[matrix.length][matrix.length];
+        for(int i = 0; i < matrix.length; i++) {
+            for(int j = 0; j < matrix.length; j++) {
+                pattern[i][j] = matrix[i][j] != 0;
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * @return The number of entries of the structure
+     * */
+    public int getNumEntry() {
+        return values.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        int k = find(row, column);
+        return k < 0 ? 0.0 : values[k];
+    }
+
+    /**
+     * Sets the value of an entry.
+     *
+     * @exception IllegalArgumentException If the entry is not a part of the structure and the value is not zero
+     * */
+    @Override
+    public void set(int row, int column, double value) {
+        int k = find(row, column);
+        if(k >= 0) {
+            values[k] = value;
+        }
+        else if(value != 0) {
+            throw new IllegalArgumentException("(" + row + ", " + column + ") is not a part of the sparse matrix structure");
+        }
+    }
+
+    @Override
+    public void clear() {
+        for(int k = 0; k < values.length; k++) {
+            values[k] = 0;
+        }
+    }
+
+    @Override
+    public void normalizeRow(int row) {
+        double rowSum = 0.0;
+        for(int k = rowPointer[row]; k < rowPointer[row + 1]; k++) {
+            rowSum += values[k];
+        }
+        if(rowSum != 0) {
+            for(int k = rowPointer[row]; k < rowPointer[row + 1]; k++) {
+                values[k] = values[k] / rowSum;
+            }
+        }
+    }
+
+    @Override
+    public void addRowTo(int row, double weight, double[] result) {
+        for(int k = rowPointer[row]; k < rowPointer[row + 1]; k++) {
+            if(values[k] == 0) continue;
+            result[columnIndex[k]] += weight * values[k];
+        }
+    }
+
+    @Override
+    public double dotRow(int row, double[] vector) {
+        double sum = 0.0;
+        for(int k = rowPointer[row]; k < rowPointer[row + 1]; k++) {
+            if(values[k] == 0) continue;
+            sum += values[k] * vector[columnIndex[k]];
+        }
+        return sum;
+    }
+
+    @Override
+    public void maxRowTo(int row, double score, double[] best, int[] backPointer) {
+        for(int k = rowPointer[row]; k < rowPointer[row + 1]; k++) {
+            if(values[k] == 0) continue;
+            int column = columnIndex[k];
+            double weight = score + values[k];
+            if(weight > best[column]) {
+                best[column] = weight;
+                backPointer[column] = row;
+            }
+        }
+    }
+
+    /**
+     * Binary search of an entry in a row.
+     *
+     * @return The index of the entry, or -1 if the entry is not a part of the structure
+     * */
+    private int find(int row, int column) {
+        int low = rowPointer[row];
+        int high = rowPointer[row + 1] - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            if(columnIndex[mid] < column) low = mid + 1;
+            else if(columnIndex[mid] > column) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+}
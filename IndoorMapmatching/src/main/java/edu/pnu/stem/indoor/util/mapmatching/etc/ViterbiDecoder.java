@@ -0,0 +1,302 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import java.util.Arrays;
+
+/**
+ * ViterbiDecoder is a reusable version of the Viterbi algorithm of HiddenMarkovModel.
+ * Only the scores of the last two time steps are kept, and the back pointers are kept in a ring buffer,
+ * so decoding doesn't allocate after the buffers are large enough.
+ * For each time step, only the predecessors with a finite score and the non-zero entries of the A matrix are visited
+ * (all connected states with a SparseProbabilityMatrix), and the zero entries are covered by the predecessor with the maximum score.
+ * The scores and the decoded paths are the same as HiddenMarkovModel.decode().
+ *
+ * The decoder can also be used online with a fixed lag. The observations are pushed one at a time,
+ * and a time step is finalized when the paths of all surviving states (finite score) converge to one state at that step.
+ * If the paths don't converge within the lag, the oldest step is finalized by the path of the best state.
+ *
+ * The decoder reads the matrices of the model whenever it is used (like ForwardFilter).
+ * If the model is changed while observations are pushed, call reset() and push the observations again.
+ */
+public class ViterbiDecoder {
+    private final HiddenMarkovModel hmm;
+    private final int numState;
+    private final int lag;              // 0 if the decoder isn't used online
+    private double[] prevScore;         // Scores of the previous time step
+    private double[] currScore;         // Scores of the last pushed time step
+    private int[][] backPointers;       // Back pointer of time step t is backPointers[t % backPointers.length]
+    private final int[] traceStates;    // States of the surviving paths (convergence test)
+    private final int[] traceMarks;     // Stamp of the states in traceStates
+    private int traceStamp = 0;
+    private int length;                 // The number of pushed observations
+    private int finalizedLength;        // The number of finalized time steps (online mode)
+    private int lastObservation;
+
+    ViterbiDecoder(HiddenMarkovModel hmm, int lag) {
+        if(lag < 0)
+            throw new IllegalArgumentException("lag is negative: " + lag);
+
+        this.hmm = hmm;
+        this.numState = hmm.getNumState();
+        this.lag = lag;
+        prevScore = new double[numState];
+        currScore = new double[numState];
+        backPointers = new int[lag + 1][numState];
+        traceStates = new int[numState];
+        traceMarks = new int[numState];
+        reset();
+    }
+
+    /**
+     * Removes all pushed observations.
+     * */
+    public void reset() {
+        length = 0;
+        finalizedLength = 0;
+    }
+
+    /**
+     * @return The maximum number of time steps that are not finalized in the online mode
+     * */
+    public int getLag() {
+        return lag;
+    }
+
+    /**
+     * @return The number of observations pushed so far
+     * */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The number of finalized time steps in the online mode
+     * */
+    public int getFinalizedLength() {
+        return finalizedLength;
+    }
+
+    /**
+     * Finds the most likely state sequence of the observations.
+     *
+     * @param observations A sequence of observations
+     * @return The most likely state sequence (null if there is no observation)
+     * */
+    public int[] decode(int[] observations) {
+        if(observations == null)
+            throw new IllegalArgumentException("observation is null");
+
+        if(observations.length == 0)
+            return null;
+
+        int[] path = new int[observations.length];
+        decode(observations, 0, observations.length, path);
+        return path;
+    }
+
+    /**
+     * Finds the most likely state sequence of a part of the observations and writes it to the given array.
+     * The pushed observations of the online mode are removed.
+     * The buffers are allocated only if the length is larger than ever.
+     *
+     * @param observations A sequence of observations
+     * @param start index of the first observation
+     * @param observationLength the number of observations (greater than zero)
+     * @param path array to write the state sequence (path[0] is the state of observations[start])
+     * */
+    public void decode(int[] observations, int start, int observationLength, int[] path) {
+        if(observationLength <= 0 || start < 0 || start + observationLength > observations.length)
+            throw new IllegalArgumentException("The range of the observations is out of the array: " + start + ", " + observationLength);
+        if(path.length < observationLength)
+            throw new IllegalArgumentException("The path array is shorter than the observations: " + path.length + ", " + observationLength);
+
+        reset();
+        if(backPointers.length < observationLength) {
+            backPointers = new int[observationLength][numState];
+        }
+        for(int t = 0; t < observationLength; t++) {
+            step(observations[start + t]);
+        }
+
+        path[observationLength - 1] = getBestState();
+        traceBack(observationLength - 1, path[observationLength - 1], 0, path, 0);
+        reset();
+    }
+
+    /**
+     * Pushes a new observation in the online mode and writes the newly finalized states.
+     * A time step is finalized when all surviving paths pass the same state at that step,
+     * or when more than lag time steps are not finalized.
+     *
+     * @param observation The new observation
+     * @param finalized array to write the newly finalized states in time order (the length must be at least lag + 1)
+     * @return The number of newly finalized states
+     * */
+    public int push(int observation, int[] finalized) {
+        if(lag == 0)
+            throw new IllegalStateException("The decoder isn't created for the online mode (lag is zero)");
+        if(finalized.length < lag + 1)
+            throw new IllegalArgumentException("The finalized array is shorter than lag + 1: " + finalized.length);
+
+        step(observation);
+
+        int finalizedCount = 0;
+        int convergedStep = getConvergedStep();
+        if(convergedStep >= finalizedLength) {
+            finalizedCount = finalize(convergedStep, traceStates[0], finalized, 0);
+        }
+        if(length - finalizedLength > lag) {
+            // The paths don't converge within the lag, so the oldest step is decided by the best state
+            int lastStep = length - 1;
+            int oldestStep = length - 1 - lag;
+            int state = getBestState();
+            for(int t = lastStep; t > oldestStep; t--) {
+                state = backPointers[t % backPointers.length][state];
+            }
+            finalizedCount += finalize(oldestStep, state, finalized, finalizedCount);
+        }
+
+        return finalizedCount;
+    }
+
+    /**
+     * Finalizes all remaining time steps of the online mode by the path of the best state and removes all pushed observations.
+     *
+     * @param finalized array to write the finalized states in time order (the length must be at least lag + 1)
+     * @return The number of finalized states
+     * */
+    public int flush(int[] finalized) {
+        int finalizedCount = 0;
+        if(length > finalizedLength) {
+            if(finalized.length < length - finalizedLength)
+                throw new IllegalArgumentException("The finalized array is shorter than the remaining time steps: " + finalized.length);
+            finalizedCount = finalize(length - 1, getBestState(), finalized, 0);
+        }
+        reset();
+
+        return finalizedCount;
+    }
+
+    /**
+     * Viterbi-forward step of an observation. It is the same as the induction of HiddenMarkovModel.
+     * */
+    private void step(int observation) {
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        if(length == 0) {
+            double[] initStateP = hmm.getInitStateP();
+            for (int i = 0; i < numState; i++) {
+                currScore[i] = initStateP[i] + Math.log(matrixB.get(i, observation));
+            }
+        }
+        else {
+            double[] temp = prevScore;
+            prevScore = currScore;
+            currScore = temp;
+
+            int[] backPointer = backPointers[length % backPointers.length];
+            Arrays.fill(currScore, Double.NEGATIVE_INFINITY);
+            Arrays.fill(backPointer, Integer.MAX_VALUE);
+
+            // A predecessor with negative infinity score can't update the maximum, so it is skipped
+            ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+            int maxPrevState = 0;
+            for (int i = 0; i < numState; i++) {
+                if (prevScore[i] == Double.NEGATIVE_INFINITY)
+                    continue;
+                matrixA.maxRowTo(i, prevScore[i], currScore, backPointer);
+                if (prevScore[i] > prevScore[maxPrevState])
+                    maxPrevState = i;
+            }
+
+            double maxPrevScore = prevScore[maxPrevState];
+            for (int j = 0; j < numState; j++) {
+                // Compare with the predecessor that has a zero entry (ties are broken by the smaller state index)
+                if (maxPrevScore > currScore[j] || (maxPrevScore == currScore[j] && maxPrevState < backPointer[j])) {
+                    currScore[j] = maxPrevScore;
+                    backPointer[j] = maxPrevState;
+                }
+                currScore[j] += matrixB.get(j, observation);
+            }
+        }
+        length++;
+        lastObservation = observation;
+    }
+
+    /**
+     * Same selection as HiddenMarkovModel: the state of the maximum score,
+     * but the last observation if no state has a greater score than the first state.
+     * */
+    private int getBestState() {
+        int maxState = -1;
+        double maxWeight = currScore[0];
+        for (int i = 1; i < numState; i++) {
+            if (currScore[i] > maxWeight) {
+                maxState = i;
+                maxWeight = currScore[i];
+            }
+        }
+
+        return maxState < 0 ? lastObservation : maxState;
+    }
+
+    /**
+     * Traces the paths of the surviving states of the last time step back to the first step that is not finalized.
+     * If all states are negative infinity, the paths of all states are traced.
+     *
+     * @return The last time step that all paths pass the same state (traceStates[0]), or -1 if the paths don't converge
+     * */
+    private int getConvergedStep() {
+        int stateCount = 0;
+        traceStamp++;
+        for (int i = 0; i < numState; i++) {
+            if (currScore[i] != Double.NEGATIVE_INFINITY) {
+                traceStates[stateCount++] = i;
+            }
+        }
+        if (stateCount == 0) {
+            for (int i = 0; i < numState; i++) {
+                traceStates[stateCount++] = i;
+            }
+        }
+
+        int t = length - 1;
+        while (stateCount > 1 && t > finalizedLength) {
+            int[] backPointer = backPointers[t % backPointers.length];
+            traceStamp++;
+            int nextCount = 0;
+            for (int k = 0; k < stateCount; k++) {
+                int state = backPointer[traceStates[k]];
+                if (traceMarks[state] != traceStamp) {
+                    traceMarks[state] = traceStamp;
+                    traceStates[nextCount++] = state;
+                }
+            }
+            stateCount = nextCount;
+            t--;
+        }
+
+        return stateCount == 1 ? t : -1;
+    }
+
+    /**
+     * Writes the states of the time steps [finalizedLength, step] by tracing back from the state of the given step.
+     * */
+    private int finalize(int step, int state, int[] finalized, int offset) {
+        int finalizedCount = step - finalizedLength + 1;
+        finalized[offset + finalizedCount - 1] = state;
+        traceBack(step, state, finalizedLength, finalized, offset);
+        finalizedLength = step + 1;
+
+        return finalizedCount;
+    }
+
+    /**
+     * Writes the states of the time steps [firstStep, step) of the path that passes the state at the given step.
+     * The state of firstStep is written to path[offset].
+     * */
+    private void traceBack(int step, int state, int firstStep, int[] path, int offset) {
+        for (int t = step; t > firstStep; t--) {
+            state = backPointers[t % backPointers.length][state];
+            path[offset + t - 1 - firstStep] = state;
+        }
+    }
+}
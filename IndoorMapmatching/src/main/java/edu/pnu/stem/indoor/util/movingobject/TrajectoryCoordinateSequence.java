@@ -0,0 +1,109 @@
+package edu.pnu.stem.indoor.util.movingobject;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.impl.CoordinateArraySequence;
+
+/**
+ * TrajectoryCoordinateSequence is a read only view of a range of the x and y columns of TrajectoryStore.
+ * The coordinates aren't stored in the sequence. A Coordinate is made only when getCoordinate(int) is called,
+ * and getX, getY and getCoordinate(int, Coordinate) don't make any object.
+ */
+class TrajectoryCoordinateSequence implements CoordinateSequence {
+    private final double[] xs;
+    private final double[] ys;
+    private final int start;
+    private final int size;
+
+    TrajectoryCoordinateSequence(double[] xs, double[] ys, int start, int size) {
+        this.xs = xs;
+        this.ys = ys;
+        this.start = start;
+        this.size = size;
+    }
+
+    @Override
+    public int getDimension() {
+        return 2;
+    }
+
+    @Override
+    public Coordinate getCoordinate(int i) {
+        return new Coordinate(xs[start + i], ys[start + i]);
+    }
+
+    @Override
+    public Coordinate getCoordinateCopy(int i) {
+        return getCoordinate(i);
+    }
+
+    @Override
+    public void getCoordinate(int index, Coordinate coord) {
+        coord.x = xs[start + index];
+        coord.y = ys[start + index];
+    }
+
+    @Override
+    public double getX(int index) {
+        return xs[start + index];
+    }
+
+    @Override
+    public double getY(int index) {
+        return ys[start + index];
+    }
+
+    @Override
+    public double getOrdinate(int index, int ordinateIndex) {
+        switch (ordinateIndex) {
+            case CoordinateSequence.X:
+                return xs[start + index];
+            case CoordinateSequence.Y:
+                return ys[start + index];
+            default:
+                return Double.NaN;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void setOrdinate(int index, int ordinateIndex, double value) {
+        throw new UnsupportedOperationException("The coordinates of a trajectory store can't be modified");
+    }
+
+    @Override
+    public Coordinate[] toCoordinateArray() {
+        Coordinate[] coords = new Coordinate[size];
+        for(int i = 0; i < size; i++) {
+            coords[i] = getCoordinate(i);
+        }
+        return coords;
+    }
+
+    @Override
+    public Envelope expandEnvelope(Envelope env) {
+        for(int i = start; i < start + size; i++) {
+            env.expandToInclude(xs[i], ys[i]);
+        }
+        return env;
+    }
+
+    @Override
+    @Deprecated
+    public Object clone() {
+        return copy();
+    }
+
+    /**
+     * @return copy of the coordinates (not a view)
+     * */
+    @Override
+    public CoordinateSequence copy() {
+        return new CoordinateArraySequence(toCoordinateArray());
+    }
+}
@@ -0,0 +1,494 @@
+package edu.pnu.stem.indoor.util.movingobject;
+
+import edu.pnu.stem.indoor.util.parser.BuildNGoReader;
+import edu.pnu.stem.indoor.util.parser.ChangeCoord;
+import org.locationtech.jts.geom.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * TrajectoryStore keeps many trajectories in columns for the batch experiments.
+ * The positions of all trajectories are packed in the x, y and timestamp arrays (double) and the ground truth labels
+ * in an id array (int) with a label dictionary. The points of trajectory i are [getStart(i), getStart(i) + getNumPoints(i)).
+ * The points are read by getX, getY, getTimestamp and getLabelId without making any object.
+ *
+ * For the map matching classes (DirectIndoorMapMatching, HMMIndoorMapMatching), getTrajectory and getSubTrajectory
+ * return the geometries that are views of the columns (See TrajectoryCoordinateSequence), so Coordinate[] isn't made.
+ * The store can be appended and written to a binary file, which is read by a memory-mapped file.
+ * The WGS84 range used to convert the positions to the canvas coordinates is kept with the store (See setCoordinateRange),
+ * so the store of a file can be checked against the building it is matched with.
+ */
+public class TrajectoryStore {
+    public static final String FILE_EXTENSION = ".tjs";
+    public static final int NO_LABEL = -1;
+    private static final int MAGIC_NUMBER = 0x544A5354;    // "TJST"
+    private static final int VERSION = 2;
+
+    private double[] xs;
+    private double[] ys;
+    private double[] timestamps;    // NaN if the time isn't known
+    private int[] labelIds;         // NO_LABEL if there is no ground truth
+    private int pointCount = 0;
+
+    private int[] offsets;          // The points of trajectory i are [offsets[i], offsets[i + 1])
+    private String[] trajectoryIDs;
+    private int trajectoryCount = 0;
+
+    private final ArrayList<String> labels;
+    private final HashMap<String, Integer> labelIdMap;
+    private final GeometryFactory gf;
+    // WGS84 range of the building, the origin of the canvas coordinates of the positions (See ChangeCoord)
+    private Coordinate minPosition = ChangeCoord.getDefaultMinPosition();
+    private Coordinate maxPosition = ChangeCoord.getDefaultMaxPosition();
+
+    public TrajectoryStore() {
+        this(1024, 16);
+    }
+
+    /**
+     * @param pointCapacity initial capacity of the points
+     * @param trajectoryCapacity initial capacity of the trajectories
+     * */
+    public TrajectoryStore(int pointCapacity, int trajectoryCapacity) {
+        pointCapacity = Math.max(pointCapacity, 1);
+        trajectoryCapacity = Math.max(trajectoryCapacity, 1);
+        xs = new double[pointCapacity];
+        ys = new double[pointCapacity];
+        timestamps = new double[pointCapacity];
+        labelIds = new int[pointCapacity];
+        offsets = new int[trajectoryCapacity + 1];
+        trajectoryIDs = new String[trajectoryCapacity];
+        labels = new ArrayList<>();
+        labelIdMap = new HashMap<>();
+        gf = new GeometryFactory();
+    }
+
+    /**
+     * This function reads all BuildNGo trajectory files in a directory with their ground truth files to a new store.
+     * The positions are converted with the global range of ChangeCoord. (See BuildNGoReader.readDirectory)
+     *
+     * @param trajectoryDirectory directory of BuildNGo trajectory files
+     * @param groundTruthDirectory directory of the ground truth files
+     * @return trajectory store
+     * */
+    public static TrajectoryStore fromDirectory(File trajectoryDirectory, File groundTruthDirectory) throws IOException {
+        return fromDirectory(trajectoryDirectory, groundTruthDirectory, ChangeCoord.getMinPosition(), ChangeCoord.getMaxPosition());
+    }
+
+    /**
+     * This function reads all BuildNGo trajectory files in a directory with their ground truth files to a new store.
+     * The positions are converted with the given range (e.g. IndoorFeatures.getMinPosition), and the range is kept in the store.
+     *
+     * @param trajectoryDirectory directory of BuildNGo trajectory files
+     * @param groundTruthDirectory directory of the ground truth files
+     * @param minPosition minimum WGS84 position of the building
+     * @param maxPosition maximum WGS84 position of the building
+     * @return trajectory store
+     * */
+    public static TrajectoryStore fromDirectory(File trajectoryDirectory, File groundTruthDirectory,
+                                                Coordinate minPosition, Coordinate maxPosition) throws IOException {
+        TrajectoryStore store = new TrajectoryStore();
+        store.setCoordinateRange(minPosition, maxPosition);
+        for(BuildNGoReader.TrajectoryFile trajectoryFile : BuildNGoReader.readDirectory(trajectoryDirectory, groundTruthDirectory, minPosition)) {
+            store.append(trajectoryFile.getFileID(), trajectoryFile.getTrajectory(), trajectoryFile.getGroundTruth());
+        }
+        return store;
+    }
+
+    /**
+     * Sets the WGS84 range that the positions of the store are converted with.
+     * It doesn't change the positions already appended.
+     *
+     * @param minPosition minimum WGS84 position
+     * @param maxPosition maximum WGS84 position
+     * */
+    public void setCoordinateRange(Coordinate minPosition, Coordinate maxPosition) {
+        this.minPosition = new Coordinate(minPosition);
+        this.maxPosition = new Coordinate(maxPosition);
+    }
+
+    /**
+     * @return minimum WGS84 position of the range (a copy)
+     * */
+    public Coordinate getMinPosition() {
+        return new Coordinate(minPosition);
+    }
+
+    /**
+     * @return maximum WGS84 position of the range (a copy)
+     * */
+    public Coordinate getMaxPosition() {
+        return new Coordinate(maxPosition);
+    }
+
+    /**
+     * Append a trajectory without time.
+     *
+     * @param trajectoryID ID of the trajectory (e.g. file ID, nullable)
+     * @param trajectory positions of the trajectory
+     * @param groundTruth label of the cell space of each position (nullable)
+     * @return index of the appended trajectory
+     * */
+    public int append(String trajectoryID, LineString trajectory, String[] groundTruth) {
+        return append(trajectoryID, trajectory.getCoordinateSequence(), null, groundTruth);
+    }
+
+    /**
+     * Append a trajectory.
+     *
+     * @param trajectoryID ID of the trajectory (e.g. file ID, nullable)
+     * @param positions positions of the trajectory
+     * @param times time of each position (nullable)
+     * @param groundTruth label of the cell space of each position (nullable, a null label is NO_LABEL)
+     * @return index of the appended trajectory
+     * */
+    public int append(String trajectoryID, CoordinateSequence positions, double[] times, String[] groundTruth) {
+        int size = positions.size();
+        if(times != null && times.length != size)
+            throw new IllegalArgumentException("The number of times is different from the number of positions: " + times.length + ", " + size);
+        if(groundTruth != null && groundTruth.length != size)
+            throw new IllegalArgumentException("The number of ground truth labels is different from the number of positions: " + groundTruth.length + ", " + size);
+
+        ensurePointCapacity(pointCount + size);
+        ensureTrajectoryCapacity(trajectoryCount + 1);
+        for(int i = 0; i < size; i++) {
+            int point = pointCount + i;
+            xs[point] = positions.getX(i);
+            ys[point] = positions.getY(i);
+            timestamps[point] = times != null ? times[i] : Double.NaN;
+            labelIds[point] = groundTruth != null ? getOrAddLabelId(groundTruth[i]) : NO_LABEL;
+        }
+        pointCount += size;
+
+        trajectoryIDs[trajectoryCount] = trajectoryID;
+        offsets[trajectoryCount + 1] = pointCount;
+        return trajectoryCount++;
+    }
+
+    private int getOrAddLabelId(String label) {
+        if(label == null)
+            return NO_LABEL;
+        Integer labelId = labelIdMap.get(label);
+        if(labelId == null) {
+            labelId = labels.size();
+            labels.add(label);
+            labelIdMap.put(label, labelId);
+        }
+        return labelId;
+    }
+
+    private void ensurePointCapacity(int capacity) {
+        if(capacity > xs.length) {
+            int newCapacity = Math.max(capacity, xs.length * 2);
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            labelIds = Arrays.copyOf(labelIds, newCapacity);
+        }
+    }
+
+    private void ensureTrajectoryCapacity(int capacity) {
+        if(capacity > trajectoryIDs.length) {
+            int newCapacity = Math.max(capacity, trajectoryIDs.length * 2);
+            trajectoryIDs = Arrays.copyOf(trajectoryIDs, newCapacity);
+            offsets = Arrays.copyOf(offsets, newCapacity + 1);
+        }
+    }
+
+    public int getNumTrajectories() {
+        return trajectoryCount;
+    }
+
+    /**
+     * @return the number of points of all trajectories
+     * */
+    public int getNumPoints() {
+        return pointCount;
+    }
+
+    public int getNumPoints(int trajectoryIndex) {
+        checkTrajectoryIndex(trajectoryIndex);
+        return offsets[trajectoryIndex + 1] - offsets[trajectoryIndex];
+    }
+
+    /**
+     * @return index of the first point of the trajectory in the columns
+     * */
+    public int getStart(int trajectoryIndex) {
+        checkTrajectoryIndex(trajectoryIndex);
+        return offsets[trajectoryIndex];
+    }
+
+    public String getTrajectoryID(int trajectoryIndex) {
+        checkTrajectoryIndex(trajectoryIndex);
+        return trajectoryIDs[trajectoryIndex];
+    }
+
+    private void checkTrajectoryIndex(int trajectoryIndex) {
+        if(trajectoryIndex < 0 || trajectoryIndex >= trajectoryCount)
+            throw new IndexOutOfBoundsException("Trajectory index: " + trajectoryIndex + ", the number of trajectories: " + trajectoryCount);
+    }
+
+    public double getX(int pointIndex) {
+        return xs[pointIndex];
+    }
+
+    public double getY(int pointIndex) {
+        return ys[pointIndex];
+    }
+
+    public double getTimestamp(int pointIndex) {
+        return timestamps[pointIndex];
+    }
+
+    public int getLabelId(int pointIndex) {
+        return labelIds[pointIndex];
+    }
+
+    /**
+     * The column arrays are shared (not copied) for the batch processing, so they must not be modified.
+     * Only the first getNumPoints() values are valid, and the arrays are replaced when the store grows.
+     * */
+    public double[] getXs() {
+        return xs;
+    }
+
+    public double[] getYs() {
+        return ys;
+    }
+
+    public double[] getTimestamps() {
+        return timestamps;
+    }
+
+    public int[] getLabelIds() {
+        return labelIds;
+    }
+
+    public int getNumLabels() {
+        return labels.size();
+    }
+
+    /**
+     * @return label of the id (null for NO_LABEL)
+     * */
+    public String getLabel(int labelId) {
+        return labelId == NO_LABEL ? null : labels.get(labelId);
+    }
+
+    /**
+     * @return id of the label (NO_LABEL if the label isn't in the store)
+     * */
+    public int getLabelId(String label) {
+        Integer labelId = labelIdMap.get(label);
+        return labelId == null ? NO_LABEL : labelId;
+    }
+
+    /**
+     * @return ground truth labels of the trajectory (null if the trajectory has no label)
+     * */
+    public String[] getGroundTruth(int trajectoryIndex) {
+        int start = getStart(trajectoryIndex);
+        String[] groundTruth = new String[getNumPoints(trajectoryIndex)];
+        boolean hasLabel = false;
+        for(int i = 0; i < groundTruth.length; i++) {
+            groundTruth[i] = getLabel(labelIds[start + i]);
+            hasLabel |= groundTruth[i] != null;
+        }
+        return hasLabel ? groundTruth : null;
+    }
+
+    /**
+     * @return coordinate sequence that is a view of the points of the trajectory
+     * */
+    public CoordinateSequence getCoordinateSequence(int trajectoryIndex) {
+        return new TrajectoryCoordinateSequence(xs, ys, getStart(trajectoryIndex), getNumPoints(trajectoryIndex));
+    }
+
+    /**
+     * @return trajectory (a view of the columns, empty if it has less than two points)
+     * */
+    public LineString getTrajectory(int trajectoryIndex) {
+        if(getNumPoints(trajectoryIndex) < 2)
+            return gf.createLineString(new Coordinate[]{});
+        return gf.createLineString(getCoordinateSequence(trajectoryIndex));
+    }
+
+    /**
+     * This function returns a part of a trajectory (e.g. the window of the previous positions for HMMIndoorMapMatching).
+     * If the range is out of the trajectory, only the points in the trajectory are used.
+     *
+     * @param trajectoryIndex index of the trajectory
+     * @param start index of the first point in the trajectory
+     * @param size the number of points
+     * @return the empty line string if there is no point, the point if there is one point, or the line string (a view of the columns)
+     * */
+    public Geometry getSubTrajectory(int trajectoryIndex, int start, int size) {
+        int numPoints = getNumPoints(trajectoryIndex);
+        start = Math.max(start, 0);
+        size = Math.min(size, numPoints - start);
+        if(size <= 0)
+            return gf.createLineString(new Coordinate[]{});
+        int pointIndex = getStart(trajectoryIndex) + start;
+        if(size == 1)
+            return gf.createPoint(new Coordinate(xs[pointIndex], ys[pointIndex]));
+        return gf.createLineString(new TrajectoryCoordinateSequence(xs, ys, pointIndex, size));
+    }
+
+    /**
+     * @return point geometry of the i-th point of the trajectory
+     * */
+    public Point getPoint(int trajectoryIndex, int i) {
+        if(i < 0 || i >= getNumPoints(trajectoryIndex))
+            throw new IndexOutOfBoundsException("Point index: " + i);
+        int pointIndex = getStart(trajectoryIndex) + i;
+        return gf.createPoint(new Coordinate(xs[pointIndex], ys[pointIndex]));
+    }
+
+    /**
+     * This function writes the store to a binary file.
+     *
+     * File format (big endian): magic number, version, the WGS84 range (min x, min y, max x, max y),
+     * the number of points, trajectories and labels, labels, trajectory IDs (length -1 for null),
+     * offsets of the trajectories, x, y, timestamp and label id columns
+     *
+     * @param outputFile binary file
+     * */
+    public void write(File outputFile) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(VERSION);
+            output.writeDouble(minPosition.x);
+            output.writeDouble(minPosition.y);
+            output.writeDouble(maxPosition.x);
+            output.writeDouble(maxPosition.y);
+            output.writeInt(pointCount);
+            output.writeInt(trajectoryCount);
+            output.writeInt(labels.size());
+            for(String label : labels) {
+                writeString(output, label);
+            }
+            for(int i = 0; i < trajectoryCount; i++) {
+                writeString(output, trajectoryIDs[i]);
+            }
+            for(int i = 0; i <= trajectoryCount; i++) {
+                output.writeInt(offsets[i]);
+            }
+            for(int i = 0; i < pointCount; i++) {
+                output.writeDouble(xs[i]);
+            }
+            for(int i = 0; i < pointCount; i++) {
+                output.writeDouble(ys[i]);
+            }
+            for(int i = 0; i < pointCount; i++) {
+                output.writeDouble(timestamps[i]);
+            }
+            for(int i = 0; i < pointCount; i++) {
+                output.writeInt(labelIds[i]);
+            }
+        }
+    }
+
+    /**
+     * This function reads a store from a binary file written by write() by a memory-mapped file.
+     * The read store can be appended. The range in the file is kept in the store (See getMinPosition).
+     *
+     * @param inputFile binary file
+     * @return trajectory store
+     * */
+    public static TrajectoryStore read(File inputFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The file is too large to map: " + inputFile);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * This function reads a store from a binary file and checks that its positions are converted with the given range
+     * (e.g. the range of the indoor features they are matched with).
+     *
+     * @param inputFile binary file
+     * @param minPosition minimum WGS84 position of the building
+     * @param maxPosition maximum WGS84 position of the building
+     * @return trajectory store
+     * @throws IOException if the file can't be read or the range in the file is different from the given range
+     * */
+    public static TrajectoryStore read(File inputFile, Coordinate minPosition, Coordinate maxPosition) throws IOException {
+        TrajectoryStore store = read(inputFile);
+        if(!store.minPosition.equals2D(minPosition) || !store.maxPosition.equals2D(maxPosition))
+            throw new IOException("The trajectories of the file are converted with a different range: "
+                    + store.minPosition + " - " + store.maxPosition + ", expected " + minPosition + " - " + maxPosition);
+        return store;
+    }
+
+    private static TrajectoryStore read(ByteBuffer buffer) throws IOException {
+        try {
+            if(buffer.getInt() != MAGIC_NUMBER)
+                throw new IOException("It isn't a binary file of trajectory store");
+            int version = buffer.getInt();
+            if(version != VERSION)
+                throw new IOException("Unsupported version of the binary file: " + version);
+            Coordinate minPosition = new Coordinate(buffer.getDouble(), buffer.getDouble());
+            Coordinate maxPosition = new Coordinate(buffer.getDouble(), buffer.getDouble());
+            int pointNumber = buffer.getInt();
+            int trajectoryNumber = buffer.getInt();
+            int labelNumber = buffer.getInt();
+
+            TrajectoryStore store = new TrajectoryStore(pointNumber, trajectoryNumber);
+            store.setCoordinateRange(minPosition, maxPosition);
+            for(int i = 0; i < labelNumber; i++) {
+                store.getOrAddLabelId(readString(buffer));
+            }
+            for(int i = 0; i < trajectoryNumber; i++) {
+                store.trajectoryIDs[i] = readString(buffer);
+            }
+            buffer.asIntBuffer().get(store.offsets, 0, trajectoryNumber + 1);
+            buffer.position(buffer.position() + 4 * (trajectoryNumber + 1));
+            buffer.asDoubleBuffer().get(store.xs, 0, pointNumber);
+            buffer.position(buffer.position() + 8 * pointNumber);
+            buffer.asDoubleBuffer().get(store.ys, 0, pointNumber);
+            buffer.position(buffer.position() + 8 * pointNumber);
+            buffer.asDoubleBuffer().get(store.timestamps, 0, pointNumber);
+            buffer.position(buffer.position() + 8 * pointNumber);
+            buffer.asIntBuffer().get(store.labelIds, 0, pointNumber);
+            buffer.position(buffer.position() + 4 * pointNumber);
+            store.pointCount = pointNumber;
+            store.trajectoryCount = trajectoryNumber;
+
+            return store;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("The binary file of trajectory store is broken", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if(value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length == -1)
+            return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -85,7 +85,7 @@ public class SyntheticTrajectoryGenerator {
 
             // Step 2: 두 좌표간 Indoor route 생성
             LineString tmpTrajectory = IndoorUtils.getIndoorRoute(gf.createLineString(
-                    new Coordinate[]{startCoordinate, endCoordinate}), indoorFeatures.getCellSpaces());
+                    new Coordinate[]{startCoordinate, endCoordinate}), indoorFeatures);
 
             // Step 3: 이동시간에 맞춰 이동 좌표 생성
             // Step 3-1: Make a trajectory to lineSegment list
@@ -170,7 +170,7 @@ public class SyntheticTrajectoryGenerator {
             double x = envelope.getMinX() + (envelope.getMaxX() - envelope.getMinX()) * random.nextDouble();
             double y = envelope.getMinY() + (envelope.getMaxY() - envelope.getMinY()) * random.nextDouble();
             resultPoint = gf.createPoint(new Coordinate(x,y));
-        } while (!cellSpace.getGeom().covers(resultPoint));
+        } while (!cellSpace.covers(resultPoint));
 
         return resultPoint.getCoordinate();
     }
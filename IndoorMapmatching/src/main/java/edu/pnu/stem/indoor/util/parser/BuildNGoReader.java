@@ -0,0 +1,312 @@
+package edu.pnu.stem.indoor.util.parser;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/**
+ * BuildNGoReader reads the positioning trajectories of BuildNGo ("longitude/latitude" in each line).
+ * The bytes of a file are scanned once without decoding the lines to strings:
+ * the separators ('/' and the line breaks) are ASCII in the character set of the files, so the other lines (e.g. time in Korean) are skipped as bytes.
+ * The numbers with at most 15 significant digits are parsed directly from the bytes (exactly the same value as Double.valueOf),
+ * and only the longer numbers are parsed by Double.parseDouble.
+ * The result is the same as the line based reader (split by '/', x is the second value and y is the first value).
+ * The positions are converted to the canvas coordinates from a given minimum position (e.g. IndoorFeatures.getMinPosition),
+ * or from the global range of ChangeCoord by the overloads without it.
+ */
+public class BuildNGoReader {
+    public static final String GROUND_TRUTH_FILE_PREFIX = "gt_Trajectory_";
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * A trajectory file and its ground truth read by readDirectory.
+     * */
+    public static class TrajectoryFile {
+        private final String fileID;
+        private final File file;
+        private final LineString trajectory;
+        private final String[] groundTruth;
+
+        TrajectoryFile(String fileID, File file, LineString trajectory, String[] groundTruth) {
+            this.fileID = fileID;
+            this.file = file;
+            this.trajectory = trajectory;
+            this.groundTruth = groundTruth;
+        }
+
+        public String getFileID() {
+            return fileID;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return trajectory (empty if the file has less than two positions)
+         * */
+        public LineString getTrajectory() {
+            return trajectory;
+        }
+
+        /**
+         * @return ground truth (null if there is no ground truth file or it has less than two lines)
+         * */
+        public String[] getGroundTruth() {
+            return groundTruth;
+        }
+    }
+
+    /**
+     * This function reads a trajectory file by a file channel.
+     *
+     * @param inputFile BuildNGo trajectory file
+     * @return trajectory (empty if the file has less than two positions)
+     * */
+    public static LineString read(File inputFile) throws IOException {
+        return read(inputFile, ChangeCoord.getMinPosition());
+    }
+
+    /**
+     * This function reads a trajectory file by a file channel.
+     *
+     * @param inputFile BuildNGo trajectory file
+     * @param minPosition minimum WGS84 position of the building (the origin of the canvas coordinates)
+     * @return trajectory (empty if the file has less than two positions)
+     * */
+    public static LineString read(File inputFile, Coordinate minPosition) throws IOException {
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("The file is too large: " + inputFile);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read the whole file
+            }
+            return read(buffer.array(), buffer.position(), minPosition);
+        }
+    }
+
+    /**
+     * This function reads a trajectory from an input stream. The stream isn't closed.
+     *
+     * @param inputStream BuildNGo trajectory data
+     * @return trajectory (empty if the data has less than two positions)
+     * */
+    public static LineString read(InputStream inputStream) throws IOException {
+        return read(inputStream, ChangeCoord.getMinPosition());
+    }
+
+    /**
+     * This function reads a trajectory from an input stream. The stream isn't closed.
+     *
+     * @param inputStream BuildNGo trajectory data
+     * @param minPosition minimum WGS84 position of the building (the origin of the canvas coordinates)
+     * @return trajectory (empty if the data has less than two positions)
+     * */
+    public static LineString read(InputStream inputStream, Coordinate minPosition) throws IOException {
+        byte[] data = new byte[8192];
+        int length = 0;
+        int readLength;
+        while((readLength = inputStream.read(data, length, data.length - length)) != -1) {
+            length += readLength;
+            if(length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        return read(data, length, minPosition);
+    }
+
+    /**
+     * This function reads a trajectory from the bytes of a file.
+     *
+     * @param data bytes of BuildNGo trajectory data
+     * @param length the number of bytes to read
+     * @return trajectory (empty if the data has less than two positions)
+     * */
+    public static LineString read(byte[] data, int length) {
+        return read(data, length, ChangeCoord.getMinPosition());
+    }
+
+    /**
+     * This function reads a trajectory from the bytes of a file.
+     *
+     * @param data bytes of BuildNGo trajectory data
+     * @param length the number of bytes to read
+     * @param minPosition minimum WGS84 position of the building (the origin of the canvas coordinates)
+     * @return trajectory (empty if the data has less than two positions)
+     * */
+    public static LineString read(byte[] data, int length, Coordinate minPosition) {
+        GeometryFactory gf = new GeometryFactory();
+        Coordinate[] coords = new Coordinate[64];
+        int coordNumber = 0;
+
+        int lineStart = 0;
+        while(lineStart < length) {
+            int lineEnd = lineStart;
+            int firstSlash = -1;
+            int secondSlash = -1;
+            boolean hasValueAfterSlash = false;
+            for(; lineEnd < length && data[lineEnd] != '\n' && data[lineEnd] != '\r'; lineEnd++) {
+                if(data[lineEnd] == '/') {
+                    if(firstSlash == -1) firstSlash = lineEnd;
+                    else if(secondSlash == -1) secondSlash = lineEnd;
+                }
+                else if(firstSlash != -1) {
+                    hasValueAfterSlash = true;
+                }
+            }
+
+            // The same condition as line.split("/").length > 1 (the empty strings at the end are removed by split)
+            if(hasValueAfterSlash) {
+                double y = parseDouble(data, lineStart, firstSlash);
+                double x = parseDouble(data, firstSlash + 1, secondSlash == -1 ? lineEnd : secondSlash);
+                if(coordNumber == coords.length) {
+                    coords = Arrays.copyOf(coords, coordNumber * 2);
+                }
+                coords[coordNumber++] = ChangeCoord.changeCoordWGS84toMeter(x, y, minPosition);
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if(coordNumber > 1) {
+            return gf.createLineString(Arrays.copyOf(coords, coordNumber));
+        }
+        else {
+            return gf.createLineString(new Coordinate[]{});
+        }
+    }
+
+    /**
+     * Same as Double.valueOf(new String(data, start, end - start)) for the ASCII numbers.
+     * A plain decimal number ([sign] digits [. digits]) with at most 15 significant digits is the exact quotient of
+     * two doubles (the digits and a power of ten), so the division gives the correctly rounded value as Double.valueOf.
+     * */
+    static double parseDouble(byte[] data, int start, int end) {
+        // Double.valueOf ignores the white spaces (and control characters) at both ends
+        while(start < end && (data[start] & 0xff) <= ' ') start++;
+        while(end > start && (data[end - 1] & 0xff) <= ' ') end--;
+
+        int index = start;
+        boolean isNegative = false;
+        if(index < end && (data[index] == '-' || data[index] == '+')) {
+            isNegative = data[index] == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int digitNumber = 0;
+        int significantDigitNumber = 0;
+        int fractionDigitNumber = 0;
+        boolean hasPoint = false;
+        boolean isPlain = index < end;
+        for(; index < end; index++) {
+            byte b = data[index];
+            if(b >= '0' && b <= '9') {
+                digitNumber++;
+                if(hasPoint) fractionDigitNumber++;
+                if(mantissa != 0 || b != '0') significantDigitNumber++;
+                if(significantDigitNumber > MAX_EXACT_DIGITS) {
+                    isPlain = false;
+                    break;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+            }
+            else if(b == '.' && !hasPoint) {
+                hasPoint = true;
+            }
+            else {
+                isPlain = false;
+                break;
+            }
+        }
+
+        if(isPlain && digitNumber > 0 && fractionDigitNumber < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigitNumber];
+            return isNegative ? -value : value;
+        }
+        return Double.parseDouble(new String(data, start, end - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * This function reads a ground truth file (label of the cell space of each position in each line).
+     *
+     * @param inputFile ground truth file
+     * @return ground truth (null if the file has less than two lines)
+     * */
+    public static String[] readGroundTruth(File inputFile) throws IOException {
+        ArrayList<String> groundTruth = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                groundTruth.add(line);
+            }
+        }
+
+        if(groundTruth.size() > 1)
+            return groundTruth.toArray(new String[0]);
+        else
+            return null;
+    }
+
+    /**
+     * This function reads all trajectory files in a directory with their ground truth files (gt_Trajectory_[ID].txt).
+     *
+     * @param trajectoryDirectory directory of BuildNGo trajectory files
+     * @param groundTruthDirectory directory of the ground truth files
+     * @return trajectory files in the order of the file names
+     * */
+    public static ArrayList<TrajectoryFile> readDirectory(File trajectoryDirectory, File groundTruthDirectory) throws IOException {
+        return readDirectory(trajectoryDirectory, groundTruthDirectory, ChangeCoord.getMinPosition());
+    }
+
+    /**
+     * This function reads all trajectory files in a directory with their ground truth files (gt_Trajectory_[ID].txt).
+     *
+     * @param trajectoryDirectory directory of BuildNGo trajectory files
+     * @param groundTruthDirectory directory of the ground truth files
+     * @param minPosition minimum WGS84 position of the building (the origin of the canvas coordinates)
+     * @return trajectory files in the order of the file names
+     * */
+    public static ArrayList<TrajectoryFile> readDirectory(File trajectoryDirectory, File groundTruthDirectory, Coordinate minPosition) throws IOException {
+        File[] fileList = trajectoryDirectory.listFiles(File::isFile);
+        if(fileList == null)
+            throw new IOException("Can't read the trajectory directory: " + trajectoryDirectory);
+        Arrays.sort(fileList, Comparator.comparing(File::getName));
+
+        ArrayList<TrajectoryFile> trajectoryFiles = new ArrayList<>(fileList.length);
+        for(File file : fileList) {
+            String fileID = getFileID(file);
+            File groundTruthFile = new File(groundTruthDirectory, GROUND_TRUTH_FILE_PREFIX + fileID + ".txt");
+            String[] groundTruth = groundTruthFile.isFile() ? readGroundTruth(groundTruthFile) : null;
+            trajectoryFiles.add(new TrajectoryFile(fileID, file, read(file, minPosition), groundTruth));
+        }
+
+        return trajectoryFiles;
+    }
+
+    /**
+     * @return ID of a trajectory file (e.g. "3" of "Trajectory_3.txt")
+     * */
+    public static String getFileID(File trajectoryFile) {
+        String[] fileName = trajectoryFile.getName().split("_");
+        return fileName[fileName.length - 1].split(Pattern.quote("."))[0];
+    }
+}
@@ -14,8 +14,8 @@ public class ChangeCoord {
     public final static double CANVAS_MULTIPLE = 20.0;
     private final static double EARTH_RADIUS_KM = 6378.1370d;
     private final static double EARTH_RADIUS_M = 63781370d;
-    private static Coordinate min_position = new Coordinate(IndoorMapmatchingSim.CANVAS_LEFT_UPPER_X, IndoorMapmatchingSim.CANVAS_LEFT_UPPER_Y);
-    private static Coordinate max_position = new Coordinate(IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_X, IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_Y);
+    private static Coordinate min_position = getDefaultMinPosition();
+    private static Coordinate max_position = getDefaultMaxPosition();
 
     public static void setInitialInfo(Coordinate minPosition, Coordinate maxPosition)
     {
@@ -23,10 +23,32 @@ public class ChangeCoord {
         max_position = maxPosition;
     }
 
+    public static Coordinate getMinPosition() {
+        return min_position;
+    }
+
+    public static Coordinate getMaxPosition() {
+        return max_position;
+    }
+
+    /**
+     * @return minimum position of the range before any indoor features are loaded (a new coordinate)
+     * */
+    public static Coordinate getDefaultMinPosition() {
+        return new Coordinate(IndoorMapmatchingSim.CANVAS_LEFT_UPPER_X, IndoorMapmatchingSim.CANVAS_LEFT_UPPER_Y);
+    }
+
+    /**
+     * @return maximum position of the range before any indoor features are loaded (a new coordinate)
+     * */
+    public static Coordinate getDefaultMaxPosition() {
+        return new Coordinate(IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_X, IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_Y);
+    }
+
     public static Dimension getArea() {
         Dimension area;
-        if(min_position.equals2D(new Coordinate(IndoorMapmatchingSim.CANVAS_LEFT_UPPER_X, IndoorMapmatchingSim.CANVAS_LEFT_UPPER_Y))
-                && max_position.equals2D(new Coordinate(IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_X, IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_Y))) {
+        if(min_position.equals2D(getDefaultMinPosition())
+                && max_position.equals2D(getDefaultMaxPosition())) {
             area = new Dimension(IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_X, IndoorMapmatchingSim.CANVAS_RIGHT_LOWER_Y);
         }
         else {
@@ -40,26 +62,54 @@ public class ChangeCoord {
         Double changedPositionX = (targetPosition.x - min_position.x) * CANVAS_MULTIPLE;
         Double changedPositionY = (targetPosition.y - min_position.y) * CANVAS_MULTIPLE;
 
-        return new Coordinate(changedPositionX.intValue(), changedPositionY.intValue(), targetPosition.z);
+        return new Coordinate(changedPositionX.intValue(), changedPositionY.intValue(), targetPosition.getZ());
     }
 
     public static Coordinate changeCoordWGS84toMeter(Coordinate targetPosition)
     {
-        Double changedPositionX = HaversineInM(min_position, new Coordinate(targetPosition.x, min_position.y)) * CANVAS_MULTIPLE;
-        Double changedPositionY = HaversineInM(min_position, new Coordinate(min_position.x, targetPosition.y)) * CANVAS_MULTIPLE;
+        return changeCoordWGS84toMeter(targetPosition, min_position);
+    }
+
+    /**
+     * Same as changeCoordWGS84toMeter(targetPosition) with a given minimum position instead of the global range,
+     * so the indoor features of different buildings can be used at the same time (See IndoorFeatures.getMinPosition).
+     * */
+    public static Coordinate changeCoordWGS84toMeter(Coordinate targetPosition, Coordinate minPosition)
+    {
+        Coordinate changedPosition = changeCoordWGS84toMeter(targetPosition.x, targetPosition.y, minPosition);
+        changedPosition.setZ(targetPosition.getZ());
+
+        return changedPosition;
+    }
+
+    /**
+     * Same as changeCoordWGS84toMeter(new Coordinate(x, y)) without the temporary coordinates.
+     * */
+    public static Coordinate changeCoordWGS84toMeter(double x, double y)
+    {
+        return changeCoordWGS84toMeter(x, y, min_position);
+    }
+
+    /**
+     * Same as changeCoordWGS84toMeter(new Coordinate(x, y), minPosition) without the temporary coordinates.
+     * */
+    public static Coordinate changeCoordWGS84toMeter(double x, double y, Coordinate minPosition)
+    {
+        double changedPositionX = HaversineInKM(minPosition.x, minPosition.y, x, minPosition.y) * 1000d * CANVAS_MULTIPLE;
+        double changedPositionY = HaversineInKM(minPosition.x, minPosition.y, minPosition.x, y) * 1000d * CANVAS_MULTIPLE;
 
-        return new Coordinate(changedPositionX.intValue(), changedPositionY.intValue(), targetPosition.z);
+        return new Coordinate((int) changedPositionX, (int) changedPositionY);
     }
 
     public static double HaversineInM(Coordinate startGPSPosition, Coordinate endGPSPosition) {
-        return (1000d * HaversineInKM(startGPSPosition,endGPSPosition));
+        return (1000d * HaversineInKM(startGPSPosition.x, startGPSPosition.y, endGPSPosition.x, endGPSPosition.y));
     }
 
-    private static double HaversineInKM(Coordinate startGPSPosition, Coordinate endGPSPosition) {
-        double dLat = deg2rad(endGPSPosition.x - startGPSPosition.x);
-        double dLon = deg2rad(endGPSPosition.y - startGPSPosition.y);
+    private static double HaversineInKM(double startX, double startY, double endX, double endY) {
+        double dLat = deg2rad(endX - startX);
+        double dLon = deg2rad(endY - startY);
         double a = Math.sin(dLat / 2d) * Math.sin(dLat / 2d) +
-                Math.cos(deg2rad(startGPSPosition.x)) * Math.cos(deg2rad(endGPSPosition.x)) *
+                Math.cos(deg2rad(startX)) * Math.cos(deg2rad(endX)) *
                         Math.sin(dLon/2) * Math.sin(dLon/2);
         double c = 2d * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
 
@@ -0,0 +1,169 @@
+package edu.pnu.stem.indoor.util.parser;
+
+import edu.pnu.stem.indoor.feature.CellSpace;
+import org.locationtech.jts.geom.*;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * OSMBuildingHandler reads the nodes and ways of an OSM xml file by a single pass of the SAX parser.
+ * The positions of the nodes are kept in OSMNodeTable and only the ways of the cells (room or corridor) and doors are kept
+ * (with their node ids), so the whole document isn't loaded in the memory.
+ * The geometries are made after the parsing, because the canvas coordinates (ChangeCoord) depend on the range of all nodes.
+ * The range is kept in the handler (See getMinPosition) and the global range of ChangeCoord isn't changed.
+ */
+class OSMBuildingHandler extends DefaultHandler {
+    private final OSMNodeTable nodeTable = new OSMNodeTable();
+    private final ArrayList<OSMWay> ways = new ArrayList<>();
+
+    private double max_position_x = 0;
+    private double max_position_y = 0;
+    private double min_position_x = 10000;
+    private double min_position_y = 10000;
+
+    // State of the current way element
+    private boolean isInWay = false;
+    private long[] refs = new long[16];
+    private int refCount = 0;
+    private boolean isDoor = false;
+    private boolean isTagEnd = false;
+    private int cellCount = 0;
+    private String cellLabel = null;
+
+    /**
+     * Way of a cell or a door.
+     * */
+    private static class OSMWay {
+        private final long[] refs;
+        private final boolean isDoor;
+        private final int cellCount;   // Number of cell tags (room or corridor) of the way
+        private final String cellLabel;
+
+        OSMWay(long[] refs, boolean isDoor, int cellCount, String cellLabel) {
+            this.refs = refs;
+            this.isDoor = isDoor;
+            this.cellCount = cellCount;
+            this.cellLabel = cellLabel;
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch (qName) {
+            case "node":
+                // Save node information in osm xml file (It is point geometry related with Cell geometries)
+                long id = Long.parseLong(attributes.getValue("id"));
+                double x = Double.parseDouble(attributes.getValue("lat"));
+                double y = Double.parseDouble(attributes.getValue("lon"));
+                nodeTable.put(id, x, y);
+
+                if (x > max_position_x) max_position_x = x;
+                if (y > max_position_y) max_position_y = y;
+                if (x < min_position_x) min_position_x = x;
+                if (y < min_position_y) min_position_y = y;
+                break;
+            case "way":
+                isInWay = true;
+                refCount = 0;
+                isDoor = false;
+                isTagEnd = false;
+                cellCount = 0;
+                cellLabel = null;
+                break;
+            case "nd":
+                if(isInWay) {
+                    if(refCount == refs.length) {
+                        refs = Arrays.copyOf(refs, refCount * 2);
+                    }
+                    refs[refCount++] = Long.parseLong(attributes.getValue("ref"));
+                }
+                break;
+            case "tag":
+                if(isInWay && !isTagEnd) {
+                    // The tags after the door tag are ignored
+                    String key = attributes.getValue("k");
+                    String value = attributes.getValue("v");
+                    if("door".equals(key) && "yes".equals(value)) {
+                        isDoor = true;
+                        isTagEnd = true;
+                    }
+                    else if(("room".equals(key) || "corridor".equals(key)) && "yes".equals(value)) {
+                        cellCount++;
+                    }
+                    else if("label".equals(key)) {
+                        cellLabel = value;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if(qName.equals("way")) {
+            if(isDoor || cellCount > 0) {
+                ways.add(new OSMWay(Arrays.copyOf(refs, refCount), isDoor, cellCount, cellLabel));
+            }
+            isInWay = false;
+        }
+    }
+
+    /**
+     * @return minimum WGS84 position of the nodes (the origin of the canvas coordinates of the geometries)
+     * */
+    Coordinate getMinPosition() {
+        return new Coordinate(min_position_x, min_position_y);
+    }
+
+    /**
+     * @return maximum WGS84 position of the nodes
+     * */
+    Coordinate getMaxPosition() {
+        return new Coordinate(max_position_x, max_position_y);
+    }
+
+    /**
+     * Make the geometries of the cells and doors in the order of the ways in the file.
+     * The canvas coordinates are converted from the minimum position of the nodes (See getMinPosition).
+     *
+     * @param gf geometry factory
+     * @param cellSpaces list to add the cell spaces
+     * @param doorGeoms list to add the door geometries
+     * */
+    void makeGeometries(GeometryFactory gf, ArrayList<CellSpace> cellSpaces, ArrayList<LineString> doorGeoms) {
+        Coordinate minPosition = getMinPosition();
+        for(OSMWay way : ways) {
+            Coordinate[] coordsArray = new Coordinate[way.refs.length];
+            for(int i = 0; i < way.refs.length; i++) {
+                int index = nodeTable.indexOf(way.refs[i]);
+                if(index == -1)
+                    throw new IllegalArgumentException("There is no node of the way: " + way.refs[i]);
+                coordsArray[i] = ChangeCoord.changeCoordWGS84toMeter(nodeTable.getLat(index), nodeTable.getLon(index), minPosition);
+            }
+
+            CellSpace cellSpace = null;
+            if(coordsArray.length > 0 && coordsArray[0].equals(coordsArray[coordsArray.length - 1])) {
+                // In case : "way" geometry is closed polygon
+                for(int i = 0; i < way.cellCount; i++) {
+                    CoordinateSequence seq = gf.getCoordinateSequenceFactory().create(coordsArray);
+                    LinearRing lr = gf.createLinearRing(seq);
+                    Polygon polygon = gf.createPolygon(lr);
+                    cellSpace = new CellSpace(polygon);
+                    cellSpaces.add(cellSpace);
+                }
+            }
+            if(way.isDoor) {
+                doorGeoms.add(gf.createLineString(coordsArray));
+            }
+
+            if(cellSpace != null && way.cellLabel != null){
+                cellSpace.setLabel(way.cellLabel);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package edu.pnu.stem.indoor.util.parser;
+
+import java.util.Arrays;
+
+/**
+ * OSMNodeTable keeps the position (lat, lon) of the OSM nodes by their 64-bit ids in primitive arrays.
+ * The ids are found by an open addressing hash table (linear probing), so no boxed key or Coordinate is made for each node.
+ */
+class OSMNodeTable {
+    private static final int EMPTY = -1;
+
+    private long[] ids = new long[64];
+    private double[] lats = new double[64];
+    private double[] lons = new double[64];
+    private int size = 0;
+    private int[] slots = newSlots(128);   // index of the node in the arrays (EMPTY if the slot is empty)
+
+    private static int[] newSlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Add the position of a node. The position of the same id is overwritten.
+     * */
+    void put(long id, double lat, double lon) {
+        int index = indexOf(id);
+        if(index == EMPTY) {
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                lats = Arrays.copyOf(lats, size * 2);
+                lons = Arrays.copyOf(lons, size * 2);
+            }
+            if(2 * (size + 1) > slots.length) {
+                rehash(slots.length * 2);
+            }
+            index = size++;
+            ids[index] = id;
+            insertSlot(id, index);
+        }
+        lats[index] = lat;
+        lons[index] = lon;
+    }
+
+    /**
+     * @return index of the node (EMPTY(-1) if there is no node of the id)
+     * */
+    int indexOf(long id) {
+        int mask = slots.length - 1;
+        for(int slot = hash(id) & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if(ids[slots[slot]] == id) return slots[slot];
+        }
+        return EMPTY;
+    }
+
+    double getLat(int index) {
+        return lats[index];
+    }
+
+    double getLon(int index) {
+        return lons[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insertSlot(long id, int index) {
+        int mask = slots.length - 1;
+        int slot = hash(id) & mask;
+        while(slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index;
+    }
+
+    private void rehash(int capacity) {
+        slots = newSlots(capacity);
+        for(int i = 0; i < size; i++) {
+            insertSlot(ids[i], i);
+        }
+    }
+}
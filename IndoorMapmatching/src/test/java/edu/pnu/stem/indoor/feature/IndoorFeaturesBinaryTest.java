@@ -0,0 +1,106 @@
+package edu.pnu.stem.indoor.feature;
+
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Checks that the indoor features read from a binary file are the same as the indoor features written to it.
+ */
+public class IndoorFeaturesBinaryTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        IndoorFeatures expected = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/SampleBuilding.osm"));
+        File binaryFile = File.createTempFile("SampleBuilding", IndoorFeaturesBinary.FILE_EXTENSION);
+        try {
+            IndoorFeaturesBinary.write(expected, binaryFile);
+            IndoorFeatures actual = IndoorFeaturesBinary.read(binaryFile);
+            assertTrue(actual.isFrozen());
+            assertTrue(expected.getMinPosition().equals2D(actual.getMinPosition()));
+            assertTrue(expected.getMaxPosition().equals2D(actual.getMaxPosition()));
+
+            assertEquals(expected.getCellSpaces().size(), actual.getCellSpaces().size());
+            for(int i = 0; i < expected.getCellSpaces().size(); i++) {
+                CellSpace expectedCell = expected.getCellSpace(i);
+                CellSpace actualCell = actual.getCellSpace(i);
+                assertEquals(expectedCell.getLabel(), actualCell.getLabel());
+                assertTrue(expectedCell.getLabel(), expectedCell.getGeom().equalsExact(actualCell.getGeom()));
+                assertSameLines(expectedCell.getDoors(), actualCell.getDoors());
+                assertSameLines(expectedCell.getVisibilityEdges(), actualCell.getVisibilityEdges());
+                assertSameLines(expectedCell.getDoor2doorEdges(), actualCell.getDoor2doorEdges());
+            }
+            assertTrue(Arrays.deepEquals(expected.getTopologyGraph(), actual.getTopologyGraph()));
+
+            DoorGraph expectedGraph = expected.getDoorGraph();
+            DoorGraph actualGraph = actual.getDoorGraph();
+            assertEquals(expectedGraph.getNumNodes(), actualGraph.getNumNodes());
+            for(int i = 0; i < expectedGraph.getNumNodes(); i++) {
+                assertTrue(expectedGraph.getNode(i).equals2D(actualGraph.getNode(i)));
+                assertTrue(Arrays.equals(expectedGraph.getNeighbors(i), actualGraph.getNeighbors(i)));
+            }
+            assertEquals(expectedGraph.getNumDoorNodes(), actualGraph.getNumDoorNodes());
+            for(int i = 0; i < expectedGraph.getNumDoorNodes(); i++) {
+                assertEquals(expectedGraph.getDoorNode(i), actualGraph.getDoorNode(i));
+                assertTrue(Arrays.equals(expectedGraph.getDistanceRow(i), actualGraph.getDistanceRow(i)));
+                assertTrue(Arrays.equals(expectedGraph.getParentRow(i), actualGraph.getParentRow(i)));
+                for(int j = 0; j < expectedGraph.getNumDoorNodes(); j++) {
+                    assertEquals(expectedGraph.getShortestDistance(expectedGraph.getNode(expectedGraph.getDoorNode(i)), expectedGraph.getNode(expectedGraph.getDoorNode(j))),
+                            actualGraph.getShortestDistance(actualGraph.getNode(actualGraph.getDoorNode(i)), actualGraph.getNode(actualGraph.getDoorNode(j))), 0.0);
+                }
+            }
+        } finally {
+            binaryFile.delete();
+        }
+    }
+
+    /**
+     * A truncated file and a broken ring must be reported as IOException.
+     * */
+    public void testBrokenFile() throws Exception {
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/SampleBuilding.osm"));
+        File binaryFile = File.createTempFile("SampleBuilding", IndoorFeaturesBinary.FILE_EXTENSION);
+        byte[] bytes;
+        try {
+            IndoorFeaturesBinary.write(indoorFeatures, binaryFile);
+            bytes = Files.readAllBytes(binaryFile.toPath());
+        } finally {
+            binaryFile.delete();
+        }
+
+        assertBroken(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length / 2)));
+
+        // The number of points of the shell of the first cell (after the header, the coordinate table and the label)
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.clone());
+        int coordinateNumber = buffer.getInt(40);
+        int labelPosition = 44 + 16 * coordinateNumber + 4;
+        String label = indoorFeatures.getCellSpace(0).getLabel();
+        int shellPosition = labelPosition + 4 + (label == null ? 0 : label.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(indoorFeatures.getCellSpace(0).getGeom().getExteriorRing().getNumPoints(), buffer.getInt(shellPosition));
+        buffer.putInt(shellPosition, 2);
+        assertBroken(buffer);
+    }
+
+    private static void assertBroken(ByteBuffer buffer) {
+        try {
+            IndoorFeaturesBinary.read(buffer);
+            fail("The broken file must not be read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void assertSameLines(ArrayList<LineString> expected, ArrayList<LineString> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertTrue(expected.get(i).equalsExact(actual.get(i)));
+        }
+    }
+}
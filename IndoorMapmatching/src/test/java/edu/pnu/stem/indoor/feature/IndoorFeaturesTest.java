@@ -0,0 +1,116 @@
+package edu.pnu.stem.indoor.feature;
+
+import edu.pnu.stem.indoor.util.parser.ChangeCoord;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+
+/**
+ * Checks the cell buffer overlap matrices cached by IndoorFeatures and the coordinate range kept in it.
+ */
+public class IndoorFeaturesTest extends TestCase {
+
+    /**
+     * The sparse matrix must be the same as the dense matrix calculated by the overlay operation of all cell pairs.
+     * */
+    public void testCellBufferOverlapMatrix() throws Exception {
+        for(String fileName : new String[]{"SampleBuilding.osm", "pnu_313.osm"}) {
+            IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/" + fileName));
+            for(double bufferLength : new double[]{1, 10, 20}) {
+                double[][] expected = getDenseOverlapMatrix(indoorFeatures, bufferLength);
+                CellBufferOverlapMatrix overlapMatrix = indoorFeatures.getCellBufferOverlapMatrix(bufferLength);
+                assertEquals(expected.length, overlapMatrix.size());
+
+                double[] row = new double[expected.length];
+                for(int i = 0; i < expected.length; i++) {
+                    overlapMatrix.copyRowTo(i, row);
+                    for(int j = 0; j < expected.length; j++) {
+                        String message = fileName + " " + bufferLength + " (" + i + ", " + j + ")";
+                        assertEquals(message, expected[i][j], overlapMatrix.get(i, j), 0.0);
+                        assertEquals(message, expected[i][j], row[j], 0.0);
+                    }
+                    for(int k = overlapMatrix.getRowStart(i); k < overlapMatrix.getRowEnd(i); k++) {
+                        assertTrue(overlapMatrix.getValue(k) != 0);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testCellBufferOverlapCache() throws Exception {
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/SampleBuilding.osm"));
+        CellBufferOverlapMatrix overlapMatrix = indoorFeatures.getCellBufferOverlapMatrix(10);
+        assertSame(overlapMatrix, indoorFeatures.getCellBufferOverlapMatrix(10));
+
+        // The least recently used matrix is removed when more than 8 buffer lengths are requested
+        for(int bufferLength = 1; bufferLength <= 8; bufferLength++) {
+            indoorFeatures.getCellBufferOverlapMatrix(bufferLength + 0.5);
+        }
+        CellBufferOverlapMatrix recalculated = indoorFeatures.getCellBufferOverlapMatrix(10);
+        assertNotSame(overlapMatrix, recalculated);
+        assertEquals(overlapMatrix.getNumEntry(), recalculated.getNumEntry());
+        assertSame(recalculated, indoorFeatures.getCellBufferOverlapMatrix(10));
+    }
+
+    /**
+     * The trajectories must be converted with the range of their building even if another building is loaded after it.
+     * */
+    public void testCoordinateRange() throws Exception {
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/pnu_313.osm")).createFrozenSnapshot();
+        IndoorFeatures otherFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/SampleBuilding.osm"));
+        assertFalse(indoorFeatures.getMinPosition().equals2D(otherFeatures.getMinPosition()));
+
+        File trajectoryFile = new File("res/Real_positioningTrajectory/Trajectory_1.txt");
+        LineString trajectory = DataUtils.getBuildNGoData(trajectoryFile, indoorFeatures);
+        Coordinate minPosition = ChangeCoord.getMinPosition();
+        Coordinate maxPosition = ChangeCoord.getMaxPosition();
+        try {
+            ChangeCoord.setInitialInfo(indoorFeatures.getMinPosition(), indoorFeatures.getMaxPosition());
+            assertTrue(trajectory.equalsExact(DataUtils.getBuildNGoData(trajectoryFile)));
+        } finally {
+            ChangeCoord.setInitialInfo(minPosition, maxPosition);
+        }
+
+        try {
+            indoorFeatures.setCoordinateRange(new Coordinate(0, 0), new Coordinate(1, 1));
+            fail("The range of the frozen indoor features must not be changed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The overlap matrix calculated by the overlay operation of all cell pairs (the calculation before the spatial index was used).
+     * */
+    private static double[][] getDenseOverlapMatrix(IndoorFeatures indoorFeatures, double bufferLength) {
+        int cellNumber = indoorFeatures.getCellSpaces().size();
+        double[][] overlapMatrix = new double[cellNumber][cellNumber];
+        for(int i = 0; i < cellNumber; i++) {
+            Geometry cellGeometry = indoorFeatures.getCellSpace(i).getGeom();
+            Geometry bufferGeometry = cellGeometry.buffer(bufferLength);
+            for(int j = 0; j < cellNumber; j++) {
+                if(i == j) {
+                    overlapMatrix[i][j] = cellGeometry.getArea();
+                }
+                else if(bufferGeometry.intersects(indoorFeatures.getCellSpace(j).getGeom())) {
+                    overlapMatrix[i][j] = bufferGeometry.intersection(indoorFeatures.getCellSpace(j).getGeom()).getArea();
+                }
+            }
+
+            double rowSum = 0.0;
+            for(int j = 0; j < cellNumber; j++) {
+                rowSum += overlapMatrix[i][j];
+            }
+            if(rowSum != 0) {
+                for(int j = 0; j < cellNumber; j++) {
+                    overlapMatrix[i][j] = overlapMatrix[i][j] / rowSum;
+                }
+            }
+        }
+        return overlapMatrix;
+    }
+}
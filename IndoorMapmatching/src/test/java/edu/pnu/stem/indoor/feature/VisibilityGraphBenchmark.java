@@ -0,0 +1,95 @@
+package edu.pnu.stem.indoor.feature;
+
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the time of the A* search of VisibilityGraph.getShortestRoute with the Dijkstra search of getShortestRoutes (single target).
+ * Both searches use the same CSR arrays and NodeHeap, so the difference is the Euclidean distance heuristic of A*.
+ * It isn't run by the tests. Run it from the module directory after compiling the tests, e.g.
+ * mvn test-compile exec:java -Dexec.mainClass=edu.pnu.stem.indoor.feature.VisibilityGraphBenchmark -Dexec.classpathScope=test
+ */
+public class VisibilityGraphBenchmark {
+    private static final int PAIR_COUNT = 2000;
+    private static final int REPEAT_COUNT = 5;
+
+    public static void main(String[] args) throws Exception {
+        // Visibility graph of the whole building (the cell spaces are connected by the door coordinates)
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/pnu_313.osm"));
+        ArrayList<LineString> buildingEdges = new ArrayList<>();
+        for(CellSpace cellSpace : indoorFeatures.getCellSpaces()) {
+            buildingEdges.addAll(cellSpace.getVisibilityEdges());
+        }
+        benchmark("pnu_313 visibility graph", buildingEdges);
+        benchmark("grid 100 x 100", createGridEdges(100, new Random(1)));
+        benchmark("grid 300 x 300", createGridEdges(300, new Random(1)));
+    }
+
+    private static void benchmark(String name, ArrayList<LineString> edges) {
+        VisibilityGraph graph = new VisibilityGraph();
+        graph.addEdges(edges);
+        Coordinate[] nodes = VisibilityGraphTest.getNodes(edges);
+
+        // Random pairs of connected nodes
+        Random random = new Random(2);
+        Coordinate[][] pairs = new Coordinate[PAIR_COUNT][];
+        for(int i = 0; i < PAIR_COUNT; i++) {
+            Coordinate[] pair;
+            do {
+                pair = new Coordinate[]{nodes[random.nextInt(nodes.length)], nodes[random.nextInt(nodes.length)]};
+            } while(pair[0].equals2D(pair[1]) || graph.getShortestRoutes(pair[0], new Coordinate[]{pair[1]})[0] == null);
+            pairs[i] = pair;
+        }
+
+        double aStarTime = Double.MAX_VALUE;
+        double dijkstraTime = Double.MAX_VALUE;
+        double aStarLength = 0;
+        double dijkstraLength = 0;
+        for(int repeat = 0; repeat < REPEAT_COUNT; repeat++) {
+            long start = System.nanoTime();
+            aStarLength = 0;
+            for(Coordinate[] pair : pairs) {
+                aStarLength += graph.getShortestRoute(pair).getLength();
+            }
+            aStarTime = Math.min(aStarTime, (System.nanoTime() - start) / 1e6);
+
+            start = System.nanoTime();
+            dijkstraLength = 0;
+            for(Coordinate[] pair : pairs) {
+                dijkstraLength += graph.getShortestRoutes(pair[0], new Coordinate[]{pair[1]})[0].getLength();
+            }
+            dijkstraTime = Math.min(dijkstraTime, (System.nanoTime() - start) / 1e6);
+        }
+
+        System.out.printf("%s (%d nodes, %d edges, %d pairs): A* %.1f ms, Dijkstra %.1f ms, total length %.3f / %.3f%n",
+                name, nodes.length, edges.size(), PAIR_COUNT, aStarTime, dijkstraTime, aStarLength, dijkstraLength);
+    }
+
+    /**
+     * Makes a grid graph with the edges to the 8 neighbours (some edges are removed randomly as obstacles).
+     *
+     * @param size The number of nodes in a row
+     * */
+    static ArrayList<LineString> createGridEdges(int size, Random random) {
+        GeometryFactory gf = new GeometryFactory();
+        ArrayList<LineString> edges = new ArrayList<>();
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+        for(int x = 0; x < size; x++) {
+            for(int y = 0; y < size; y++) {
+                for(int[] direction : directions) {
+                    int toX = x + direction[0];
+                    int toY = y + direction[1];
+                    if(toX >= size || toY < 0 || toY >= size || random.nextInt(5) == 0) continue;
+                    edges.add(gf.createLineString(new Coordinate[]{new Coordinate(x, y), new Coordinate(toX, toY)}));
+                }
+            }
+        }
+        return edges;
+    }
+}
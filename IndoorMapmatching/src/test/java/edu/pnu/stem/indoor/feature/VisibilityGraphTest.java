@@ -0,0 +1,215 @@
+package edu.pnu.stem.indoor.feature;
+
+import edu.pnu.stem.indoor.util.IndoorUtils;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Checks that the A* search of VisibilityGraph.getShortestRoute finds a route as short as the Dijkstra search of getShortestRoutes,
+ * and both searches and the distance table of DoorGraph against the all-pairs shortest distances of Floyd-Warshall.
+ */
+public class VisibilityGraphTest extends TestCase {
+    private static final double TOLERANCE = 1e-9;
+
+    public void testCellSpacesOfOSMFile() throws Exception {
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/pnu_313.osm"));
+        for(CellSpace cellSpace : indoorFeatures.getCellSpaces()) {
+            assertSameAsDijkstra(cellSpace.getLabel(), cellSpace.getVisibilityEdges(), Integer.MAX_VALUE);
+        }
+        assertSameAsDijkstra("door2door", IndoorUtils.makeDoor2DoorGraphEdges(indoorFeatures.getCellSpaces()), Integer.MAX_VALUE);
+    }
+
+    public void testGridGraph() {
+        assertSameAsDijkstra("grid", VisibilityGraphBenchmark.createGridEdges(30, new Random(1)), 2000);
+    }
+
+    /**
+     * Random small graphs (with parallel edges, polylines, zero-length segments and disconnected parts) and a small grid.
+     * */
+    public void testFloydWarshall() {
+        Random random = new Random(2);
+        GeometryFactory gf = new GeometryFactory();
+        for(int trial = 0; trial < 100; trial++) {
+            int nodeNumber = 2 + random.nextInt(25);
+            Coordinate[] points = new Coordinate[nodeNumber];
+            for(int i = 0; i < nodeNumber; i++) {
+                points[i] = new Coordinate(random.nextInt(100), random.nextInt(100));
+            }
+            ArrayList<LineString> edges = new ArrayList<>();
+            int edgeNumber = nodeNumber + random.nextInt(nodeNumber);
+            for(int k = 0; k < edgeNumber; k++) {
+                int pointNumber = random.nextInt(4) == 0 ? 3 : 2;
+                Coordinate[] coords = new Coordinate[pointNumber];
+                for(int i = 0; i < pointNumber; i++) {
+                    coords[i] = points[random.nextInt(nodeNumber)];
+                }
+                edges.add(gf.createLineString(coords));
+            }
+            assertSameAsFloydWarshall("random " + trial, edges);
+        }
+        assertSameAsFloydWarshall("grid", VisibilityGraphBenchmark.createGridEdges(6, new Random(3)));
+    }
+
+    /**
+     * The distance table of the door nodes of DoorGraph must be the all-pairs shortest distances of the door2door edges,
+     * and the same as the length of the route of VisibilityGraph.
+     * */
+    public void testDoorGraphDistances() throws Exception {
+        for(String fileName : new String[]{"SampleBuilding.osm", "pnu_313.osm"}) {
+            IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/" + fileName));
+            ArrayList<LineString> edges = IndoorUtils.makeDoor2DoorGraphEdges(indoorFeatures.getCellSpaces());
+            Coordinate[] nodes = getNodes(edges);
+            double[][] expected = getFloydWarshallDistances(edges, nodes);
+            HashMap<Coordinate, Integer> nodeIndexMap = getNodeIndexMap(nodes);
+            VisibilityGraph visibilityGraph = new VisibilityGraph();
+            visibilityGraph.addEdges(edges);
+
+            DoorGraph doorGraph = indoorFeatures.getDoorGraph();
+            assertTrue(doorGraph.getNumDoorNodes() > 0);
+            for(int i = 0; i < doorGraph.getNumDoorNodes(); i++) {
+                Coordinate from = doorGraph.getNode(doorGraph.getDoorNode(i));
+                for(int j = 0; j < doorGraph.getNumDoorNodes(); j++) {
+                    Coordinate to = doorGraph.getNode(doorGraph.getDoorNode(j));
+                    String message = fileName + " " + from + " -> " + to;
+                    double distance = expected[nodeIndexMap.get(from)][nodeIndexMap.get(to)];
+                    double actual = doorGraph.getShortestDistance(from, to);
+                    if(distance == Double.POSITIVE_INFINITY) {
+                        assertEquals(message, Double.POSITIVE_INFINITY, actual, 0.0);
+                        continue;
+                    }
+                    assertEquals(message, distance, actual, TOLERANCE * Math.max(1, distance));
+                    if(i != j) {
+                        assertEquals(message, distance, visibilityGraph.getShortestRoute(new Coordinate[]{from, to}).getLength(), TOLERANCE * Math.max(1, distance));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertSameAsFloydWarshall(String message, ArrayList<LineString> edges) {
+        Coordinate[] nodes = getNodes(edges);
+        double[][] expected = getFloydWarshallDistances(edges, nodes);
+        VisibilityGraph graph = new VisibilityGraph();
+        graph.addEdges(edges);
+
+        LinkedHashSet<String> segments = new LinkedHashSet<>();
+        for(LineString edge : edges) {
+            Coordinate[] coords = edge.getCoordinates();
+            for(int i = 0; i < coords.length - 1; i++) {
+                segments.add(coords[i] + " " + coords[i + 1]);
+                segments.add(coords[i + 1] + " " + coords[i]);
+            }
+        }
+
+        for(int i = 0; i < nodes.length; i++) {
+            LineString[] dijkstraRoutes = graph.getShortestRoutes(nodes[i], nodes);
+            for(int j = 0; j < nodes.length; j++) {
+                // A node only in zero-length segments isn't a node of the graph, so it isn't connected (infinity)
+                if(i == j) continue;
+                String pairMessage = message + " " + nodes[i] + " -> " + nodes[j];
+                LineString route = graph.getShortestRoute(new Coordinate[]{nodes[i], nodes[j]});
+                if(expected[i][j] == Double.POSITIVE_INFINITY) {
+                    assertNull(pairMessage, route);
+                    assertNull(pairMessage, dijkstraRoutes[j]);
+                    continue;
+                }
+                for(LineString found : new LineString[]{route, dijkstraRoutes[j]}) {
+                    assertNotNull(pairMessage, found);
+                    assertEquals(pairMessage, expected[i][j], found.getLength(), TOLERANCE * Math.max(1, expected[i][j]));
+                    assertTrue(pairMessage, found.getStartPoint().getCoordinate().equals2D(nodes[i]));
+                    assertTrue(pairMessage, found.getEndPoint().getCoordinate().equals2D(nodes[j]));
+                    // The route must follow the edges of the graph
+                    Coordinate[] coords = found.getCoordinates();
+                    for(int k = 0; k < coords.length - 1; k++) {
+                        assertTrue(pairMessage, segments.contains(coords[k] + " " + coords[k + 1]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * All-pairs shortest distances by Floyd-Warshall. The weight of a segment is its length.
+     * */
+    private static double[][] getFloydWarshallDistances(ArrayList<LineString> edges, Coordinate[] nodes) {
+        HashMap<Coordinate, Integer> nodeIndexMap = getNodeIndexMap(nodes);
+        double[][] distances = new double[nodes.length][nodes.length];
+        for(int i = 0; i < nodes.length; i++) {
+            for(int j = 0; j < nodes.length; j++) {
+                distances[i][j] = i == j ? 0 : Double.POSITIVE_INFINITY;
+            }
+        }
+        for(LineString edge : edges) {
+            Coordinate[] coords = edge.getCoordinates();
+            for(int k = 0; k < coords.length - 1; k++) {
+                int from = nodeIndexMap.get(coords[k]);
+                int to = nodeIndexMap.get(coords[k + 1]);
+                double length = coords[k].distance(coords[k + 1]);
+                distances[from][to] = Math.min(distances[from][to], length);
+                distances[to][from] = Math.min(distances[to][from], length);
+            }
+        }
+        for(int k = 0; k < nodes.length; k++) {
+            for(int i = 0; i < nodes.length; i++) {
+                for(int j = 0; j < nodes.length; j++) {
+                    if(distances[i][k] + distances[k][j] < distances[i][j]) {
+                        distances[i][j] = distances[i][k] + distances[k][j];
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static HashMap<Coordinate, Integer> getNodeIndexMap(Coordinate[] nodes) {
+        HashMap<Coordinate, Integer> nodeIndexMap = new HashMap<>();
+        for(int i = 0; i < nodes.length; i++) {
+            nodeIndexMap.put(nodes[i], i);
+        }
+        return nodeIndexMap;
+    }
+
+    /**
+     * @param pairCount The maximum number of node pairs to check (the first nodes are paired with all nodes)
+     * */
+    private static void assertSameAsDijkstra(String message, ArrayList<LineString> edges, int pairCount) {
+        VisibilityGraph graph = new VisibilityGraph();
+        graph.addEdges(edges);
+        Coordinate[] nodes = getNodes(edges);
+
+        int count = 0;
+        for(int i = 0; i < nodes.length && count < pairCount; i++) {
+            LineString[] dijkstraRoutes = graph.getShortestRoutes(nodes[i], nodes);
+            for(int j = 0; j < nodes.length && count < pairCount; j++, count++) {
+                LineString route = graph.getShortestRoute(new Coordinate[]{nodes[i], nodes[j]});
+                if(dijkstraRoutes[j] == null) {
+                    assertNull(message, route);
+                    continue;
+                }
+                assertNotNull(message, route);
+                assertTrue(message, route.getStartPoint().getCoordinate().equals2D(nodes[i]));
+                assertTrue(message, route.getEndPoint().getCoordinate().equals2D(nodes[j]));
+                assertEquals(message, dijkstraRoutes[j].getLength(), route.getLength(), TOLERANCE * Math.max(1, route.getLength()));
+            }
+        }
+    }
+
+    static Coordinate[] getNodes(ArrayList<LineString> edges) {
+        LinkedHashSet<Coordinate> nodes = new LinkedHashSet<>();
+        for(LineString edge : edges) {
+            for(Coordinate coord : edge.getCoordinates()) {
+                nodes.add(coord);
+            }
+        }
+        return nodes.toArray(new Coordinate[0]);
+    }
+}
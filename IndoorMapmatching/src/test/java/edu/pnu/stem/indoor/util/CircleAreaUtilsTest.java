@@ -0,0 +1,152 @@
+package edu.pnu.stem.indoor.util;
+
+import edu.pnu.stem.indoor.feature.CellSpace;
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the analytic area of CircleAreaUtils agrees with the overlay operation of JTS
+ * (intersection of the polygon and the union of the circle buffer polygons).
+ * The circle buffer polygons have 1024 vertices, so the overlay result differs from the exact area by about 1e-5 of the circle area.
+ */
+public class CircleAreaUtilsTest extends TestCase {
+    private static final int QUADRANT_SEGMENTS = 256;
+    private static final double RELATIVE_TOLERANCE = 1e-4;
+
+    private final GeometryFactory gf = new GeometryFactory();
+
+    public void testPolygonWithHoles() {
+        // Shell 0..100 with two holes, and an L-shaped shell in clockwise order with a hole
+        Polygon room = createPolygon(new double[]{0,0, 100,0, 100,100, 0,100, 0,0},
+                new double[]{20,20, 20,40, 40,40, 40,20, 20,20},
+                new double[]{60,50, 80,50, 80,90, 60,90, 60,50});
+        Polygon corridor = createPolygon(new double[]{0,0, 0,60, 30,60, 30,20, 90,20, 90,0, 0,0},
+                new double[]{5,5, 15,5, 15,15, 5,15, 5,5});
+
+        Random random = new Random(313);
+        for(Polygon polygon : Arrays.asList(room, corridor)) {
+            for(int k = 0; k < 300; k++) {
+                List<Circle> circles = createRandomCircles(random, polygon.getEnvelopeInternal(), 1 + random.nextInt(4));
+                assertAgreement(polygon, circles);
+            }
+        }
+    }
+
+    public void testCircleOnHole() {
+        Polygon polygon = createPolygon(new double[]{0,0, 100,0, 100,100, 0,100, 0,0},
+                new double[]{40,40, 40,60, 60,60, 60,40, 40,40});
+
+        // Inside the hole, covering the hole, tangent to the hole and crossing the corners of the hole
+        assertAgreement(polygon, Collections.singletonList(new Circle(new Coordinate(50, 50), 5)));
+        assertAgreement(polygon, Collections.singletonList(new Circle(new Coordinate(50, 50), 20)));
+        assertAgreement(polygon, Collections.singletonList(new Circle(new Coordinate(50, 30), 10)));
+        assertAgreement(polygon, Collections.singletonList(new Circle(new Coordinate(40, 40), 10)));
+        assertAgreement(polygon, Collections.singletonList(new Circle(new Coordinate(50, 50), 100)));
+    }
+
+    public void testOverlappingAndDuplicateCircles() {
+        Polygon polygon = createPolygon(new double[]{0,0, 50,0, 50,30, 0,30, 0,0},
+                new double[]{10,10, 10,20, 20,20, 20,10, 10,10});
+
+        Circle circle = new Circle(new Coordinate(25, 15), 12);
+        assertAgreement(polygon, Arrays.asList(circle, circle));
+        assertAgreement(polygon, Arrays.asList(circle, new Circle(new Coordinate(25, 15), 12)));
+        assertEquals(CircleAreaUtils.getIntersectionArea(polygon, circle),
+                CircleAreaUtils.getIntersectionArea(polygon, Arrays.asList(circle, circle, circle)), 0.0);
+
+        // Concentric, nested, crossing and same radius with touching boundaries
+        assertAgreement(polygon, Arrays.asList(circle, new Circle(new Coordinate(25, 15), 6)));
+        assertAgreement(polygon, Arrays.asList(new Circle(new Coordinate(20, 15), 10), new Circle(new Coordinate(30, 15), 10)));
+        assertAgreement(polygon, Arrays.asList(new Circle(new Coordinate(15, 15), 5), new Circle(new Coordinate(25, 15), 5)));
+        assertAgreement(polygon, Arrays.asList(new Circle(new Coordinate(10, 10), 8), new Circle(new Coordinate(11, 10), 8),
+                new Circle(new Coordinate(10, 11), 8), new Circle(new Coordinate(10, 10), 8)));
+
+        Random random = new Random(1);
+        for(int k = 0; k < 300; k++) {
+            List<Circle> circles = createRandomCircles(random, polygon.getEnvelopeInternal(), 2 + random.nextInt(6));
+            // Duplicate some circles of the sliding window
+            circles.add(circles.get(random.nextInt(circles.size())));
+            assertAgreement(polygon, circles);
+        }
+    }
+
+    public void testCellSpacesOfSampleBuildings() throws Exception {
+        Random random = new Random(2017);
+        for(String fileName : new String[]{"SampleBuilding.osm", "pnu_313.osm", "pnu_313_new.osm"}) {
+            IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/" + fileName));
+            for(CellSpace cellSpace : indoorFeatures.getCellSpaces()) {
+                Polygon polygon = cellSpace.getGeom();
+                for(int k = 0; k < 20; k++) {
+                    List<Circle> circles = createRandomCircles(random, polygon.getEnvelopeInternal(), 1 + random.nextInt(3));
+                    double expected = getOverlayArea(polygon, circles);
+                    double actual = CircleAreaUtils.getIntersectionArea(polygon, cellSpace.getPreparedGeom().getPointLocator(), circles);
+                    assertEquals(fileName + " " + cellSpace.getLabel(), expected, actual, getTolerance(circles));
+                }
+            }
+        }
+    }
+
+    private void assertAgreement(Polygon polygon, List<Circle> circles) {
+        double expected = getOverlayArea(polygon, circles);
+        double actual = CircleAreaUtils.getIntersectionArea(polygon, circles);
+        assertEquals(circles.toString(), expected, actual, getTolerance(circles));
+    }
+
+    private double getOverlayArea(Polygon polygon, List<Circle> circles) {
+        Geometry union = null;
+        for(Circle circle : circles) {
+            Geometry buffer = gf.createPoint(circle.getCenter()).buffer(circle.getRadius(), QUADRANT_SEGMENTS);
+            union = (union == null) ? buffer : union.union(buffer);
+        }
+        return polygon.intersection(union).getArea();
+    }
+
+    private double getTolerance(List<Circle> circles) {
+        double circleArea = 0.0;
+        for(Circle circle : circles) {
+            circleArea += Math.PI * circle.getRadius() * circle.getRadius();
+        }
+        return RELATIVE_TOLERANCE * circleArea + 1e-9;
+    }
+
+    private List<Circle> createRandomCircles(Random random, Envelope envelope, int count) {
+        double size = Math.max(envelope.getWidth(), envelope.getHeight());
+        List<Circle> circles = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            double x = envelope.getMinX() - size * 0.2 + random.nextDouble() * envelope.getWidth() * 1.4;
+            double y = envelope.getMinY() - size * 0.2 + random.nextDouble() * envelope.getHeight() * 1.4;
+            circles.add(new Circle(new Coordinate(x, y), size * (0.05 + random.nextDouble() * 0.5)));
+        }
+        return circles;
+    }
+
+    private Polygon createPolygon(double[] shell, double[]... holes) {
+        LinearRing[] holeRings = new LinearRing[holes.length];
+        for(int i = 0; i < holes.length; i++) {
+            holeRings[i] = createRing(holes[i]);
+        }
+        return gf.createPolygon(createRing(shell), holeRings);
+    }
+
+    private LinearRing createRing(double[] values) {
+        Coordinate[] coordinates = new Coordinate[values.length / 2];
+        for(int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(values[2 * i], values[2 * i + 1]);
+        }
+        return gf.createLinearRing(coordinates);
+    }
+}
@@ -0,0 +1,126 @@
+package edu.pnu.stem.indoor.util;
+
+import edu.pnu.stem.indoor.feature.CellSpace;
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+import org.locationtech.jts.io.WKTReader;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the rotational sweep of VisibilityUtils gives the same visibility as polygon.covers(line) for every vertex pair.
+ */
+public class VisibilityUtilsTest extends TestCase {
+    private final GeometryFactory gf = new GeometryFactory();
+
+    public void testCellSpacesOfOSMFiles() throws Exception {
+        File[] osmFiles = new File("res/OSM").listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".osm");
+            }
+        });
+        assertNotNull(osmFiles);
+        assertTrue(osmFiles.length > 0);
+
+        int pairCount = 0;
+        for(File osmFile : osmFiles) {
+            IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(osmFile);
+            for(CellSpace cellSpace : indoorFeatures.getCellSpaces()) {
+                pairCount += assertSameAsCovers(osmFile.getName() + " " + cellSpace.getLabel(), cellSpace.getGeom());
+            }
+        }
+        assertTrue(pairCount > 0);
+    }
+
+    public void testDegeneratePolygons() throws Exception {
+        String[] wkts = {
+                // Collinear vertices on the shell and on a hole
+                "POLYGON((0 0, 5 0, 10 0, 10 5, 10 10, 0 10, 0 5, 0 0), (3 3, 5 3, 7 3, 7 7, 3 7, 3 3))",
+                // Hole touching the shell at a vertex
+                "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (0 5, 4 3, 4 7, 0 5))",
+                // Two holes touching at a vertex, and vertices on the same ray
+                "POLYGON((0 0, 20 0, 20 10, 0 10, 0 0), (2 2, 6 2, 6 6, 2 6, 2 2), (6 6, 10 6, 10 8, 6 8, 6 6), (12 2, 14 2, 14 4, 12 4, 12 2))",
+                // Concave shell with reflex vertices on a line
+                "POLYGON((0 0, 10 0, 10 10, 8 10, 8 2, 6 2, 6 10, 4 10, 4 2, 2 2, 2 10, 0 10, 0 0))",
+        };
+        WKTReader reader = new WKTReader(gf);
+        for(String wkt : wkts) {
+            assertSameAsCovers(wkt, (Polygon) reader.read(wkt));
+        }
+    }
+
+    /**
+     * Random star-shaped shells with square holes on an integer grid, so many vertices are on the same ray or on an edge.
+     * */
+    public void testRandomPolygons() {
+        Random random = new Random(3);
+        int polygonCount = 0;
+        while(polygonCount < 200) {
+            int pointNumber = 5 + random.nextInt(20);
+            double[] angles = new double[pointNumber];
+            for(int i = 0; i < pointNumber; i++) {
+                angles[i] = random.nextDouble() * 2 * Math.PI;
+            }
+            Arrays.sort(angles);
+            Coordinate[] shell = new Coordinate[pointNumber + 1];
+            for(int i = 0; i < pointNumber; i++) {
+                double radius = 5 + random.nextInt(16);
+                shell[i] = new Coordinate(Math.round(radius * Math.cos(angles[i])), Math.round(radius * Math.sin(angles[i])));
+            }
+            shell[pointNumber] = shell[0];
+
+            LinearRing[] holes = new LinearRing[random.nextInt(4)];
+            for(int i = 0; i < holes.length; i++) {
+                int x = random.nextInt(12) - 6;
+                int y = random.nextInt(12) - 6;
+                int size = 1 + random.nextInt(3);
+                holes[i] = gf.createLinearRing(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + size, y),
+                        new Coordinate(x + size, y + size), new Coordinate(x, y + size), new Coordinate(x, y)});
+            }
+
+            Polygon polygon;
+            try {
+                polygon = gf.createPolygon(gf.createLinearRing(shell), holes);
+            } catch (IllegalArgumentException e) {
+                continue;   // The shell has repeated points
+            }
+            if(!polygon.isValid()) continue;
+            assertSameAsCovers(polygon.toText(), polygon);
+            polygonCount++;
+        }
+    }
+
+    /**
+     * @return The number of the compared vertex pairs
+     * */
+    private int assertSameAsCovers(String message, Polygon polygon) {
+        Coordinate[] vertices = polygon.getCoordinates();
+        PreparedPolygon prepared = new PreparedPolygon(polygon);
+        boolean[][] visible = VisibilityUtils.getVertexVisibility(polygon, prepared, vertices);
+
+        int pairCount = 0;
+        for(int i = 0; i < vertices.length; i++) {
+            for(int j = 0; j < vertices.length; j++) {
+                boolean expected = false;
+                if(!vertices[i].equals2D(vertices[j])) {
+                    LineString line = gf.createLineString(new Coordinate[]{vertices[i], vertices[j]});
+                    expected = polygon.covers(line);
+                    pairCount++;
+                }
+                assertEquals(message + " " + vertices[i] + " - " + vertices[j], expected, visible[i][j]);
+            }
+        }
+        return pairCount;
+    }
+}
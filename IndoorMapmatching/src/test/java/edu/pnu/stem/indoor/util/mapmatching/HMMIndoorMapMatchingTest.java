@@ -0,0 +1,74 @@
+package edu.pnu.stem.indoor.util.mapmatching;
+
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the map matching of the sample trajectories with the scaled forward algorithm.
+ */
+public class HMMIndoorMapMatchingTest extends TestCase {
+    private static final double RADIUS = 20;
+    private static final int WINDOW_SIZE = 10;
+    private static final int TRAJECTORY_NUMBER = 5;
+
+    /**
+     * The candidates compared by the log-likelihood must be the same cells as the candidates compared by the raw probability
+     * on the sample trajectories (the windows are short, so the raw probability doesn't underflow).
+     * */
+    public void testScaledCandidateSelection() throws Exception {
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/pnu_313.osm"));
+        for(int k = 1; k <= TRAJECTORY_NUMBER; k++) {
+            File trajectoryFile = new File("res/Real_positioningTrajectory/Trajectory_" + k + ".txt");
+            LineString trajectory = DataUtils.getBuildNGoData(trajectoryFile, indoorFeatures);
+            if(trajectory.isEmpty()) continue;
+
+            List<String> scaledResult = getMapMatchingResult(indoorFeatures, trajectory, true);
+            List<String> rawResult = getMapMatchingResult(indoorFeatures, trajectory, false);
+            assertEquals(trajectoryFile.getName(), rawResult, scaledResult);
+        }
+    }
+
+    /**
+     * The real-time map matching of each positioning point with the sliding window of the previous positioning points.
+     * */
+    private static List<String> getMapMatchingResult(IndoorFeatures indoorFeatures, LineString trajectory, boolean isScaled) {
+        HMMIndoorMapMatching hmmIndoorMapMatching = new HMMIndoorMapMatching(indoorFeatures);
+        hmmIndoorMapMatching.setScaledForward(isScaled);
+        hmmIndoorMapMatching.setInitalProbability(trajectory.getPointN(0));
+        hmmIndoorMapMatching.makeAMatrixByTopology();
+        hmmIndoorMapMatching.makeBMatrixCellBuffer(RADIUS);
+
+        List<String> result = new ArrayList<>();
+        for(int i = 0; i < trajectory.getNumPoints(); i++) {
+            double radius = RADIUS;
+            if(i != 0) radius = Math.max(RADIUS, trajectory.getPointN(i - 1).distance(trajectory.getPointN(i)));
+            int start = Math.max(0, i - WINDOW_SIZE);
+            result.add(hmmIndoorMapMatching.getMapMatchingResult(trajectory.getPointN(i), getSubTrajectory(trajectory, start, i), radius));
+        }
+        return result;
+    }
+
+    /**
+     * @return positioning points [start, end) of the trajectory (a point if there is only one, or an empty line string)
+     * */
+    private static Geometry getSubTrajectory(LineString trajectory, int start, int end) {
+        GeometryFactory gf = trajectory.getFactory();
+        if(end - start == 1)
+            return gf.createPoint(trajectory.getCoordinateN(start));
+
+        Coordinate[] coordinates = new Coordinate[end - start];
+        for(int i = start; i < end; i++) {
+            coordinates[i - start] = trajectory.getCoordinateN(i);
+        }
+        return gf.createLineString(coordinates);
+    }
+}
@@ -0,0 +1,159 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks the smoothed probability of FixedLagSmoother against the enumeration of all state sequences of small models.
+ */
+public class FixedLagSmootherTest extends TestCase {
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Every step in the lag buffer must have the posterior probability P(state of step s | all pushed observations).
+     * */
+    public void testSmoothedProbability() {
+        Random random = new Random(1);
+        for(int trial = 0; trial < 100; trial++) {
+            int numState = 2 + random.nextInt(3);
+            HiddenMarkovModel hmm = createRandomModel(random, numState, trial % 2 == 0);
+            int lag = random.nextInt(4);
+            FixedLagSmoother smoother = hmm.createFixedLagSmoother(lag);
+            int[] observations = new int[6];
+            for(int t = 0; t < observations.length; t++) {
+                // Every state explains every observation, so no observation is impossible
+                observations[t] = random.nextInt(numState);
+                int step = smoother.push(observations[t]);
+                assertEquals(t >= lag ? t - lag : -1, step);
+
+                for(int s = Math.max(0, t - lag); s <= t; s++) {
+                    double[] expected = enumerate(hmm, hmm.getMatrixB(), observations, t + 1, s);
+                    assertEquals("trial " + trial + " step " + s, expected, smoother.getSmoothed(s));
+                }
+            }
+
+            try {
+                smoother.getSmoothed(observations.length - 2 - lag);
+                fail("A step before the lag buffer can't be smoothed");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            smoother.reset();
+            assertEquals(0, smoother.getLength());
+        }
+    }
+
+    /**
+     * An impossible observation (zero in every state) is ignored: the prediction is used at that step and the steps after it.
+     * The steps before it are smoothed only by the observations before it.
+     * */
+    public void testImpossibleObservation() {
+        Random random = new Random(2);
+        for(int trial = 0; trial < 100; trial++) {
+            int numState = 2 + random.nextInt(3);
+            HiddenMarkovModel hmm = createRandomModel(random, numState, trial % 2 == 0);
+            int impossible = numState - 1;
+            double[][] matrixB = hmm.getMatrixB();
+            double[][] ignoredB = new double[numState][];
+            for(int i = 0; i < numState; i++) {
+                matrixB[i][impossible] = 0;
+                ignoredB[i] = matrixB[i].clone();
+                ignoredB[i][impossible] = 1;
+            }
+
+            int[] observations = new int[6];
+            int impossibleStep = random.nextInt(observations.length);
+            for(int t = 0; t < observations.length; t++) {
+                observations[t] = t == impossibleStep ? impossible : random.nextInt(numState - 1);
+            }
+
+            int lag = observations.length - 1;
+            FixedLagSmoother smoother = hmm.createFixedLagSmoother(lag);
+            for(int observation : observations) {
+                smoother.push(observation);
+            }
+            for(int s = 0; s < observations.length; s++) {
+                double[] expected = s < impossibleStep ?
+                        enumerate(hmm, matrixB, observations, impossibleStep, s) :
+                        enumerate(hmm, ignoredB, observations, observations.length, s);
+                assertEquals("trial " + trial + " step " + s, expected, smoother.getSmoothed(s));
+            }
+        }
+    }
+
+    /**
+     * P(state of step | observations[0 .. length - 1]) by the sum over all state sequences of the length.
+     * */
+    private static double[] enumerate(HiddenMarkovModel hmm, double[][] matrixB, int[] observations, int length, int step) {
+        int numState = hmm.getNumState();
+        ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+        double[] initStateP = hmm.getInitStateP();
+        double[] posterior = new double[numState];
+        int[] states = new int[length];
+        int sequenceNumber = (int) Math.pow(numState, length);
+        for(int sequence = 0; sequence < sequenceNumber; sequence++) {
+            int code = sequence;
+            for(int t = 0; t < length; t++) {
+                states[t] = code % numState;
+                code /= numState;
+            }
+
+            double probability = initStateP[states[0]] * matrixB[states[0]][observations[0]];
+            for(int t = 1; t < length; t++) {
+                probability *= matrixA.get(states[t - 1], states[t]) * matrixB[states[t]][observations[t]];
+            }
+            posterior[states[step]] += probability;
+        }
+
+        double sum = 0.0;
+        for(double probability : posterior) {
+            sum += probability;
+        }
+        for(int i = 0; i < numState; i++) {
+            posterior[i] = posterior[i] / sum;
+        }
+        return posterior;
+    }
+
+    private static void assertEquals(String message, double[] expected, double[] actual) {
+        assertEquals(message, expected.length, actual.length);
+        for(int i = 0; i < expected.length; i++) {
+            assertEquals(message + " state " + i, expected[i], actual[i], TOLERANCE);
+        }
+    }
+
+    /**
+     * A random model whose B matrix has no zero entry (the impossible observation is made by the test).
+     * */
+    private static HiddenMarkovModel createRandomModel(Random random, int numState, boolean isSparse) {
+        HiddenMarkovModel hmm = new HiddenMarkovModel(numState);
+        boolean[][] pattern = new boolean[numState][numState];
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                pattern[i][j] = i == j || random.nextInt(2) == 0;
+            }
+        }
+        ProbabilityMatrix matrixA = isSparse ? new SparseProbabilityMatrix(pattern) : new DenseProbabilityMatrix(numState);
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                if(pattern[i][j]) matrixA.set(i, j, random.nextDouble());
+            }
+            matrixA.normalizeRow(i);
+        }
+        hmm.setMatrixA(matrixA);
+
+        double[][] matrixB = hmm.getMatrixB();
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                matrixB[i][j] = 0.05 + random.nextDouble();
+            }
+        }
+        double[] initStateP = new double[numState];
+        for(int i = 0; i < numState; i++) {
+            initStateP[i] = random.nextDouble();
+        }
+        hmm.setInitStateP(initStateP);
+        return hmm;
+    }
+}
@@ -0,0 +1,208 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks FloatProbabilityMatrix against DenseProbabilityMatrix.
+ * The kernels must be the same as the dense matrix of the float values, and within the float precision of the dense matrix of the double values.
+ */
+public class FloatProbabilityMatrixTest extends TestCase {
+    private static final double RELATIVE_TOLERANCE = 1e-6;
+
+    /**
+     * The rows are padded to a multiple of 16 floats, and the padding of a row isn't a part of the next row.
+     * */
+    public void testRowPadding() {
+        for(int size : new int[]{0, 1, 15, 16, 17, 31, 33, 100}) {
+            FloatProbabilityMatrix matrix = new FloatProbabilityMatrix(size);
+            assertEquals(size, matrix.size());
+            assertEquals(0, matrix.getRowStride() % 16);
+            assertTrue(matrix.getRowStride() >= size && matrix.getRowStride() < size + 16);
+
+            for(int i = 0; i < size; i++) {
+                for(int j = 0; j < size; j++) {
+                    matrix.set(i, j, i * size + j + 1);
+                }
+            }
+            for(int i = 0; i < size; i++) {
+                for(int j = 0; j < size; j++) {
+                    assertEquals(i * size + j + 1, matrix.get(i, j), 0.0);
+                }
+                try {
+                    matrix.set(i, size, 1);
+                    fail("A column in the padding must not be set");
+                } catch (IndexOutOfBoundsException e) {
+                    // expected
+                }
+            }
+        }
+
+        try {
+            new FloatProbabilityMatrix(-1);
+            fail("The size must not be negative");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A value is stored as the nearest float, and the normalized row is the float of the double division.
+     * */
+    public void testFloatRounding() {
+        Random random = new Random(1);
+        int size = 20;
+        double[][] values = createRandomValues(random, size);
+        FloatProbabilityMatrix matrix = new FloatProbabilityMatrix(values);
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                assertEquals((double) (float) values[i][j], matrix.get(i, j), 0.0);
+                double value = random.nextDouble();
+                matrix.set(i, j, value);
+                assertEquals((double) (float) value, matrix.get(i, j), 0.0);
+                assertEquals(value, matrix.get(i, j), value * RELATIVE_TOLERANCE);
+            }
+
+            double rowSum = 0.0;
+            double[] row = new double[size];
+            for(int j = 0; j < size; j++) {
+                row[j] = matrix.get(i, j);
+                rowSum += row[j];
+            }
+            matrix.normalizeRow(i);
+            double normalizedSum = 0.0;
+            for(int j = 0; j < size; j++) {
+                assertEquals((double) (float) (row[j] / rowSum), matrix.get(i, j), 0.0);
+                normalizedSum += matrix.get(i, j);
+            }
+            assertEquals(1.0, normalizedSum, RELATIVE_TOLERANCE);
+        }
+
+        matrix.clear();
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                assertEquals(0.0, matrix.get(i, j), 0.0);
+            }
+        }
+    }
+
+    public void testKernels() {
+        Random random = new Random(2);
+        for(int trial = 0; trial < 100; trial++) {
+            int size = 1 + random.nextInt(40);
+            double[][] values = createRandomValues(random, size);
+            FloatProbabilityMatrix matrix = new FloatProbabilityMatrix(values);
+            DenseProbabilityMatrix dense = new DenseProbabilityMatrix(values);
+            DenseProbabilityMatrix rounded = new DenseProbabilityMatrix(size);
+            for(int i = 0; i < size; i++) {
+                for(int j = 0; j < size; j++) {
+                    rounded.set(i, j, (float) values[i][j]);
+                }
+            }
+
+            double[] vector = new double[size];
+            double[] scores = new double[size];
+            for(int j = 0; j < size; j++) {
+                vector[j] = random.nextDouble();
+                scores[j] = Math.log(random.nextDouble());
+            }
+            double[] result = new double[size];
+            double[] denseResult = new double[size];
+            double[] roundedResult = new double[size];
+            double[] best = new double[size];
+            double[] roundedBest = new double[size];
+            int[] backPointer = new int[size];
+            int[] roundedBackPointer = new int[size];
+            Arrays.fill(best, Double.NEGATIVE_INFINITY);
+            Arrays.fill(roundedBest, Double.NEGATIVE_INFINITY);
+            for(int i = 0; i < size; i++) {
+                matrix.addRowTo(i, vector[i], result);
+                dense.addRowTo(i, vector[i], denseResult);
+                rounded.addRowTo(i, vector[i], roundedResult);
+
+                double dot = matrix.dotRow(i, vector);
+                assertEquals(rounded.dotRow(i, vector), dot, 0.0);
+                assertRelativeEquals(dense.dotRow(i, vector), dot);
+
+                matrix.maxRowTo(i, scores[i], best, backPointer);
+                rounded.maxRowTo(i, scores[i], roundedBest, roundedBackPointer);
+            }
+            assertTrue(Arrays.equals(roundedResult, result));
+            assertTrue(Arrays.equals(roundedBest, best));
+            assertTrue(Arrays.equals(roundedBackPointer, backPointer));
+            for(int j = 0; j < size; j++) {
+                assertRelativeEquals(denseResult[j], result[j]);
+            }
+        }
+    }
+
+    /**
+     * The forward and Viterbi algorithms of a model with float matrices must be within the float precision of the model with double matrices.
+     * */
+    public void testModel() {
+        Random random = new Random(3);
+        for(int trial = 0; trial < 50; trial++) {
+            int size = 2 + random.nextInt(30);
+            double[][] matrixA = createRandomValues(random, size);
+            double[][] matrixB = createRandomValues(random, size);
+            for(int i = 0; i < size; i++) {
+                new DenseProbabilityMatrix(matrixA).normalizeRow(i);
+            }
+            double[] initStateP = new double[size];
+            Arrays.fill(initStateP, 1.0 / size);
+
+            HiddenMarkovModel denseModel = new HiddenMarkovModel(size);
+            denseModel.setMatrixA(matrixA);
+            denseModel.setMatrixB(matrixB);
+            denseModel.setInitStateP(initStateP);
+            denseModel.setScaled(true);
+            HiddenMarkovModel floatModel = new HiddenMarkovModel(size);
+            floatModel.setMatrixA(new FloatProbabilityMatrix(matrixA));
+            floatModel.setMatrixB(new FloatProbabilityMatrix(matrixB));
+            floatModel.setInitStateP(initStateP);
+            floatModel.setScaled(true);
+
+            int[] observations = new int[20];
+            for(int t = 0; t < observations.length; t++) {
+                observations[t] = random.nextInt(size);
+            }
+            double expected = denseModel.logLikelihood(observations);
+            assertEquals(expected, floatModel.logLikelihood(observations), Math.abs(expected) * RELATIVE_TOLERANCE);
+            assertRelativeEquals(denseModel.evaluate(observations), floatModel.evaluate(observations));
+
+            // The Viterbi path is the same as the dense model of the float values
+            double[][] roundedA = new double[size][size];
+            double[][] roundedB = new double[size][size];
+            for(int i = 0; i < size; i++) {
+                for(int j = 0; j < size; j++) {
+                    roundedA[i][j] = floatModel.getTransitionMatrix().get(i, j);
+                    roundedB[i][j] = floatModel.getObservationMatrix().get(i, j);
+                }
+            }
+            HiddenMarkovModel roundedModel = new HiddenMarkovModel(size);
+            roundedModel.setMatrixA(roundedA);
+            roundedModel.setMatrixB(roundedB);
+            roundedModel.setInitStateP(initStateP);
+            assertTrue(Arrays.equals(roundedModel.decode(observations), floatModel.decode(observations)));
+        }
+    }
+
+    private static void assertRelativeEquals(double expected, double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * RELATIVE_TOLERANCE);
+    }
+
+    /**
+     * Random values with some zero entries (skipped by the kernels).
+     * */
+    private static double[][] createRandomValues(Random random, int size) {
+        double[][] values = new double[size][size];
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                values[i][j] = random.nextInt(4) == 0 ? 0 : random.nextDouble();
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,229 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the beam mode of ForwardFilter seeded with the candidate states.
+ */
+public class ForwardFilterTest extends TestCase {
+    private static final int STEP_NUMBER = 30;
+
+    /**
+     * The streaming likelihood of the pushed observations and the candidate likelihood of each next observation
+     * must be the same as the forward algorithm that keeps the whole lattice, in both the raw and the scaled mode.
+     * */
+    public void testForwardRecursion() {
+        Random random = new Random(3);
+        for(int trial = 0; trial < 100; trial++) {
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(30));
+            hmm.setScaled(trial % 2 == 0);
+            int numState = hmm.getNumState();
+            ForwardFilter filter = hmm.createForwardFilter();
+            int[] observations = new int[STEP_NUMBER];
+            for(int t = 0; t < STEP_NUMBER; t++) {
+                int[] extended = Arrays.copyOf(observations, t + 1);
+                for(int observation = 0; observation < numState; observation++) {
+                    extended[t] = observation;
+                    assertRelativeEquals(forward(hmm, extended), filter.getCandidateLikelihood(observation));
+                }
+
+                observations[t] = random.nextInt(numState);
+                int[] pushed = Arrays.copyOf(observations, t + 1);
+                filter.push(observations[t]);
+                double expected = forward(hmm, pushed);
+                assertEquals(t + 1, filter.getLength());
+                assertRelativeEquals(expected, filter.getLikelihood());
+                assertRelativeEquals(expected, hmm.evaluate(pushed));
+                if(expected > 0) {
+                    assertEquals(Math.log(expected), filter.getLogLikelihood(), 1e-9);
+                }
+                else {
+                    assertEquals(Double.NEGATIVE_INFINITY, filter.getLogLikelihood(), 0.0);
+                }
+            }
+
+            filter.reset();
+            assertEquals(0, filter.getLength());
+            assertRelativeEquals(forward(hmm, new int[]{observations[0]}), filter.getCandidateLikelihood(observations[0]));
+        }
+    }
+
+    /**
+     * If all states are the candidate states, the results must be the same as the beam without the candidate states.
+     * */
+    public void testAllCandidateStates() {
+        Random random = new Random(1);
+        for(int trial = 0; trial < 100; trial++) {
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(30));
+            int numState = hmm.getNumState();
+            int beamWidth = 1 + random.nextInt(numState);
+            double threshold = random.nextBoolean() ? random.nextDouble() / 2 : 0;
+
+            ForwardFilter filter = hmm.createForwardFilter();
+            filter.setBeam(beamWidth, threshold);
+            ForwardFilter candidateFilter = hmm.createForwardFilter();
+            candidateFilter.setBeam(beamWidth, threshold);
+            int[] allStates = new int[numState];
+            for(int i = 0; i < numState; i++) {
+                allStates[i] = i;
+            }
+
+            for(int t = 0; t < STEP_NUMBER; t++) {
+                int observation = random.nextInt(numState);
+                candidateFilter.setCandidateStates(allStates);
+                assertEquals(filter.getCandidateLogLikelihood(observation), candidateFilter.getCandidateLogLikelihood(observation), 0.0);
+                assertTrue(Arrays.equals(filter.push(observation), candidateFilter.push(observation)));
+                assertEquals(filter.getLogLikelihood(), candidateFilter.getLogLikelihood(), 0.0);
+                assertEquals(filter.getNumActiveStates(), candidateFilter.getNumActiveStates());
+                assertEquals(filter.getLastPrunedMass(), candidateFilter.getLastPrunedMass(), 0.0);
+                assertEquals(0.0, candidateFilter.getLastCandidateCutMass(), 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Only the candidate states can have a forward variable that isn't zero, and reset() removes them.
+     * The candidate cut mass must be the predicted mass of the other states (calculated for all states).
+     * */
+    public void testCandidateStates() {
+        Random random = new Random(2);
+        for(int trial = 0; trial < 100; trial++) {
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(30));
+            int numState = hmm.getNumState();
+            ForwardFilter filter = hmm.createForwardFilter();
+            filter.setBeam(numState, 0);
+
+            for(int t = 0; t < STEP_NUMBER; t++) {
+                int start = random.nextInt(numState);
+                int[] candidateStates = new int[1 + random.nextInt(numState - start)];
+                for(int k = 0; k < candidateStates.length; k++) {
+                    candidateStates[k] = start + k;
+                }
+                int observation = random.nextInt(numState);
+                double[] predicted = predict(hmm, filter);
+                filter.setCandidateStates(candidateStates);
+                double candidateLikelihood = filter.getCandidateLogLikelihood(observation);
+                double cutMassSum = filter.getCandidateCutMassSum();
+                double[] belief = filter.push(observation);
+
+                int nonZeroCount = 0;
+                boolean isInCandidates = true;
+                for(int i = 0; i < numState; i++) {
+                    if(belief[i] == 0) continue;
+                    nonZeroCount++;
+                    isInCandidates &= i >= start && i < start + candidateStates.length;
+                }
+                assertEquals(nonZeroCount, filter.getNumActiveStates());
+                // The states outside the candidates are used only if no candidate state explains the observation
+                if(candidateLikelihood != Double.NEGATIVE_INFINITY) {
+                    assertTrue(isInCandidates);
+                    assertEquals(candidateLikelihood, filter.getLogLikelihood(), 1e-9);
+
+                    double predictedMass = 0.0;
+                    double candidateMass = 0.0;
+                    for(int i = 0; i < numState; i++) {
+                        predictedMass += predicted[i];
+                        if(i >= start && i < start + candidateStates.length) candidateMass += predicted[i];
+                    }
+                    double expected = (predictedMass - candidateMass) / predictedMass;
+                    assertEquals(expected, filter.getLastCandidateCutMass(), 1e-9);
+                    assertEquals(cutMassSum + filter.getLastCandidateCutMass(), filter.getCandidateCutMassSum(), 1e-12);
+                }
+
+                if(random.nextInt(8) == 0) {
+                    filter.reset();
+                    for(double forward : filter.getBelief()) {
+                        assertEquals(0.0, forward, 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The forward variables of the next time step of all states before applying the observation probability
+     * */
+    private static double[] predict(HiddenMarkovModel hmm, ForwardFilter filter) {
+        int numState = hmm.getNumState();
+        if(filter.getLength() == 0)
+            return hmm.getInitStateP().clone();
+
+        double[] belief = filter.getBelief();
+        double[] predicted = new double[numState];
+        for(int j = 0; j < numState; j++) {
+            for(int i = 0; i < numState; i++) {
+                predicted[i] += belief[j] * hmm.getTransitionMatrix().get(j, i);
+            }
+        }
+        return predicted;
+    }
+
+    /**
+     * The forward algorithm with the forward variables of all time steps (the algorithm before ForwardFilter was used).
+     * */
+    private static double forward(HiddenMarkovModel hmm, int[] observations) {
+        int T = observations.length;
+        int numState = hmm.getNumState();
+        ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        double[] initStateP = hmm.getInitStateP();
+
+        double[][] fwd = new double[T][numState];
+        for(int i = 0; i < numState; i++) {
+            fwd[0][i] = initStateP[i] * matrixB.get(i, observations[0]);
+        }
+        for(int t = 1; t < T; t++) {
+            for(int i = 0; i < numState; i++) {
+                double sum = 0.0;
+                for(int j = 0; j < numState; j++) {
+                    sum += fwd[t - 1][j] * matrixA.get(j, i);
+                }
+                fwd[t][i] = sum * matrixB.get(i, observations[t]);
+            }
+        }
+        double probabilitySum = 0;
+        for(int i = 0; i < numState; i++) {
+            probabilitySum += fwd[T - 1][i];
+        }
+        return probabilitySum;
+    }
+
+    private static void assertRelativeEquals(double expected, double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * 1e-9);
+    }
+
+    private static HiddenMarkovModel createRandomModel(Random random, int numState) {
+        HiddenMarkovModel hmm = new HiddenMarkovModel(numState);
+        hmm.setScaled(true);
+        boolean[][] pattern = new boolean[numState][numState];
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                pattern[i][j] = i == j || random.nextInt(4) == 0;
+            }
+        }
+        SparseProbabilityMatrix matrixA = new SparseProbabilityMatrix(pattern);
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                if(pattern[i][j]) matrixA.set(i, j, random.nextDouble());
+            }
+            matrixA.normalizeRow(i);
+        }
+        hmm.setMatrixA(matrixA);
+
+        double[][] matrixB = hmm.getMatrixB();
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                matrixB[i][j] = random.nextInt(3) == 0 ? 0 : random.nextDouble();
+            }
+        }
+        double[] initStateP = new double[numState];
+        for(int i = 0; i < numState; i++) {
+            initStateP[i] = random.nextDouble();
+        }
+        hmm.setInitStateP(initStateP);
+        return hmm;
+    }
+}
@@ -0,0 +1,270 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the log-likelihood of the scaled forward algorithm of HiddenMarkovModel and the sessions of a frozen model.
+ */
+public class HiddenMarkovModelTest extends TestCase {
+
+    /**
+     * On a short sequence the probability is representable, so the log-likelihood must be the logarithm of evaluate()
+     * in both the raw and the scaled mode.
+     * */
+    public void testLogLikelihood() {
+        Random random = new Random(1);
+        for(int trial = 0; trial < 100; trial++) {
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(20));
+            hmm.setScaled(trial % 2 == 0);
+            int[] observations = createRandomObservations(random, hmm.getNumState(), 1 + random.nextInt(20));
+            double probability = hmm.evaluate(observations);
+            assertTrue(probability > 0);
+            assertEquals(Math.log(probability), hmm.logLikelihood(observations), 1e-9);
+        }
+        assertEquals(Double.NEGATIVE_INFINITY, createRandomModel(random, 3).logLikelihood(new int[0]), 0.0);
+    }
+
+    /**
+     * On a long sequence the raw forward algorithm underflows to zero,
+     * but the log-likelihood must be finite and the same as the forward algorithm normalized at each time step.
+     * */
+    public void testLogLikelihoodUnderflow() {
+        Random random = new Random(2);
+        for(int trial = 0; trial < 20; trial++) {
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(20));
+            int[] observations = createRandomObservations(random, hmm.getNumState(), 2000);
+            assertEquals(0.0, hmm.evaluate(observations), 0.0);
+
+            double logLikelihood = hmm.logLikelihood(observations);
+            assertFalse(Double.isInfinite(logLikelihood) || Double.isNaN(logLikelihood));
+            double expected = normalizedForward(hmm, observations);
+            assertEquals(expected, logLikelihood, Math.abs(expected) * 1e-12);
+
+            hmm.setScaled(true);
+            assertEquals(logLikelihood, hmm.logLikelihood(observations), 0.0);
+            assertEquals(0.0, hmm.evaluate(observations), 0.0);
+        }
+    }
+
+    /**
+     * The B matrix and the initial state probability changed by a session must not be seen by the shared model or the other sessions,
+     * and the forward algorithm of the session must use them.
+     * */
+    public void testSessionIsolation() {
+        Random random = new Random(3);
+        for(int trial = 0; trial < 20; trial++) {
+            int numState = 2 + random.nextInt(20);
+            HiddenMarkovModel sharedModel = createRandomModel(random, numState);
+            double[][] sharedB = copy(sharedModel.getObservationMatrix());
+            double[] sharedInitStateP = sharedModel.getInitStateP().clone();
+            int[] observations = createRandomObservations(random, numState, 10);
+            double sharedLikelihood = sharedModel.evaluate(observations);
+
+            HiddenMarkovModel session = sharedModel.createSession();
+            HiddenMarkovModel otherSession = sharedModel.createSession();
+            assertTrue(sharedModel.isFrozen());
+            assertTrue(session.isSession());
+            assertSame(sharedModel.getTransitionMatrix(), session.getTransitionMatrix());
+            assertNull(session.getMatrixA());
+
+            double[] initStateP = new double[numState];
+            for(int i = 0; i < numState; i++) {
+                initStateP[i] = random.nextDouble();
+            }
+            session.setInitStateP(initStateP);
+            ProbabilityMatrix matrixB = session.getObservationMatrix();
+            for(int k = 0; k < numState; k++) {
+                int row = random.nextInt(numState);
+                matrixB.set(row, random.nextInt(numState), random.nextDouble());
+                matrixB.normalizeRow(row);
+            }
+
+            assertSameMatrix(sharedB, sharedModel.getObservationMatrix());
+            assertSameMatrix(sharedB, otherSession.getObservationMatrix());
+            assertTrue(Arrays.equals(sharedInitStateP, sharedModel.getInitStateP()));
+            assertTrue(Arrays.equals(sharedInitStateP, otherSession.getInitStateP()));
+            assertEquals(sharedLikelihood, sharedModel.evaluate(observations), 0.0);
+            assertEquals(sharedLikelihood, otherSession.evaluate(observations), 0.0);
+
+            // The same values in a model that isn't a session
+            HiddenMarkovModel expected = new HiddenMarkovModel(numState);
+            expected.setMatrixA(copy(sharedModel.getTransitionMatrix()));
+            expected.setMatrixB(copy(matrixB));
+            expected.setInitStateP(initStateP);
+            assertEquals(expected.evaluate(observations), session.evaluate(observations), 0.0);
+            assertTrue(Arrays.equals(expected.decode(observations), session.decode(observations)));
+
+            // clear() of a session clears only its own B matrix and initial state probability
+            session.clear();
+            assertSameMatrix(new double[numState][numState], session.getObservationMatrix());
+            assertSameMatrix(sharedB, sharedModel.getObservationMatrix());
+            assertSameMatrix(copy(sharedModel.getTransitionMatrix()), session.getTransitionMatrix());
+        }
+    }
+
+    /**
+     * resetSession() must restore the rows of the shared B matrix and the shared initial state probability.
+     * */
+    public void testResetSession() {
+        Random random = new Random(4);
+        int numState = 15;
+        HiddenMarkovModel sharedModel = createRandomModel(random, numState);
+        double[][] sharedB = copy(sharedModel.getObservationMatrix());
+        int[] observations = createRandomObservations(random, numState, 10);
+        double sharedLikelihood = sharedModel.evaluate(observations);
+
+        HiddenMarkovModel session = sharedModel.createSession();
+        for(int trial = 0; trial < 3; trial++) {
+            session.setInitStateP(new int[]{random.nextInt(numState)});
+            for(int k = 0; k < numState; k++) {
+                session.getObservationMatrix().set(random.nextInt(numState), random.nextInt(numState), random.nextDouble());
+            }
+            if(trial == 1) {
+                session.clearOnlyBMatrix();
+            }
+            else if(trial == 2) {
+                // A B matrix replaced by another storage
+                session.setMatrixB(new double[numState][numState]);
+            }
+
+            session.resetSession();
+            assertSameMatrix(sharedB, session.getObservationMatrix());
+            assertTrue(Arrays.equals(sharedModel.getInitStateP(), session.getInitStateP()));
+            assertEquals(sharedLikelihood, session.evaluate(observations), 0.0);
+        }
+
+        try {
+            sharedModel.resetSession();
+            fail("The shared model isn't a session");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The frozen model can't be changed, and the A matrix of a session can't be changed.
+     * */
+    public void testFrozenModel() {
+        Random random = new Random(5);
+        int numState = 5;
+        HiddenMarkovModel sharedModel = createRandomModel(random, numState);
+        int[] observations = createRandomObservations(random, numState, 10);
+        double likelihood = sharedModel.evaluate(observations);
+        sharedModel.freeze();
+        assertNull(sharedModel.getMatrixA());
+        assertNull(sharedModel.getMatrixB());
+        assertEquals(likelihood, sharedModel.evaluate(observations), 0.0);
+
+        final HiddenMarkovModel frozenModel = sharedModel;
+        final HiddenMarkovModel session = sharedModel.createSession();
+        Runnable[] changes = {
+                () -> frozenModel.setScaled(true),
+                () -> frozenModel.setInitStateP(new double[numState]),
+                () -> frozenModel.setInitStateP(new int[]{0}),
+                () -> frozenModel.setMatrixA(new double[numState][numState]),
+                () -> frozenModel.setMatrixA(new DenseProbabilityMatrix(numState)),
+                () -> frozenModel.setMatrixB(new double[numState][numState]),
+                () -> frozenModel.setMatrixB(new DenseProbabilityMatrix(numState)),
+                () -> frozenModel.clear(),
+                () -> frozenModel.clearOnlyBMatrix(),
+                () -> frozenModel.getTransitionMatrix().set(0, 0, 1),
+                () -> frozenModel.getObservationMatrix().set(0, 0, 1),
+                () -> session.setMatrixA(new double[numState][numState]),
+                () -> session.setMatrixA(new DenseProbabilityMatrix(numState)),
+                () -> session.getTransitionMatrix().normalizeRow(0),
+                () -> session.createSession(),
+                () -> session.freeze()};
+        for(int i = 0; i < changes.length; i++) {
+            try {
+                changes[i].run();
+                fail("The change " + i + " must not be allowed");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        assertEquals(likelihood, sharedModel.evaluate(observations), 0.0);
+        assertEquals(likelihood, session.evaluate(observations), 0.0);
+    }
+
+    private static double[][] copy(ProbabilityMatrix matrix) {
+        double[][] values = new double[matrix.size()][matrix.size()];
+        for(int i = 0; i < matrix.size(); i++) {
+            for(int j = 0; j < matrix.size(); j++) {
+                values[i][j] = matrix.get(i, j);
+            }
+        }
+        return values;
+    }
+
+    private static void assertSameMatrix(double[][] expected, ProbabilityMatrix actual) {
+        assertEquals(expected.length, actual.size());
+        for(int i = 0; i < expected.length; i++) {
+            for(int j = 0; j < expected.length; j++) {
+                assertEquals(expected[i][j], actual.get(i, j), 0.0);
+            }
+        }
+    }
+
+    /**
+     * The log-likelihood of the forward algorithm that keeps all forward variables and divides them by their sum at each time step.
+     * */
+    private static double normalizedForward(HiddenMarkovModel hmm, int[] observations) {
+        int numState = hmm.getNumState();
+        ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        double[][] fwd = new double[observations.length][numState];
+        double logLikelihood = 0.0;
+        for(int t = 0; t < observations.length; t++) {
+            double sum = 0.0;
+            for(int i = 0; i < numState; i++) {
+                double predicted = 0.0;
+                if(t == 0) {
+                    predicted = hmm.getInitStateP()[i];
+                }
+                else {
+                    for(int j = 0; j < numState; j++) {
+                        predicted += fwd[t - 1][j] * matrixA.get(j, i);
+                    }
+                }
+                fwd[t][i] = predicted * matrixB.get(i, observations[t]);
+                sum += fwd[t][i];
+            }
+            for(int i = 0; i < numState; i++) {
+                fwd[t][i] = fwd[t][i] / sum;
+            }
+            logLikelihood += Math.log(sum);
+        }
+        return logLikelihood;
+    }
+
+    private static int[] createRandomObservations(Random random, int numState, int length) {
+        int[] observations = new int[length];
+        for(int t = 0; t < length; t++) {
+            observations[t] = random.nextInt(numState);
+        }
+        return observations;
+    }
+
+    /**
+     * A random model whose observation probabilities are greater than zero, so every sequence is possible.
+     * */
+    private static HiddenMarkovModel createRandomModel(Random random, int numState) {
+        HiddenMarkovModel hmm = new HiddenMarkovModel(numState);
+        double[][] matrixA = hmm.getMatrixA();
+        double[][] matrixB = hmm.getMatrixB();
+        double[] initStateP = new double[numState];
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                matrixA[i][j] = random.nextDouble();
+                matrixB[i][j] = 0.01 + random.nextDouble() / 2;
+            }
+            hmm.getTransitionMatrix().normalizeRow(i);
+            initStateP[i] = 1.0 / numState;
+        }
+        hmm.setInitStateP(initStateP);
+        return hmm;
+    }
+}
@@ -0,0 +1,121 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the kernels of SparseProbabilityMatrix against DenseProbabilityMatrix with the same values.
+ * Both visit the non-zero entries of a row in the order of the columns, so the results must be exactly the same.
+ */
+public class SparseProbabilityMatrixTest extends TestCase {
+
+    public void testKernels() {
+        Random random = new Random(1);
+        for(int trial = 0; trial < 100; trial++) {
+            int size = 1 + random.nextInt(40);
+            boolean[][] pattern = createRandomPattern(random, size);
+            SparseProbabilityMatrix sparse = new SparseProbabilityMatrix(pattern);
+            DenseProbabilityMatrix dense = new DenseProbabilityMatrix(size);
+            for(int i = 0; i < size; i++) {
+                for(int j = 0; j < size; j++) {
+                    // Some entries of the structure stay zero
+                    if(pattern[i][j] && random.nextInt(5) != 0) {
+                        double value = random.nextDouble();
+                        sparse.set(i, j, value);
+                        dense.set(i, j, value);
+                    }
+                }
+                if(random.nextBoolean()) {
+                    sparse.normalizeRow(i);
+                    dense.normalizeRow(i);
+                }
+            }
+            assertSameMatrix(dense, sparse);
+            assertSameMatrix(dense, new SparseProbabilityMatrix(dense.getArray()));
+
+            double[] vector = new double[size];
+            double[] scores = new double[size];
+            for(int j = 0; j < size; j++) {
+                vector[j] = random.nextDouble();
+                scores[j] = random.nextInt(4) == 0 ? Double.NEGATIVE_INFINITY : Math.log(random.nextDouble());
+            }
+
+            double[] denseResult = new double[size];
+            double[] sparseResult = new double[size];
+            double[] denseBest = new double[size];
+            double[] sparseBest = new double[size];
+            int[] denseBackPointer = new int[size];
+            int[] sparseBackPointer = new int[size];
+            Arrays.fill(denseBest, Double.NEGATIVE_INFINITY);
+            Arrays.fill(sparseBest, Double.NEGATIVE_INFINITY);
+            Arrays.fill(denseBackPointer, -1);
+            Arrays.fill(sparseBackPointer, -1);
+            for(int i = 0; i < size; i++) {
+                dense.addRowTo(i, vector[i], denseResult);
+                sparse.addRowTo(i, vector[i], sparseResult);
+                assertEquals(dense.dotRow(i, vector), sparse.dotRow(i, vector), 0.0);
+                dense.maxRowTo(i, scores[i], denseBest, denseBackPointer);
+                sparse.maxRowTo(i, scores[i], sparseBest, sparseBackPointer);
+            }
+            assertTrue(Arrays.equals(denseResult, sparseResult));
+            assertTrue(Arrays.equals(denseBest, sparseBest));
+            assertTrue(Arrays.equals(denseBackPointer, sparseBackPointer));
+
+            sparse.clear();
+            dense.clear();
+            assertSameMatrix(dense, sparse);
+        }
+    }
+
+    /**
+     * An entry outside of the structure reads zero, can be set to zero, and can't be set to another value.
+     * */
+    public void testStructure() {
+        Random random = new Random(2);
+        int size = 20;
+        boolean[][] pattern = createRandomPattern(random, size);
+        SparseProbabilityMatrix sparse = new SparseProbabilityMatrix(pattern);
+        int entryNumber = 0;
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                if(pattern[i][j]) {
+                    entryNumber++;
+                    sparse.set(i, j, 0.5);
+                    assertEquals(0.5, sparse.get(i, j), 0.0);
+                    continue;
+                }
+                sparse.set(i, j, 0);
+                assertEquals(0.0, sparse.get(i, j), 0.0);
+                try {
+                    sparse.set(i, j, 0.5);
+                    fail("(" + i + ", " + j + ") is not a part of the structure");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+        }
+        assertEquals(entryNumber, sparse.getNumEntry());
+        assertEquals(size, sparse.size());
+    }
+
+    private static void assertSameMatrix(ProbabilityMatrix expected, ProbabilityMatrix actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            for(int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), 0.0);
+            }
+        }
+    }
+
+    private static boolean[][] createRandomPattern(Random random, int size) {
+        boolean[][] pattern = new boolean[size][size];
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                pattern[i][j] = i == j || random.nextInt(4) == 0;
+            }
+        }
+        return pattern;
+    }
+}
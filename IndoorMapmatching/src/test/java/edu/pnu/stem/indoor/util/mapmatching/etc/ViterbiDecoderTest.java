@@ -0,0 +1,208 @@
+package edu.pnu.stem.indoor.util.mapmatching.etc;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks ViterbiDecoder against the Viterbi algorithm that keeps the whole lattice (the algorithm before ViterbiDecoder was used).
+ */
+public class ViterbiDecoderTest extends TestCase {
+
+    /**
+     * decode() must give the same path as the full lattice with dense and sparse A matrices.
+     * The same decoder is reused for all sequences of a model.
+     * */
+    public void testDecode() {
+        Random random = new Random(1);
+        for(int trial = 0; trial < 200; trial++) {
+            boolean isSparse = trial % 2 == 0;
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(20), isSparse);
+            ViterbiDecoder decoder = hmm.createViterbiDecoder();
+            for(int k = 0; k < 5; k++) {
+                int[] observations = createRandomObservations(random, hmm.getNumState(), 1 + random.nextInt(40));
+                int[] expected = viterbi(hmm, observations);
+                String message = "trial " + trial + (isSparse ? " sparse" : " dense");
+                assertTrue(message, Arrays.equals(expected, decoder.decode(observations)));
+                assertTrue(message, Arrays.equals(expected, hmm.decode(observations)));
+            }
+        }
+    }
+
+    /**
+     * A part of the observations is decoded the same as a copy of the part.
+     * */
+    public void testDecodeRange() {
+        Random random = new Random(2);
+        HiddenMarkovModel hmm = createRandomModel(random, 12, true);
+        ViterbiDecoder decoder = hmm.createViterbiDecoder();
+        int[] observations = createRandomObservations(random, hmm.getNumState(), 50);
+        int[] path = new int[observations.length];
+        for(int trial = 0; trial < 50; trial++) {
+            int start = random.nextInt(observations.length);
+            int length = 1 + random.nextInt(observations.length - start);
+            decoder.decode(observations, start, length, path);
+            int[] expected = viterbi(hmm, Arrays.copyOfRange(observations, start, start + length));
+            assertTrue(Arrays.equals(expected, Arrays.copyOf(path, length)));
+        }
+    }
+
+    /**
+     * In the online mode, a step finalized by push must be the state of that step in the batch path of the observations pushed so far
+     * (all surviving paths pass it, or it is traced back from the best state when the lag is full).
+     * If the lag is never full, the finalized path is the same as the batch path of all observations.
+     * */
+    public void testPushAndFlush() {
+        Random random = new Random(3);
+        for(int trial = 0; trial < 200; trial++) {
+            boolean isSparse = trial % 2 == 0;
+            HiddenMarkovModel hmm = createRandomModel(random, 2 + random.nextInt(20), isSparse);
+            int[] observations = createRandomObservations(random, hmm.getNumState(), 2 + random.nextInt(40));
+            boolean isLagLonger = random.nextBoolean();
+            int lag = isLagLonger ? observations.length : 1 + random.nextInt(5);
+            ViterbiDecoder decoder = hmm.createViterbiDecoder(lag);
+
+            int[] path = new int[observations.length];
+            int[] finalized = new int[lag + 1];
+            int pathLength = 0;
+            for(int t = 0; t < observations.length; t++) {
+                int finalizedCount = decoder.push(observations[t], finalized);
+                assertEquals(t + 1, decoder.getLength());
+                assertEquals(pathLength + finalizedCount, decoder.getFinalizedLength());
+                assertTrue(decoder.getLength() - decoder.getFinalizedLength() <= lag);
+                if(t > 0 && finalizedCount > 0) {
+                    // The first step is skipped: a path of one step ends at the last observation when the first state has the maximum score
+                    int[] expected = viterbi(hmm, Arrays.copyOf(observations, t + 1));
+                    for(int k = 0; k < finalizedCount; k++) {
+                        assertEquals("trial " + trial + " step " + (pathLength + k), expected[pathLength + k], finalized[k]);
+                    }
+                }
+                System.arraycopy(finalized, 0, path, pathLength, finalizedCount);
+                pathLength += finalizedCount;
+            }
+            int flushCount = decoder.flush(finalized);
+            System.arraycopy(finalized, 0, path, pathLength, flushCount);
+            pathLength += flushCount;
+            assertEquals(observations.length, pathLength);
+            assertEquals(0, decoder.getLength());
+
+            int[] expected = viterbi(hmm, observations);
+            int[] tail = Arrays.copyOfRange(expected, observations.length - flushCount, observations.length);
+            assertTrue(Arrays.equals(tail, Arrays.copyOfRange(path, observations.length - flushCount, observations.length)));
+            if(isLagLonger) {
+                assertTrue("trial " + trial, Arrays.equals(expected, path));
+            }
+        }
+    }
+
+    public void testInvalidLag() {
+        HiddenMarkovModel hmm = createRandomModel(new Random(4), 4, false);
+        try {
+            hmm.createViterbiDecoder(0);
+            fail("The lag of the online mode must be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            hmm.createViterbiDecoder().push(0, new int[1]);
+            fail("The decoder without a lag can't be used online");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The Viterbi algorithm with the full lattice of the scores and the back pointers,
+     * visiting all predecessors of each state (the same weights as HiddenMarkovModel).
+     * */
+    private static int[] viterbi(HiddenMarkovModel hmm, int[] observations) {
+        int T = observations.length;
+        int states = hmm.getNumState();
+        ProbabilityMatrix matrixA = hmm.getTransitionMatrix();
+        ProbabilityMatrix matrixB = hmm.getObservationMatrix();
+        double[] initStateP = hmm.getInitStateP();
+
+        int[][] s = new int[states][T];
+        double[][] lnFwd = new double[states][T];
+        for (int i = 0; i < states; i++) {
+            lnFwd[i][0] = initStateP[i] + Math.log(matrixB.get(i, observations[0]));
+        }
+        for (int t = 1; t < T; t++) {
+            for (int j = 0; j < states; j++) {
+                int maxState = 0;
+                double maxWeight = lnFwd[0][t - 1] + matrixA.get(0, j);
+                for (int i = 1; i < states; i++) {
+                    double weight = lnFwd[i][t - 1] + matrixA.get(i, j);
+                    if (weight > maxWeight) {
+                        maxState = i;
+                        maxWeight = weight;
+                    }
+                }
+                lnFwd[j][t] = maxWeight + matrixB.get(j, observations[t]);
+                s[j][t] = maxState;
+            }
+        }
+
+        int maxState = -1;
+        double maxWeight = lnFwd[0][T - 1];
+        for (int i = 1; i < states; i++) {
+            if (lnFwd[i][T - 1] > maxWeight) {
+                maxState = i;
+                maxWeight = lnFwd[i][T - 1];
+            }
+        }
+        if(maxState < 0) {
+            maxState = observations[T - 1];
+        }
+
+        int[] path = new int[T];
+        path[T - 1] = maxState;
+        for (int t = T - 2; t >= 0; t--)
+            path[t] = s[path[t + 1]][t + 1];
+        return path;
+    }
+
+    private static int[] createRandomObservations(Random random, int numState, int length) {
+        int[] observations = new int[length];
+        for(int t = 0; t < length; t++) {
+            observations[t] = random.nextInt(numState);
+        }
+        return observations;
+    }
+
+    /**
+     * A random model whose B matrix has zero entries, so some states are impossible at the first step.
+     * Some values of the A matrix are repeated to make ties of the scores.
+     * */
+    private static HiddenMarkovModel createRandomModel(Random random, int numState, boolean isSparse) {
+        HiddenMarkovModel hmm = new HiddenMarkovModel(numState);
+        boolean[][] pattern = new boolean[numState][numState];
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                pattern[i][j] = i == j || random.nextInt(4) == 0;
+            }
+        }
+        ProbabilityMatrix matrixA = isSparse ? new SparseProbabilityMatrix(pattern) : new DenseProbabilityMatrix(new double[numState][numState]);
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                if(pattern[i][j]) matrixA.set(i, j, random.nextInt(4) == 0 ? 0.5 : random.nextDouble());
+            }
+            matrixA.normalizeRow(i);
+        }
+        hmm.setMatrixA(matrixA);
+
+        double[][] matrixB = hmm.getMatrixB();
+        for(int i = 0; i < numState; i++) {
+            for(int j = 0; j < numState; j++) {
+                matrixB[i][j] = random.nextInt(3) == 0 ? 0 : random.nextDouble();
+            }
+        }
+        double[] initStateP = new double[numState];
+        for(int i = 0; i < numState; i++) {
+            initStateP[i] = random.nextDouble();
+        }
+        hmm.setInitStateP(initStateP);
+        return hmm;
+    }
+}
@@ -0,0 +1,82 @@
+package edu.pnu.stem.indoor.util.movingobject;
+
+import edu.pnu.stem.indoor.feature.IndoorFeatures;
+import edu.pnu.stem.indoor.util.parser.BuildNGoReader;
+import edu.pnu.stem.indoor.util.parser.DataUtils;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks that a trajectory store read from a binary file is the same as the store written to it.
+ */
+public class TrajectoryStoreTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        IndoorFeatures indoorFeatures = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/pnu_313.osm"));
+        Coordinate minPosition = indoorFeatures.getMinPosition();
+        Coordinate maxPosition = indoorFeatures.getMaxPosition();
+        File trajectoryDirectory = new File("res/Real_positioningTrajectory");
+        TrajectoryStore expected = TrajectoryStore.fromDirectory(trajectoryDirectory, new File("res/Real_groundTruth"), minPosition, maxPosition);
+        assertTrue(minPosition.equals2D(expected.getMinPosition()));
+        assertTrue(maxPosition.equals2D(expected.getMaxPosition()));
+        for(int i = 0; i < expected.getNumTrajectories(); i++) {
+            File trajectoryFile = new File(trajectoryDirectory, "Trajectory_" + expected.getTrajectoryID(i) + ".txt");
+            LineString trajectory = BuildNGoReader.read(trajectoryFile, minPosition);
+            assertTrue(trajectory.equalsExact(expected.getTrajectory(i)));
+        }
+
+        // A trajectory without ID, with time and with a part of the ground truth
+        GeometryFactory gf = new GeometryFactory();
+        CoordinateSequence positions = gf.getCoordinateSequenceFactory().create(new Coordinate[]{
+                new Coordinate(1, 2), new Coordinate(3, 4), new Coordinate(5, 6)});
+        expected.append(null, positions, new double[]{0, 1.5, 3}, new String[]{"corridor", null, "new label"});
+
+        File binaryFile = File.createTempFile("trajectories", TrajectoryStore.FILE_EXTENSION);
+        try {
+            expected.write(binaryFile);
+            assertSameStore(expected, TrajectoryStore.read(binaryFile));
+            assertSameStore(expected, TrajectoryStore.read(binaryFile, minPosition, maxPosition));
+
+            try {
+                TrajectoryStore.read(binaryFile, new Coordinate(minPosition.x + 1e-6, minPosition.y), maxPosition);
+                fail("The store converted with another range must not be read");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            binaryFile.delete();
+        }
+    }
+
+    private static void assertSameStore(TrajectoryStore expected, TrajectoryStore actual) {
+        assertTrue(expected.getMinPosition().equals2D(actual.getMinPosition()));
+        assertTrue(expected.getMaxPosition().equals2D(actual.getMaxPosition()));
+        assertEquals(expected.getNumPoints(), actual.getNumPoints());
+        assertEquals(expected.getNumTrajectories(), actual.getNumTrajectories());
+        assertEquals(expected.getNumLabels(), actual.getNumLabels());
+        for(int i = 0; i < expected.getNumLabels(); i++) {
+            assertEquals(expected.getLabel(i), actual.getLabel(i));
+        }
+        for(int i = 0; i < expected.getNumTrajectories(); i++) {
+            assertEquals(expected.getTrajectoryID(i), actual.getTrajectoryID(i));
+            assertEquals(expected.getStart(i), actual.getStart(i));
+            assertEquals(expected.getNumPoints(i), actual.getNumPoints(i));
+            assertTrue(Arrays.equals(expected.getGroundTruth(i), actual.getGroundTruth(i)));
+            assertTrue(expected.getTrajectory(i).equalsExact(actual.getTrajectory(i)));
+        }
+        for(int p = 0; p < expected.getNumPoints(); p++) {
+            assertEquals(expected.getX(p), actual.getX(p), 0.0);
+            assertEquals(expected.getY(p), actual.getY(p), 0.0);
+            // NaN (unknown time) is equal to NaN only as a Double object
+            assertEquals(Double.valueOf(expected.getTimestamp(p)), Double.valueOf(actual.getTimestamp(p)));
+            assertEquals(expected.getLabelId(p), actual.getLabelId(p));
+        }
+    }
+}
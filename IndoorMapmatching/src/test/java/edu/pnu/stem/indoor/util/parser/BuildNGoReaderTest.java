@@ -0,0 +1,126 @@
+package edu.pnu.stem.indoor.util.parser;
+
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks BuildNGoReader against Double.valueOf and the line based reader (the reader before BuildNGoReader was used).
+ */
+public class BuildNGoReaderTest extends TestCase {
+
+    public void testParseDouble() {
+        String[] values = {
+                "0", "-0", "+0", "0.0", "1", "-1", "+1.5", "1.", ".5", "-.5",
+                "007", "000.125", "-00035.2300", "35.23456789012", "129.08234567",
+                "123456789012345", "1234567890123456", "12345678901234567890", "0.1234567890123456789",
+                "3.141592653589793", "9007199254740993", "0.30000000000000004",
+                "0.0000000000000000000001", "0.00000000000000000000001",
+                " 35.1234", "129.5 ", "\t-1.25\r", "  +7.  ",
+                "1e5", "-2.5E-3", "Infinity", "-NaN", "0x1p3"};
+        for(String value : values) {
+            assertParsed(value);
+        }
+
+        Random random = new Random(1);
+        for(int trial = 0; trial < 100000; trial++) {
+            StringBuilder value = new StringBuilder();
+            int sign = random.nextInt(3);
+            if(sign == 1) value.append('-');
+            else if(sign == 2) value.append('+');
+            int digitNumber = 1 + random.nextInt(20);
+            int point = random.nextInt(digitNumber + 2) - 1;   // -1: no point
+            for(int i = 0; i < digitNumber; i++) {
+                if(i == point) value.append('.');
+                value.append((char) ('0' + random.nextInt(10)));
+            }
+            if(point == digitNumber) value.append('.');
+            assertParsed(value.toString());
+        }
+
+        for(String value : new String[]{"", " ", "-", "+", ".", "1.2.3", "1-2", "abc"}) {
+            try {
+                parse(value);
+                fail("The invalid number must not be parsed: \"" + value + "\"");
+            } catch (NumberFormatException e) {
+                // expected (the same as Double.valueOf)
+            }
+        }
+    }
+
+    /**
+     * read() must give the same trajectory as the line based reader for all sample trajectories,
+     * from a file, a stream and a byte array, with the global and a given range.
+     * */
+    public void testRead() throws Exception {
+        Coordinate buildingPosition = DataUtils.getIndoorFeaturesFromOSMXML(new File("res/OSM/pnu_313.osm")).getMinPosition();
+        File[] trajectoryFiles = new File("res/Real_positioningTrajectory").listFiles(File::isFile);
+        assertTrue(trajectoryFiles != null && trajectoryFiles.length > 0);
+        for(File trajectoryFile : trajectoryFiles) {
+            for(Coordinate minPosition : new Coordinate[]{ChangeCoord.getMinPosition(), buildingPosition}) {
+                LineString expected = readLines(trajectoryFile, minPosition);
+                assertTrue(trajectoryFile.getName(), expected.getNumPoints() > 1);
+                assertTrue(trajectoryFile.getName(), expected.equalsExact(BuildNGoReader.read(trajectoryFile, minPosition)));
+                try (InputStream inputStream = new FileInputStream(trajectoryFile)) {
+                    assertTrue(trajectoryFile.getName(), expected.equalsExact(BuildNGoReader.read(inputStream, minPosition)));
+                }
+            }
+            assertTrue(readLines(trajectoryFile, ChangeCoord.getMinPosition()).equalsExact(BuildNGoReader.read(trajectoryFile)));
+        }
+
+        // Empty lines, CRLF, a line without a value after '/' and a third value are handled as the line based reader
+        byte[] data = "35.5/129.5\r\n\r\ntime/\n35.25/129.125/extra\n/\n35.0/129".getBytes(StandardCharsets.ISO_8859_1);
+        LineString expected = new GeometryFactory().createLineString(new Coordinate[]{
+                ChangeCoord.changeCoordWGS84toMeter(129.5, 35.5), ChangeCoord.changeCoordWGS84toMeter(129.125, 35.25),
+                ChangeCoord.changeCoordWGS84toMeter(129, 35)});
+        assertTrue(expected.equalsExact(BuildNGoReader.read(data, data.length)));
+        assertTrue(BuildNGoReader.read(data, 10).isEmpty());
+    }
+
+    private static void assertParsed(String value) {
+        double expected = Double.valueOf(value);
+        double actual = parse(value);
+        // Double.compare distinguishes -0.0 from 0.0 and NaN is equal to NaN
+        assertEquals("\"" + value + "\" " + expected + " " + actual, 0, Double.compare(expected, actual));
+    }
+
+    /**
+     * Parses the value in the middle of other bytes, so the range of the array is used.
+     * */
+    private static double parse(String value) {
+        byte[] bytes = ("9/" + value + "/9").getBytes(StandardCharsets.ISO_8859_1);
+        return BuildNGoReader.parseDouble(bytes, 2, bytes.length - 2);
+    }
+
+    /**
+     * The line based reader: each line is split by '/', x is the second value and y is the first value.
+     * */
+    private static LineString readLines(File trajectoryFile, Coordinate minPosition) throws IOException {
+        ArrayList<Coordinate> coords = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(trajectoryFile), "EUC_KR"))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.split("/").length > 1) {
+                    Coordinate coord = new Coordinate(Double.valueOf(line.split("/")[1]), Double.valueOf(line.split("/")[0]));
+                    coords.add(ChangeCoord.changeCoordWGS84toMeter(coord, minPosition));
+                }
+            }
+        }
+
+        GeometryFactory gf = new GeometryFactory();
+        if(coords.size() > 1)
+            return gf.createLineString(coords.toArray(new Coordinate[0]));
+        return gf.createLineString(new Coordinate[]{});
+    }
+}